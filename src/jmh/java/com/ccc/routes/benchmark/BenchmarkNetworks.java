@@ -0,0 +1,78 @@
+package com.ccc.routes.benchmark;
+
+import java.util.SplittableRandom;
+
+/**
+ * Seeded random trains routes for the benchmarks, so every run and every version benchmarks the same networks.
+ * 
+ * @author gibrancastillo
+ *
+ */
+final class BenchmarkNetworks {
+	static final long SEED = 20211018L;
+	static final int MAX_ROUTE_DISTANCE = 9;
+	
+	private BenchmarkNetworks() {
+	}
+	
+	/**
+	 * Every town has a route to the next one, so all of them are reachable from town 0, plus density - 1 routes to
+	 * random other towns, in the delimited format (T0-T1:5).
+	 * 
+	 * @param numberOfTowns
+	 * @param density - the number of routes leaving every town.
+	 * @return The trains routes.
+	 */
+	static String createRoutes(int numberOfTowns, int density) {
+		SplittableRandom random = new SplittableRandom(SEED);
+		StringBuilder routes = new StringBuilder(numberOfTowns * density * 14);
+		
+		for(int town = 0; town < numberOfTowns; town++) {
+			appendRoute(routes, town, (town + 1) % numberOfTowns, random);
+			
+			for(int route = 1; route < density; route++) {
+				appendRoute(routes, town, getOtherTown(town, numberOfTowns, random), random);
+			}
+		}
+		
+		return routes.toString();
+	}
+	
+	private static void appendRoute(StringBuilder routes, int startingTown, int endingTown, SplittableRandom random) {
+		if(routes.length() > 0) {
+			routes.append(", ");
+		}
+		
+		routes.append(getTownName(startingTown)).append('-').append(getTownName(endingTown)).append(':').append(1 + random.nextInt(MAX_ROUTE_DISTANCE));
+	}
+	
+	private static int getOtherTown(int town, int numberOfTowns, SplittableRandom random) {
+		int otherTown = random.nextInt(numberOfTowns - 1);
+		
+		return otherTown < town ? otherTown : otherTown + 1;
+	}
+	
+	static String getTownName(int town) {
+		return "T" + town;
+	}
+	
+	/**
+	 * @param numberOfTowns
+	 * @param density - the number of towns every town is connected to.
+	 * @return Pairs of connected towns, the first pair of every town connects it to the next one.
+	 */
+	static int[][] createConnections(int numberOfTowns, int density) {
+		SplittableRandom random = new SplittableRandom(SEED);
+		int[][] connections = new int[numberOfTowns * density][];
+		
+		for(int town = 0; town < numberOfTowns; town++) {
+			connections[town * density] = new int[] {town, (town + 1) % numberOfTowns};
+			
+			for(int connection = 1; connection < density; connection++) {
+				connections[town * density + connection] = new int[] {town, getOtherTown(town, numberOfTowns, random)};
+			}
+		}
+		
+		return connections;
+	}
+}
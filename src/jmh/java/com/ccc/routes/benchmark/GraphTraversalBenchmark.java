@@ -0,0 +1,89 @@
+package com.ccc.routes.benchmark;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ccc.routes.discovery.Graph;
+import com.ccc.routes.discovery.Node;
+
+/**
+ * Benchmarks the breadth and depth first traversals of a {@link Graph}, by number of nodes and number of nodes every
+ * node is connected to. A traversal always visits the whole graph, so there is no query budget. The graph is an
+ * adjacency matrix scanned from the start for every child, so the sizes stay well under the ones of the
+ * {@link TrainsRoutesBenchmark}.
+ * 
+ * The traversals print every node, standard output is discarded while they run.
+ * 
+ * @author gibrancastillo
+ *
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@State(Scope.Benchmark)
+public class GraphTraversalBenchmark {
+	@Param({"26", "256", "1024"})
+	private int size;
+	
+	@Param({"2", "8"})
+	private int density;
+	
+	private Graph graph;
+	private PrintStream standardOutput;
+	
+	@Setup(Level.Trial)
+	public void setUp() {
+		graph = new Graph();
+		Node[] nodes = new Node[size];
+		
+		for(int node = 0; node < size; node++) {
+			nodes[node] = new Node((char) ('A' + node));
+			graph.addNode(nodes[node]);
+		}
+		
+		graph.setRootNode(nodes[0]);
+		
+		for(int[] connection : BenchmarkNetworks.createConnections(size, density)) {
+			graph.connectNode(nodes[connection[0]], nodes[connection[1]]);
+		}
+		
+		standardOutput = System.out;
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		System.setOut(standardOutput);
+	}
+	
+	@Benchmark
+	public Graph bfs() {
+		graph.bfs();
+		
+		return graph;
+	}
+	
+	@Benchmark
+	public Graph dfs() {
+		graph.dfs();
+		
+		return graph;
+	}
+}
@@ -0,0 +1,103 @@
+package com.ccc.routes.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ccc.routes.network.RouteNetwork;
+import com.ccc.routes.recursion.Town;
+import com.ccc.routes.recursion.TrainsRoutesDirectedGraph;
+
+/**
+ * Benchmarks the loading of the trains routes and every query of {@link TrainsRoutesDirectedGraph}, by number of
+ * towns, number of routes leaving every town and query budget: the number of stops of the trip counts, the number of
+ * hops of the route distance and, times the average route distance, the maximum distance of the route count.
+ * 
+ * The query cache is disabled, otherwise every query but the first would be a cache hit. The query metrics are left
+ * on, as they are in production.
+ * 
+ * @author gibrancastillo
+ *
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@State(Scope.Benchmark)
+public class TrainsRoutesBenchmark {
+	@Param({"26", "1000", "10000"})
+	private int size;
+	
+	@Param({"2", "8"})
+	private int density;
+	
+	@Param({"4", "12"})
+	private int budget;
+	
+	private String routes;
+	private TrainsRoutesDirectedGraph graph;
+	private Town<String> startingTown;
+	private Town<String> endingTown;
+	private List<Town<String>> itinerary;
+	private int maxDistance;
+	
+	@Setup(Level.Trial)
+	public void setUp() {
+		routes = BenchmarkNetworks.createRoutes(size, density);
+		graph = new TrainsRoutesDirectedGraph(routes);
+		graph.getQueryCache().setMaximumSize(0);
+		startingTown = new Town<String>(BenchmarkNetworks.getTownName(0));
+		endingTown = new Town<String>(BenchmarkNetworks.getTownName(size / 2));
+		maxDistance = budget * (BenchmarkNetworks.MAX_ROUTE_DISTANCE + 1) / 2;
+		itinerary = new ArrayList<>();
+		
+		//The routes to the next town always exist
+		for(int town = 0; town <= budget; town++) {
+			itinerary.add(new Town<String>(BenchmarkNetworks.getTownName(town % size)));
+		}
+	}
+	
+	@Benchmark
+	public RouteNetwork createTrainsRoutes() {
+		return new TrainsRoutesDirectedGraph(routes).getRouteNetwork();
+	}
+	
+	@Benchmark
+	public String getRouteDistance() {
+		return graph.getRouteDistance(itinerary);
+	}
+	
+	@Benchmark
+	public String getNumberOfTripsWithMaxStops() {
+		return graph.getNumberOfTripsWithMaxStops(startingTown, endingTown, budget);
+	}
+	
+	@Benchmark
+	public String getNumberOfTripsWithExactStops() {
+		return graph.getNumberOfTripsWithExactStops(startingTown, endingTown, budget);
+	}
+	
+	@Benchmark
+	public String getShortestRouteDistance() {
+		return graph.getShortestRouteDistance(startingTown, endingTown);
+	}
+	
+	@Benchmark
+	public String getNumberOfDifferentRoutesWithMaxDistance() {
+		return graph.getNumberOfDifferentRoutesWithMaxDistance(startingTown, endingTown, maxDistance);
+	}
+}
@@ -0,0 +1,341 @@
+package com.ccc.routes.generator;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.SplittableRandom;
+
+import com.ccc.routes.network.CompactRouteNetwork;
+import com.ccc.routes.network.RouteSink;
+
+/**
+ * Generates synthetic rail networks of any size for scale tests and benchmarks. A generator is deterministic, the same
+ * settings and seed always generate the same routes in the same order.
+ * 
+ * The routes are streamed to a {@link RouteSink} as they are laid, or written out in the route format read by
+ * TrainsRoutesDirectedGraph, so a network of millions of routes is never held in memory. Only the scale-free topology
+ * keeps state that grows with the routes, the towns at both ends of every track (two ints per track).
+ * 
+ * Every track is laid in one direction, without cycles, and gets a route back of the same distance with the
+ * probability of the cycle density: 0 generates an acyclic network, 1 a network where every track is two way.
+ * 
+ * @author gibrancastillo
+ *
+ */
+public final class NetworkGenerator {
+	private static final int MAX_LETTER_TOWNS = 26;
+	
+	private final Topology topology;
+	private final int numberOfTowns;
+	private final long seed;
+	private final WeightDistribution weightDistribution;
+	private final double cycleDensity;
+	private final int routesPerTown;
+	
+	private NetworkGenerator(Builder builder) {
+		this.topology = builder.topology;
+		this.numberOfTowns = builder.numberOfTowns;
+		this.seed = builder.seed;
+		this.weightDistribution = builder.weightDistribution;
+		this.cycleDensity = builder.cycleDensity;
+		this.routesPerTown = builder.routesPerTown;
+	}
+	
+	public Topology getTopology() {
+		return topology;
+	}
+	
+	public int getNumberOfTowns() {
+		return numberOfTowns;
+	}
+	
+	/**
+	 * Networks of up to 26 towns use single-letter town names (A, B, ...) so they can be written in the legacy route
+	 * format (AB5), larger networks are named T0, T1, ...
+	 * 
+	 * @param townId
+	 * @return The name of the town.
+	 */
+	public String getTownName(int townId) {
+		return numberOfTowns <= MAX_LETTER_TOWNS ? String.valueOf((char) ('A' + townId)) : "T" + townId;
+	}
+	
+	/**
+	 * Lays the routes of the network one at a time into the sink, with the ids of {@link #getTownName(int)}.
+	 * 
+	 * @param sink
+	 * @return The number of routes generated.
+	 */
+	public long generate(RouteSink sink) {
+		TrackLayer trackLayer = new TrackLayer(sink);
+		
+		switch(topology) {
+			case GRID:
+				generateGrid(trackLayer);
+				break;
+			case HUB_AND_SPOKE:
+				generateHubAndSpoke(trackLayer);
+				break;
+			case SCALE_FREE:
+				generateScaleFree(trackLayer);
+				break;
+			case CORRIDOR:
+				generateCorridor(trackLayer);
+				break;
+			default:
+				throw new IllegalStateException("Unknown topology " + topology);
+		}
+		
+		return trackLayer.numberOfRoutes;
+	}
+	
+	/**
+	 * Writes the routes one per line, in the legacy format (AB5) for networks of up to 26 towns and in the delimited
+	 * format (T0-T1:5) otherwise.
+	 * 
+	 * @param out - the output is not closed, nor flushed.
+	 * @return The number of routes written.
+	 * @throws IOException
+	 */
+	public long write(Appendable out) throws IOException {
+		boolean isLegacyFormat = numberOfTowns <= MAX_LETTER_TOWNS;
+		
+		try {
+			return generate((startingTownId, endingTownId, distance) -> {
+				try {
+					out.append(getTownName(startingTownId));
+					
+					if(!isLegacyFormat) {
+						out.append('-');
+					}
+					
+					out.append(getTownName(endingTownId));
+					
+					if(!isLegacyFormat) {
+						out.append(':');
+					}
+					
+					out.append(Integer.toString(distance)).append('\n');
+				} catch(IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch(UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+	
+	/**
+	 * @return The network compiled in memory, e.g. to be saved as a RouteNetworkSnapshot.
+	 */
+	public CompactRouteNetwork generateNetwork() {
+		CompactRouteNetwork.Builder builder = new CompactRouteNetwork.Builder();
+		
+		//Every town first, so the ids of the builder are the ids of the generator
+		for(int townId = 0; townId < numberOfTowns; townId++) {
+			builder.addTown(getTownName(townId));
+		}
+		
+		generate(builder::addRoute);
+		
+		return builder.build();
+	}
+	
+	private void generateGrid(TrackLayer trackLayer) {
+		int columns = (int) Math.ceil(Math.sqrt(numberOfTowns));
+		
+		for(int townId = 0; townId < numberOfTowns; townId++) {
+			if((townId + 1) % columns != 0 && townId + 1 < numberOfTowns) {
+				trackLayer.lay(townId, townId + 1);
+			}
+			
+			if(townId + columns < numberOfTowns) {
+				trackLayer.lay(townId, townId + columns);
+			}
+		}
+	}
+	
+	private void generateHubAndSpoke(TrackLayer trackLayer) {
+		int numberOfHubs = Math.max(1, (int) Math.sqrt(numberOfTowns));
+		
+		for(int hub = 0; hub + 1 < numberOfHubs; hub++) {
+			trackLayer.lay(hub, hub + 1);
+		}
+		
+		for(int townId = numberOfHubs; townId < numberOfTowns; townId++) {
+			trackLayer.lay(townId % numberOfHubs, townId);
+		}
+	}
+	
+	/**
+	 * The first routes per town + 1 towns are a line, then every town lays tracks to routes per town distinct towns.
+	 * Picking a random end of a random track picks a town in proportion to its tracks.
+	 */
+	private void generateScaleFree(TrackLayer trackLayer) {
+		int numberOfSeedTowns = Math.min(numberOfTowns, routesPerTown + 1);
+		int[] trackEnds = new int[(int) Math.min(Integer.MAX_VALUE - 8, 2L * routesPerTown * numberOfTowns)];
+		int numberOfTrackEnds = 0;
+		int[] targets = new int[routesPerTown];
+		
+		for(int townId = 0; townId + 1 < numberOfSeedTowns; townId++) {
+			trackLayer.lay(townId + 1, townId);
+			trackEnds[numberOfTrackEnds++] = townId;
+			trackEnds[numberOfTrackEnds++] = townId + 1;
+		}
+		
+		for(int townId = numberOfSeedTowns; townId < numberOfTowns; townId++) {
+			int numberOfTargets = 0;
+			
+			while(numberOfTargets < routesPerTown) {
+				int target = trackEnds[trackLayer.random.nextInt(numberOfTrackEnds)];
+				
+				if(!contains(targets, numberOfTargets, target)) {
+					targets[numberOfTargets++] = target;
+				}
+			}
+			
+			for(int i = 0; i < numberOfTargets; i++) {
+				trackLayer.lay(townId, targets[i]);
+				
+				if(numberOfTrackEnds + 2 <= trackEnds.length) {
+					trackEnds[numberOfTrackEnds++] = townId;
+					trackEnds[numberOfTrackEnds++] = targets[i];
+				}
+			}
+		}
+	}
+	
+	private static boolean contains(int[] elements, int size, int element) {
+		for(int i = 0; i < size; i++) {
+			if(elements[i] == element) {
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	private void generateCorridor(TrackLayer trackLayer) {
+		int numberOfStations = Math.min(numberOfTowns, Math.max(2, 2 * (int) Math.sqrt(numberOfTowns)));
+		int maxBranchLength = Math.max(1, numberOfStations / 4);
+		
+		for(int townId = 0; townId + 1 < numberOfStations; townId++) {
+			trackLayer.lay(townId, townId + 1);
+		}
+		
+		for(int townId = numberOfStations; townId < numberOfTowns;) {
+			int previousTownId = trackLayer.random.nextInt(numberOfStations);
+			int branchEnd = Math.min(numberOfTowns, townId + 1 + trackLayer.random.nextInt(maxBranchLength));
+			
+			for(; townId < branchEnd; townId++) {
+				trackLayer.lay(previousTownId, townId);
+				previousTownId = townId;
+			}
+		}
+	}
+	
+	@Override
+	public String toString() {
+		return "NetworkGenerator [topology=" + topology + ", numberOfTowns=" + numberOfTowns + ", seed=" + seed + ", cycleDensity=" + cycleDensity
+				+ ", routesPerTown=" + routesPerTown + "]";
+	}
+	
+	/**
+	 * Lays the tracks of one generation, every generation starts over from the seed.
+	 */
+	private final class TrackLayer {
+		private final SplittableRandom random = new SplittableRandom(seed);
+		private final RouteSink sink;
+		private long numberOfRoutes;
+		
+		private TrackLayer(RouteSink sink) {
+			this.sink = sink;
+		}
+		
+		private void lay(int startingTownId, int endingTownId) {
+			int distance = weightDistribution.nextDistance(random);
+			sink.addRoute(startingTownId, endingTownId, distance);
+			numberOfRoutes++;
+			
+			if(cycleDensity > 0 && random.nextDouble() < cycleDensity) {
+				sink.addRoute(endingTownId, startingTownId, distance);
+				numberOfRoutes++;
+			}
+		}
+	}
+	
+	/**
+	 * Collects the settings of a generator, the number of towns and the topology are the only ones required.
+	 * 
+	 * @author gibrancastillo
+	 *
+	 */
+	public static final class Builder {
+		private final Topology topology;
+		private final int numberOfTowns;
+		private long seed;
+		private WeightDistribution weightDistribution = WeightDistribution.uniform(1, 9);
+		private double cycleDensity = 0.5;
+		private int routesPerTown = 2;
+		
+		/**
+		 * @param topology
+		 * @param numberOfTowns - at least two.
+		 */
+		public Builder(Topology topology, int numberOfTowns) {
+			if(numberOfTowns < 2) {
+				throw new IllegalArgumentException("A network needs at least two towns, not " + numberOfTowns);
+			}
+			
+			this.topology = topology;
+			this.numberOfTowns = numberOfTowns;
+		}
+		
+		public Builder seed(long seed) {
+			this.seed = seed;
+			
+			return this;
+		}
+		
+		/**
+		 * @param weightDistribution - the distances of the routes, uniform from 1 to 9 by default like the sample routes.
+		 * @return This builder.
+		 */
+		public Builder weightDistribution(WeightDistribution weightDistribution) {
+			this.weightDistribution = weightDistribution;
+			
+			return this;
+		}
+		
+		/**
+		 * @param cycleDensity - the probability, from 0 to 1, that a track gets a route back, 0.5 by default.
+		 * @return This builder.
+		 */
+		public Builder cycleDensity(double cycleDensity) {
+			if(!(cycleDensity >= 0 && cycleDensity <= 1)) {
+				throw new IllegalArgumentException("Invalid cycle density " + cycleDensity);
+			}
+			
+			this.cycleDensity = cycleDensity;
+			
+			return this;
+		}
+		
+		/**
+		 * @param routesPerTown - the number of tracks every new town of a scale-free network lays, 2 by default.
+		 * @return This builder.
+		 */
+		public Builder routesPerTown(int routesPerTown) {
+			if(routesPerTown < 1) {
+				throw new IllegalArgumentException("Invalid routes per town " + routesPerTown);
+			}
+			
+			this.routesPerTown = routesPerTown;
+			
+			return this;
+		}
+		
+		public NetworkGenerator build() {
+			return new NetworkGenerator(this);
+		}
+	}
+}
@@ -0,0 +1,136 @@
+package com.ccc.routes.generator;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.ccc.routes.network.RouteNetworkSnapshot;
+
+/**
+ * Generates a synthetic network from the command line, e.g.
+ * 
+ * java com.ccc.routes.generator.NetworkGeneratorCli --topology scale-free --towns 1000000 --seed 7 --output routes.txt
+ * 
+ * Options:
+ * --topology grid | hub-and-spoke | scale-free | corridor (required)
+ * --towns NUMBER (required)
+ * --seed NUMBER, 0 by default
+ * --weights uniform:MIN:MAX | normal:MEAN:STANDARD_DEVIATION | exponential:MEAN, uniform:1:9 by default
+ * --cycle-density 0..1, 0.5 by default
+ * --routes-per-town NUMBER, the tracks laid by every new town of a scale-free network, 2 by default
+ * --format routes | snapshot, the route format streamed out or a RouteNetworkSnapshot, routes by default
+ * --output PATH, standard output by default, required by the snapshot format
+ * 
+ * @author gibrancastillo
+ *
+ */
+public class NetworkGeneratorCli {
+	private static final Logger logger = LogManager.getLogger(NetworkGeneratorCli.class);
+	
+	public static void main(String[] args) throws IOException {
+		try {
+			run(args);
+		} catch(IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.exit(2);
+		}
+	}
+	
+	static void run(String[] args) throws IOException {
+		Topology topology = null;
+		int numberOfTowns = 0;
+		long seed = 0;
+		WeightDistribution weightDistribution = null;
+		Double cycleDensity = null;
+		Integer routesPerTown = null;
+		String format = "routes";
+		Path output = null;
+		
+		for(int i = 0; i < args.length; i++) {
+			if(i + 1 == args.length) {
+				throw new IllegalArgumentException("Missing value of option " + args[i]);
+			}
+			
+			String value = args[++i];
+			
+			switch(args[i - 1]) {
+				case "--topology":
+					topology = Topology.valueOf(value.toUpperCase(Locale.ROOT).replace('-', '_'));
+					break;
+				case "--towns":
+					numberOfTowns = Integer.parseInt(value);
+					break;
+				case "--seed":
+					seed = Long.parseLong(value);
+					break;
+				case "--weights":
+					weightDistribution = WeightDistribution.parse(value);
+					break;
+				case "--cycle-density":
+					cycleDensity = Double.parseDouble(value);
+					break;
+				case "--routes-per-town":
+					routesPerTown = Integer.parseInt(value);
+					break;
+				case "--format":
+					format = value;
+					break;
+				case "--output":
+					output = Paths.get(value);
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown option " + args[i - 1]);
+			}
+		}
+		
+		if(topology == null) {
+			throw new IllegalArgumentException("Missing option --topology");
+		}
+		
+		NetworkGenerator.Builder builder = new NetworkGenerator.Builder(topology, numberOfTowns).seed(seed);
+		
+		if(weightDistribution != null) {
+			builder.weightDistribution(weightDistribution);
+		}
+		
+		if(cycleDensity != null) {
+			builder.cycleDensity(cycleDensity);
+		}
+		
+		if(routesPerTown != null) {
+			builder.routesPerTown(routesPerTown);
+		}
+		
+		NetworkGenerator generator = builder.build();
+		
+		if(format.equals("snapshot")) {
+			if(output == null) {
+				throw new IllegalArgumentException("Missing option --output of the snapshot");
+			}
+			
+			RouteNetworkSnapshot.write(generator.generateNetwork(), output);
+			logger.info("Snapshot of " + generator + " written to " + output);
+		} else if(format.equals("routes") && output == null) {
+			//Nothing is logged, the console log would end up among the routes
+			Writer writer = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+			generator.write(writer);
+			writer.flush();
+		} else if(format.equals("routes")) {
+			try(Writer writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+				long numberOfRoutes = generator.write(writer);
+				logger.info(numberOfRoutes + " routes of " + generator + " written to " + output);
+			}
+		} else {
+			throw new IllegalArgumentException("Unknown format " + format);
+		}
+	}
+}
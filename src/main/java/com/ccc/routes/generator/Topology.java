@@ -0,0 +1,29 @@
+package com.ccc.routes.generator;
+
+/**
+ * The shapes of rail network the {@link NetworkGenerator} lays out. Every track is laid in one direction, the cycle
+ * density of the generator decides how many of them get a route back.
+ * 
+ * @author gibrancastillo
+ *
+ */
+public enum Topology {
+	/**
+	 * Towns on a square grid, every town has a track to the town on its right and to the town below it.
+	 */
+	GRID,
+	/**
+	 * About sqrt(towns) hubs on a trunk line, every other town is a spoke of one hub.
+	 */
+	HUB_AND_SPOKE,
+	/**
+	 * Preferential attachment (Barabasi-Albert), every new town lays tracks to towns picked in proportion to the
+	 * tracks they already have, so a few towns become very well connected.
+	 */
+	SCALE_FREE,
+	/**
+	 * A main line through about 2 * sqrt(towns) towns, the other towns are on branch lines leaving the main line at
+	 * random stations.
+	 */
+	CORRIDOR
+}
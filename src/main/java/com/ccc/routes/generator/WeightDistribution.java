@@ -0,0 +1,80 @@
+package com.ccc.routes.generator;
+
+import java.util.SplittableRandom;
+
+/**
+ * The distribution of the distances of the generated routes. Distances are never less than one, the route format
+ * does not allow them.
+ * 
+ * @author gibrancastillo
+ *
+ */
+@FunctionalInterface
+public interface WeightDistribution {
+	/**
+	 * @param random - the random generator of the network being generated.
+	 * @return The distance of the next route.
+	 */
+	int nextDistance(SplittableRandom random);
+	
+	/**
+	 * @param min
+	 * @param max
+	 * @return Distances from min to max, all as likely.
+	 */
+	static WeightDistribution uniform(int min, int max) {
+		if(min < 1 || max < min) {
+			throw new IllegalArgumentException("Invalid uniform distances from " + min + " to " + max);
+		}
+		
+		return random -> min + random.nextInt(max - min + 1);
+	}
+	
+	/**
+	 * @param mean
+	 * @param standardDeviation
+	 * @return Normally distributed distances, rounded and clamped to at least one.
+	 */
+	static WeightDistribution normal(double mean, double standardDeviation) {
+		return random -> {
+			//Box-Muller, SplittableRandom has no nextGaussian
+			double gaussian = Math.sqrt(-2 * Math.log(1 - random.nextDouble())) * Math.cos(2 * Math.PI * random.nextDouble());
+			
+			return clamp(mean + standardDeviation * gaussian);
+		};
+	}
+	
+	/**
+	 * @param mean
+	 * @return Exponentially distributed distances: many short routes and a long tail of long ones.
+	 */
+	static WeightDistribution exponential(double mean) {
+		return random -> clamp(-mean * Math.log(1 - random.nextDouble()));
+	}
+	
+	/**
+	 * @param distribution - uniform:MIN:MAX, normal:MEAN:STANDARD_DEVIATION or exponential:MEAN
+	 * @return The distribution.
+	 */
+	static WeightDistribution parse(String distribution) {
+		String[] parts = distribution.split(":");
+		
+		try {
+			if(parts[0].equals("uniform") && parts.length == 3) {
+				return uniform(Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+			} else if(parts[0].equals("normal") && parts.length == 3) {
+				return normal(Double.parseDouble(parts[1]), Double.parseDouble(parts[2]));
+			} else if(parts[0].equals("exponential") && parts.length == 2) {
+				return exponential(Double.parseDouble(parts[1]));
+			}
+		} catch(NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid distribution " + distribution, e);
+		}
+		
+		throw new IllegalArgumentException("Invalid distribution " + distribution);
+	}
+	
+	private static int clamp(double distance) {
+		return (int) Math.max(1, Math.min(Math.round(distance), Integer.MAX_VALUE));
+	}
+}
@@ -0,0 +1,190 @@
+package com.ccc.routes.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A latency histogram in the style of HdrHistogram: values under 64 nanoseconds have a bucket each, above that
+ * every power of two is split into 32 buckets, so a recorded value is off by less than 1/32 (about 3%) whatever its
+ * magnitude. Values above an hour are recorded in the last bucket.
+ * 
+ * The buckets are striped: a fixed number of recorders, a power of two of about twice the processors and at most 64,
+ * each created the first time a thread hashed to it records. A thread adds to the buckets of its recorder
+ * atomically, so threads sharing a recorder lose no value, and a {@link #snapshot()} sums the buckets of every
+ * recorder. The memory of a histogram is bounded however many threads, short lived or not, ever record into it.
+ * 
+ * @author gibrancastillo
+ *
+ */
+public final class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 6;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+	public static final long MAX_VALUE = TimeUnit.HOURS.toNanos(1);
+	static final int NUMBER_OF_BUCKETS = getBucket(MAX_VALUE) + 1;
+	//The slots after the buckets of a recorder
+	private static final int COUNT = NUMBER_OF_BUCKETS;
+	private static final int SUM = NUMBER_OF_BUCKETS + 1;
+	private static final int MAX = NUMBER_OF_BUCKETS + 2;
+	
+	static final int NUMBER_OF_RECORDERS = Math.min(64, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1) * 2);
+	
+	private final AtomicReferenceArray<AtomicLongArray> recorders = new AtomicReferenceArray<>(NUMBER_OF_RECORDERS);
+	
+	/**
+	 * @param nanos - the latency in nanoseconds.
+	 */
+	public void record(long nanos) {
+		long value = Math.max(0, Math.min(nanos, MAX_VALUE));
+		AtomicLongArray counts = getRecorder();
+		counts.getAndIncrement(getBucket(value));
+		counts.getAndIncrement(COUNT);
+		counts.getAndAdd(SUM, value);
+		long max = counts.get(MAX);
+		
+		while(value > max && !counts.compareAndSet(MAX, max, value)) {
+			max = counts.get(MAX);
+		}
+	}
+	
+	/**
+	 * @return The recorder the current thread hashes to, created if it is the first to record into it.
+	 */
+	private AtomicLongArray getRecorder() {
+		long threadId = Thread.currentThread().getId();
+		int index = (int) ((threadId * 0x9E3779B97F4A7C15L) >>> 32) & (NUMBER_OF_RECORDERS - 1);
+		AtomicLongArray counts = recorders.get(index);
+		
+		if(counts == null) {
+			recorders.compareAndSet(index, null, new AtomicLongArray(NUMBER_OF_BUCKETS + 3));
+			counts = recorders.get(index);
+		}
+		
+		return counts;
+	}
+	
+	/**
+	 * @return The values recorded by every thread so far.
+	 */
+	public Snapshot snapshot() {
+		long[] counts = new long[NUMBER_OF_BUCKETS];
+		long count = 0;
+		long sum = 0;
+		long max = 0;
+		
+		for(int index = 0; index < NUMBER_OF_RECORDERS; index++) {
+			AtomicLongArray recorderCounts = recorders.get(index);
+			
+			if(recorderCounts == null) {
+				continue;
+			}
+			
+			for(int bucket = 0; bucket < NUMBER_OF_BUCKETS; bucket++) {
+				counts[bucket] += recorderCounts.get(bucket);
+			}
+			
+			count += recorderCounts.get(COUNT);
+			sum += recorderCounts.get(SUM);
+			max = Math.max(max, recorderCounts.get(MAX));
+		}
+		
+		return new Snapshot(counts, count, sum, max);
+	}
+	
+	static int getBucket(long value) {
+		if(value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		
+		int exponent = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+		
+		return SUB_BUCKETS + (exponent - 1) * HALF_SUB_BUCKETS + (int) (value >>> exponent) - HALF_SUB_BUCKETS;
+	}
+	
+	static long getLowestValue(int bucket) {
+		if(bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		
+		int exponent = (bucket - SUB_BUCKETS) / HALF_SUB_BUCKETS + 1;
+		
+		return (long) ((bucket - SUB_BUCKETS) % HALF_SUB_BUCKETS + HALF_SUB_BUCKETS) << exponent;
+	}
+	
+	/**
+	 * @return The number of recorders created so far, at most {@link #NUMBER_OF_RECORDERS}.
+	 */
+	int getNumberOfRecorders() {
+		int numberOfRecorders = 0;
+		
+		for(int index = 0; index < NUMBER_OF_RECORDERS; index++) {
+			if(recorders.get(index) != null) {
+				numberOfRecorders++;
+			}
+		}
+		
+		return numberOfRecorders;
+	}
+	
+	/**
+	 * The values of a histogram at one point in time. The buckets of a thread recording while the snapshot is taken
+	 * may be read half way, so the count can be off by the values being recorded.
+	 */
+	public static final class Snapshot {
+		private final long[] counts;
+		private final long count;
+		private final long sum;
+		private final long max;
+		
+		private Snapshot(long[] counts, long count, long sum, long max) {
+			this.counts = counts;
+			this.count = count;
+			this.sum = sum;
+			this.max = max;
+		}
+		
+		public long getCount() {
+			return count;
+		}
+		
+		public long getMax() {
+			return max;
+		}
+		
+		public double getMean() {
+			return count == 0 ? 0 : (double) sum / count;
+		}
+		
+		/**
+		 * @param percentile - from 0 to 100, e.g. 99.9
+		 * @return The highest value of the bucket the percentile falls in, capped by the max value recorded.
+		 */
+		public long getValueAtPercentile(double percentile) {
+			long total = 0;
+			
+			for(long bucketCount : counts) {
+				total += bucketCount;
+			}
+			
+			long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * total));
+			long cumulativeCount = 0;
+			
+			for(int bucket = 0; bucket < counts.length; bucket++) {
+				cumulativeCount += counts[bucket];
+				
+				if(cumulativeCount >= rank) {
+					return Math.min(max, getLowestValue(bucket + 1) - 1);
+				}
+			}
+			
+			return max;
+		}
+		
+		@Override
+		public String toString() {
+			return "count=" + count + ", mean=" + Math.round(getMean()) + ", p50=" + getValueAtPercentile(50) + ", p99=" + getValueAtPercentile(99)
+					+ ", p99.9=" + getValueAtPercentile(99.9) + ", max=" + max;
+		}
+	}
+}
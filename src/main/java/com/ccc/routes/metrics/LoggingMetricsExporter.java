@@ -0,0 +1,23 @@
+package com.ccc.routes.metrics;
+
+import java.util.Collection;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Exports the metrics of every query type as an info line of the log.
+ * 
+ * @author gibrancastillo
+ *
+ */
+public class LoggingMetricsExporter implements MetricsExporter {
+	private static final Logger logger = LogManager.getLogger(LoggingMetricsExporter.class);
+	
+	@Override
+	public void export(Collection<QueryMetrics> metrics) {
+		for(QueryMetrics queryMetrics : metrics) {
+			logger.info("Query metrics: " + queryMetrics);
+		}
+	}
+}
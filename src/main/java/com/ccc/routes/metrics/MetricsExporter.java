@@ -0,0 +1,17 @@
+package com.ccc.routes.metrics;
+
+import java.util.Collection;
+
+/**
+ * Publishes the metrics of the queries somewhere, e.g. a log, a time series database or a scrape endpoint.
+ * 
+ * @author gibrancastillo
+ *
+ */
+@FunctionalInterface
+public interface MetricsExporter {
+	/**
+	 * @param metrics - the metrics of every query type called so far, they keep counting while they are exported.
+	 */
+	void export(Collection<QueryMetrics> metrics);
+}
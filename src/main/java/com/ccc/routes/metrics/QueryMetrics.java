@@ -0,0 +1,120 @@
+package com.ccc.routes.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The metrics of one query type: calls, failed calls, the towns expanded and routes relaxed by its searches, the
+ * deepest recursion of any of its calls and a histogram of its latencies. Every counter is striped, a
+ * {@link LongAdder} or a {@link LongAccumulator}, so threads running the same query do not contend on a counter.
+ * 
+ * @author gibrancastillo
+ *
+ */
+public final class QueryMetrics implements QueryMetricsMXBean {
+	private final String query;
+	private final LongAdder calls = new LongAdder();
+	private final LongAdder errors = new LongAdder();
+	private final LongAdder townsExpanded = new LongAdder();
+	private final LongAdder routesRelaxed = new LongAdder();
+	private final LongAccumulator peakDepth = new LongAccumulator(Math::max, 0);
+	private final LatencyHistogram latencies = new LatencyHistogram();
+	
+	public QueryMetrics(String query) {
+		this.query = query;
+	}
+	
+	/**
+	 * @param nanos - the latency of the call.
+	 * @param townsExpanded
+	 * @param routesRelaxed
+	 * @param depth - the peak recursion depth of the call.
+	 * @param isError - whether the call threw.
+	 */
+	public void record(long nanos, long townsExpanded, long routesRelaxed, int depth, boolean isError) {
+		calls.increment();
+		
+		if(isError) {
+			errors.increment();
+		}
+		
+		if(townsExpanded != 0) {
+			this.townsExpanded.add(townsExpanded);
+			this.routesRelaxed.add(routesRelaxed);
+		}
+		
+		if(depth != 0) {
+			peakDepth.accumulate(depth);
+		}
+		
+		latencies.record(nanos);
+	}
+	
+	@Override
+	public String getQuery() {
+		return query;
+	}
+	
+	@Override
+	public long getCalls() {
+		return calls.sum();
+	}
+	
+	@Override
+	public long getErrors() {
+		return errors.sum();
+	}
+	
+	@Override
+	public long getTownsExpanded() {
+		return townsExpanded.sum();
+	}
+	
+	@Override
+	public long getRoutesRelaxed() {
+		return routesRelaxed.sum();
+	}
+	
+	@Override
+	public int getPeakDepth() {
+		return (int) peakDepth.get();
+	}
+	
+	/**
+	 * @return The latencies recorded so far.
+	 */
+	public LatencyHistogram.Snapshot getLatencies() {
+		return latencies.snapshot();
+	}
+	
+	@Override
+	public double getMeanLatency() {
+		return latencies.snapshot().getMean();
+	}
+	
+	@Override
+	public long getMedianLatency() {
+		return latencies.snapshot().getValueAtPercentile(50);
+	}
+	
+	@Override
+	public long get99thPercentileLatency() {
+		return latencies.snapshot().getValueAtPercentile(99);
+	}
+	
+	@Override
+	public long get999thPercentileLatency() {
+		return latencies.snapshot().getValueAtPercentile(99.9);
+	}
+	
+	@Override
+	public long getMaxLatency() {
+		return latencies.snapshot().getMax();
+	}
+	
+	@Override
+	public String toString() {
+		return query + " [calls=" + getCalls() + ", errors=" + getErrors() + ", townsExpanded=" + getTownsExpanded()
+				+ ", routesRelaxed=" + getRoutesRelaxed() + ", peakDepth=" + getPeakDepth() + ", latencyNanos={" + getLatencies() + "}]";
+	}
+}
@@ -0,0 +1,31 @@
+package com.ccc.routes.metrics;
+
+/**
+ * The metrics of one query type as seen through JMX, the latencies are in nanoseconds.
+ * 
+ * @author gibrancastillo
+ *
+ */
+public interface QueryMetricsMXBean {
+	String getQuery();
+	
+	long getCalls();
+	
+	long getErrors();
+	
+	long getTownsExpanded();
+	
+	long getRoutesRelaxed();
+	
+	int getPeakDepth();
+	
+	double getMeanLatency();
+	
+	long getMedianLatency();
+	
+	long get99thPercentileLatency();
+	
+	long get999thPercentileLatency();
+	
+	long getMaxLatency();
+}
@@ -0,0 +1,186 @@
+package com.ccc.routes.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.ccc.routes.search.SearchCounters;
+
+/**
+ * The {@link QueryMetrics} of every query type of a graph. A query is measured by running it through
+ * {@link #measure(String, Supplier)}, which times it and takes the work of its searches from the
+ * {@link SearchCounters} of the calling thread.
+ * 
+ * The metrics can be registered as MBeans under com.ccc.routes:type=QueryMetrics,name=&lt;name&gt;,query=&lt;query&gt;
+ * and handed to any {@link MetricsExporter}.
+ * 
+ * @author gibrancastillo
+ *
+ */
+public final class QueryMetricsRegistry {
+	private static final String DOMAIN = "com.ccc.routes";
+	
+	private final Map<String, QueryMetrics> metrics = new ConcurrentHashMap<>();
+	private final List<ObjectName> registeredNames = new ArrayList<>();
+	private volatile boolean isEnabled = true;
+	private volatile String mBeanName;
+	
+	/**
+	 * @param query - the name of the query.
+	 * @param supplier - runs the query.
+	 * @return The result of the query.
+	 */
+	public <T> T measure(String query, Supplier<T> supplier) {
+		if(!isEnabled) {
+			return supplier.get();
+		}
+		
+		SearchCounters counters = SearchCounters.current();
+		long townsExpanded = counters.getTownsExpanded();
+		long routesRelaxed = counters.getRoutesRelaxed();
+		int previousPeakDepth = counters.resetPeakDepth();
+		long start = System.nanoTime();
+		boolean isError = true;
+		
+		try {
+			T result = supplier.get();
+			isError = false;
+			
+			return result;
+		} finally {
+			record(query, start, counters, townsExpanded, routesRelaxed, previousPeakDepth, isError);
+		}
+	}
+	
+	/**
+	 * Records a query timed by its caller, for the lookups that run no search and are too short to go through
+	 * {@link #measure(String, Supplier)} and its lambda. Call it only when {@link #isEnabled()}.
+	 * 
+	 * @param query - the name of the query.
+	 * @param nanos - the latency of the query.
+	 * @param isError - true if the query threw.
+	 */
+	public void record(String query, long nanos, boolean isError) {
+		getMetrics(query).record(nanos, 0, 0, 0, isError);
+	}
+	
+	private void record(String query, long start, SearchCounters counters, long townsExpanded, long routesRelaxed, int previousPeakDepth,
+			boolean isError) {
+		long nanos = System.nanoTime() - start;
+		//The peak depth of an enclosing measurement carries on from the deeper of the two
+		int peakDepth = counters.resetPeakDepth();
+		counters.updatePeakDepth(Math.max(previousPeakDepth, peakDepth));
+		
+		getMetrics(query).record(nanos, counters.getTownsExpanded() - townsExpanded, counters.getRoutesRelaxed() - routesRelaxed,
+				peakDepth, isError);
+	}
+	
+	/**
+	 * @param query
+	 * @return The metrics of the query, created on first use.
+	 */
+	public QueryMetrics getMetrics(String query) {
+		QueryMetrics queryMetrics = metrics.get(query);
+		
+		if(queryMetrics == null) {
+			queryMetrics = metrics.computeIfAbsent(query, this::newMetrics);
+		}
+		
+		return queryMetrics;
+	}
+	
+	private QueryMetrics newMetrics(String query) {
+		QueryMetrics queryMetrics = new QueryMetrics(query);
+		String name = mBeanName;
+		
+		if(name != null) {
+			registerMBean(name, queryMetrics);
+		}
+		
+		return queryMetrics;
+	}
+	
+	/**
+	 * @return The metrics of every query type measured so far.
+	 */
+	public Collection<QueryMetrics> getAllMetrics() {
+		return Collections.unmodifiableCollection(metrics.values());
+	}
+	
+	public boolean isEnabled() {
+		return isEnabled;
+	}
+	
+	/**
+	 * @param isEnabled - false to run the queries without measuring them.
+	 */
+	public void setEnabled(boolean isEnabled) {
+		this.isEnabled = isEnabled;
+	}
+	
+	/**
+	 * Registers the metrics of every query type, and of the ones measured from now on, with the platform MBean server.
+	 * 
+	 * @param name - the name that tells apart the graphs of one JVM.
+	 */
+	public synchronized void registerMBeans(String name) {
+		unregisterMBeans();
+		mBeanName = name;
+		
+		for(QueryMetrics queryMetrics : metrics.values()) {
+			registerMBean(name, queryMetrics);
+		}
+	}
+	
+	private synchronized void registerMBean(String name, QueryMetrics queryMetrics) {
+		try {
+			ObjectName objectName = getObjectName(name, queryMetrics.getQuery());
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			
+			if(!server.isRegistered(objectName)) {
+				server.registerMBean(queryMetrics, objectName);
+				registeredNames.add(objectName);
+			}
+		} catch(JMException e) {
+			throw new IllegalStateException("Cannot register the metrics of " + queryMetrics.getQuery(), e);
+		}
+	}
+	
+	/**
+	 * Unregisters the MBeans registered by {@link #registerMBeans(String)}.
+	 */
+	public synchronized void unregisterMBeans() {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		mBeanName = null;
+		
+		for(ObjectName objectName : registeredNames) {
+			try {
+				server.unregisterMBean(objectName);
+			} catch(JMException e) {
+				//Already unregistered by someone else
+			}
+		}
+		
+		registeredNames.clear();
+	}
+	
+	public static ObjectName getObjectName(String name, String query) throws JMException {
+		return new ObjectName(DOMAIN + ":type=QueryMetrics,name=" + ObjectName.quote(name) + ",query=" + ObjectName.quote(query));
+	}
+	
+	/**
+	 * @param exporter
+	 */
+	public void export(MetricsExporter exporter) {
+		exporter.export(getAllMetrics());
+	}
+}
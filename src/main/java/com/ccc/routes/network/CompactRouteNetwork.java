@@ -0,0 +1,257 @@
+package com.ccc.routes.network;
+
+/**
+ * An immutable compressed sparse row (CSR) representation of the trains routes directed graph.
+ *
+ * Towns are interned to dense int ids. The routes leaving town t are the route indices from offsets[t]
+ * (inclusive) to offsets[t + 1] (exclusive), the ending town and distance of route r are targets[r] and
+ * distances[r]. A route costs 8 bytes instead of a boxed Route, a Town and a list slot, and a search walks
+ * contiguous int arrays instead of hashing a String per hop.
+ *
+ * Test Input Graph: AB5, BC4, CD8, DC8, DE6, AD5, CE2, EB3, AE7
+ * townNames = [A, B, C, D, E]
+ * offsets   = [0, 3, 4, 6, 8, 9]
+ * targets   = [B, D, E, C, D, E, C, E, B]
+ * distances = [5, 5, 7, 4, 8, 2, 8, 6, 3]
+ *
+ * @author gibrancastillo
+ *
+ */
+public final class CompactRouteNetwork implements RouteNetwork {
+	private final String[] townNames;
+	//Read only once built, the town names are looked up by their characters without boxing the ids
+	private final TownSymbolTable townIds;
+	private final int[] offsets;
+	private final int[] targets;
+	private final int[] distances;
+	private final int maxRouteDistance;
+	//Built on the first lookup and the first backward search, most queries never need them
+	private RouteIndex routeIndex;
+	private ReverseRouteIndex reverseRouteIndex;
+	
+	private CompactRouteNetwork(String[] townNames, int[] offsets, int[] targets, int[] distances) {
+		this.townNames = townNames;
+		this.offsets = offsets;
+		this.targets = targets;
+		this.distances = distances;
+		this.townIds = new TownSymbolTable();
+		
+		for(String townName : townNames) {
+			townIds.intern(townName);
+		}
+		
+		int maxDistance = 0;
+		
+		for(int distance : distances) {
+			maxDistance = Math.max(maxDistance, distance);
+		}
+		
+		this.maxRouteDistance = maxDistance;
+	}
+	
+	@Override
+	public int getNumberOfTowns() {
+		return townNames.length;
+	}
+	
+	@Override
+	public int getNumberOfRoutes() {
+		return targets.length;
+	}
+	
+	@Override
+	public int getTownId(String townName) {
+		return townIds.getTownId(townName);
+	}
+	
+	@Override
+	public int getTownId(CharSequence characters, int start, int end) {
+		return townIds.getTownId(characters, start, end);
+	}
+	
+	@Override
+	public String getTownName(int townId) {
+		return townNames[townId];
+	}
+	
+	@Override
+	public int getFirstRoute(int townId) {
+		return offsets[townId];
+	}
+	
+	@Override
+	public int getRoutesEnd(int townId) {
+		return offsets[townId + 1];
+	}
+	
+	@Override
+	public int getOutDegree(int townId) {
+		return offsets[townId + 1] - offsets[townId];
+	}
+	
+	@Override
+	public int getRouteTarget(int route) {
+		return targets[route];
+	}
+	
+	@Override
+	public int getRouteDistance(int route) {
+		return distances[route];
+	}
+	
+	/**
+	 * Finds the route from the starting town to the ending town with a probe of the {@link RouteIndex}, the index is
+	 * built on the first lookup.
+	 */
+	@Override
+	public int findRoute(int startingTownId, int endingTownId) {
+		//A race builds the index twice at worst, its fields are final so a shared index is always fully built
+		RouteIndex index = routeIndex;
+		
+		if(index == null) {
+			index = new RouteIndex(this);
+			routeIndex = index;
+		}
+		
+		return index.findRoute(startingTownId, endingTownId);
+	}
+	
+	@Override
+	public int getMaxRouteDistance() {
+		return maxRouteDistance;
+	}
+	
+	@Override
+	public ReverseRouteIndex getReverseRouteIndex() {
+		//A race builds the index twice at worst, its fields are final so a shared index is always fully built
+		ReverseRouteIndex index = reverseRouteIndex;
+		
+		if(index == null) {
+			index = new ReverseRouteIndex(this);
+			reverseRouteIndex = index;
+		}
+		
+		return index;
+	}
+	
+	@Override
+	public String toString() {
+		return toString(this);
+	}
+	
+	/**
+	 * @param network
+	 * @return The routes of the network by starting town, e.g. {A=[B5, D5, E7], B=[C4]}
+	 */
+	static String toString(RouteNetwork network) {
+		StringBuilder builder = new StringBuilder("{");
+		
+		for(int townId = 0; townId < network.getNumberOfTowns(); townId++) {
+			builder.append(townId == 0 ? "" : ", ").append(network.getTownName(townId)).append("=[");
+			
+			for(int route = network.getFirstRoute(townId); route < network.getRoutesEnd(townId); route++) {
+				builder.append(route == network.getFirstRoute(townId) ? "" : ", ")
+						.append(network.getTownName(network.getRouteTarget(route))).append(network.getRouteDistance(route));
+			}
+			
+			builder.append(']');
+		}
+		
+		return builder.append('}').toString();
+	}
+	
+	/**
+	 * Collects routes in any order and builds the immutable network, the routes are grouped
+	 * by starting town with a counting sort that keeps the order they were added in.
+	 *
+	 * @author gibrancastillo
+	 *
+	 */
+	public static final class Builder {
+		private final TownSymbolTable townSymbolTable;
+		private final IntList startingTownIds = new IntList();
+		private final IntList endingTownIds = new IntList();
+		private final IntList routeDistances = new IntList();
+		
+		public Builder() {
+			this(new TownSymbolTable());
+		}
+		
+		/**
+		 * @param townSymbolTable - a symbol table shared with other builders or parsers, the network keeps its own
+		 * copy of the town names.
+		 */
+		public Builder(TownSymbolTable townSymbolTable) {
+			this.townSymbolTable = townSymbolTable;
+		}
+		
+		public TownSymbolTable getTownSymbolTable() {
+			return townSymbolTable;
+		}
+		
+		/**
+		 * Adds a town without routes, so the network knows about towns that are only reachable or not reachable at all.
+		 *
+		 * @param townName
+		 * @return The id of the town.
+		 */
+		public int addTown(String townName) {
+			return townSymbolTable.intern(townName);
+		}
+		
+		public Builder addRoute(String startingTownName, String endingTownName, int distance) {
+			return addRoute(townSymbolTable.intern(startingTownName), townSymbolTable.intern(endingTownName), distance);
+		}
+		
+		/**
+		 * @param startingTownId - an id interned in the symbol table of this builder.
+		 * @param endingTownId - an id interned in the symbol table of this builder.
+		 * @param distance - greater than zero, as the {@link RouteParser} requires, the searches rely on it.
+		 * @return This builder.
+		 * @throws IllegalArgumentException when the distance is not greater than zero.
+		 */
+		public Builder addRoute(int startingTownId, int endingTownId, int distance) {
+			if(distance < 1) {
+				throw new IllegalArgumentException("Distance must be greater than zero in route from town '" + townSymbolTable.getTownName(startingTownId)
+						+ "' to town '" + townSymbolTable.getTownName(endingTownId) + "': " + distance);
+			}
+			
+			startingTownIds.add(startingTownId);
+			endingTownIds.add(endingTownId);
+			routeDistances.add(distance);
+			
+			return this;
+		}
+		
+		public int getNumberOfRoutes() {
+			return routeDistances.size();
+		}
+		
+		public CompactRouteNetwork build() {
+			int numberOfTowns = townSymbolTable.size();
+			int numberOfRoutes = routeDistances.size();
+			int[] offsets = new int[numberOfTowns + 1];
+			int[] targets = new int[numberOfRoutes];
+			int[] distances = new int[numberOfRoutes];
+			
+			for(int i = 0; i < numberOfRoutes; i++) {
+				offsets[startingTownIds.get(i) + 1]++;
+			}
+			
+			for(int townId = 0; townId < numberOfTowns; townId++) {
+				offsets[townId + 1] += offsets[townId];
+			}
+			
+			int[] nextRoute = new int[numberOfTowns];
+			System.arraycopy(offsets, 0, nextRoute, 0, numberOfTowns);
+			
+			for(int i = 0; i < numberOfRoutes; i++) {
+				int route = nextRoute[startingTownIds.get(i)]++;
+				targets[route] = endingTownIds.get(i);
+				distances[route] = routeDistances.get(i);
+			}
+			
+			return new CompactRouteNetwork(townSymbolTable.toArray(), offsets, targets, distances);
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package com.ccc.routes.network;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of primitive ints, it avoids boxing every element of the large arrays
+ * (routes, town ids, search stacks) that are built one element at a time.
+ * 
+ * @author gibrancastillo
+ *
+ */
+public final class IntList {
+	private int[] elements;
+	private int size;
+	
+	public IntList() {
+		this(16);
+	}
+	
+	public IntList(int initialCapacity) {
+		elements = new int[Math.max(initialCapacity, 1)];
+	}
+	
+	public void add(int element) {
+		if(size == elements.length) {
+			elements = Arrays.copyOf(elements, size + (size >> 1) + 1);
+		}
+		
+		elements[size++] = element;
+	}
+	
+	public int get(int index) {
+		if(index >= size) {
+			throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+		}
+		
+		return elements[index];
+	}
+	
+	public void set(int index, int element) {
+		if(index >= size) {
+			throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+		}
+		
+		elements[index] = element;
+	}
+	
+	/**
+	 * Removes and returns the last element, the list is used as a stack.
+	 * 
+	 * @return The last element.
+	 */
+	public int removeLast() {
+		if(size == 0) {
+			throw new IndexOutOfBoundsException("The list is empty");
+		}
+		
+		return elements[--size];
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	
+	public void clear() {
+		size = 0;
+	}
+	
+	public int[] toArray() {
+		return Arrays.copyOf(elements, size);
+	}
+	
+	@Override
+	public String toString() {
+		return Arrays.toString(toArray());
+	}
+}
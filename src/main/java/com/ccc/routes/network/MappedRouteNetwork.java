@@ -0,0 +1,176 @@
+package com.ccc.routes.network;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * A read-only trains routes network over the sections of a memory-mapped {@link RouteNetworkSnapshot}. Nothing is
+ * copied onto the heap, every accessor reads the mapped buffers with absolute gets, so a mapped network is safe to
+ * query from many threads at once.
+ *
+ * @author gibrancastillo
+ *
+ */
+public final class MappedRouteNetwork implements RouteNetwork {
+	private final int numberOfTowns;
+	private final int numberOfRoutes;
+	private final int maxRouteDistance;
+	private final IntBuffer offsets;
+	private final IntBuffer targets;
+	private final IntBuffer distances;
+	private final IntBuffer nameOffsets;
+	private final IntBuffer nameSlots;
+	private final CharBuffer names;
+	//Built on the first route lookup, so opening a snapshot stays constant time
+	private RouteIndex routeIndex;
+	private ReverseRouteIndex reverseRouteIndex;
+	
+	MappedRouteNetwork(ByteBuffer buffer, int numberOfTowns, int numberOfRoutes, int maxRouteDistance, int numberOfNameSlots, int numberOfNameChars) {
+		this.numberOfTowns = numberOfTowns;
+		this.numberOfRoutes = numberOfRoutes;
+		this.maxRouteDistance = maxRouteDistance;
+		
+		int position = RouteNetworkSnapshot.HEADER_SIZE;
+		offsets = slice(buffer, position, numberOfTowns + 1).asIntBuffer();
+		position += 4 * (numberOfTowns + 1);
+		targets = slice(buffer, position, numberOfRoutes).asIntBuffer();
+		position += 4 * numberOfRoutes;
+		distances = slice(buffer, position, numberOfRoutes).asIntBuffer();
+		position += 4 * numberOfRoutes;
+		nameOffsets = slice(buffer, position, numberOfTowns + 1).asIntBuffer();
+		position += 4 * (numberOfTowns + 1);
+		nameSlots = slice(buffer, position, numberOfNameSlots).asIntBuffer();
+		position += 4 * numberOfNameSlots;
+		names = buffer.duplicate().position(position).limit(position + 2 * numberOfNameChars).slice().order(ByteOrder.LITTLE_ENDIAN).asCharBuffer();
+	}
+	
+	private static ByteBuffer slice(ByteBuffer buffer, int position, int numberOfInts) {
+		return buffer.duplicate().position(position).limit(position + 4 * numberOfInts).slice().order(ByteOrder.LITTLE_ENDIAN);
+	}
+	
+	@Override
+	public int getNumberOfTowns() {
+		return numberOfTowns;
+	}
+	
+	@Override
+	public int getNumberOfRoutes() {
+		return numberOfRoutes;
+	}
+	
+	@Override
+	public int getTownId(String townName) {
+		return getTownId(townName, 0, townName.length());
+	}
+	
+	@Override
+	public int getTownId(CharSequence characters, int start, int end) {
+		int mask = nameSlots.limit() - 1;
+		int slot = TownSymbolTable.hash(characters, start, end) & mask;
+		
+		while(nameSlots.get(slot) != 0) {
+			int townId = nameSlots.get(slot) - 1;
+			
+			if(matches(townId, characters, start, end)) {
+				return townId;
+			}
+			
+			slot = (slot + 1) & mask;
+		}
+		
+		return TownSymbolTable.NO_TOWN;
+	}
+	
+	@Override
+	public String getTownName(int townId) {
+		if(townId < 0 || townId >= numberOfTowns) {
+			throw new IndexOutOfBoundsException("Unknown town id " + townId);
+		}
+		
+		int offset = nameOffsets.get(townId);
+		char[] townName = new char[nameOffsets.get(townId + 1) - offset];
+		names.get(offset, townName);
+		
+		return new String(townName);
+	}
+	
+	private boolean matches(int townId, CharSequence characters, int start, int end) {
+		int offset = nameOffsets.get(townId);
+		
+		if(nameOffsets.get(townId + 1) - offset != end - start) {
+			return false;
+		}
+		
+		for(int i = start; i < end; i++) {
+			if(names.get(offset + i - start) != characters.charAt(i)) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	@Override
+	public int getFirstRoute(int townId) {
+		return offsets.get(townId);
+	}
+	
+	@Override
+	public int getRoutesEnd(int townId) {
+		return offsets.get(townId + 1);
+	}
+	
+	@Override
+	public int getRouteTarget(int route) {
+		return targets.get(route);
+	}
+	
+	@Override
+	public int getRouteDistance(int route) {
+		return distances.get(route);
+	}
+	
+	/**
+	 * Finds the route from the starting town to the ending town with a probe of the {@link RouteIndex}, the index is
+	 * built on the heap on the first lookup.
+	 */
+	@Override
+	public int findRoute(int startingTownId, int endingTownId) {
+		//A race builds the index twice at worst, its fields are final so a shared index is always fully built
+		RouteIndex index = routeIndex;
+		
+		if(index == null) {
+			index = new RouteIndex(this);
+			routeIndex = index;
+		}
+		
+		return index.findRoute(startingTownId, endingTownId);
+	}
+	
+	@Override
+	public int getMaxRouteDistance() {
+		return maxRouteDistance;
+	}
+	
+	/**
+	 * @return The routes of the network grouped by ending town, the index is built on the heap on the first call.
+	 */
+	@Override
+	public ReverseRouteIndex getReverseRouteIndex() {
+		ReverseRouteIndex index = reverseRouteIndex;
+		
+		if(index == null) {
+			index = new ReverseRouteIndex(this);
+			reverseRouteIndex = index;
+		}
+		
+		return index;
+	}
+	
+	@Override
+	public String toString() {
+		return CompactRouteNetwork.toString(this);
+	}
+}
@@ -0,0 +1,212 @@
+package com.ccc.routes.network;
+
+import java.util.Arrays;
+
+/**
+ * The statistics of a {@link RouteNetwork} that the cost of a query depends on, computed once in a few passes over
+ * its routes.
+ *
+ * The walk growth rate is how many times more trips there are with one more stop in the long run, the spectral
+ * radius of the adjacency matrix. It is estimated by counting the walks of up to {@link #GROWTH_ITERATIONS} stops from
+ * every town at once and taking the mean growth of the second half of the iterations, which smooths out the
+ * oscillations of periodic networks. It is zero when the walks die out, the network then has no cycle any walk can
+ * reach and every enumeration is bounded by the number of routes.
+ *
+ * The towns that cannot reach a cycle are peeled off the network from its dead ends backward, as in Kahn's
+ * topological sort over the reversed routes, which counts on the way the walks (trips of any number of stops) from
+ * each of them. The network has cycles when some town is left over, the walks from the towns left over are infinite.
+ *
+ * @author gibrancastillo
+ *
+ */
+public final class NetworkStatistics {
+	static final int GROWTH_ITERATIONS = 64;
+	
+	private final RouteNetwork network;
+	private final int maxOutDegree;
+	private final int minRouteDistance;
+	private final double meanRouteDistance;
+	private final double walkGrowthRate;
+	private final double[] numbersOfWalks;
+	private final boolean hasCycles;
+	
+	/**
+	 * @param network
+	 */
+	public NetworkStatistics(RouteNetwork network) {
+		this.network = network;
+		int numberOfTowns = network.getNumberOfTowns();
+		int maxOutDegree = 0;
+		
+		for(int townId = 0; townId < numberOfTowns; townId++) {
+			maxOutDegree = Math.max(maxOutDegree, network.getOutDegree(townId));
+		}
+		
+		int minRouteDistance = Integer.MAX_VALUE;
+		long sumRouteDistance = 0;
+		
+		for(int route = 0; route < network.getNumberOfRoutes(); route++) {
+			minRouteDistance = Math.min(minRouteDistance, network.getRouteDistance(route));
+			sumRouteDistance += network.getRouteDistance(route);
+		}
+		
+		this.maxOutDegree = maxOutDegree;
+		this.minRouteDistance = network.getNumberOfRoutes() == 0 ? 0 : minRouteDistance;
+		this.meanRouteDistance = network.getNumberOfRoutes() == 0 ? 0 : (double) sumRouteDistance / network.getNumberOfRoutes();
+		this.numbersOfWalks = countWalks(network);
+		this.hasCycles = Arrays.stream(numbersOfWalks).anyMatch(walks -> walks == Double.POSITIVE_INFINITY);
+		this.walkGrowthRate = hasCycles ? estimateWalkGrowthRate(network) : 0;
+	}
+	
+	/**
+	 * Peels off the towns whose routes all lead to towns already peeled off, starting from the towns without routes,
+	 * so the walks from a town are counted after the walks from every town it has a route to.
+	 */
+	private static double[] countWalks(RouteNetwork network) {
+		int numberOfTowns = network.getNumberOfTowns();
+		ReverseRouteIndex reverseRoutes = network.getReverseRouteIndex();
+		double[] numbersOfWalks = new double[numberOfTowns];
+		int[] remainingRoutes = new int[numberOfTowns];
+		int[] peeledTowns = new int[numberOfTowns];
+		int head = 0;
+		int tail = 0;
+		
+		for(int townId = 0; townId < numberOfTowns; townId++) {
+			remainingRoutes[townId] = network.getOutDegree(townId);
+			
+			if(remainingRoutes[townId] == 0) {
+				peeledTowns[tail++] = townId;
+			}
+		}
+		
+		while(head < tail) {
+			int townId = peeledTowns[head++];
+			//The walk of no stop
+			double walks = 1;
+			
+			for(int route = network.getFirstRoute(townId), end = network.getRoutesEnd(townId); route < end; route++) {
+				walks += numbersOfWalks[network.getRouteTarget(route)];
+			}
+			
+			numbersOfWalks[townId] = walks;
+			
+			for(int reverseRoute = reverseRoutes.getFirstRoute(townId), end = reverseRoutes.getRoutesEnd(townId); reverseRoute < end; reverseRoute++) {
+				int sourceTownId = reverseRoutes.getRouteSource(reverseRoute);
+				
+				if(--remainingRoutes[sourceTownId] == 0) {
+					peeledTowns[tail++] = sourceTownId;
+				}
+			}
+		}
+		
+		for(int townId = 0; townId < numberOfTowns; townId++) {
+			if(remainingRoutes[townId] != 0) {
+				numbersOfWalks[townId] = Double.POSITIVE_INFINITY;
+			}
+		}
+		
+		return numbersOfWalks;
+	}
+	
+	/**
+	 * Counts the walks from every town, walks[t] holds how many walks of the current number of stops start at t. The
+	 * counts are scaled back to a sum of one after every stop and the log of the scale factors is summed instead.
+	 */
+	private static double estimateWalkGrowthRate(RouteNetwork network) {
+		int numberOfTowns = network.getNumberOfTowns();
+		double[] walks = new double[numberOfTowns];
+		double[] nextWalks = new double[numberOfTowns];
+		double logGrowth = 0;
+		Arrays.fill(walks, 1.0 / Math.max(numberOfTowns, 1));
+		
+		for(int iteration = 1; iteration <= GROWTH_ITERATIONS; iteration++) {
+			double sum = 0;
+			
+			for(int townId = 0; townId < numberOfTowns; townId++) {
+				double townWalks = 0;
+				
+				for(int route = network.getFirstRoute(townId), end = network.getRoutesEnd(townId); route < end; route++) {
+					townWalks += walks[network.getRouteTarget(route)];
+				}
+				
+				nextWalks[townId] = townWalks;
+				sum += townWalks;
+			}
+			
+			if(sum == 0) {
+				return 0;
+			}
+			
+			for(int townId = 0; townId < numberOfTowns; townId++) {
+				nextWalks[townId] /= sum;
+			}
+			
+			if(iteration > GROWTH_ITERATIONS / 2) {
+				logGrowth += Math.log(sum);
+			}
+			
+			double[] swap = walks;
+			walks = nextWalks;
+			nextWalks = swap;
+		}
+		
+		return Math.exp(logGrowth / (GROWTH_ITERATIONS / 2));
+	}
+	
+	public RouteNetwork getNetwork() {
+		return network;
+	}
+	
+	public int getNumberOfTowns() {
+		return network.getNumberOfTowns();
+	}
+	
+	public int getNumberOfRoutes() {
+		return network.getNumberOfRoutes();
+	}
+	
+	public int getMaxOutDegree() {
+		return maxOutDegree;
+	}
+	
+	public int getMinRouteDistance() {
+		return minRouteDistance;
+	}
+	
+	public int getMaxRouteDistance() {
+		return network.getMaxRouteDistance();
+	}
+	
+	public double getMeanRouteDistance() {
+		return meanRouteDistance;
+	}
+	
+	/**
+	 * @return How many times more trips there are with one more stop in the long run, zero when the walks die out.
+	 */
+	public double getWalkGrowthRate() {
+		return walkGrowthRate;
+	}
+	
+	/**
+	 * @return true if some walk can go on forever.
+	 */
+	public boolean hasCycles() {
+		return hasCycles;
+	}
+	
+	/**
+	 * @param townId
+	 * @return The number of walks from the town, the walk of no stop included, infinite when it can reach a cycle.
+	 */
+	public double getNumberOfWalks(int townId) {
+		return numbersOfWalks[townId];
+	}
+	
+	@Override
+	public String toString() {
+		return "NetworkStatistics [towns=" + getNumberOfTowns() + ", routes=" + getNumberOfRoutes() + ", maxOutDegree=" + maxOutDegree
+				+ ", minRouteDistance=" + minRouteDistance + ", maxRouteDistance=" + getMaxRouteDistance() + ", meanRouteDistance="
+				+ String.format("%.2f", meanRouteDistance) + ", hasCycles=" + hasCycles + ", walkGrowthRate=" + String.format("%.3f", walkGrowthRate) + "]";
+	}
+}
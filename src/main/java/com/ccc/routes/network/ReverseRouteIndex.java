@@ -0,0 +1,96 @@
+package com.ccc.routes.network;
+
+/**
+ * The routes of a {@link RouteNetwork} grouped by ending town, in compressed sparse row form, so a search can go
+ * backward from a town to the towns with a route into it. The routes arriving at town t are the reverse route
+ * indices from {@link #getFirstRoute(int)} to {@link #getRoutesEnd(int)}, in order of starting town, and reverse
+ * route r is the route {@link #getRoute(int)} of the network.
+ *
+ * Test Input Graph: AB5, BC4, CD8, DC8, DE6, AD5, CE2, EB3, AE7
+ * offsets   = [0, 0, 2, 4, 6, 9]
+ * sources   = [A, E, B, D, A, C, A, C, D]
+ * distances = [5, 3, 4, 8, 5, 8, 7, 2, 6]
+ *
+ * An index is immutable once built and can be read from many threads at once.
+ *
+ * @author gibrancastillo
+ *
+ */
+public final class ReverseRouteIndex {
+	private final int[] offsets;
+	private final int[] sources;
+	private final int[] distances;
+	private final int[] routes;
+	
+	/**
+	 * @param network
+	 */
+	public ReverseRouteIndex(RouteNetwork network) {
+		int numberOfTowns = network.getNumberOfTowns();
+		int numberOfRoutes = network.getNumberOfRoutes();
+		offsets = new int[numberOfTowns + 1];
+		sources = new int[numberOfRoutes];
+		distances = new int[numberOfRoutes];
+		routes = new int[numberOfRoutes];
+		
+		for(int route = 0; route < numberOfRoutes; route++) {
+			offsets[network.getRouteTarget(route) + 1]++;
+		}
+		
+		for(int townId = 0; townId < numberOfTowns; townId++) {
+			offsets[townId + 1] += offsets[townId];
+		}
+		
+		int[] nextReverseRoute = new int[numberOfTowns];
+		System.arraycopy(offsets, 0, nextReverseRoute, 0, numberOfTowns);
+		
+		for(int townId = 0; townId < numberOfTowns; townId++) {
+			for(int route = network.getFirstRoute(townId), end = network.getRoutesEnd(townId); route < end; route++) {
+				int reverseRoute = nextReverseRoute[network.getRouteTarget(route)]++;
+				sources[reverseRoute] = townId;
+				distances[reverseRoute] = network.getRouteDistance(route);
+				routes[reverseRoute] = route;
+			}
+		}
+	}
+	
+	/**
+	 * @param townId
+	 * @return The index of the first reverse route arriving at the town.
+	 */
+	public int getFirstRoute(int townId) {
+		return offsets[townId];
+	}
+	
+	/**
+	 * @param townId
+	 * @return The index after the last reverse route arriving at the town.
+	 */
+	public int getRoutesEnd(int townId) {
+		return offsets[townId + 1];
+	}
+	
+	public int getInDegree(int townId) {
+		return offsets[townId + 1] - offsets[townId];
+	}
+	
+	/**
+	 * @param reverseRoute
+	 * @return The id of the starting town of the route.
+	 */
+	public int getRouteSource(int reverseRoute) {
+		return sources[reverseRoute];
+	}
+	
+	public int getRouteDistance(int reverseRoute) {
+		return distances[reverseRoute];
+	}
+	
+	/**
+	 * @param reverseRoute
+	 * @return The index of the route in the network.
+	 */
+	public int getRoute(int reverseRoute) {
+		return routes[reverseRoute];
+	}
+}
@@ -0,0 +1,28 @@
+package com.ccc.routes.network;
+
+/**
+ * Thrown when a route of the input cannot be parsed, it tells the line and column where the route starts.
+ * 
+ * @author gibrancastillo
+ *
+ */
+public class RouteFormatException extends IllegalArgumentException {
+	private static final long serialVersionUID = 1L;
+	
+	private final int line;
+	private final int column;
+	
+	public RouteFormatException(String message, int line, int column) {
+		super(message + " at line " + line + ", column " + column);
+		this.line = line;
+		this.column = column;
+	}
+	
+	public int getLine() {
+		return line;
+	}
+	
+	public int getColumn() {
+		return column;
+	}
+}
@@ -0,0 +1,93 @@
+package com.ccc.routes.network;
+
+import java.util.Arrays;
+
+/**
+ * An open addressing hash index of the routes of a {@link RouteNetwork} keyed on the (starting town, ending town)
+ * pair, packed into a long. Finding the route between two towns is a constant time probe whatever the out degree
+ * of the starting town. When a pair has more than one route, the first one of the starting town is indexed, the same
+ * route a scan of the routes leaving the town finds.
+ *
+ * An index is immutable once built and can be read from many threads at once.
+ *
+ * @author gibrancastillo
+ *
+ */
+public final class RouteIndex {
+	//A key is never negative, the town ids are not
+	private static final long EMPTY = -1L;
+	
+	private final long[] keys;
+	private final int[] routes;
+	private final int mask;
+	
+	/**
+	 * @param network
+	 */
+	public RouteIndex(RouteNetwork network) {
+		int capacity = 2;
+		
+		//Keep the load factor under one half so the probe sequences stay short
+		while(capacity < 2L * network.getNumberOfRoutes()) {
+			capacity *= 2;
+		}
+		
+		keys = new long[capacity];
+		routes = new int[capacity];
+		mask = capacity - 1;
+		Arrays.fill(keys, EMPTY);
+		
+		for(int townId = 0; townId < network.getNumberOfTowns(); townId++) {
+			for(int route = network.getFirstRoute(townId), end = network.getRoutesEnd(townId); route < end; route++) {
+				long key = key(townId, network.getRouteTarget(route));
+				int slot = slot(key);
+				
+				while(keys[slot] != EMPTY && keys[slot] != key) {
+					slot = (slot + 1) & mask;
+				}
+				
+				if(keys[slot] == EMPTY) {
+					keys[slot] = key;
+					routes[slot] = route;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @param startingTownId
+	 * @param endingTownId
+	 * @return The index of the route, or {@link RouteNetwork#NO_ROUTE} when there is no such route.
+	 */
+	public int findRoute(int startingTownId, int endingTownId) {
+		if(startingTownId < 0 || endingTownId < 0) {
+			return RouteNetwork.NO_ROUTE;
+		}
+		
+		long key = key(startingTownId, endingTownId);
+		int slot = slot(key);
+		
+		while(keys[slot] != EMPTY) {
+			if(keys[slot] == key) {
+				return routes[slot];
+			}
+			
+			slot = (slot + 1) & mask;
+		}
+		
+		return RouteNetwork.NO_ROUTE;
+	}
+	
+	private static long key(int startingTownId, int endingTownId) {
+		return ((long) startingTownId << 32) | endingTownId;
+	}
+	
+	private int slot(long key) {
+		//The finalizer of MurmurHash3, so consecutive town ids spread over the whole table
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		
+		return (int) key & mask;
+	}
+}
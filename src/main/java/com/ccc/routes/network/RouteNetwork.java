@@ -0,0 +1,91 @@
+package com.ccc.routes.network;
+
+/**
+ * A read-only trains routes directed graph in compressed sparse row form, towns are dense int ids from zero and
+ * the routes leaving a town are the contiguous route indices from {@link #getFirstRoute(int)} to
+ * {@link #getRoutesEnd(int)}. The searches only go through these primitive accessors, so the same search runs
+ * over on-heap arrays ({@link CompactRouteNetwork}) or over a memory-mapped snapshot ({@link MappedRouteNetwork}).
+ * 
+ * @author gibrancastillo
+ *
+ */
+public interface RouteNetwork {
+	int NO_ROUTE = -1;
+	
+	int getNumberOfTowns();
+	
+	int getNumberOfRoutes();
+	
+	/**
+	 * @param townName
+	 * @return The id of the town, or {@link TownSymbolTable#NO_TOWN} when the town is not part of the network.
+	 */
+	int getTownId(String townName);
+	
+	/**
+	 * Looks up the town name held in a range of characters, e.g. one town of an itinerary, without copying it.
+	 * 
+	 * @param characters
+	 * @param start - the index of the first character of the town name.
+	 * @param end - the index after the last character of the town name.
+	 * @return The id of the town, or {@link TownSymbolTable#NO_TOWN} when the town is not part of the network.
+	 */
+	default int getTownId(CharSequence characters, int start, int end) {
+		return getTownId(characters.subSequence(start, end).toString());
+	}
+	
+	String getTownName(int townId);
+	
+	/**
+	 * @param townId
+	 * @return The index of the first route leaving the town.
+	 */
+	int getFirstRoute(int townId);
+	
+	/**
+	 * @param townId
+	 * @return The index after the last route leaving the town.
+	 */
+	int getRoutesEnd(int townId);
+	
+	/**
+	 * @param route
+	 * @return The id of the ending town of the route.
+	 */
+	int getRouteTarget(int route);
+	
+	int getRouteDistance(int route);
+	
+	int getMaxRouteDistance();
+	
+	/**
+	 * @return The routes of the network grouped by ending town, to search the network backward. The index is built
+	 * once, on the first call.
+	 */
+	ReverseRouteIndex getReverseRouteIndex();
+	
+	default int getOutDegree(int townId) {
+		return getRoutesEnd(townId) - getFirstRoute(townId);
+	}
+	
+	/**
+	 * Finds the route from the starting town to the ending town by scanning the routes leaving the starting town.
+	 * 
+	 * @param startingTownId
+	 * @param endingTownId
+	 * @return The index of the route, or {@link #NO_ROUTE} when there is no such route.
+	 */
+	default int findRoute(int startingTownId, int endingTownId) {
+		if(startingTownId < 0 || endingTownId < 0) {
+			return NO_ROUTE;
+		}
+		
+		for(int route = getFirstRoute(startingTownId), end = getRoutesEnd(startingTownId); route < end; route++) {
+			if(getRouteTarget(route) == endingTownId) {
+				return route;
+			}
+		}
+		
+		return NO_ROUTE;
+	}
+}
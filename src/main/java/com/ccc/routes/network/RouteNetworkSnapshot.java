@@ -0,0 +1,297 @@
+package com.ccc.routes.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * A versioned binary snapshot of a {@link RouteNetwork}. A snapshot is written once and opened with
+ * {@link FileChannel#map}, the queries then run straight over the mapped file through a {@link MappedRouteNetwork},
+ * so opening a snapshot takes the same time whatever the size of the network and the JVMs of a host that open the
+ * same snapshot share its pages in the page cache.
+ *
+ * The file is little-endian, a 64 byte header followed by int aligned sections:
+ *
+ * <> header - magic 'TRSN', format version, number of towns, number of routes, max route distance, number of
+ *    name slots, number of name characters, reserved, CRC32C of the sections (8 bytes), reserved, CRC32C of the
+ *    first 44 bytes of the header and padding.
+ * <> offsets - number of towns + 1 ints, the first route of every town and the number of routes.
+ * <> targets - one int per route, the ending town of the route.
+ * <> distances - one int per route.
+ * <> name offsets - number of towns + 1 ints, the first character of every town name and the number of characters.
+ * <> name slots - an open addressing table of town id + 1 by {@link TownSymbolTable} hash of the name, zero marks an
+ *    empty slot, the number of slots is a power of two.
+ * <> names - the UTF-16 characters of the town names.
+ *
+ * The header checksum is always verified on open, the checksum of the sections reads the whole file and is only
+ * verified when asked for. A single mapping is limited to 2 GB, larger networks are rejected.
+ *
+ * @author gibrancastillo
+ *
+ */
+public final class RouteNetworkSnapshot {
+	public static final int MAGIC = 0x4E535254; //TRSN in little-endian
+	public static final int VERSION = 1;
+	static final int HEADER_SIZE = 64;
+	private static final int HEADER_CHECKSUM_OFFSET = 44;
+	private static final int BUFFER_SIZE = 1 << 16;
+	
+	private RouteNetworkSnapshot() {
+	}
+	
+	/**
+	 * Writes the network to a snapshot. The snapshot is written next to the path and moved over it once complete,
+	 * so a snapshot being replaced can still be opened.
+	 *
+	 * @param network
+	 * @param path
+	 * @throws IOException
+	 */
+	public static void write(RouteNetwork network, Path path) throws IOException {
+		int numberOfTowns = network.getNumberOfTowns();
+		int numberOfRoutes = network.getNumberOfRoutes();
+		int[] nameOffsets = new int[numberOfTowns + 1];
+		long numberOfNameChars = 0;
+		
+		for(int townId = 0; townId < numberOfTowns; townId++) {
+			nameOffsets[townId] = (int) numberOfNameChars;
+			numberOfNameChars += network.getTownName(townId).length();
+			
+			if(numberOfNameChars > Integer.MAX_VALUE) {
+				throw new IOException("Town names too large for a snapshot");
+			}
+		}
+		
+		nameOffsets[numberOfTowns] = (int) numberOfNameChars;
+		int[] nameSlots = buildNameSlots(network);
+		long size = getSize(numberOfTowns, numberOfRoutes, nameSlots.length, (int) numberOfNameChars);
+		
+		if(size > Integer.MAX_VALUE) {
+			throw new IOException("A network of " + numberOfTowns + " towns and " + numberOfRoutes + " routes is too large for a snapshot");
+		}
+		
+		Path temporaryPath = path.resolveSibling(path.getFileName() + ".tmp");
+		
+		try(FileChannel channel = FileChannel.open(temporaryPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			SectionWriter writer = new SectionWriter(channel);
+			
+			for(int townId = 0; townId < numberOfTowns; townId++) {
+				writer.putInt(network.getFirstRoute(townId));
+			}
+			
+			writer.putInt(numberOfRoutes);
+			
+			for(int route = 0; route < numberOfRoutes; route++) {
+				writer.putInt(network.getRouteTarget(route));
+			}
+			
+			for(int route = 0; route < numberOfRoutes; route++) {
+				writer.putInt(network.getRouteDistance(route));
+			}
+			
+			for(int nameOffset : nameOffsets) {
+				writer.putInt(nameOffset);
+			}
+			
+			for(int nameSlot : nameSlots) {
+				writer.putInt(nameSlot);
+			}
+			
+			for(int townId = 0; townId < numberOfTowns; townId++) {
+				String townName = network.getTownName(townId);
+				
+				for(int i = 0; i < townName.length(); i++) {
+					writer.putChar(townName.charAt(i));
+				}
+			}
+			
+			long checksum = writer.finish();
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(MAGIC).putInt(VERSION).putInt(numberOfTowns).putInt(numberOfRoutes).putInt(network.getMaxRouteDistance())
+					.putInt(nameSlots.length).putInt((int) numberOfNameChars).putInt(0).putLong(checksum).putInt(0);
+			header.putInt(HEADER_CHECKSUM_OFFSET, getHeaderChecksum(header));
+			header.clear();
+			
+			while(header.hasRemaining()) {
+				channel.write(header, header.position());
+			}
+			
+			channel.force(true);
+		}
+		
+		Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+	
+	/**
+	 * @param path
+	 * @return true if the file starts with the magic of a snapshot, false if it is e.g. a text file of routes.
+	 * @throws IOException when the file cannot be read.
+	 */
+	public static boolean isSnapshot(Path path) throws IOException {
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			ByteBuffer magic = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+			channel.read(magic, 0);
+			
+			return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+		}
+	}
+	
+	/**
+	 * Opens a snapshot without verifying the checksum of its sections.
+	 *
+	 * @param path
+	 * @return The network mapped from the snapshot.
+	 * @throws IOException when the file cannot be read or is not a valid snapshot.
+	 */
+	public static MappedRouteNetwork open(Path path) throws IOException {
+		return open(path, false);
+	}
+	
+	/**
+	 * @param path
+	 * @param isVerifyingChecksum - whether to read the whole snapshot to verify the checksum of its sections.
+	 * @return The network mapped from the snapshot.
+	 * @throws IOException when the file cannot be read or is not a valid snapshot.
+	 */
+	public static MappedRouteNetwork open(Path path, boolean isVerifyingChecksum) throws IOException {
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			
+			if(size < HEADER_SIZE) {
+				throw new IOException("Not a route network snapshot: " + path);
+			} else if(size > Integer.MAX_VALUE) {
+				throw new IOException("Snapshots larger than 2 GB cannot be mapped: " + path);
+			}
+			
+			//The mapping stays valid after the channel is closed
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			
+			if(buffer.getInt(0) != MAGIC) {
+				throw new IOException("Not a route network snapshot: " + path);
+			} else if(buffer.getInt(4) != VERSION) {
+				throw new IOException("Unsupported route network snapshot version " + buffer.getInt(4) + ": " + path);
+			} else if(buffer.getInt(HEADER_CHECKSUM_OFFSET) != getHeaderChecksum(buffer)) {
+				throw new IOException("Corrupt route network snapshot header: " + path);
+			}
+			
+			int numberOfTowns = buffer.getInt(8);
+			int numberOfRoutes = buffer.getInt(12);
+			int numberOfNameSlots = buffer.getInt(20);
+			int numberOfNameChars = buffer.getInt(24);
+			
+			if(numberOfTowns < 0 || numberOfRoutes < 0 || numberOfNameSlots < 0 || numberOfNameChars < 0
+					|| getSize(numberOfTowns, numberOfRoutes, numberOfNameSlots, numberOfNameChars) != size) {
+				throw new IOException("Truncated route network snapshot: " + path);
+			}
+			
+			if(isVerifyingChecksum) {
+				CRC32C crc = new CRC32C();
+				crc.update(buffer.duplicate().position(HEADER_SIZE));
+				
+				if(crc.getValue() != buffer.getLong(32)) {
+					throw new IOException("Corrupt route network snapshot: " + path);
+				}
+			}
+			
+			return new MappedRouteNetwork(buffer, numberOfTowns, numberOfRoutes, buffer.getInt(16), numberOfNameSlots, numberOfNameChars);
+		}
+	}
+	
+	/**
+	 * @return The size in bytes of a snapshot.
+	 */
+	static long getSize(int numberOfTowns, int numberOfRoutes, int numberOfNameSlots, int numberOfNameChars) {
+		return HEADER_SIZE + 4L * (2L * numberOfTowns + 2 + 2L * numberOfRoutes + numberOfNameSlots) + 2L * numberOfNameChars;
+	}
+	
+	/**
+	 * Builds the name table with a load factor of at most one half, so a lookup of a missing name ends on an empty slot.
+	 */
+	private static int[] buildNameSlots(RouteNetwork network) {
+		int numberOfSlots = 2;
+		
+		while(numberOfSlots < 2 * network.getNumberOfTowns()) {
+			numberOfSlots *= 2;
+		}
+		
+		int[] nameSlots = new int[numberOfSlots];
+		int mask = numberOfSlots - 1;
+		
+		for(int townId = 0; townId < network.getNumberOfTowns(); townId++) {
+			int slot = TownSymbolTable.hash(network.getTownName(townId)) & mask;
+			
+			while(nameSlots[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			
+			nameSlots[slot] = townId + 1;
+		}
+		
+		return nameSlots;
+	}
+	
+	private static int getHeaderChecksum(ByteBuffer header) {
+		CRC32C crc = new CRC32C();
+		crc.update(header.duplicate().position(0).limit(HEADER_CHECKSUM_OFFSET));
+		
+		return (int) crc.getValue();
+	}
+	
+	/**
+	 * Writes the sections after the header through one reusable buffer and computes their checksum on the way.
+	 */
+	private static final class SectionWriter {
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		private final CRC32C crc = new CRC32C();
+		private long position = HEADER_SIZE;
+		
+		SectionWriter(FileChannel channel) {
+			this.channel = channel;
+		}
+		
+		void putInt(int value) throws IOException {
+			if(buffer.remaining() < Integer.BYTES) {
+				flush();
+			}
+			
+			buffer.putInt(value);
+		}
+		
+		void putChar(char value) throws IOException {
+			if(buffer.remaining() < Character.BYTES) {
+				flush();
+			}
+			
+			buffer.putChar(value);
+		}
+		
+		/**
+		 * @return The checksum of the sections.
+		 */
+		long finish() throws IOException {
+			flush();
+			
+			return crc.getValue();
+		}
+		
+		private void flush() throws IOException {
+			buffer.flip();
+			crc.update(buffer.duplicate());
+			
+			while(buffer.hasRemaining()) {
+				position += channel.write(buffer, position);
+			}
+			
+			buffer.clear();
+		}
+	}
+}
@@ -0,0 +1,281 @@
+package com.ccc.routes.network;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A streaming parser of trains routes. Routes are separated by commas and/or whitespace (including new lines) and
+ * come in two formats that can be mixed:
+ *
+ * <> AB5 - the legacy format, two single-letter towns followed by the distance.
+ * <> KGX-YRK:188 - the delimited format for multi-character town names, the starting town, a dash, the ending
+ *    town, a colon and the distance. Town names cannot contain commas, whitespace, dashes or colons.
+ *
+ * The input is read one character at a time into a reusable token buffer, town names are interned straight from
+ * that buffer into a shared {@link TownSymbolTable} and distances are accumulated digit by digit, so no regex,
+ * substring or intermediate list is created no matter how large the input is. A malformed route is reported with a
+ * {@link RouteFormatException} that tells its line and column.
+ *
+ * A parser keeps the state of the input it is reading and must not be shared between threads.
+ *
+ * @author gibrancastillo
+ *
+ */
+public final class RouteParser {
+	private static final int BUFFER_SIZE = 8192;
+	
+	private final TownSymbolTable townSymbolTable;
+	private char[] token = new char[32];
+	private int tokenLength;
+	private int tokenLine;
+	private int tokenColumn;
+	private int line;
+	private int column;
+	private boolean isExpectingRoute;
+	private int numberOfRoutes;
+	private RouteSink sink;
+	
+	public RouteParser() {
+		this(new TownSymbolTable());
+	}
+	
+	/**
+	 * @param townSymbolTable - the symbol table the town names are interned into, the ids given to the sink are its ids.
+	 */
+	public RouteParser(TownSymbolTable townSymbolTable) {
+		this.townSymbolTable = townSymbolTable;
+	}
+	
+	public TownSymbolTable getTownSymbolTable() {
+		return townSymbolTable;
+	}
+	
+	/**
+	 * @param input - AB5, BC4, CD8, DC8, DE6, AD5, CE2, EB3, AE7
+	 * @param sink
+	 * @return The number of routes read.
+	 */
+	public int parse(CharSequence input, RouteSink sink) {
+		start(sink);
+		
+		for(int i = 0, length = input.length(); i < length; i++) {
+			accept(input.charAt(i));
+		}
+		
+		return finish();
+	}
+	
+	/**
+	 * @param reader - the routes are read until the end of the reader, the reader is not closed.
+	 * @param sink
+	 * @return The number of routes read.
+	 * @throws IOException
+	 */
+	public int parse(Reader reader, RouteSink sink) throws IOException {
+		char[] buffer = new char[BUFFER_SIZE];
+		int read;
+		start(sink);
+		
+		while((read = reader.read(buffer)) != -1) {
+			for(int i = 0; i < read; i++) {
+				accept(buffer[i]);
+			}
+		}
+		
+		return finish();
+	}
+	
+	/**
+	 * @param inputStream - UTF-8 encoded routes, read until the end of the stream, the stream is not closed.
+	 * @param sink
+	 * @return The number of routes read.
+	 * @throws IOException
+	 */
+	public int parse(InputStream inputStream, RouteSink sink) throws IOException {
+		return parse(new InputStreamReader(inputStream, StandardCharsets.UTF_8), sink);
+	}
+	
+	/**
+	 * Parses the routes straight into a compact network, without building a map of towns in between.
+	 *
+	 * @param input
+	 * @return The network of the routes.
+	 */
+	public static CompactRouteNetwork parseNetwork(CharSequence input) {
+		CompactRouteNetwork.Builder builder = new CompactRouteNetwork.Builder();
+		new RouteParser(builder.getTownSymbolTable()).parse(input, builder::addRoute);
+		
+		return builder.build();
+	}
+	
+	/**
+	 * Parses the routes straight into a compact network, without building a map of towns in between.
+	 *
+	 * @param reader
+	 * @return The network of the routes.
+	 * @throws IOException
+	 */
+	public static CompactRouteNetwork parseNetwork(Reader reader) throws IOException {
+		CompactRouteNetwork.Builder builder = new CompactRouteNetwork.Builder();
+		new RouteParser(builder.getTownSymbolTable()).parse(reader, builder::addRoute);
+		
+		return builder.build();
+	}
+	
+	private void start(RouteSink sink) {
+		this.sink = sink;
+		line = 1;
+		column = 0;
+		tokenLength = 0;
+		numberOfRoutes = 0;
+		isExpectingRoute = false;
+	}
+	
+	private int finish() {
+		endToken();
+		sink = null;
+		
+		return numberOfRoutes;
+	}
+	
+	private void accept(char character) {
+		column++;
+		
+		if(character == ',') {
+			if(tokenLength == 0 && (isExpectingRoute || numberOfRoutes == 0)) {
+				throw new RouteFormatException("Empty route before ','", line, column);
+			}
+			
+			endToken();
+			isExpectingRoute = true;
+		} else if(Character.isWhitespace(character)) {
+			endToken();
+			
+			if(character == '\n') {
+				line++;
+				column = 0;
+			}
+		} else {
+			if(tokenLength == 0) {
+				tokenLine = line;
+				tokenColumn = column;
+			}
+			
+			if(tokenLength == token.length) {
+				token = Arrays.copyOf(token, tokenLength * 2);
+			}
+			
+			token[tokenLength++] = character;
+		}
+	}
+	
+	private void endToken() {
+		if(tokenLength > 0) {
+			parseToken();
+			tokenLength = 0;
+			isExpectingRoute = false;
+			numberOfRoutes++;
+		}
+	}
+	
+	private void parseToken() {
+		int dash = indexOf('-', 0, tokenLength);
+		
+		if(dash < 0) {
+			parseLegacyToken();
+			return;
+		}
+		
+		if(dash == 0) {
+			throw error("Missing starting town in route", 0);
+		}
+		
+		int colon = indexOf(':', dash + 1, tokenLength);
+		
+		if(colon < 0) {
+			throw error("Missing ':' before the distance of route", tokenLength - 1);
+		} else if(colon == dash + 1) {
+			throw error("Missing ending town in route", colon);
+		} else if(indexOf(':', 0, dash) >= 0) {
+			throw error("Unexpected ':' in starting town of route", indexOf(':', 0, dash));
+		} else if(indexOf('-', dash + 1, colon) >= 0) {
+			throw error("Unexpected '-' in ending town of route", indexOf('-', dash + 1, colon));
+		}
+		
+		addRoute(0, dash, dash + 1, colon - dash - 1, colon + 1);
+	}
+	
+	private void parseLegacyToken() {
+		for(int i = 0; i < 2; i++) {
+			if(i == tokenLength || !Character.isLetter(token[i])) {
+				throw error("Expected two single-letter towns (like AB5) or a delimited route (like KGX-YRK:188) in route", Math.min(i, tokenLength - 1));
+			}
+		}
+		
+		addRoute(0, 1, 1, 1, 2);
+	}
+	
+	private void addRoute(int startingTownOffset, int startingTownLength, int endingTownOffset, int endingTownLength, int distanceOffset) {
+		int distance = parseDistance(distanceOffset);
+		
+		if(startingTownLength == endingTownLength
+				&& Arrays.equals(token, startingTownOffset, startingTownOffset + startingTownLength, token, endingTownOffset, endingTownOffset + endingTownLength)) {
+			throw error("Starting and ending town are the same town in route", 0);
+		}
+		
+		int startingTownId = townSymbolTable.intern(token, startingTownOffset, startingTownLength);
+		int endingTownId = townSymbolTable.intern(token, endingTownOffset, endingTownLength);
+		sink.addRoute(startingTownId, endingTownId, distance);
+	}
+	
+	private int parseDistance(int offset) {
+		if(offset == tokenLength) {
+			throw error("Missing distance in route", tokenLength - 1);
+		}
+		
+		long distance = 0;
+		
+		for(int i = offset; i < tokenLength; i++) {
+			char character = token[i];
+			
+			if(character < '0' || character > '9') {
+				throw error("Unexpected character '" + character + "' in distance of route", i);
+			}
+			
+			distance = distance * 10 + (character - '0');
+			
+			if(distance > Integer.MAX_VALUE) {
+				throw error("Distance too large in route", offset);
+			}
+		}
+		
+		if(distance == 0) {
+			throw error("Distance must be greater than zero in route", offset);
+		}
+		
+		return (int) distance;
+	}
+	
+	private int indexOf(char character, int fromIndex, int toIndex) {
+		for(int i = fromIndex; i < toIndex; i++) {
+			if(token[i] == character) {
+				return i;
+			}
+		}
+		
+		return -1;
+	}
+	
+	/**
+	 * @param message
+	 * @param index - the index within the route of the character in error.
+	 * @return An exception with the route and the line and column of the character in error.
+	 */
+	private RouteFormatException error(String message, int index) {
+		return new RouteFormatException(message + " '" + new String(token, 0, tokenLength) + "'", tokenLine, tokenColumn + index);
+	}
+}
@@ -0,0 +1,13 @@
+package com.ccc.routes.network;
+
+/**
+ * Receives the routes read by a {@link RouteParser}, one call per route, with the town ids
+ * interned in the symbol table of the parser.
+ * 
+ * @author gibrancastillo
+ *
+ */
+@FunctionalInterface
+public interface RouteSink {
+	void addRoute(int startingTownId, int endingTownId, int distance);
+}
@@ -0,0 +1,261 @@
+package com.ccc.routes.network;
+
+import java.util.Arrays;
+
+/**
+ * A symbol table that interns town names into dense int ids, numbered from zero in the order the towns
+ * are first seen. Every town name is stored once no matter how many routes refer to it.
+ *
+ * The ids are kept in an open addressing hash table keyed by the characters of the name, so a parser can intern
+ * a name straight from its character buffer and a String is only allocated the first time a town is seen.
+ *
+ * @author gibrancastillo
+ *
+ */
+public final class TownSymbolTable {
+	public static final int NO_TOWN = -1;
+	
+	private String[] townNames = new String[16];
+	private int[] townHashes = new int[16];
+	//Holds town id + 1, zero marks an empty slot
+	private int[] slots = new int[32];
+	private int size;
+	
+	/**
+	 * @param townName
+	 * @return The id of the town, a new id is assigned the first time the town name is seen.
+	 */
+	public int intern(String townName) {
+		int hash = hash(townName);
+		int slot = findSlot(townName, hash);
+		
+		return slots[slot] != 0 ? slots[slot] - 1 : add(slot, townName, hash);
+	}
+	
+	/**
+	 * Interns the town name held in a range of a character buffer without copying it unless the town is new.
+	 *
+	 * @param characters
+	 * @param offset
+	 * @param length
+	 * @return The id of the town, a new id is assigned the first time the town name is seen.
+	 */
+	public int intern(char[] characters, int offset, int length) {
+		int hash = hash(characters, offset, length);
+		int slot = findSlot(characters, offset, length, hash);
+		
+		return slots[slot] != 0 ? slots[slot] - 1 : add(slot, new String(characters, offset, length), hash);
+	}
+	
+	/**
+	 * @param townName
+	 * @return The id of the town, or {@link #NO_TOWN} when the town name was never interned.
+	 */
+	public int getTownId(String townName) {
+		int slot = findSlot(townName, hash(townName));
+		
+		return slots[slot] - 1;
+	}
+	
+	/**
+	 * Looks up the town name held in a range of a character buffer without copying it.
+	 *
+	 * @param characters
+	 * @param offset
+	 * @param length
+	 * @return The id of the town, or {@link #NO_TOWN} when the town name was never interned.
+	 */
+	public int getTownId(char[] characters, int offset, int length) {
+		int slot = findSlot(characters, offset, length, hash(characters, offset, length));
+		
+		return slots[slot] - 1;
+	}
+	
+	/**
+	 * Looks up the town name held in a range of characters without copying it.
+	 *
+	 * @param characters
+	 * @param start
+	 * @param end
+	 * @return The id of the town, or {@link #NO_TOWN} when the town name was never interned.
+	 */
+	public int getTownId(CharSequence characters, int start, int end) {
+		int slot = findSlot(characters, start, end, hash(characters, start, end));
+		
+		return slots[slot] - 1;
+	}
+	
+	public String getTownName(int townId) {
+		if(townId < 0 || townId >= size) {
+			throw new IndexOutOfBoundsException("Unknown town id " + townId);
+		}
+		
+		return townNames[townId];
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * @return A copy of the town names indexed by town id.
+	 */
+	public String[] toArray() {
+		return Arrays.copyOf(townNames, size);
+	}
+	
+	private int findSlot(String townName, int hash) {
+		int mask = slots.length - 1;
+		int slot = hash & mask;
+		
+		while(slots[slot] != 0) {
+			int townId = slots[slot] - 1;
+			
+			if(townHashes[townId] == hash && townNames[townId].equals(townName)) {
+				break;
+			}
+			
+			slot = (slot + 1) & mask;
+		}
+		
+		return slot;
+	}
+	
+	private int findSlot(char[] characters, int offset, int length, int hash) {
+		int mask = slots.length - 1;
+		int slot = hash & mask;
+		
+		while(slots[slot] != 0) {
+			int townId = slots[slot] - 1;
+			
+			if(townHashes[townId] == hash && matches(townNames[townId], characters, offset, length)) {
+				break;
+			}
+			
+			slot = (slot + 1) & mask;
+		}
+		
+		return slot;
+	}
+	
+	private int findSlot(CharSequence characters, int start, int end, int hash) {
+		int mask = slots.length - 1;
+		int slot = hash & mask;
+		
+		while(slots[slot] != 0) {
+			int townId = slots[slot] - 1;
+			
+			if(townHashes[townId] == hash && matches(townNames[townId], characters, start, end)) {
+				break;
+			}
+			
+			slot = (slot + 1) & mask;
+		}
+		
+		return slot;
+	}
+	
+	private int add(int slot, String townName, int hash) {
+		if(size == townNames.length) {
+			townNames = Arrays.copyOf(townNames, size * 2);
+			townHashes = Arrays.copyOf(townHashes, size * 2);
+		}
+		
+		int townId = size++;
+		townNames[townId] = townName;
+		townHashes[townId] = hash;
+		slots[slot] = townId + 1;
+		
+		//Keep the load factor under one half so the probe sequences stay short
+		if(size * 2 > slots.length) {
+			rehash();
+		}
+		
+		return townId;
+	}
+	
+	private void rehash() {
+		slots = new int[slots.length * 2];
+		int mask = slots.length - 1;
+		
+		for(int townId = 0; townId < size; townId++) {
+			int slot = townHashes[townId] & mask;
+			
+			while(slots[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			
+			slots[slot] = townId + 1;
+		}
+	}
+	
+	private static boolean matches(String townName, char[] characters, int offset, int length) {
+		if(townName.length() != length) {
+			return false;
+		}
+		
+		for(int i = 0; i < length; i++) {
+			if(townName.charAt(i) != characters[offset + i]) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	private static boolean matches(String townName, CharSequence characters, int start, int end) {
+		if(townName.length() != end - start) {
+			return false;
+		}
+		
+		for(int i = start; i < end; i++) {
+			if(townName.charAt(i - start) != characters.charAt(i)) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * The hash of a town name, it is also the hash of the town name tables written in route network snapshots.
+	 *
+	 * @param townName
+	 * @return The hash of the town name.
+	 */
+	static int hash(CharSequence townName) {
+		return hash(townName, 0, townName.length());
+	}
+	
+	/**
+	 * @param characters
+	 * @param start
+	 * @param end
+	 * @return The hash of the town name held in the range of characters, the same as {@link #hash(CharSequence)}.
+	 */
+	static int hash(CharSequence characters, int start, int end) {
+		int hash = 0;
+		
+		for(int i = start; i < end; i++) {
+			hash = 31 * hash + characters.charAt(i);
+		}
+		
+		return spread(hash);
+	}
+	
+	private static int hash(char[] characters, int offset, int length) {
+		int hash = 0;
+		
+		for(int i = offset; i < offset + length; i++) {
+			hash = 31 * hash + characters[i];
+		}
+		
+		return spread(hash);
+	}
+	
+	private static int spread(int hash) {
+		hash *= 0x45d9f3b;
+		
+		return hash ^ (hash >>> 16);
+	}
+}
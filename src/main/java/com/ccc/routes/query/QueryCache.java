@@ -0,0 +1,207 @@
+package com.ccc.routes.query;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * A size bounded cache of query results with least recently used eviction. The first request for a key computes
+ * the result on its own thread while the concurrent requests for the same key wait for that one computation, a
+ * result is never computed twice at once. A computation that fails is not cached, its exception is thrown to every
+ * request waiting for it.
+ * 
+ * The keys carry the version of the graph (see {@link QueryKey}), so a result of an older graph is never returned,
+ * and {@link #invalidate()} drops them all at once when the graph changes.
+ * 
+ * @author gibrancastillo
+ *
+ */
+public final class QueryCache {
+	public static final int DEFAULT_MAXIMUM_SIZE = 10_000;
+	
+	private final Map<QueryKey, CompletableFuture<Object>> entries = new LinkedHashMap<>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<QueryKey, CompletableFuture<Object>> eldest) {
+			if(size() > maximumSize) {
+				evictionCount.increment();
+				return true;
+			}
+			
+			return false;
+		}
+	};
+	private volatile int maximumSize;
+	private final LongAdder hitCount = new LongAdder();
+	private final LongAdder missCount = new LongAdder();
+	private final LongAdder evictionCount = new LongAdder();
+	
+	public QueryCache() {
+		this(DEFAULT_MAXIMUM_SIZE);
+	}
+	
+	/**
+	 * @param maximumSize - the maximum number of results, zero disables the cache.
+	 */
+	public QueryCache(int maximumSize) {
+		setMaximumSize(maximumSize);
+	}
+	
+	/**
+	 * Returns the cached result of the query, computing it on the calling thread when it is not cached or waiting
+	 * for it when another thread is already computing it.
+	 * 
+	 * @param key
+	 * @param query - computes the result, it must not return null.
+	 * @return The result of the query.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T get(QueryKey key, Supplier<T> query) {
+		if(maximumSize == 0) {
+			missCount.increment();
+			return query.get();
+		}
+		
+		CompletableFuture<Object> future;
+		boolean isComputing = false;
+		
+		synchronized(entries) {
+			future = entries.get(key);
+			
+			if(future == null) {
+				future = new CompletableFuture<>();
+				entries.put(key, future);
+				isComputing = true;
+			}
+		}
+		
+		if(isComputing) {
+			missCount.increment();
+			
+			try {
+				T result = query.get();
+				future.complete(result);
+				return result;
+			} catch(RuntimeException | Error e) {
+				synchronized(entries) {
+					entries.remove(key, future);
+				}
+				
+				future.completeExceptionally(e);
+				throw e;
+			}
+		}
+		
+		hitCount.increment();
+		
+		try {
+			return (T) future.join();
+		} catch(CompletionException e) {
+			if(e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			} else if(e.getCause() instanceof Error) {
+				throw (Error) e.getCause();
+			}
+			
+			throw e;
+		}
+	}
+	
+	/**
+	 * Returns the cached result of the query, computing it on the calling thread when it is not cached. Unlike
+	 * {@link #get(QueryKey, Supplier)} the computation is not shared: it does not wait for a computation of the key in
+	 * flight and no other request waits for it, so a computation that may give up early, e.g. under a search budget,
+	 * never fails the other requests. Its result is cached when it succeeds and no other result was cached meanwhile.
+	 * 
+	 * @param key
+	 * @param query - computes the result, it must not return null.
+	 * @return The result of the query.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T getUnshared(QueryKey key, Supplier<T> query) {
+		if(maximumSize > 0) {
+			CompletableFuture<Object> future;
+			
+			synchronized(entries) {
+				future = entries.get(key);
+			}
+			
+			if(future != null && future.isDone() && !future.isCompletedExceptionally()) {
+				hitCount.increment();
+				return (T) future.join();
+			}
+		}
+		
+		missCount.increment();
+		T result = query.get();
+		
+		if(maximumSize > 0) {
+			synchronized(entries) {
+				entries.putIfAbsent(key, CompletableFuture.completedFuture(result));
+			}
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Drops every cached result, the computations in flight complete for the requests waiting for them only.
+	 */
+	public void invalidate() {
+		synchronized(entries) {
+			entries.clear();
+		}
+	}
+	
+	/**
+	 * @param maximumSize - the maximum number of results, zero disables the cache.
+	 */
+	public void setMaximumSize(int maximumSize) {
+		if(maximumSize < 0) {
+			throw new IllegalArgumentException("The maximum size must not be negative: " + maximumSize);
+		}
+		
+		synchronized(entries) {
+			this.maximumSize = maximumSize;
+			Iterator<CompletableFuture<Object>> iterator = entries.values().iterator();
+			
+			//Least recently used first
+			while(entries.size() > maximumSize) {
+				iterator.next();
+				iterator.remove();
+				evictionCount.increment();
+			}
+		}
+	}
+	
+	public int getMaximumSize() {
+		return maximumSize;
+	}
+	
+	public int size() {
+		synchronized(entries) {
+			return entries.size();
+		}
+	}
+	
+	public long getHitCount() {
+		return hitCount.sum();
+	}
+	
+	public long getMissCount() {
+		return missCount.sum();
+	}
+	
+	public long getEvictionCount() {
+		return evictionCount.sum();
+	}
+	
+	@Override
+	public String toString() {
+		return "QueryCache [size=" + size() + ", maximumSize=" + maximumSize + ", hits=" + getHitCount() + ", misses=" + getMissCount()
+				+ ", evictions=" + getEvictionCount() + "]";
+	}
+}
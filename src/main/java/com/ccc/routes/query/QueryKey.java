@@ -0,0 +1,59 @@
+package com.ccc.routes.query;
+
+import java.util.Arrays;
+
+/**
+ * The key of a cached query result, the query, the version of the graph it ran over and its parameters. The
+ * parameters must be immutable values (town names, numbers, lists of town names) so the key cannot change while
+ * it is in the cache.
+ * 
+ * @author gibrancastillo
+ *
+ */
+public final class QueryKey {
+	private final String query;
+	private final long graphVersion;
+	private final Object[] parameters;
+	private final int hashCode;
+	
+	/**
+	 * @param query - the name of the query, e.g. shortestRouteDistance.
+	 * @param graphVersion - the version of the graph the query runs over.
+	 * @param parameters
+	 */
+	public QueryKey(String query, long graphVersion, Object... parameters) {
+		this.query = query;
+		this.graphVersion = graphVersion;
+		this.parameters = parameters;
+		this.hashCode = 31 * (31 * query.hashCode() + Long.hashCode(graphVersion)) + Arrays.hashCode(parameters);
+	}
+	
+	public String getQuery() {
+		return query;
+	}
+	
+	public long getGraphVersion() {
+		return graphVersion;
+	}
+	
+	@Override
+	public boolean equals(Object obj) {
+		if(!(obj instanceof QueryKey)) {
+			return false;
+		}
+		
+		QueryKey other = (QueryKey) obj;
+		
+		return hashCode == other.hashCode && graphVersion == other.graphVersion && query.equals(other.query) && Arrays.equals(parameters, other.parameters);
+	}
+	
+	@Override
+	public int hashCode() {
+		return hashCode;
+	}
+	
+	@Override
+	public String toString() {
+		return query + Arrays.toString(parameters) + "@" + graphVersion;
+	}
+}
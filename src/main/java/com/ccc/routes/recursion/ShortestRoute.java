@@ -0,0 +1,49 @@
+package com.ccc.routes.recursion;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A class that represents the result of a shortest route search, the towns
+ * visited in traveling order and the total distance of the route.
+ *
+ * When no route exists the list of towns is empty and the distance is {@link #NO_ROUTE}.
+ *
+ * @author gibrancastillo
+ *
+ */
+public class ShortestRoute {
+	public static final int NO_ROUTE = -1;
+	
+	private final List<Town<String>> towns;
+	private final int distance;
+	
+	public ShortestRoute(List<Town<String>> towns, int distance) {
+		this.towns = Collections.unmodifiableList(towns);
+		this.distance = distance;
+	}
+	
+	/**
+	 * @return A shortest route result for when there is no route between two towns.
+	 */
+	public static ShortestRoute noRoute() {
+		return new ShortestRoute(Collections.emptyList(), NO_ROUTE);
+	}
+	
+	public boolean exists() {
+		return distance != NO_ROUTE;
+	}
+	
+	public List<Town<String>> getTowns() {
+		return towns;
+	}
+	
+	public int getDistance() {
+		return distance;
+	}
+	
+	@Override
+	public String toString() {
+		return exists() ? "towns: " + towns + " distance: " + distance : "NO SUCH ROUTE";
+	}
+}
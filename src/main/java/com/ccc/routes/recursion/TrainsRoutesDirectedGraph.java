@@ -1,26 +1,107 @@
 package com.ccc.routes.recursion;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.math.BigInteger;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Deque;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import com.ccc.routes.metrics.QueryMetricsRegistry;
+import com.ccc.routes.network.CompactRouteNetwork;
+import com.ccc.routes.network.NetworkStatistics;
+import com.ccc.routes.network.RouteFormatException;
+import com.ccc.routes.network.RouteNetwork;
+import com.ccc.routes.network.RouteNetworkSnapshot;
+import com.ccc.routes.network.RouteParser;
+import com.ccc.routes.network.TownSymbolTable;
+import com.ccc.routes.query.QueryCache;
+import com.ccc.routes.query.QueryKey;
+import com.ccc.routes.search.AllPairsShortestDistances;
+import com.ccc.routes.search.BidirectionalDijkstraSearch;
+import com.ccc.routes.search.ContractionHierarchy;
+import com.ccc.routes.search.DijkstraSearch;
+import com.ccc.routes.search.DistanceBudgetCounter;
+import com.ccc.routes.search.KShortestPaths;
+import com.ccc.routes.search.LandmarkDistances;
+import com.ccc.routes.search.LandmarkSearch;
+import com.ccc.routes.search.ParallelRouteEnumerator;
+import com.ccc.routes.search.QueryPlan;
+import com.ccc.routes.search.QueryPlanner;
+import com.ccc.routes.search.RecursiveRouteSearch;
+import com.ccc.routes.search.RouteCounts;
+import com.ccc.routes.search.RouteSpliterator;
+import com.ccc.routes.search.SearchBudget;
+import com.ccc.routes.search.TownPath;
+import com.ccc.routes.search.TripCounter;
+
 /**
  * The trains routes directed graph class uses a Map with Towns as a key and a list of Route, those Route have 
  * target Town with distance weight. The main strategy to resolve each problem was using recursion algorithms.
  * 
+ * The routes are compiled into an immutable {@link CompactRouteNetwork}, towns interned to int ids and routes stored
+ * in compressed sparse row arrays, and every query runs over those arrays. The map is only built from the network
+ * when it is asked for, {@link #createTrainsRoutes(String)} parses the routes straight into the next network.
+ * 
+ * A graph can also be saved to a binary {@link RouteNetworkSnapshot} and opened from it, the queries then run
+ * straight over the memory-mapped snapshot.
+ * 
+ * The trains routes are versioned: every change builds the next {@link TrainsRoutesSnapshot}, network and planner,
+ * beside the current one and publishes it through an atomic reference. The queries pick up the current version
+ * without locking, once per query, and never see a half-built version, the writers build the next version one at a
+ * time, its network and query planner included. The towns and routes of a version cannot be changed. A change
+ * copies the network of the current version, so adding routes costs as much as the routes already there, and
+ * {@link #reloadTrainsRoutes(Path)} replaces the whole network from a file while the queries keep running.
+ * 
+ * The results of the queries are kept in a bounded {@link QueryCache}, keyed on the query, its parameters and the
+ * version of the trains routes, which changes along with the trains routes. The ByRecursion queries are not cached,
+ * they are there to cross-check the other queries.
+ * 
+ * The shortest route queries are answered from the precomputed shortest distances when there are, otherwise by the
+ * precomputed {@link ContractionHierarchy} when there is one, otherwise by an A* search with the precomputed
+ * {@link LandmarkDistances} when there are, otherwise by Dijkstra's algorithm, from the starting town only or from both
+ * ends at once, see {@link #setBidirectionalSearch(boolean, boolean)}.
+ * 
+ * Every query is measured by a {@link QueryMetricsRegistry}: calls, towns expanded, routes relaxed, peak recursion
+ * depth and a latency histogram by query type, see {@link #getMetrics()}.
+ * 
+ * The counting and enumerating queries can be bounded by a {@link SearchBudget}, a deadline and a number of towns
+ * expanded checked by their search loops, e.g. through the {@link com.ccc.routes.service.AsyncRouteQueries}.
+ * 
  * @author gibrancastillo
  *
  */
 public class TrainsRoutesDirectedGraph {
-	private Map<Town<String>, List<Route>> trainsRoutesMap;
+	private final AtomicReference<TrainsRoutesSnapshot> snapshot;
+	private final Object writeLock = new Object();
+	private volatile AllPairsShortestDistances shortestDistances;
+	private volatile LandmarkDistances landmarkDistances;
+	private volatile ContractionHierarchy contractionHierarchy;
+	private volatile boolean isValidatingContractionHierarchy;
+	private volatile boolean isBidirectionalSearch;
+	private volatile ForkJoinPool bidirectionalSearchPool;
+	private final QueryCache queryCache = new QueryCache();
+	private final QueryMetricsRegistry metrics = new QueryMetricsRegistry();
+	private volatile ForkJoinPool enumerationPool;
+	private volatile int enumerationSplitDepth = ParallelRouteEnumerator.DEFAULT_SPLIT_DEPTH;
 	private static final String NO_SUCH_ROUTE = "NO SUCH ROUTE";
 	private static final Logger logger = LogManager.getLogger(TrainsRoutesDirectedGraph.class);
 	
@@ -31,45 +112,187 @@ public class TrainsRoutesDirectedGraph {
 	 */
 	public TrainsRoutesDirectedGraph(String input_routes) {
 		//A map contains unique keys
-		trainsRoutesMap = new HashMap<>();
+		snapshot = new AtomicReference<>(new TrainsRoutesSnapshot(0, new LinkedHashMap<>()));
 		createTrainsRoutes(input_routes);
 	}
 	
+	/**
+	 * Constructs a TrainsRoutesDirectedGraph class over an already compiled network, e.g. a memory-mapped
+	 * snapshot opened with {@link RouteNetworkSnapshot#open(Path)}. The network is not copied.
+	 * 
+	 * @param routeNetwork
+	 */
+	public TrainsRoutesDirectedGraph(RouteNetwork routeNetwork) {
+		snapshot = new AtomicReference<>(new TrainsRoutesSnapshot(0, routeNetwork, null));
+	}
+	
 	/**
 	 * Create and build the directed graph
-	 * @param input_routes - TrainsRoutesDirectedGraph
+	 * 
+	 * The routes are read by a streaming {@link RouteParser}, in the legacy format (AB5) or the delimited format for
+	 * multi-character town names (KGX-YRK:188). Every town name is interned, so all the routes from or to a town
+	 * share one Town instance.
+	 * 
+	 * @param input_routes - AB5, BC4, CD8, DC8, DE6, AD5, CE2, EB3, AE7
+	 * @throws RouteFormatException when a route is malformed, with its line and column.
 	 */
 	public void createTrainsRoutes(String input_routes) {
-		Route route = null;
-		int edgeDistance = 0;
-		Town<String> endingTown = null;
-		Town<String> startingTown = null;
-		/*
-		 * Regular Expression [\\s]*,[\\s]*
-		 * Split string into a substring when separated by whitespace follow by any number
-		 * of characters then a comma follow by whitespace follow by any number of characters
-		 * <> \\s splits the string based on whitespace 
-		 * <> '*' wild card or any character
-		 */
-		List<String> routes = Arrays.asList(input_routes.split("[\\s]*,[\\s]*"));
-		
-		for(String str_route : routes) {
-			startingTown = new Town<String>(str_route.substring(0, 1));
-			endingTown = new Town<String>(str_route.substring(1, 2));
-			edgeDistance = Integer.parseInt(str_route.substring(2));
+		synchronized(writeLock) {
+			CompactRouteNetwork.Builder builder = copyRouteNetwork();
+			new RouteParser(builder.getTownSymbolTable()).parse(input_routes, builder::addRoute);
+			CompactRouteNetwork network = builder.build();
+			publish(new TrainsRoutesSnapshot(getNextVersion(), network, null));
+			
+			logger.debug("Trains Routes Directed Graph: " + network);
+		}
+	}
+	
+	/**
+	 * Create and build the directed graph from routes read until the end of the reader.
+	 * 
+	 * @param reader - the reader of the routes, it is not closed.
+	 * @throws IOException
+	 * @throws RouteFormatException when a route is malformed, with its line and column.
+	 */
+	public void createTrainsRoutes(Reader reader) throws IOException {
+		synchronized(writeLock) {
+			CompactRouteNetwork.Builder builder = copyRouteNetwork();
+			new RouteParser(builder.getTownSymbolTable()).parse(reader, builder::addRoute);
+			CompactRouteNetwork network = builder.build();
+			publish(new TrainsRoutesSnapshot(getNextVersion(), network, null));
+			
+			logger.debug("Trains Routes Directed Graph: " + network);
+		}
+	}
+	
+	/**
+	 * Replaces the trains routes with the routes of a file, a binary {@link RouteNetworkSnapshot} or a text file of
+	 * routes. The network and its statistics are built before the new version is published, so the queries keep
+	 * running over the previous version meanwhile and the first queries over the new one do not wait for them.
+	 * 
+	 * @param path
+	 * @throws IOException when the file cannot be read.
+	 * @throws RouteFormatException when a route of a text file is malformed, the trains routes are then left as they were.
+	 */
+	public void reloadTrainsRoutes(Path path) throws IOException {
+		//Built under the write lock, so the changes are published in the order they were asked for
+		synchronized(writeLock) {
+			RouteNetwork network;
 			
-			logger.debug("str_route: " + str_route);
-			logger.debug("Starting Town: " + startingTown.getTownName());
-			logger.debug("Ending Town: " + endingTown.getTownName());
-			logger.debug("edgeDistance: " + edgeDistance + "\n");
+			if(RouteNetworkSnapshot.isSnapshot(path)) {
+				network = RouteNetworkSnapshot.open(path);
+			} else {
+				try(Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+					network = RouteParser.parseNetwork(reader);
+				}
+			}
 			
-			route = new Route(endingTown, edgeDistance);
+			publish(new TrainsRoutesSnapshot(getNextVersion(), network, null));
 			
-			trainsRoutesMap.putIfAbsent(startingTown, new ArrayList<>());
-			trainsRoutesMap.get(startingTown).add(route);
+			logger.debug("Trains routes reloaded from " + path + ": " + network);
 		}
+	}
+	
+	/**
+	 * @return The current version of the trains routes. A version never changes, so the queries that go through it
+	 * see the same trains routes however the graph is changed meanwhile.
+	 */
+	public TrainsRoutesSnapshot getSnapshot() {
+		return snapshot.get();
+	}
+	
+	/**
+	 * @return A builder of the next version holding the towns and routes of the current version, the towns keep their
+	 * ids. The network is copied straight from its arrays, no trains routes map is built. Called with the write lock
+	 * held.
+	 */
+	private CompactRouteNetwork.Builder copyRouteNetwork() {
+		RouteNetwork network = snapshot.get().getRouteNetwork();
+		CompactRouteNetwork.Builder builder = new CompactRouteNetwork.Builder();
 		
-		logger.debug("Trains Routes Directed Graph in a HashMap: \n" + trainsRoutesMap.toString() + "\n");
+		for(int townId = 0; townId < network.getNumberOfTowns(); townId++) {
+			builder.addTown(network.getTownName(townId));
+		}
+		
+		for(int townId = 0; townId < network.getNumberOfTowns(); townId++) {
+			for(int route = network.getFirstRoute(townId); route < network.getRoutesEnd(townId); route++) {
+				builder.addRoute(townId, network.getRouteTarget(route), network.getRouteDistance(route));
+			}
+		}
+		
+		return builder;
+	}
+	
+	/**
+	 * Called with the write lock held.
+	 */
+	private long getNextVersion() {
+		return snapshot.get().getVersion() + 1;
+	}
+	
+	/**
+	 * Swaps the next version of the trains routes in and drops the cached query results of the previous versions, the
+	 * queries already running over a previous version finish over it. Called with the write lock held.
+	 */
+	private void publish(TrainsRoutesSnapshot nextSnapshot) {
+		snapshot.set(nextSnapshot);
+		queryCache.invalidate();
+	}
+	
+	/**
+	 * Returns the result of a query over the current version of the trains routes from the query cache.
+	 * 
+	 * @see #cached(TrainsRoutesSnapshot, String, Function, Object...)
+	 */
+	private <T> T cached(String query, Function<TrainsRoutesSnapshot, T> calculation, Object... parameters) {
+		return cached(snapshot.get(), query, calculation, parameters);
+	}
+	
+	/**
+	 * Returns the result of a query from the query cache, running the query when it is not cached yet. Both the cache
+	 * hits and misses are measured. A query run under a {@link SearchBudget} may give up, so it neither waits for nor
+	 * is waited for by the same query of other threads.
+	 * 
+	 * @param version - the version of the trains routes the query is keyed on and runs over.
+	 * @param query - the name of the query.
+	 * @param calculation - runs the query over the version.
+	 * @param parameters - the immutable parameters of the query.
+	 * @return The result of the query.
+	 */
+	private <T> T cached(TrainsRoutesSnapshot version, String query, Function<TrainsRoutesSnapshot, T> calculation, Object... parameters) {
+		QueryKey key = new QueryKey(query, version.getVersion(), parameters);
+		Supplier<T> supplier = () -> calculation.apply(version);
+		
+		return metrics.measure(query, () -> SearchBudget.current().isLimited() ? queryCache.getUnshared(key, supplier) : queryCache.get(key, supplier));
+	}
+	
+	public QueryCache getQueryCache() {
+		return queryCache;
+	}
+	
+	/**
+	 * @return The metrics of the queries, by query type.
+	 */
+	public QueryMetricsRegistry getMetrics() {
+		return metrics;
+	}
+	
+	/**
+	 * @return The compact network of the current trains routes.
+	 */
+	public RouteNetwork getRouteNetwork() {
+		return snapshot.get().getRouteNetwork();
+	}
+	
+	/**
+	 * @return The planner of the queries over the current network, with its {@link NetworkStatistics}.
+	 */
+	public QueryPlanner getQueryPlanner() {
+		return snapshot.get().getQueryPlanner();
+	}
+	
+	private static int getTownId(RouteNetwork network, Town<String> town) {
+		return network.getTownId(town.getTownName());
 	}
 	
 	/**
@@ -81,45 +304,147 @@ public class TrainsRoutesDirectedGraph {
 	 * @return The distance of the route
 	 */
 	public String getRouteDistance(List<Town<String>> towns) {
+		List<String> townNames = new ArrayList<>(towns.size());
+		
+		for(Town<String> town : towns) {
+			townNames.add(town.getTownName());
+		}
+		
+		return cached("routeDistance", version -> calculateRouteDistance(version.getRouteNetwork(), towns), townNames);
+	}
+	
+	/**
+	 * Calculates the distance of an itinerary given as town ids, each hop is one probe of the route index of the
+	 * network, nothing is allocated.
+	 * 
+	 * @param townIds - ids of the towns of {@link #getRouteNetwork()} in traveling order.
+	 * @return The distance of the itinerary, or {@link RouteNetwork#NO_ROUTE} when there is no route for a hop.
+	 * @throws ArithmeticException when the distance overflows an int.
+	 */
+	public int getRouteDistance(int[] townIds) {
+		//Timed here rather than through a capturing lambda, the lookup costs about as much as the lambda
+		if(!metrics.isEnabled()) {
+			return calculateRouteDistance(townIds);
+		}
+		
+		long start = System.nanoTime();
+		boolean isError = true;
+		
+		try {
+			int distance = calculateRouteDistance(townIds);
+			isError = false;
+			
+			return distance;
+		} finally {
+			metrics.record("routeDistanceByTownIds", System.nanoTime() - start, isError);
+		}
+	}
+	
+	private int calculateRouteDistance(int[] townIds) {
+		RouteNetwork network = getRouteNetwork();
 		int distance = 0;
-		int townIndex = 0;
-		Route route = null;
-		List<Route> routes = null;
 		
-		logger.debug("+++++++++++++++++++++++++++++++++++");
-		logger.debug("Towns in train route (display in traveling order): " + towns.toString());
+		for(int i = 1; i < townIds.length; i++) {
+			int route = network.findRoute(townIds[i - 1], townIds[i]);
+			
+			if(route == RouteNetwork.NO_ROUTE) {
+				return RouteNetwork.NO_ROUTE;
+			}
+			
+			distance = Math.addExact(distance, network.getRouteDistance(route));
+		}
 		
-		for(Town<String> town : towns) {
-			townIndex = towns.indexOf(town);
+		return distance;
+	}
+	
+	/**
+	 * Calculates the distance of an itinerary given as a compact string, the town names separated by dashes
+	 * (KGX-YRK-EDB) or, without any dash, one single-letter town per character (ABC is A-B-C). The towns are looked up
+	 * straight from the characters of the itinerary, nothing is allocated.
+	 * 
+	 * @param itinerary
+	 * @return The distance of the itinerary, or {@link RouteNetwork#NO_ROUTE} when there is no route for a hop.
+	 * @throws ArithmeticException when the distance overflows an int.
+	 */
+	public int getRouteDistance(CharSequence itinerary) {
+		if(!metrics.isEnabled()) {
+			return calculateRouteDistance(itinerary);
+		}
+		
+		long start = System.nanoTime();
+		boolean isError = true;
+		
+		try {
+			int distance = calculateRouteDistance(itinerary);
+			isError = false;
 			
-			if(townIndex < towns.size() - 1) {
-				final Town<String> nextTown = towns.get(townIndex + 1);
-				routes = trainsRoutesMap.get(town);
-				route = routes.stream()
-						.filter(r -> r.getTown().equals(nextTown))
-						.findFirst()
-						.orElse(null);
-				
-				logger.debug("Available train routes from town '" + town.getTownName() + "': " + routes.toString());
-				logger.debug("Is there a train route from town '" + town.getTownName() + "' to town '" + nextTown.getTownName() + "'?");
+			return distance;
+		} finally {
+			metrics.record("routeDistanceByItinerary", System.nanoTime() - start, isError);
+		}
+	}
+	
+	private int calculateRouteDistance(CharSequence itinerary) {
+		RouteNetwork network = getRouteNetwork();
+		int length = itinerary.length();
+		boolean isDelimited = indexOf(itinerary, '-', 0) < length;
+		int previousTownId = TownSymbolTable.NO_TOWN;
+		int distance = 0;
+		
+		for(int start = 0; start < length;) {
+			int end = isDelimited ? indexOf(itinerary, '-', start) : start + 1;
+			int townId = network.getTownId(itinerary, start, end);
+			
+			if(start > 0) {
+				int route = network.findRoute(previousTownId, townId);
 				
-				if(route != null) {
-					logger.debug("Yes, with a distance equal to " + route.getDistance());
-					distance += route.getDistance();
-				} else {
-					logger.debug("No");
-					logger.debug("+++++++++++++++++++++++++++++++++++\n");
-					return NO_SUCH_ROUTE;
+				if(route == RouteNetwork.NO_ROUTE) {
+					return RouteNetwork.NO_ROUTE;
 				}
 				
-				logger.debug("The train travel distance so far is " + distance);
-				logger.debug("--- --- --- --- --- ---");
+				distance = Math.addExact(distance, network.getRouteDistance(route));
 			}
+			
+			previousTownId = townId;
+			start = isDelimited ? end + 1 : end;
 		}
 		
-		logger.debug("The train's total travel distance from starting town '" + towns.get(0).getTownName() + "' to ending town '" + towns.get(towns.size() - 1).getTownName() + "' was " + distance);
+		return distance;
+	}
+	
+	/**
+	 * @return The index of the character from the index on, or the length of the characters when it is not found.
+	 */
+	private static int indexOf(CharSequence characters, char character, int fromIndex) {
+		for(int i = fromIndex; i < characters.length(); i++) {
+			if(characters.charAt(i) == character) {
+				return i;
+			}
+		}
+		
+		return characters.length();
+	}
+	
+	private String calculateRouteDistance(RouteNetwork network, List<Town<String>> towns) {
+		int distance = 0;
+		int townId = getTownId(network, towns.get(0));
+		
+		logger.debug("Towns in train route (display in traveling order): " + towns.toString());
+		
+		for(int i = 1; i < towns.size(); i++) {
+			int nextTownId = getTownId(network, towns.get(i));
+			int route = network.findRoute(townId, nextTownId);
+			
+			if(route == RouteNetwork.NO_ROUTE) {
+				logger.debug("There is no train route from town '" + towns.get(i - 1).getTownName() + "' to town '" + towns.get(i).getTownName() + "'");
+				return NO_SUCH_ROUTE;
+			}
+			
+			distance += network.getRouteDistance(route);
+			townId = nextTownId;
+		}
 		
-		logger.debug("+++++++++++++++++++++++++++++++++++");
+		logger.debug("The train's total travel distance from starting town '" + towns.get(0).getTownName() + "' to ending town '" + towns.get(towns.size() - 1).getTownName() + "' was " + distance);
 		
 		return String.valueOf(distance);
 	}
@@ -133,14 +458,7 @@ public class TrainsRoutesDirectedGraph {
 	 * @return The number of trips from starting to ending town with a maximum number of stops.
 	 */
 	public String getNumberOfTripsWithMaxStops(Town<String> startingTown, Town<String> endingTown, int maxStops) {
-		boolean isCalculatingMaxStops = true;
-		Deque<Route> queue = new LinkedList<>();
-		AtomicInteger tripsCounter = new AtomicInteger();
-		AtomicInteger numberOfRecursions = new AtomicInteger();
-		
-		countTripsMaxStops(startingTown, endingTown, maxStops, queue, tripsCounter, isCalculatingMaxStops, numberOfRecursions);
-		
-		return tripsCounter.toString();
+		return getNumberOfTripsWithNumberOfStops(startingTown, endingTown, maxStops, true);
 	}
 	
 	/**
@@ -152,18 +470,14 @@ public class TrainsRoutesDirectedGraph {
 	 * @return The number of trips from starting to ending town with an exactly number of stops.
 	 */
 	public String getNumberOfTripsWithExactStops(Town<String> startingTown, Town<String> endingTown, int exactStops) {
-		boolean isCalculatingMaxStops = false;
-		Deque<Route> queue = new LinkedList<>();
-		AtomicInteger tripsCounter = new AtomicInteger();
-		AtomicInteger numberOfRecursions = new AtomicInteger();
-		
-		countTripsMaxStops(startingTown, endingTown, exactStops, queue, tripsCounter, isCalculatingMaxStops, numberOfRecursions);
-		
-		return tripsCounter.toString();
+		return getNumberOfTripsWithNumberOfStops(startingTown, endingTown, exactStops, false);
 	}
 	
 	/**
 	 * Handles and answer questions 6-7.
+	 * The trips are counted with dynamic programming over the number of stops (or adjacency matrix exponentiation
+	 * for large numbers of stops), so the count cannot overflow, or enumerated when there are only a few of them,
+	 * as the {@link QueryPlanner} of the network picks.
 	 * 
 	 * @param startingTown
 	 * @param endingTown
@@ -172,67 +486,98 @@ public class TrainsRoutesDirectedGraph {
 	 * @return The number of trips from starting to ending town with maximum or an exactly number of stops.
 	 */
 	public String getNumberOfTripsWithNumberOfStops(Town<String> startingTown, Town<String> endingTown, int numberOfStops, boolean isCalculatingMaxStops) {
-		Deque<Route> queue = new LinkedList<>();
-		AtomicInteger tripsCounter = new AtomicInteger();
-		AtomicInteger numberOfRecursions = new AtomicInteger();
+		return countTrips(startingTown, endingTown, numberOfStops, isCalculatingMaxStops).toString();
+	}
+	
+	/**
+	 * Counts the trips from starting to ending town with maximum or an exactly number of stops.
+	 * 
+	 * @param startingTown
+	 * @param endingTown
+	 * @param numberOfStops
+	 * @param isCalculatingMaxStops
+	 * @return The number of trips, as an arbitrary-precision integer.
+	 */
+	public BigInteger countTrips(Town<String> startingTown, Town<String> endingTown, int numberOfStops, boolean isCalculatingMaxStops) {
+		return cached("trips", version -> calculateTrips(version, startingTown, endingTown, numberOfStops, isCalculatingMaxStops),
+				startingTown.getTownName(), endingTown.getTownName(), numberOfStops, isCalculatingMaxStops);
+	}
+	
+	private BigInteger calculateTrips(TrainsRoutesSnapshot version, Town<String> startingTown, Town<String> endingTown, int numberOfStops,
+			boolean isCalculatingMaxStops) {
+		RouteNetwork network = version.getRouteNetwork();
+		int startingTownId = getTownId(network, startingTown);
+		int endingTownId = getTownId(network, endingTown);
+		QueryPlan plan = version.getQueryPlanner().planTrips(startingTownId, endingTownId, numberOfStops, isCalculatingMaxStops);
 		
-		countTripsMaxStops(startingTown, endingTown, numberOfStops, queue, tripsCounter, isCalculatingMaxStops, numberOfRecursions);
+		if(plan.getStrategy() == QueryPlan.Strategy.DEPTH_FIRST_SEARCH) {
+			return BigInteger.valueOf(new RecursiveRouteSearch(network).countTrips(startingTownId, endingTownId, numberOfStops, isCalculatingMaxStops));
+		}
 		
-		return tripsCounter.toString();
+		return new TripCounter(network).countTrips(startingTownId, endingTownId, numberOfStops, isCalculatingMaxStops,
+				plan.getStrategy() == QueryPlan.Strategy.MATRIX_POWER);
 	}
 	
 	/**
-	 * Calculates the number of trips from starting to ending town with the provided number of stops (maximum or exact).
+	 * Plans the count of {@link #countTrips(Town, Town, int, boolean)} without running it.
 	 * 
 	 * @param startingTown
 	 * @param endingTown
 	 * @param numberOfStops
-	 * @param queue
-	 * @param tripsCounter
 	 * @param isCalculatingMaxStops
-	 * @param numberOfRecursions
-	 */
-	private void countTripsMaxStops(Town<String> startingTown, Town<String> endingTown, int numberOfStops, 
-			Deque<Route> queue, AtomicInteger tripsCounter, boolean isCalculatingMaxStops, AtomicInteger numberOfRecursions) { 
-		logger.debug("+++++++++++++++++++++++++++++++++++");
-		logger.debug("Starting or current town " + startingTown.getTownName());
-		logger.debug("Ending town " + endingTown.getTownName());
-		logger.debug("Queue with routes size " + queue.size() + " with " + numberOfStops + " number of stops");
-		
-		if(queue.size() < numberOfStops) {
-			Town<String> nextTown = null;
-			List<Route> routes = trainsRoutesMap.get(startingTown);
-			
-			logger.debug("Available train routes from starting or current town '" + startingTown.getTownName() + "': " + routes.toString());
-			
-			for(Route route : routes) {
-				nextTown = route.getTown();
-				
-				logger.debug("Is the next town '" + nextTown.getTownName() + "' equal to ending town '" + endingTown.getTownName() + "'?");
-				
-				if(nextTown.equals(endingTown)) {
-					if(isCalculatingMaxStops) {
-						tripsCounter.incrementAndGet();
-						logger.debug("Yes, increment the trips counter to '" + tripsCounter.toString() + "' ^^^ for maximum stops ^^^");
-					} else if(queue.size() == numberOfStops - 1) {
-						tripsCounter.incrementAndGet();
-						logger.debug("Yes, increment the trips counter to '" + tripsCounter.toString() + "' ^^^ for exact stops ^^^");
-					} else {
-						logger.debug("No, therefore, do not increment the trips counter");
-					}
-				} else {
-					logger.debug("No, therefore, do not increment counter");
-				}
-				
-				queue.addLast(route);
-				numberOfRecursions.incrementAndGet();
-				logger.debug("######## Start recursion " + numberOfRecursions + " ########");
-				countTripsMaxStops(nextTown, endingTown, numberOfStops, queue, tripsCounter, isCalculatingMaxStops, numberOfRecursions);
-				logger.debug("######### End recursion " + numberOfRecursions + " #########");
-				numberOfRecursions.decrementAndGet();
-				queue.removeLast();
-			}
+	 * @return The plan, {@link QueryPlan#explain()} shows why it was picked.
+	 */
+	public QueryPlan explainTrips(Town<String> startingTown, Town<String> endingTown, int numberOfStops, boolean isCalculatingMaxStops) {
+		TrainsRoutesSnapshot version = snapshot.get();
+		RouteNetwork network = version.getRouteNetwork();
+		
+		return version.getQueryPlanner().planTrips(getTownId(network, startingTown), getTownId(network, endingTown), numberOfStops, isCalculatingMaxStops);
+	}
+	
+	/**
+	 * Enumerates the trips from starting to ending town with maximum or an exactly number of stops, one at a time as
+	 * the stream asks for them, so the trips can be paged through without ever holding more than one of them. A
+	 * parallel stream splits the enumeration over the common fork/join pool.
+	 * 
+	 * @param startingTown
+	 * @param endingTown
+	 * @param numberOfStops
+	 * @param isCalculatingMaxStops
+	 * @return The trips as the town ids of the current {@link #getRouteNetwork()}, in traveling order.
+	 * @see RouteSpliterator
+	 */
+	public Stream<int[]> streamTrips(Town<String> startingTown, Town<String> endingTown, int numberOfStops, boolean isCalculatingMaxStops) {
+		RouteNetwork network = getRouteNetwork();
+		
+		return StreamSupport.stream(RouteSpliterator.trips(network, getTownId(network, startingTown), getTownId(network, endingTown), numberOfStops,
+				isCalculatingMaxStops), false);
+	}
+	
+	/**
+	 * Counts the trips by recursively enumerating every one of them, kept to cross-check the trips counter.
+	 * 
+	 * @param startingTown
+	 * @param endingTown
+	 * @param numberOfStops
+	 * @param isCalculatingMaxStops
+	 * @return The number of trips from starting to ending town with maximum or an exactly number of stops.
+	 */
+	public String getNumberOfTripsWithNumberOfStopsByRecursion(Town<String> startingTown, Town<String> endingTown, int numberOfStops, boolean isCalculatingMaxStops) {
+		return metrics.measure("tripsByRecursion", () -> calculateTripsByRecursion(startingTown, endingTown, numberOfStops, isCalculatingMaxStops));
+	}
+	
+	private String calculateTripsByRecursion(Town<String> startingTown, Town<String> endingTown, int numberOfStops, boolean isCalculatingMaxStops) {
+		RouteNetwork network = getRouteNetwork();
+		
+		int startingTownId = getTownId(network, startingTown);
+		int endingTownId = getTownId(network, endingTown);
+		ForkJoinPool pool = enumerationPool;
+		
+		if(pool != null) {
+			return String.valueOf(new ParallelRouteEnumerator(network, pool, enumerationSplitDepth).countTrips(startingTownId, endingTownId, numberOfStops, isCalculatingMaxStops));
 		}
+		
+		return String.valueOf(new RecursiveRouteSearch(network).countTrips(startingTownId, endingTownId, numberOfStops, isCalculatingMaxStops));
 	}
 	
 	/**
@@ -243,76 +588,417 @@ public class TrainsRoutesDirectedGraph {
 	 * @return The distance of the shortest route (in terms of distance to travel) from start to end.
 	 */
 	public String getShortestRouteDistance(Town<String> startingTown, Town<String> endingTown) {
-		AtomicInteger minDistance = new AtomicInteger(999999);
-        //ThreadLocal<Integer> minDistance = new ThreadLocal<>();
-        //minDistance.set(999999);
-        int sumDistance = 0;
-        Deque<Town<String>> queue = new LinkedList<>();
-        AtomicInteger numberOfRecursions = new AtomicInteger();
-        
-        calculateShortestRouteDistance(startingTown, endingTown, queue, minDistance, sumDistance, numberOfRecursions);
-        
-        return minDistance.toString();
+		return metrics.measure("shortestRouteDistance", () -> calculateShortestRouteDistance(snapshot.get(), startingTown, endingTown));
+	}
+	
+	private String calculateShortestRouteDistance(TrainsRoutesSnapshot version, Town<String> startingTown, Town<String> endingTown) {
+		RouteNetwork network = version.getRouteNetwork();
+		AllPairsShortestDistances shortestDistances = getShortestDistances(network);
+		
+		if(shortestDistances != null) {
+			int distance = shortestDistances.getDistance(getTownId(network, startingTown), getTownId(network, endingTown));
+			
+			return distance == TownPath.NO_ROUTE ? NO_SUCH_ROUTE : String.valueOf(distance);
+		}
+		
+		ShortestRoute shortestRoute = getShortestRoute(version, startingTown, endingTown);
+		
+		return shortestRoute.exists() ? String.valueOf(shortestRoute.getDistance()) : NO_SUCH_ROUTE;
+	}
+	
+	/**
+	 * Finds the shortest route (in terms of distance to travel) from start to end with Dijkstra's algorithm, or
+	 * from the next towns of the precomputed shortest distances when they are up to date.
+	 * When the starting town is also the ending town, the shortest round trip is returned.
+	 * 
+	 * @param startingTown
+	 * @param endingTown
+	 * @return The shortest route with its towns in traveling order, or a route that does not exist when there is none.
+	 */
+	public ShortestRoute getShortestRoute(Town<String> startingTown, Town<String> endingTown) {
+		return getShortestRoute(snapshot.get(), startingTown, endingTown);
+	}
+	
+	private ShortestRoute getShortestRoute(TrainsRoutesSnapshot version, Town<String> startingTown, Town<String> endingTown) {
+		return cached(version, "shortestRoute", currentVersion -> findShortestRoute(currentVersion, startingTown, endingTown), startingTown.getTownName(),
+				endingTown.getTownName());
+	}
+	
+	private ShortestRoute findShortestRoute(TrainsRoutesSnapshot version, Town<String> startingTown, Town<String> endingTown) {
+		RouteNetwork network = version.getRouteNetwork();
+		int startingTownId = getTownId(network, startingTown);
+		int endingTownId = getTownId(network, endingTown);
+		
+		if(startingTownId < 0 || endingTownId < 0) {
+			return ShortestRoute.noRoute();
+		}
+		
+		QueryPlan plan = planShortestRoute(version, startingTownId, endingTownId);
+		TownPath townPath = findShortestPath(network, plan.getStrategy(), startingTownId, endingTownId);
+		ShortestRoute shortestRoute = toShortestRoute(network, townPath);
+		
+		logger.debug("Shortest route from town '" + startingTown.getTownName() + "' to town '" + endingTown.getTownName() + "': " + shortestRoute);
+		
+		return shortestRoute;
 	}
 	
 	/**
-	 * Calculates the length of the shortest route (in terms of distance 
-	 * to travel) from the starting town to the ending town.
+	 * Finds the routes from start to end that do not go through a town twice, shortest first. The routes are found
+	 * one at a time as they are asked for, so asking for the next alternative only costs the work of finding it.
+	 * When the starting town is also the ending town, the routes are the round trips through it.
 	 * 
 	 * @param startingTown
 	 * @param endingTown
-	 * @param queue
-	 * @param minDistance
-	 * @param sumDistance
-	 * @param numberOfRecursions
-	 */
-	private void calculateShortestRouteDistance(Town<String> startingTown, Town<String> endingTown, Deque<Town<String>> queue, 
-			AtomicInteger minDistance, int sumDistance, AtomicInteger numberOfRecursions) {
-		logger.debug("+++++++++++++++++++++++++++++++++++");
-		logger.debug("Starting or current town " + startingTown.getTownName());
-		logger.debug("Ending town " + endingTown.getTownName());
-		logger.debug("Queue with routes size " + queue.size());
-		logger.debug("*** Minimum distance " + minDistance.toString() + " ***");
-		logger.debug("Sum distance " + sumDistance);
-		
-        Town<String> nextTown = null;
-        List<Route> routes = trainsRoutesMap.get(startingTown);
-        
-        logger.debug("Available train routes from starting or current town '" + startingTown.getTownName() + "': " + routes.toString());
-        
-        for(Route route : routes) {
-            nextTown = route.getTown();
-            
-            logger.debug("Is the next town '" + nextTown.getTownName() + "' equal to ending town '" + endingTown.getTownName() + "'?");
-            
-            if(nextTown.equals(endingTown)) {
-            	logger.debug("Yes, is sumDistance + route.getDistance() '" + (sumDistance + route.getDistance()) + "' < minDistance.get() '" + minDistance.get() + "'?");
-            	
-                if(sumDistance + route.getDistance() < minDistance.get()) {
-                    minDistance.set(sumDistance + route.getDistance());
-                    logger.debug("Yes, new the shortest route distance is " + minDistance.toString());
-                    continue;
-                } else {
-    				logger.debug("No, therefore, keep current shortest route distance");
-    			}
-            } else {
-				logger.debug("No, therefore, no need to attempt to calculate the shortest route distance");
+	 * @return The routes in order of distance, the iterator is not thread safe.
+	 * @see KShortestPaths
+	 */
+	public Iterator<ShortestRoute> getShortestRoutes(Town<String> startingTown, Town<String> endingTown) {
+		return getShortestRoutes(getRouteNetwork(), startingTown, endingTown);
+	}
+	
+	private static Iterator<ShortestRoute> getShortestRoutes(RouteNetwork network, Town<String> startingTown, Town<String> endingTown) {
+		KShortestPaths shortestPaths = new KShortestPaths(network, getTownId(network, startingTown), getTownId(network, endingTown));
+		
+		return new Iterator<ShortestRoute>() {
+			@Override
+			public boolean hasNext() {
+				return shortestPaths.hasNext();
+			}
+			
+			@Override
+			public ShortestRoute next() {
+				return toShortestRoute(network, shortestPaths.next());
+			}
+		};
+	}
+	
+	/**
+	 * @param startingTown
+	 * @param endingTown
+	 * @param numberOfRoutes - the maximum number of routes.
+	 * @return The shortest routes from start to end that do not go through a town twice, shortest first. The list
+	 * cannot be modified.
+	 * @see #getShortestRoutes(Town, Town)
+	 */
+	public List<ShortestRoute> getShortestRoutes(Town<String> startingTown, Town<String> endingTown, int numberOfRoutes) {
+		return cached("shortestRoutes", version -> findShortestRoutes(version.getRouteNetwork(), startingTown, endingTown, numberOfRoutes), startingTown.getTownName(),
+				endingTown.getTownName(), numberOfRoutes);
+	}
+	
+	private List<ShortestRoute> findShortestRoutes(RouteNetwork network, Town<String> startingTown, Town<String> endingTown, int numberOfRoutes) {
+		List<ShortestRoute> shortestRoutes = new ArrayList<>();
+		
+		for(Iterator<ShortestRoute> iterator = getShortestRoutes(network, startingTown, endingTown); shortestRoutes.size() < numberOfRoutes && iterator.hasNext();) {
+			shortestRoutes.add(iterator.next());
+		}
+		
+		logger.debug(shortestRoutes.size() + " shortest routes from town '" + startingTown.getTownName() + "' to town '" + endingTown.getTownName() + "'");
+		
+		return Collections.unmodifiableList(shortestRoutes);
+	}
+	
+	/**
+	 * Precomputes the shortest distance and route between every pair of towns of the current trains routes, so the
+	 * shortest route queries become table lookups until the trains routes change.
+	 * 
+	 * @throws IllegalArgumentException when there are more than {@link AllPairsShortestDistances#DEFAULT_MAX_TOWNS} towns.
+	 * @see AllPairsShortestDistances
+	 */
+	public void precomputeShortestDistances() {
+		precomputeShortestDistances(AllPairsShortestDistances.DEFAULT_MAX_TOWNS);
+	}
+	
+	/**
+	 * @param maxTowns - the most towns whose shortest distances are precomputed, the tables take 8 * towns^2 bytes.
+	 * @throws IllegalArgumentException when there are more towns, the shortest route queries are not planned over
+	 * precomputed distances then.
+	 * @see #precomputeShortestDistances()
+	 */
+	public void precomputeShortestDistances(int maxTowns) {
+		RouteNetwork network = getRouteNetwork();
+		AllPairsShortestDistances shortestDistances = AllPairsShortestDistances.compute(network, maxTowns);
+		this.shortestDistances = shortestDistances;
+		
+		logger.debug("Shortest distances of " + network.getNumberOfTowns() + " towns precomputed by " + shortestDistances.getAlgorithm()
+				+ (shortestDistances.isOffHeap() ? " off heap" : ""));
+	}
+	
+	/**
+	 * @param network
+	 * @return The precomputed shortest distances when they were computed for the network, otherwise null.
+	 */
+	private AllPairsShortestDistances getShortestDistances(RouteNetwork network) {
+		AllPairsShortestDistances shortestDistances = this.shortestDistances;
+		
+		return shortestDistances != null && shortestDistances.getNetwork() == network ? shortestDistances : null;
+	}
+	
+	/**
+	 * Precomputes the distances to and from landmark towns of the current trains routes, so the shortest route
+	 * queries run an A* search instead of Dijkstra's algorithm until the trains routes change.
+	 * 
+	 * @param numberOfLandmarks - e.g. {@link LandmarkDistances#DEFAULT_NUMBER_OF_LANDMARKS}.
+	 * @see LandmarkSearch
+	 */
+	public void precomputeLandmarks(int numberOfLandmarks) {
+		RouteNetwork network = getRouteNetwork();
+		LandmarkDistances landmarkDistances = LandmarkDistances.compute(network, numberOfLandmarks);
+		this.landmarkDistances = landmarkDistances;
+		
+		logger.debug(landmarkDistances.getNumberOfLandmarks() + " landmarks of " + network.getNumberOfTowns() + " towns precomputed");
+	}
+	
+	/**
+	 * Saves the precomputed landmark distances, e.g. next to the snapshot of the trains routes at
+	 * {@link LandmarkDistances#getPath(Path)}.
+	 * 
+	 * @param path
+	 * @throws IOException
+	 * @throws IllegalStateException when the landmarks of the current trains routes were not precomputed.
+	 */
+	public void saveLandmarks(Path path) throws IOException {
+		LandmarkDistances landmarkDistances = getLandmarkDistances(getRouteNetwork());
+		
+		if(landmarkDistances == null) {
+			throw new IllegalStateException("The landmarks of the trains routes were not precomputed");
+		}
+		
+		landmarkDistances.write(path);
+	}
+	
+	/**
+	 * Loads landmark distances saved with {@link #saveLandmarks(Path)} for the current trains routes.
+	 * 
+	 * @param path
+	 * @throws IOException when the landmark distances cannot be read or were saved for other trains routes.
+	 */
+	public void loadLandmarks(Path path) throws IOException {
+		RouteNetwork network = getRouteNetwork();
+		landmarkDistances = LandmarkDistances.read(network, path);
+		
+		logger.debug(landmarkDistances.getNumberOfLandmarks() + " landmarks of " + network.getNumberOfTowns() + " towns loaded from " + path);
+	}
+	
+	/**
+	 * @param network
+	 * @return The precomputed landmark distances when they were computed for the network, otherwise null.
+	 */
+	private LandmarkDistances getLandmarkDistances(RouteNetwork network) {
+		LandmarkDistances landmarkDistances = this.landmarkDistances;
+		
+		return landmarkDistances != null && landmarkDistances.getNetwork() == network ? landmarkDistances : null;
+	}
+	
+	/**
+	 * Precomputes the contraction hierarchy of the current trains routes across the common pool, so the shortest
+	 * route queries search the hierarchy until the trains routes change.
+	 * 
+	 * @see ContractionHierarchy
+	 */
+	public void precomputeContractionHierarchy() {
+		RouteNetwork network = getRouteNetwork();
+		ContractionHierarchy contractionHierarchy = new ContractionHierarchy.Builder(network).build();
+		this.contractionHierarchy = contractionHierarchy;
+		
+		logger.debug("Contraction hierarchy of " + network.getNumberOfTowns() + " towns precomputed in " + contractionHierarchy.getNumberOfRounds()
+				+ " rounds with " + contractionHierarchy.getNumberOfShortcuts() + " shortcuts");
+	}
+	
+	/**
+	 * Saves the precomputed contraction hierarchy, e.g. next to the snapshot of the trains routes at
+	 * {@link ContractionHierarchy#getPath(Path)}.
+	 * 
+	 * @param path
+	 * @throws IOException
+	 * @throws IllegalStateException when the contraction hierarchy of the current trains routes was not precomputed.
+	 */
+	public void saveContractionHierarchy(Path path) throws IOException {
+		ContractionHierarchy contractionHierarchy = getContractionHierarchy(getRouteNetwork());
+		
+		if(contractionHierarchy == null) {
+			throw new IllegalStateException("The contraction hierarchy of the trains routes was not precomputed");
+		}
+		
+		contractionHierarchy.write(path);
+	}
+	
+	/**
+	 * Loads a contraction hierarchy saved with {@link #saveContractionHierarchy(Path)} for the current trains routes.
+	 * 
+	 * @param path
+	 * @throws IOException when the contraction hierarchy cannot be read or was saved for other trains routes.
+	 */
+	public void loadContractionHierarchy(Path path) throws IOException {
+		RouteNetwork network = getRouteNetwork();
+		contractionHierarchy = ContractionHierarchy.read(network, path);
+		
+		logger.debug("Contraction hierarchy of " + network.getNumberOfTowns() + " towns loaded from " + path);
+	}
+	
+	/**
+	 * In validation mode every route found in the contraction hierarchy is checked against the route found without
+	 * it, by Dijkstra's algorithm, and a route that is not as short or does not follow the trains routes fails the query
+	 * with an {@link IllegalStateException}. Meant for tests and for checking a hierarchy loaded from a file.
+	 * 
+	 * @param isValidatingContractionHierarchy
+	 */
+	public void setValidatingContractionHierarchy(boolean isValidatingContractionHierarchy) {
+		this.isValidatingContractionHierarchy = isValidatingContractionHierarchy;
+	}
+	
+	/**
+	 * @param network
+	 * @return The precomputed contraction hierarchy when it was built for the network, otherwise null.
+	 */
+	private ContractionHierarchy getContractionHierarchy(RouteNetwork network) {
+		ContractionHierarchy contractionHierarchy = this.contractionHierarchy;
+		
+		return contractionHierarchy != null && contractionHierarchy.getNetwork() == network ? contractionHierarchy : null;
+	}
+	
+	private void validateContractionHierarchy(RouteNetwork network, int startingTownId, int endingTownId, TownPath townPath) {
+		TownPath expectedPath = new DijkstraSearch(network).findShortestPath(startingTownId, endingTownId);
+		long distance = 0;
+		
+		for(int i = 1; i < townPath.getNumberOfTowns() && distance != RouteNetwork.NO_ROUTE; i++) {
+			int routeDistance = Integer.MAX_VALUE;
+			
+			for(int route = network.getFirstRoute(townPath.getTownId(i - 1)), end = network.getRoutesEnd(townPath.getTownId(i - 1)); route < end; route++) {
+				if(network.getRouteTarget(route) == townPath.getTownId(i)) {
+					routeDistance = Math.min(routeDistance, network.getRouteDistance(route));
+				}
 			}
-            
-            if(!queue.contains(nextTown)) {
-            	logger.debug("Queue does not contain the next town " + nextTown.getTownName());
-                queue.addLast(nextTown);
-                sumDistance += route.getDistance();
-                numberOfRecursions.incrementAndGet();
-				logger.debug("######## Start recursion " + numberOfRecursions + " ########");
-                calculateShortestRouteDistance(nextTown, endingTown, queue, minDistance, sumDistance, numberOfRecursions);
-                logger.debug("######### End recursion " + numberOfRecursions + " #########");
-				numberOfRecursions.decrementAndGet();
-                sumDistance -= route.getDistance();
-                queue.removeLast();
-            }
-        }
-    }
+			
+			distance = routeDistance == Integer.MAX_VALUE ? RouteNetwork.NO_ROUTE : distance + routeDistance;
+		}
+		
+		if(townPath.getDistance() != expectedPath.getDistance() || (townPath.exists() && distance != townPath.getDistance())) {
+			throw new IllegalStateException("The contraction hierarchy found " + townPath + " from town " + network.getTownName(startingTownId)
+					+ " to town " + network.getTownName(endingTownId) + " instead of " + expectedPath);
+		}
+	}
+	
+	/**
+	 * Answers the shortest route queries without precomputed data by a {@link BidirectionalDijkstraSearch}, searching
+	 * forward from the starting town and backward from the ending town, instead of by a search from the starting town
+	 * only. On two threads the backward search runs on a thread of a pool shared by the concurrent queries, one thread
+	 * per processor, at the same time as the forward search.
+	 * 
+	 * The previous pool is shut down, the queries that already handed it their backward search finish on it, the
+	 * next ones that picked it up take turns on their own thread.
+	 * 
+	 * @param isBidirectional
+	 * @param isRunningOnTwoThreads
+	 */
+	public synchronized void setBidirectionalSearch(boolean isBidirectional, boolean isRunningOnTwoThreads) {
+		ForkJoinPool previousPool = bidirectionalSearchPool;
+		bidirectionalSearchPool = isBidirectional && isRunningOnTwoThreads ? new ForkJoinPool(Runtime.getRuntime().availableProcessors()) : null;
+		isBidirectionalSearch = isBidirectional;
+		
+		if(previousPool != null) {
+			previousPool.shutdown();
+		}
+		
+		logger.debug("Bidirectional search " + isBidirectional + " on two threads " + isRunningOnTwoThreads);
+	}
+	
+	/**
+	 * Plans the search of {@link #getShortestRoute(Town, Town)} without running it.
+	 * 
+	 * @param startingTown
+	 * @param endingTown
+	 * @return The plan, {@link QueryPlan#explain()} shows why it was picked.
+	 */
+	public QueryPlan explainShortestRoute(Town<String> startingTown, Town<String> endingTown) {
+		TrainsRoutesSnapshot version = snapshot.get();
+		RouteNetwork network = version.getRouteNetwork();
+		
+		return planShortestRoute(version, getTownId(network, startingTown), getTownId(network, endingTown));
+	}
+	
+	/**
+	 * The searches available are the precomputed distances, contraction hierarchy and landmarks when they are up to
+	 * date, the bidirectional search when it is set and Dijkstra's algorithm.
+	 */
+	private QueryPlan planShortestRoute(TrainsRoutesSnapshot version, int startingTownId, int endingTownId) {
+		RouteNetwork network = version.getRouteNetwork();
+		Set<QueryPlan.Strategy> availableStrategies = EnumSet.of(QueryPlan.Strategy.DIJKSTRA);
+		
+		if(getShortestDistances(network) != null) {
+			availableStrategies.add(QueryPlan.Strategy.PRECOMPUTED_DISTANCES);
+		}
+		
+		if(getContractionHierarchy(network) != null) {
+			availableStrategies.add(QueryPlan.Strategy.CONTRACTION_HIERARCHY);
+		}
+		
+		if(getLandmarkDistances(network) != null) {
+			availableStrategies.add(QueryPlan.Strategy.LANDMARK_SEARCH);
+		}
+		
+		if(isBidirectionalSearch) {
+			availableStrategies.add(QueryPlan.Strategy.BIDIRECTIONAL_DIJKSTRA);
+		}
+		
+		return version.getQueryPlanner().planShortestRoute(startingTownId, endingTownId, availableStrategies);
+	}
+	
+	/**
+	 * @return The shortest route found with the planned strategy.
+	 */
+	private TownPath findShortestPath(RouteNetwork network, QueryPlan.Strategy strategy, int startingTownId, int endingTownId) {
+		switch(strategy) {
+			case PRECOMPUTED_DISTANCES:
+				return getShortestDistances(network).getPath(startingTownId, endingTownId);
+			case CONTRACTION_HIERARCHY:
+				TownPath townPath = getContractionHierarchy(network).findShortestPath(startingTownId, endingTownId);
+				
+				if(isValidatingContractionHierarchy) {
+					validateContractionHierarchy(network, startingTownId, endingTownId, townPath);
+				}
+				
+				return townPath;
+			case LANDMARK_SEARCH:
+				return new LandmarkSearch(getLandmarkDistances(network)).findShortestPath(startingTownId, endingTownId);
+			case BIDIRECTIONAL_DIJKSTRA:
+				return new BidirectionalDijkstraSearch(network, bidirectionalSearchPool).findShortestPath(startingTownId, endingTownId);
+			default:
+				return new DijkstraSearch(network).findShortestPath(startingTownId, endingTownId);
+		}
+	}
+	
+	private static ShortestRoute toShortestRoute(RouteNetwork network, TownPath townPath) {
+		if(!townPath.exists()) {
+			return ShortestRoute.noRoute();
+		}
+		
+		List<Town<String>> towns = new ArrayList<>(townPath.getNumberOfTowns());
+		
+		for(int townId : townPath.getTownIds()) {
+			towns.add(new Town<String>(network.getTownName(townId)));
+		}
+		
+		return new ShortestRoute(towns, townPath.getDistance());
+	}
+	
+	/**
+	 * Calculates the distance of the shortest route by recursively enumerating every route without repeated towns.
+	 * Exponential in the number of towns, it is kept to cross-check the answers of the faster searches.
+	 * 
+	 * @param startingTown
+	 * @param endingTown
+	 * @return The distance of the shortest route (in terms of distance to travel) from start to end.
+	 */
+	public String getShortestRouteDistanceByRecursion(Town<String> startingTown, Town<String> endingTown) {
+		return metrics.measure("shortestRouteDistanceByRecursion", () -> calculateShortestRouteDistanceByRecursion(startingTown, endingTown));
+	}
+	
+	private String calculateShortestRouteDistanceByRecursion(Town<String> startingTown, Town<String> endingTown) {
+		RouteNetwork network = getRouteNetwork();
+		int minDistance = new RecursiveRouteSearch(network).findShortestDistance(getTownId(network, startingTown), getTownId(network, endingTown));
+		
+		return minDistance == TownPath.NO_ROUTE ? NO_SUCH_ROUTE : String.valueOf(minDistance);
+	}
 	
 	/**
 	 * Handles and answer question 10.
@@ -323,76 +1009,162 @@ public class TrainsRoutesDirectedGraph {
 	 * @return The number of different routes from starting to ending town with a distance of less than or equal to a given number
 	 */
 	public String getNumberOfDifferentRoutesWithMaxDistance(Town<String> startingTown, Town<String> endingTown, int maxDistance) {
-		int sumDistance = 0;
-		AtomicInteger routesCounter = new AtomicInteger();
-		AtomicInteger numberOfRecursions = new AtomicInteger();
+		return cached("routesWithMaxDistance", version -> calculateNumberOfDifferentRoutesWithMaxDistance(version, startingTown, endingTown, maxDistance),
+				startingTown.getTownName(), endingTown.getTownName(), maxDistance);
+	}
+	
+	private String calculateNumberOfDifferentRoutesWithMaxDistance(TrainsRoutesSnapshot version, Town<String> startingTown, Town<String> endingTown,
+			int maxDistance) {
+		RouteNetwork network = version.getRouteNetwork();
+		int startingTownId = getTownId(network, startingTown);
+		int endingTownId = getTownId(network, endingTown);
+		QueryPlan plan = version.getQueryPlanner().planRoutesWithMaxDistance(startingTownId, endingTownId, maxDistance);
 		
-		calculateNumberOfDifferentRoutesWithMaxDistance(startingTown, endingTown, maxDistance, sumDistance, routesCounter, numberOfRecursions);
+		if(plan.getStrategy() == QueryPlan.Strategy.DEPTH_FIRST_SEARCH) {
+			return String.valueOf(new RecursiveRouteSearch(network).countRoutesWithMaxDistance(startingTownId, endingTownId, maxDistance));
+		}
 		
-		return routesCounter.toString();
+		return new DistanceBudgetCounter(network).countRoutes(startingTownId, endingTownId, maxDistance).toString();
 	}
 	
 	/**
-	 * Calculates the number of different routes from starting to ending
-	 * town with a distance of less than or equal to a given number
+	 * Plans the count of {@link #getNumberOfDifferentRoutesWithMaxDistance(Town, Town, int)} without running it.
 	 * 
 	 * @param startingTown
 	 * @param endingTown
 	 * @param maxDistance
-	 * @param sumDistance
-	 * @param routesCounter
-	 * @param numberOfRecursions
-	 */
-	private void calculateNumberOfDifferentRoutesWithMaxDistance(Town<String> startingTown, Town<String> endingTown, int maxDistance,
-			int sumDistance, AtomicInteger routesCounter, AtomicInteger numberOfRecursions) {
-		logger.debug("+++++++++++++++++++++++++++++++++++");
-		logger.debug("Starting or current town " + startingTown.getTownName());
-		logger.debug("Ending town " + endingTown.getTownName());
-		logger.debug("Maximum route distance " + maxDistance);
-		logger.debug("*** Different Routes counter " + routesCounter.toString() + " ***");
-		logger.debug("Sum distance " + sumDistance);
-		
-        Town<String> nextTown = null;
-        List<Route> routes = trainsRoutesMap.get(startingTown);
-        
-        logger.debug("Available train routes from starting or current town '" + startingTown.getTownName() + "': " + routes.toString());
-        
-        for(Route route : routes) {
-            nextTown = route.getTown();
-            
-            logger.debug("Yes, is sumDistance + route.getDistance() '" + (sumDistance + route.getDistance()) + "' >= maxDistance '" + maxDistance + "'?");
-        	
-            if(sumDistance + route.getDistance() >= maxDistance) {
-                logger.debug("Yes, continue (go back to beginning of for loop) with maxDistance equal to " + maxDistance);
-                continue;
-            } else {
-				logger.debug("No, therefore, execute below lines of code within the for loop");
-			}
-            
-            logger.debug("Is the next town '" + nextTown.getTownName() + "' equal to ending town '" + endingTown.getTownName() + "'?");
-            
-            if(nextTown.equals(endingTown)) {
-            	routesCounter.getAndIncrement();
-            	logger.debug("Yes, increment the routes counter to '" + routesCounter.toString() + "' ^^^ for maximum distance ^^^");
-            } else {
-				logger.debug("No, therefore, no need to attempt to calculate the shortest route distance");
+	 * @return The plan, {@link QueryPlan#explain()} shows why it was picked.
+	 */
+	public QueryPlan explainRoutesWithMaxDistance(Town<String> startingTown, Town<String> endingTown, int maxDistance) {
+		TrainsRoutesSnapshot version = snapshot.get();
+		RouteNetwork network = version.getRouteNetwork();
+		
+		return version.getQueryPlanner().planRoutesWithMaxDistance(getTownId(network, startingTown), getTownId(network, endingTown), maxDistance);
+	}
+	
+	/**
+	 * Counts in a single pass of dynamic programming over (distance, town) the number of different routes from the
+	 * starting town to every town with a distance of less than the maximum distance, in O(routes * maxDistance).
+	 * 
+	 * @param startingTown
+	 * @param maxDistance
+	 * @return The number of different routes by ending town, towns that cannot be reached are left out. The map
+	 * cannot be modified.
+	 */
+	public Map<Town<String>, BigInteger> countRoutesWithMaxDistance(Town<String> startingTown, int maxDistance) {
+		return cached("routesWithMaxDistanceByTown", version -> calculateRoutesWithMaxDistance(version.getRouteNetwork(), startingTown, maxDistance),
+				startingTown.getTownName(), maxDistance);
+	}
+	
+	private Map<Town<String>, BigInteger> calculateRoutesWithMaxDistance(RouteNetwork network, Town<String> startingTown, int maxDistance) {
+		RouteCounts routeCounts = new DistanceBudgetCounter(network).countRoutes(getTownId(network, startingTown), maxDistance);
+		Map<Town<String>, BigInteger> routesCounters = new HashMap<>();
+		
+		for(int townId = 0; townId < routeCounts.getNumberOfTowns(); townId++) {
+			if(!routeCounts.isZero(townId)) {
+				routesCounters.put(new Town<String>(network.getTownName(townId)), routeCounts.get(townId));
 			}
-            
-            sumDistance += route.getDistance();
-            numberOfRecursions.incrementAndGet();
-			logger.debug("######## Start recursion " + numberOfRecursions + " ########");
-			calculateNumberOfDifferentRoutesWithMaxDistance(nextTown, endingTown, maxDistance, sumDistance, routesCounter, numberOfRecursions);
-            logger.debug("######### End recursion " + numberOfRecursions + " #########");
-			numberOfRecursions.decrementAndGet();
-            sumDistance -= route.getDistance();
-        }
+		}
+		
+		return Collections.unmodifiableMap(routesCounters);
 	}
 	
+	/**
+	 * Enumerates the different routes from starting to ending town with a distance of less than the maximum distance,
+	 * one at a time as the stream asks for them. A parallel stream splits the enumeration over the common fork/join pool.
+	 * 
+	 * @param startingTown
+	 * @param endingTown
+	 * @param maxDistance
+	 * @return The routes as the town ids of the current {@link #getRouteNetwork()}, in traveling order.
+	 * @see RouteSpliterator
+	 */
+	public Stream<int[]> streamRoutesWithMaxDistance(Town<String> startingTown, Town<String> endingTown, int maxDistance) {
+		RouteNetwork network = getRouteNetwork();
+		
+		return StreamSupport.stream(RouteSpliterator.routesWithMaxDistance(network, getTownId(network, startingTown), getTownId(network, endingTown),
+				maxDistance), false);
+	}
+	
+	/**
+	 * Counts the different routes by recursively enumerating every one of them, kept to cross-check the
+	 * distance budget counter.
+	 * 
+	 * @param startingTown
+	 * @param endingTown
+	 * @param maxDistance
+	 * @return The number of different routes from starting to ending town with a distance of less than or equal to a given number
+	 */
+	public String getNumberOfDifferentRoutesWithMaxDistanceByRecursion(Town<String> startingTown, Town<String> endingTown, int maxDistance) {
+		return metrics.measure("routesWithMaxDistanceByRecursion",
+				() -> calculateNumberOfDifferentRoutesWithMaxDistanceByRecursion(startingTown, endingTown, maxDistance));
+	}
+	
+	private String calculateNumberOfDifferentRoutesWithMaxDistanceByRecursion(Town<String> startingTown, Town<String> endingTown, int maxDistance) {
+		RouteNetwork network = getRouteNetwork();
+		
+		int startingTownId = getTownId(network, startingTown);
+		int endingTownId = getTownId(network, endingTown);
+		ForkJoinPool pool = enumerationPool;
+		
+		if(pool != null) {
+			return String.valueOf(new ParallelRouteEnumerator(network, pool, enumerationSplitDepth).countRoutesWithMaxDistance(startingTownId, endingTownId, maxDistance));
+		}
+		
+		return String.valueOf(new RecursiveRouteSearch(network).countRoutesWithMaxDistance(startingTownId, endingTownId, maxDistance));
+	}
+	
+	/**
+	 * Runs the recursive enumerations of trips and routes (the ByRecursion counts) over a fork/join pool of their
+	 * own, split into subtasks down to the split depth. A parallelism of one runs them on the calling thread again.
+	 * 
+	 * @param parallelism - the number of worker threads.
+	 * @param splitDepth - the number of stops down to which the enumeration is split into subtasks.
+	 */
+	public synchronized void setParallelEnumeration(int parallelism, int splitDepth) {
+		if(parallelism < 1 || splitDepth < 0) {
+			throw new IllegalArgumentException("Invalid parallelism " + parallelism + " or split depth " + splitDepth);
+		}
+		
+		ForkJoinPool previousPool = enumerationPool;
+		enumerationSplitDepth = splitDepth;
+		enumerationPool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+		
+		if(previousPool != null) {
+			previousPool.shutdown();
+		}
+		
+		logger.debug("Parallel enumeration with parallelism " + parallelism + " and split depth " + splitDepth);
+	}
+	
+	/**
+	 * Saves the current trains routes to a binary snapshot that can be opened with {@link RouteNetworkSnapshot#open(Path)}.
+	 * 
+	 * @param path
+	 * @throws IOException
+	 */
+	public void saveSnapshot(Path path) throws IOException {
+		RouteNetworkSnapshot.write(getRouteNetwork(), path);
+	}
+	
+	/**
+	 * @return The trains routes map of the current version, built from the network the first time it is needed when
+	 * the graph was constructed over a network. The map cannot be modified, the trains routes are changed through
+	 * {@link #createTrainsRoutes(String)}, {@link #setTrainsMap(Map)} or {@link #reloadTrainsRoutes(Path)}.
+	 */
 	public Map<Town<String>, List<Route>> getTrainsMap() {
-		return trainsRoutesMap;
+		return snapshot.get().getTrainsMap();
 	}
 	
+	/**
+	 * Replaces the trains routes with the routes of the map, compiled into a network and not kept, so changing the map
+	 * or its towns and routes afterwards does not change the trains routes.
+	 * 
+	 * @param trainsMap
+	 */
 	public void setTrainsMap(Map<Town<String>, List<Route>> trainsMap) {
-		this.trainsRoutesMap = trainsMap;
+		synchronized(writeLock) {
+			publish(new TrainsRoutesSnapshot(getNextVersion(), trainsMap));
+		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,171 @@
+package com.ccc.routes.recursion;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.ccc.routes.network.CompactRouteNetwork;
+import com.ccc.routes.network.NetworkStatistics;
+import com.ccc.routes.network.RouteNetwork;
+import com.ccc.routes.search.QueryPlanner;
+
+/**
+ * One version of the trains routes of a {@link TrainsRoutesDirectedGraph}, published whole and never changed after:
+ * the compact network of the trains routes and the planner of the queries over that network. Not to be confused with
+ * the binary {@link com.ccc.routes.network.RouteNetworkSnapshot} a network is saved to.
+ *
+ * A version is made from a network, or from a map compiled into a network and not kept. The network and the query
+ * planner, with its statistics, are built by the constructor, on the thread of the writer before the version is
+ * published, so the first queries over a new version do not wait for them. The trains routes map is only built from
+ * the network when it is asked for, it cannot be modified, nor can its towns and routes.
+ *
+ * @author gibrancastillo
+ *
+ */
+public final class TrainsRoutesSnapshot {
+	private final long version;
+	private volatile Map<Town<String>, List<Route>> trainsMap;
+	private final RouteNetwork routeNetwork;
+	private final QueryPlanner queryPlanner;
+	
+	/**
+	 * @param version
+	 * @param trainsMap - the map is compiled into the network and not kept, changing it afterwards does not change
+	 * the version.
+	 */
+	TrainsRoutesSnapshot(long version, Map<Town<String>, List<Route>> trainsMap) {
+		this(version, compileRouteNetwork(trainsMap), null);
+	}
+	
+	/**
+	 * @param version
+	 * @param routeNetwork
+	 * @param queryPlanner - the planner of the network, or null to build it now.
+	 */
+	TrainsRoutesSnapshot(long version, RouteNetwork routeNetwork, QueryPlanner queryPlanner) {
+		this.version = version;
+		this.routeNetwork = routeNetwork;
+		this.queryPlanner = queryPlanner != null ? queryPlanner : new QueryPlanner(new NetworkStatistics(routeNetwork));
+	}
+	
+	/**
+	 * @return The version, one more than the version it replaced.
+	 */
+	public long getVersion() {
+		return version;
+	}
+	
+	/**
+	 * @return The trains routes map, built from the network the first time it is asked for. It cannot be modified.
+	 */
+	public Map<Town<String>, List<Route>> getTrainsMap() {
+		Map<Town<String>, List<Route>> trainsMap = this.trainsMap;
+		
+		if(trainsMap == null) {
+			synchronized(this) {
+				trainsMap = this.trainsMap;
+				
+				if(trainsMap == null) {
+					trainsMap = buildTrainsMap(routeNetwork);
+					this.trainsMap = trainsMap;
+				}
+			}
+		}
+		
+		return trainsMap;
+	}
+	
+	/**
+	 * One Town instance per town of the network, the towns without routes are left out of the keys.
+	 */
+	private static Map<Town<String>, List<Route>> buildTrainsMap(RouteNetwork network) {
+		List<Town<String>> towns = new ArrayList<>(network.getNumberOfTowns());
+		Map<Town<String>, List<Route>> trainsMap = new LinkedHashMap<>();
+		
+		for(int townId = 0; townId < network.getNumberOfTowns(); townId++) {
+			towns.add(new PublishedTown(network.getTownName(townId)));
+		}
+		
+		for(int townId = 0; townId < network.getNumberOfTowns(); townId++) {
+			if(network.getOutDegree(townId) > 0) {
+				List<Route> routes = new ArrayList<>(network.getOutDegree(townId));
+				
+				for(int route = network.getFirstRoute(townId); route < network.getRoutesEnd(townId); route++) {
+					routes.add(new PublishedRoute(towns.get(network.getRouteTarget(route)), network.getRouteDistance(route)));
+				}
+				
+				trainsMap.put(towns.get(townId), Collections.unmodifiableList(routes));
+			}
+		}
+		
+		return Collections.unmodifiableMap(trainsMap);
+	}
+	
+	/**
+	 * @return The compact network of the trains routes.
+	 */
+	public RouteNetwork getRouteNetwork() {
+		return routeNetwork;
+	}
+	
+	private static CompactRouteNetwork compileRouteNetwork(Map<Town<String>, List<Route>> trainsMap) {
+		CompactRouteNetwork.Builder builder = new CompactRouteNetwork.Builder();
+		
+		for(Map.Entry<Town<String>, List<Route>> entry : trainsMap.entrySet()) {
+			int startingTownId = builder.addTown(entry.getKey().getTownName());
+			
+			for(Route route : entry.getValue()) {
+				builder.addRoute(startingTownId, builder.addTown(route.getTown().getTownName()), route.getDistance());
+			}
+		}
+		
+		return builder.build();
+	}
+	
+	/**
+	 * @return The planner of the queries over the network, with the {@link NetworkStatistics} of the network.
+	 */
+	public QueryPlanner getQueryPlanner() {
+		return queryPlanner;
+	}
+	
+	@Override
+	public String toString() {
+		return "TrainsRoutesSnapshot [version=" + version + ", network=" + routeNetwork + "]";
+	}
+	
+	/**
+	 * A town of a version, its name cannot be changed.
+	 */
+	private static final class PublishedTown extends Town<String> {
+		PublishedTown(String townName) {
+			super(townName);
+		}
+		
+		@Override
+		public void setTownName(String town) {
+			throw new UnsupportedOperationException("The town " + getTownName() + " of a version of the trains routes cannot be renamed");
+		}
+	}
+	
+	/**
+	 * A route of a version, its town and distance cannot be changed.
+	 */
+	private static final class PublishedRoute extends Route {
+		PublishedRoute(Town<String> town, int distance) {
+			super(town, distance);
+		}
+		
+		@Override
+		public void setTown(Town<String> town) {
+			throw new UnsupportedOperationException("The route " + this + " of a version of the trains routes cannot be changed");
+		}
+		
+		@Override
+		public void setDistance(int distance) {
+			throw new UnsupportedOperationException("The route " + this + " of a version of the trains routes cannot be changed");
+		}
+	}
+}
@@ -0,0 +1,331 @@
+package com.ccc.routes.search;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import com.ccc.routes.network.RouteNetwork;
+
+/**
+ * The shortest distance between every pair of towns of a {@link RouteNetwork}, precomputed into a flat table indexed
+ * by starting town * number of towns + ending town, so a lookup is a single read. A second table holds the next town
+ * of every shortest route, a route is rebuilt by following it without searching again. As with the
+ * {@link DijkstraSearch}, the distance from a town to itself is the distance of its shortest round trip.
+ *
+ * Dense networks are computed with a cache blocked Floyd-Warshall, one block of towns at a time and the blocks of
+ * each phase in parallel. Sparse networks are computed with one Dijkstra search from every town, the starting towns
+ * spread across the pool. Tables over {@link #OFF_HEAP_THRESHOLD} entries are held in direct memory, outside of the
+ * heap, and always computed by the Dijkstra searches. The tables take 8 * towns^2 bytes, networks of more than
+ * {@link #DEFAULT_MAX_TOWNS} towns, or of the maximum given, are rejected rather than precomputed.
+ *
+ * @author gibrancastillo
+ *
+ */
+public final class AllPairsShortestDistances {
+	public static final long OFF_HEAP_THRESHOLD = 1L << 24;
+	/** 2^28 entries, 1 GiB, per table */
+	public static final int DEFAULT_MAX_TOWNS = 1 << 14;
+	private static final int INFINITY = Integer.MAX_VALUE;
+	private static final int NO_TOWN = -1;
+	private static final int BLOCK_SIZE = 64;
+	private static final int ROWS_PER_TASK = 16;
+	
+	public enum Algorithm {
+		FLOYD_WARSHALL, DIJKSTRA
+	}
+	
+	private final RouteNetwork network;
+	private final int numberOfTowns;
+	private final Algorithm algorithm;
+	private final IntTable distances;
+	private final IntTable nextTownIds;
+	
+	private AllPairsShortestDistances(RouteNetwork network, Algorithm algorithm, boolean isOffHeap) {
+		this.network = network;
+		this.numberOfTowns = network.getNumberOfTowns();
+		this.algorithm = algorithm;
+		this.distances = new IntTable((long) numberOfTowns * numberOfTowns, isOffHeap);
+		this.nextTownIds = new IntTable((long) numberOfTowns * numberOfTowns, isOffHeap);
+	}
+	
+	/**
+	 * Computes the table of the network in the common pool with the algorithm that suits the density of the network.
+	 *
+	 * @param network
+	 * @return The shortest distances of the network.
+	 * @throws IllegalArgumentException when the network has more than {@link #DEFAULT_MAX_TOWNS} towns.
+	 */
+	public static AllPairsShortestDistances compute(RouteNetwork network) {
+		return compute(network, DEFAULT_MAX_TOWNS);
+	}
+	
+	/**
+	 * @param network
+	 * @param maxTowns - the most towns of a network whose tables are computed.
+	 * @return The shortest distances of the network.
+	 * @throws IllegalArgumentException when the network has more than maxTowns towns.
+	 */
+	public static AllPairsShortestDistances compute(RouteNetwork network, int maxTowns) {
+		return compute(network, ForkJoinPool.commonPool(), chooseAlgorithm(network), maxTowns);
+	}
+	
+	/**
+	 * @param network
+	 * @param pool - the pool the computation is spread across.
+	 * @param algorithm - Floyd-Warshall is only used for tables held on the heap.
+	 * @return The shortest distances of the network.
+	 * @throws IllegalArgumentException when the network has more than {@link #DEFAULT_MAX_TOWNS} towns.
+	 */
+	public static AllPairsShortestDistances compute(RouteNetwork network, ForkJoinPool pool, Algorithm algorithm) {
+		return compute(network, pool, algorithm, DEFAULT_MAX_TOWNS);
+	}
+	
+	/**
+	 * @param network
+	 * @param pool - the pool the computation is spread across.
+	 * @param algorithm - Floyd-Warshall is only used for tables held on the heap.
+	 * @param maxTowns - the most towns of a network whose tables are computed.
+	 * @return The shortest distances of the network.
+	 * @throws IllegalArgumentException when the network has more than maxTowns towns.
+	 */
+	public static AllPairsShortestDistances compute(RouteNetwork network, ForkJoinPool pool, Algorithm algorithm, int maxTowns) {
+		if(network.getNumberOfTowns() > maxTowns) {
+			throw new IllegalArgumentException("The shortest distances of " + network.getNumberOfTowns() + " towns take "
+					+ 8L * network.getNumberOfTowns() * network.getNumberOfTowns() + " bytes, at most " + maxTowns + " towns are precomputed");
+		}
+		
+		long numberOfEntries = (long) network.getNumberOfTowns() * network.getNumberOfTowns();
+		
+		return compute(network, pool, algorithm, numberOfEntries > OFF_HEAP_THRESHOLD);
+	}
+	
+	static AllPairsShortestDistances compute(RouteNetwork network, ForkJoinPool pool, Algorithm algorithm, boolean isOffHeap) {
+		AllPairsShortestDistances shortestDistances = new AllPairsShortestDistances(network,
+				isOffHeap ? Algorithm.DIJKSTRA : algorithm, isOffHeap);
+		
+		if(shortestDistances.algorithm == Algorithm.FLOYD_WARSHALL) {
+			shortestDistances.computeByFloydWarshall(pool);
+		} else {
+			shortestDistances.computeByDijkstra(pool);
+		}
+		
+		return shortestDistances;
+	}
+	
+	/**
+	 * Floyd-Warshall takes V^3 steps and a Dijkstra search from every town about V * E * log(V), so Floyd-Warshall
+	 * is chosen once E * log(V) reaches V^2.
+	 *
+	 * @param network
+	 * @return The algorithm that suits the density of the network.
+	 */
+	public static Algorithm chooseAlgorithm(RouteNetwork network) {
+		long numberOfTowns = network.getNumberOfTowns();
+		long log = 64 - Long.numberOfLeadingZeros(numberOfTowns);
+		
+		return network.getNumberOfRoutes() * log >= numberOfTowns * numberOfTowns ? Algorithm.FLOYD_WARSHALL : Algorithm.DIJKSTRA;
+	}
+	
+	public RouteNetwork getNetwork() {
+		return network;
+	}
+	
+	public Algorithm getAlgorithm() {
+		return algorithm;
+	}
+	
+	public boolean isOffHeap() {
+		return distances.isOffHeap();
+	}
+	
+	/**
+	 * @param startingTownId
+	 * @param endingTownId
+	 * @return The shortest distance, or {@link TownPath#NO_ROUTE} when the ending town cannot be reached.
+	 */
+	public int getDistance(int startingTownId, int endingTownId) {
+		if(startingTownId < 0 || endingTownId < 0) {
+			return TownPath.NO_ROUTE;
+		}
+		
+		int distance = distances.get(index(startingTownId, endingTownId));
+		
+		return distance == INFINITY ? TownPath.NO_ROUTE : distance;
+	}
+	
+	/**
+	 * Rebuilds the shortest route by following the next towns from the starting town to the ending town.
+	 *
+	 * @param startingTownId
+	 * @param endingTownId
+	 * @return The shortest route, or {@link TownPath#noRoute()} when the ending town cannot be reached.
+	 */
+	public TownPath getPath(int startingTownId, int endingTownId) {
+		int distance = getDistance(startingTownId, endingTownId);
+		
+		if(distance == TownPath.NO_ROUTE) {
+			return TownPath.noRoute();
+		}
+		
+		int numberOfTowns = 1;
+		int townId = startingTownId;
+		
+		do {
+			townId = nextTownIds.get(index(townId, endingTownId));
+			
+			if(++numberOfTowns > this.numberOfTowns + 1) {
+				throw new IllegalStateException("The next towns from " + startingTownId + " to " + endingTownId + " do not end");
+			}
+		} while(townId != endingTownId);
+		
+		int[] townIds = new int[numberOfTowns];
+		townIds[0] = startingTownId;
+		
+		for(int i = 1; i < numberOfTowns; i++) {
+			townIds[i] = nextTownIds.get(index(townIds[i - 1], endingTownId));
+		}
+		
+		return new TownPath(townIds, distance);
+	}
+	
+	private long index(int startingTownId, int endingTownId) {
+		return (long) startingTownId * numberOfTowns + endingTownId;
+	}
+	
+	private void computeByDijkstra(ForkJoinPool pool) {
+		int numberOfTasks = (numberOfTowns + ROWS_PER_TASK - 1) / ROWS_PER_TASK;
+		
+		pool.submit(() -> IntStream.range(0, numberOfTasks).parallel().forEach(task -> {
+			int[] rowDistances = new int[numberOfTowns];
+			int[] firstTownIds = new int[numberOfTowns];
+			boolean[] isSettled = new boolean[numberOfTowns];
+			IntMinHeap heap = new IntMinHeap(numberOfTowns);
+			
+			for(int townId = task * ROWS_PER_TASK; townId < Math.min(numberOfTowns, (task + 1) * ROWS_PER_TASK); townId++) {
+				computeRow(townId, rowDistances, firstTownIds, isSettled, heap);
+			}
+		})).join();
+	}
+	
+	/**
+	 * A Dijkstra search from the starting town to every town, keeping the first town after the starting town of
+	 * every shortest route instead of the previous town. The starting town is not settled at distance zero, its
+	 * outgoing routes seed the heap, so its own entry is its shortest round trip.
+	 */
+	private void computeRow(int startingTownId, int[] rowDistances, int[] firstTownIds, boolean[] isSettled, IntMinHeap heap) {
+		Arrays.fill(rowDistances, INFINITY);
+		Arrays.fill(firstTownIds, NO_TOWN);
+		Arrays.fill(isSettled, false);
+		heap.clear();
+		
+		for(int route = network.getFirstRoute(startingTownId), end = network.getRoutesEnd(startingTownId); route < end; route++) {
+			int nextTownId = network.getRouteTarget(route);
+			int nextDistance = network.getRouteDistance(route);
+			
+			if(nextDistance < rowDistances[nextTownId]) {
+				rowDistances[nextTownId] = nextDistance;
+				firstTownIds[nextTownId] = nextTownId;
+				heap.insertOrDecrease(nextTownId, nextDistance);
+			}
+		}
+		
+		while(!heap.isEmpty()) {
+			int distance = heap.peekKey();
+			int townId = heap.poll();
+			isSettled[townId] = true;
+			
+			for(int route = network.getFirstRoute(townId), end = network.getRoutesEnd(townId); route < end; route++) {
+				int nextTownId = network.getRouteTarget(route);
+				long nextDistance = (long) distance + network.getRouteDistance(route);
+				
+				if(!isSettled[nextTownId] && nextDistance < rowDistances[nextTownId]) {
+					rowDistances[nextTownId] = (int) nextDistance;
+					firstTownIds[nextTownId] = firstTownIds[townId];
+					heap.insertOrDecrease(nextTownId, (int) nextDistance);
+				}
+			}
+		}
+		
+		long rowIndex = index(startingTownId, 0);
+		
+		for(int townId = 0; townId < numberOfTowns; townId++) {
+			distances.set(rowIndex + townId, rowDistances[townId]);
+			nextTownIds.set(rowIndex + townId, firstTownIds[townId]);
+		}
+	}
+	
+	private void computeByFloydWarshall(ForkJoinPool pool) {
+		int[] d = distances.getArray();
+		int[] next = nextTownIds.getArray();
+		Arrays.fill(d, INFINITY);
+		Arrays.fill(next, NO_TOWN);
+		
+		for(int townId = 0; townId < numberOfTowns; townId++) {
+			for(int route = network.getFirstRoute(townId), end = network.getRoutesEnd(townId); route < end; route++) {
+				int index = townId * numberOfTowns + network.getRouteTarget(route);
+				
+				if(network.getRouteDistance(route) < d[index]) {
+					d[index] = network.getRouteDistance(route);
+					next[index] = network.getRouteTarget(route);
+				}
+			}
+		}
+		
+		int numberOfBlocks = (numberOfTowns + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		
+		for(int kBlock = 0; kBlock < numberOfBlocks; kBlock++) {
+			final int k = kBlock;
+			//The block of the pivot towns first, then the blocks in their rows and columns, then every other block
+			relaxBlock(d, next, k, k, k);
+			
+			pool.submit(() -> IntStream.range(0, numberOfBlocks).parallel().filter(block -> block != k).forEach(block -> {
+				relaxBlock(d, next, k, block, k);
+				relaxBlock(d, next, block, k, k);
+			})).join();
+			
+			pool.submit(() -> IntStream.range(0, numberOfBlocks * numberOfBlocks).parallel().forEach(block -> {
+				int iBlock = block / numberOfBlocks;
+				int jBlock = block % numberOfBlocks;
+				
+				if(iBlock != k && jBlock != k) {
+					relaxBlock(d, next, iBlock, jBlock, k);
+				}
+			})).join();
+		}
+	}
+	
+	/**
+	 * Relaxes the routes from the towns of one block to the towns of another through the towns of the pivot block.
+	 */
+	private void relaxBlock(int[] d, int[] next, int iBlock, int jBlock, int kBlock) {
+		int n = numberOfTowns;
+		int jStart = jBlock * BLOCK_SIZE;
+		int jEnd = Math.min(jStart + BLOCK_SIZE, n);
+		int iEnd = Math.min((iBlock + 1) * BLOCK_SIZE, n);
+		int kEnd = Math.min((kBlock + 1) * BLOCK_SIZE, n);
+		
+		for(int k = kBlock * BLOCK_SIZE; k < kEnd; k++) {
+			int kRow = k * n;
+			
+			for(int i = iBlock * BLOCK_SIZE; i < iEnd; i++) {
+				int iRow = i * n;
+				int dik = d[iRow + k];
+				
+				if(dik == INFINITY) {
+					continue;
+				}
+				
+				int nik = next[iRow + k];
+				
+				for(int j = jStart; j < jEnd; j++) {
+					int dkj = d[kRow + j];
+					
+					if(dkj != INFINITY && (long) dik + dkj < d[iRow + j]) {
+						d[iRow + j] = dik + dkj;
+						next[iRow + j] = nik;
+					}
+				}
+			}
+		}
+	}
+}
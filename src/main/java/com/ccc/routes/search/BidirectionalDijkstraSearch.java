@@ -0,0 +1,370 @@
+package com.ccc.routes.search;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.ccc.routes.network.ReverseRouteIndex;
+import com.ccc.routes.network.RouteNetwork;
+
+/**
+ * Dijkstra's algorithm from both ends at once, forward from the starting town over the routes of the
+ * {@link RouteNetwork} and backward from the ending town over its {@link ReverseRouteIndex}. Whenever a direction
+ * follows a route to a town the other direction has reached, the route through it is a candidate, and the search
+ * stops once the keys at the top of both heaps add up to at least the shortest candidate: any route left is as long.
+ * Each direction only settles the towns about halfway to the other end, on a long route about half the towns a search
+ * from the starting town alone settles.
+ *
+ * The directions either take turns on the calling thread, the one with the smaller key first, or run at the same time,
+ * the backward one on a {@link ForkJoinPool}. Running at the same time, a direction reads the distances of the other
+ * with volatile reads and writes its own with volatile writes, so of the two directions following the same route at the
+ * same time, at least one sees the town reached by the other. A direction publishes the key at the top of its heap
+ * once it has followed the routes of every town settled before, and stops on its own key and the key the other one
+ * published, or as soon as the other one has stopped.
+ *
+ * The pool may be shared by many queries at once. When the forward direction stops before a thread of the pool took
+ * the backward one, the calling thread takes it back and does not wait for the pool: a forward direction that ran
+ * alone is a whole search from the starting town. When the pool rejects the backward direction, e.g. because it was
+ * shut down, the directions take turns on the calling thread.
+ *
+ * When the starting town is also the ending town the shortest round trip is searched by {@link DijkstraSearch}.
+ *
+ * @author gibrancastillo
+ *
+ */
+public final class BidirectionalDijkstraSearch {
+	private static final int INFINITY = Integer.MAX_VALUE;
+	private static final ThreadLocal<Workspace> WORKSPACES = ThreadLocal.withInitial(Workspace::new);
+	private static final VarHandle ENTRIES = MethodHandles.arrayElementVarHandle(long[].class);
+	
+	private final RouteNetwork network;
+	private final ReverseRouteIndex reverseRouteIndex;
+	private final ForkJoinPool pool;
+	
+	/**
+	 * @param network - both directions take turns on the calling thread.
+	 */
+	public BidirectionalDijkstraSearch(RouteNetwork network) {
+		this(network, null);
+	}
+	
+	/**
+	 * @param network
+	 * @param pool - the pool the backward direction runs on, or null for both directions to take turns on the calling
+	 * thread.
+	 */
+	public BidirectionalDijkstraSearch(RouteNetwork network, ForkJoinPool pool) {
+		this.network = network;
+		this.reverseRouteIndex = network.getReverseRouteIndex();
+		this.pool = pool;
+	}
+	
+	/**
+	 * Finds the shortest route (in terms of distance to travel) from the starting town to the ending town.
+	 *
+	 * @param startingTownId
+	 * @param endingTownId
+	 * @return The shortest route, or {@link TownPath#noRoute()} when the ending town cannot be reached.
+	 */
+	public TownPath findShortestPath(int startingTownId, int endingTownId) {
+		if(startingTownId == endingTownId) {
+			return new DijkstraSearch(network).findShortestPath(startingTownId, endingTownId);
+		}
+		
+		Workspace workspace = WORKSPACES.get();
+		workspace.reset(network.getNumberOfTowns(), pool != null);
+		Direction forward = workspace.forward;
+		Direction backward = workspace.backward;
+		forward.start(startingTownId);
+		backward.start(endingTownId);
+		
+		if(pool == null) {
+			takeTurns(workspace);
+		} else {
+			//Whichever of the pool and the calling thread takes the backward direction first runs or skips it
+			AtomicBoolean isBackwardTaken = new AtomicBoolean();
+			ForkJoinTask<?> backwardTask;
+			
+			try {
+				backwardTask = pool.submit(() -> {
+					if(isBackwardTaken.compareAndSet(false, true)) {
+						backward.run(network, reverseRouteIndex);
+					}
+				});
+			} catch(RejectedExecutionException e) {
+				backwardTask = null;
+			}
+			
+			if(backwardTask == null) {
+				takeTurns(workspace);
+			} else {
+				forward.run(network, reverseRouteIndex);
+				
+				if(!isBackwardTaken.compareAndSet(false, true)) {
+					backwardTask.join();
+				}
+			}
+		}
+		
+		SearchCounters.current().add(forward.townsExpanded + backward.townsExpanded, forward.routesRelaxed + backward.routesRelaxed);
+		
+		return workspace.meetingDistance == INFINITY ? TownPath.noRoute() : workspace.buildPath(startingTownId, endingTownId);
+	}
+	
+	/**
+	 * Settles the towns of both directions on the calling thread, the one with the smaller key first.
+	 */
+	private void takeTurns(Workspace workspace) {
+		Direction forward = workspace.forward;
+		Direction backward = workspace.backward;
+		
+		//Both keys are INFINITY once both heaps are empty, which is never less than the shortest candidate
+		while((long) forward.getTopKey() + backward.getTopKey() < workspace.meetingDistance) {
+			if(forward.getTopKey() <= backward.getTopKey()) {
+				forward.settleNext(network, reverseRouteIndex);
+			} else {
+				backward.settleNext(network, reverseRouteIndex);
+			}
+		}
+	}
+	
+	/**
+	 * The scratch arrays of both directions and the shortest candidate found so far, one per calling thread.
+	 */
+	private static final class Workspace {
+		private final Direction forward = new Direction(this, true);
+		private final Direction backward = new Direction(this, false);
+		private int stamp;
+		private boolean isConcurrent;
+		private volatile boolean isStopped;
+		//The shortest candidate: the distance, the last town reached forward and the first town reached backward
+		private volatile long meetingDistance;
+		private int meetingForwardTownId;
+		private int meetingBackwardTownId;
+		
+		void reset(int numberOfTowns, boolean isConcurrent) {
+			boolean isGrown = forward.ensureCapacity(numberOfTowns) | backward.ensureCapacity(numberOfTowns);
+			
+			if(isGrown) {
+				stamp = 0;
+			}
+			
+			if(++stamp == Integer.MAX_VALUE) {
+				forward.clear();
+				backward.clear();
+				stamp = 1;
+			}
+			
+			this.isConcurrent = isConcurrent;
+			isStopped = false;
+			meetingDistance = INFINITY;
+		}
+		
+		/**
+		 * Keeps the candidate through the towns when it is shorter than the shortest one so far.
+		 */
+		void meet(long distance, int forwardTownId, int backwardTownId) {
+			if(distance < meetingDistance) {
+				synchronized(this) {
+					if(distance < meetingDistance) {
+						meetingForwardTownId = forwardTownId;
+						meetingBackwardTownId = backwardTownId;
+						meetingDistance = distance;
+					}
+				}
+			}
+		}
+		
+		/**
+		 * Walks the previous towns back from the meeting to the starting town and the next towns on to the ending town.
+		 * A town reached may have been reached again by a shorter route after the meeting was kept, its previous or next
+		 * towns then lead along the shorter route, so the route walked is never longer than the meeting distance.
+		 *
+		 * @return The route through the meeting.
+		 */
+		synchronized TownPath buildPath(int startingTownId, int endingTownId) {
+			int numberOfForwardTowns = 1;
+			int numberOfBackwardTowns = 1;
+			
+			for(int townId = meetingForwardTownId; townId != startingTownId; townId = forward.previousTownIds[townId]) {
+				numberOfForwardTowns++;
+			}
+			
+			for(int townId = meetingBackwardTownId; townId != endingTownId; townId = backward.previousTownIds[townId]) {
+				numberOfBackwardTowns++;
+			}
+			
+			int[] townIds = new int[numberOfForwardTowns + numberOfBackwardTowns];
+			int townId = meetingForwardTownId;
+			
+			for(int i = numberOfForwardTowns - 1; i >= 0; i--) {
+				townIds[i] = townId;
+				townId = forward.previousTownIds[townId];
+			}
+			
+			townId = meetingBackwardTownId;
+			
+			for(int i = numberOfForwardTowns; i < townIds.length; i++) {
+				townIds[i] = townId;
+				townId = backward.previousTownIds[townId];
+			}
+			
+			return new TownPath(townIds, (int) meetingDistance);
+		}
+	}
+	
+	/**
+	 * The search of one direction. A reached town has an entry of the stamp of the query in its high half and its
+	 * distance in its low half, so the other direction reads both at once.
+	 */
+	private static final class Direction {
+		private final Workspace workspace;
+		private final boolean isForward;
+		private long[] entries = new long[0];
+		//The town before on the route from the starting town forward, the town after on the route to the ending town backward
+		private int[] previousTownIds = new int[0];
+		private int[] settledStamps = new int[0];
+		private final IntMinHeap heap = new IntMinHeap(1);
+		private volatile int publishedKey;
+		private long townsExpanded;
+		private long routesRelaxed;
+		
+		Direction(Workspace workspace, boolean isForward) {
+			this.workspace = workspace;
+			this.isForward = isForward;
+		}
+		
+		/**
+		 * @return true when the arrays were grown.
+		 */
+		boolean ensureCapacity(int numberOfTowns) {
+			heap.clear();
+			heap.ensureCapacity(numberOfTowns);
+			
+			if(numberOfTowns > entries.length) {
+				entries = new long[numberOfTowns];
+				previousTownIds = new int[numberOfTowns];
+				settledStamps = new int[numberOfTowns];
+				
+				return true;
+			}
+			
+			return false;
+		}
+		
+		void clear() {
+			Arrays.fill(entries, 0);
+			Arrays.fill(settledStamps, 0);
+		}
+		
+		void start(int townId) {
+			townsExpanded = 0;
+			routesRelaxed = 0;
+			publishedKey = 0;
+			setDistance(townId, 0, townId);
+			heap.insertOrDecrease(townId, 0);
+		}
+		
+		private Direction getOther() {
+			return isForward ? workspace.backward : workspace.forward;
+		}
+		
+		int getTopKey() {
+			return heap.isEmpty() ? INFINITY : heap.peekKey();
+		}
+		
+		/**
+		 * @return The distance of the town reached, read with a volatile read when the directions run at the same time,
+		 * or {@link #INFINITY}.
+		 */
+		int getDistance(int townId) {
+			long entry = workspace.isConcurrent ? (long) ENTRIES.getVolatile(entries, townId) : entries[townId];
+			
+			return (int) (entry >>> 32) == workspace.stamp ? (int) entry : INFINITY;
+		}
+		
+		private int getOwnDistance(int townId) {
+			long entry = entries[townId];
+			
+			return (int) (entry >>> 32) == workspace.stamp ? (int) entry : INFINITY;
+		}
+		
+		private void setDistance(int townId, int distance, int previousTownId) {
+			previousTownIds[townId] = previousTownId;
+			long entry = ((long) workspace.stamp << 32) | distance;
+			
+			if(workspace.isConcurrent) {
+				ENTRIES.setVolatile(entries, townId, entry);
+			} else {
+				entries[townId] = entry;
+			}
+		}
+		
+		/**
+		 * Settles towns until the keys show no shorter route is left or the other direction has stopped.
+		 */
+		void run(RouteNetwork network, ReverseRouteIndex reverseRouteIndex) {
+			Direction other = getOther();
+			
+			while(!workspace.isStopped) {
+				int key = getTopKey();
+				publishedKey = key;
+				
+				if((long) key + other.publishedKey >= workspace.meetingDistance) {
+					break;
+				}
+				
+				settleNext(network, reverseRouteIndex);
+			}
+			
+			workspace.isStopped = true;
+		}
+		
+		/**
+		 * Settles the town at the top of the heap and follows its routes, forward or backward.
+		 */
+		void settleNext(RouteNetwork network, ReverseRouteIndex reverseRouteIndex) {
+			Direction other = getOther();
+			int distance = heap.peekKey();
+			int townId = heap.poll();
+			settledStamps[townId] = workspace.stamp;
+			townsExpanded++;
+			
+			if(isForward) {
+				routesRelaxed += network.getOutDegree(townId);
+				
+				for(int route = network.getFirstRoute(townId), end = network.getRoutesEnd(townId); route < end; route++) {
+					relax(townId, network.getRouteTarget(route), (long) distance + network.getRouteDistance(route), other);
+				}
+			} else {
+				routesRelaxed += reverseRouteIndex.getInDegree(townId);
+				
+				for(int reverseRoute = reverseRouteIndex.getFirstRoute(townId), end = reverseRouteIndex.getRoutesEnd(townId); reverseRoute < end; reverseRoute++) {
+					relax(townId, reverseRouteIndex.getRouteSource(reverseRoute), (long) distance + reverseRouteIndex.getRouteDistance(reverseRoute),
+							other);
+				}
+			}
+		}
+		
+		private void relax(int townId, int nextTownId, long nextDistance, Direction other) {
+			int otherDistance = other.getDistance(nextTownId);
+			
+			if(otherDistance != INFINITY) {
+				if(isForward) {
+					workspace.meet(nextDistance + otherDistance, townId, nextTownId);
+				} else {
+					workspace.meet(nextDistance + otherDistance, nextTownId, townId);
+				}
+			}
+			
+			if(nextDistance < INFINITY && settledStamps[nextTownId] != workspace.stamp && nextDistance < getOwnDistance(nextTownId)) {
+				setDistance(nextTownId, (int) nextDistance, townId);
+				heap.insertOrDecrease(nextTownId, (int) nextDistance);
+			}
+		}
+	}
+}
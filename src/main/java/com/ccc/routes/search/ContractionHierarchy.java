@@ -0,0 +1,490 @@
+package com.ccc.routes.search;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import com.ccc.routes.network.IntList;
+import com.ccc.routes.network.RouteNetwork;
+
+/**
+ * A contraction hierarchy of a {@link RouteNetwork}: the towns ranked by the order they were contracted in by the
+ * {@link HierarchyContractor}, and the routes and shortcuts split into the routes up the hierarchy, to a town of a
+ * higher rank, and the routes down it. Every shortest route is as short as a route up the hierarchy followed by a
+ * route down it, so a query is a search up from the starting town and a search up, over the routes down taken
+ * backward, from the ending town. Both searches only see a few hundred towns even on large networks.
+ *
+ * A shortcut keeps the town it was added for, the route is rebuilt by unpacking the shortcuts into the two routes
+ * through that town until only routes of the network are left. The shortest round trip of a town is the round trip
+ * through the towns below it kept by the contraction, or the shortest meeting of both searches at another town.
+ *
+ * The hierarchy can be written next to the network and read back, see {@link #getPath(Path)}. The file is a
+ * {@link NetworkFiles} file, magic 'TRCH', with the number of routes up and down the hierarchy in its header.
+ * A hierarchy is immutable and can be queried from many threads at once.
+ *
+ * @author gibrancastillo
+ *
+ */
+public final class ContractionHierarchy {
+	public static final int MAGIC = 0x48435254; //TRCH in little-endian
+	public static final int VERSION = 1;
+	public static final int DEFAULT_WITNESS_SETTLE_LIMIT = 500;
+	private static final int INFINITY = HierarchyContractor.INFINITY;
+	private static final int NO_TOWN = HierarchyContractor.NO_TOWN;
+	private static final String DESCRIPTION = "contraction hierarchy";
+	
+	private final RouteNetwork network;
+	private final int numberOfTowns;
+	private final int[] ranks;
+	private final int[] roundTripDistances;
+	private final int[] roundTripMiddles;
+	//The routes up the hierarchy leaving every town, in compressed sparse rows
+	private final int[] upOffsets;
+	private final int[] upTargets;
+	private final int[] upDistances;
+	private final int[] upMiddles;
+	//The routes down the hierarchy reaching every town, by the town they leave
+	private final int[] downOffsets;
+	private final int[] downSources;
+	private final int[] downDistances;
+	private final int[] downMiddles;
+	private final int numberOfShortcuts;
+	private final int numberOfRounds;
+	private final ThreadLocal<QueryWorkspace> workspaces;
+	
+	private ContractionHierarchy(RouteNetwork network, int[] ranks, int[] roundTripDistances, int[] roundTripMiddles, int[] upOffsets, int[] upTargets,
+			int[] upDistances, int[] upMiddles, int[] downOffsets, int[] downSources, int[] downDistances, int[] downMiddles, int numberOfShortcuts,
+			int numberOfRounds) {
+		this.network = network;
+		this.numberOfTowns = network.getNumberOfTowns();
+		this.ranks = ranks;
+		this.roundTripDistances = roundTripDistances;
+		this.roundTripMiddles = roundTripMiddles;
+		this.upOffsets = upOffsets;
+		this.upTargets = upTargets;
+		this.upDistances = upDistances;
+		this.upMiddles = upMiddles;
+		this.downOffsets = downOffsets;
+		this.downSources = downSources;
+		this.downDistances = downDistances;
+		this.downMiddles = downMiddles;
+		this.numberOfShortcuts = numberOfShortcuts;
+		this.numberOfRounds = numberOfRounds;
+		this.workspaces = ThreadLocal.withInitial(() -> new QueryWorkspace(numberOfTowns));
+	}
+	
+	/**
+	 * Splits the routes and shortcuts left by the contraction into the routes up and down the hierarchy.
+	 */
+	static ContractionHierarchy fromContraction(RouteNetwork network, int[] ranks, HierarchyContractor.Edges[] outgoingEdges,
+			HierarchyContractor.Edges[] incomingEdges, int[] roundTripDistances, int[] roundTripMiddles, int numberOfShortcuts, int numberOfRounds) {
+		int numberOfTowns = network.getNumberOfTowns();
+		IntList up = new IntList();
+		IntList down = new IntList();
+		int[] upOffsets = new int[numberOfTowns + 1];
+		int[] downOffsets = new int[numberOfTowns + 1];
+		
+		for(int townId = 0; townId < numberOfTowns; townId++) {
+			addEdges(townId, ranks, outgoingEdges[townId], up);
+			addEdges(townId, ranks, incomingEdges[townId], down);
+			upOffsets[townId + 1] = up.size() / 3;
+			downOffsets[townId + 1] = down.size() / 3;
+		}
+		
+		int[][] upEdges = split(up);
+		int[][] downEdges = split(down);
+		
+		return new ContractionHierarchy(network, ranks, roundTripDistances, roundTripMiddles, upOffsets, upEdges[0], upEdges[1], upEdges[2], downOffsets,
+				downEdges[0], downEdges[1], downEdges[2], numberOfShortcuts, numberOfRounds);
+	}
+	
+	private static void addEdges(int townId, int[] ranks, HierarchyContractor.Edges edges, IntList higherEdges) {
+		for(int i = 0; i < edges.size; i++) {
+			if(ranks[edges.townIds[i]] > ranks[townId]) {
+				higherEdges.add(edges.townIds[i]);
+				higherEdges.add(edges.distances[i]);
+				higherEdges.add(edges.middleTownIds[i]);
+			}
+		}
+	}
+	
+	private static int[][] split(IntList edges) {
+		int[][] columns = new int[3][edges.size() / 3];
+		
+		for(int i = 0; i < edges.size(); i++) {
+			columns[i % 3][i / 3] = edges.get(i);
+		}
+		
+		return columns;
+	}
+	
+	public RouteNetwork getNetwork() {
+		return network;
+	}
+	
+	public int getNumberOfShortcuts() {
+		return numberOfShortcuts;
+	}
+	
+	/**
+	 * @return The number of rounds the towns were contracted in, zero when the hierarchy was read from a file.
+	 */
+	public int getNumberOfRounds() {
+		return numberOfRounds;
+	}
+	
+	/**
+	 * @param townId
+	 * @return The rank of the town, the order it was contracted in.
+	 */
+	public int getRank(int townId) {
+		return ranks[townId];
+	}
+	
+	/**
+	 * Finds the shortest route (in terms of distance to travel) from the starting town to the ending town. When the
+	 * starting town is also the ending town, the shortest round trip is found, as with the {@link DijkstraSearch}.
+	 * The towns settled by both searches are counted as towns expanded in the {@link SearchCounters}.
+	 *
+	 * @param startingTownId
+	 * @param endingTownId
+	 * @return The shortest route, or {@link TownPath#noRoute()} when the ending town cannot be reached.
+	 */
+	public TownPath findShortestPath(int startingTownId, int endingTownId) {
+		if(startingTownId < 0 || endingTownId < 0) {
+			return TownPath.noRoute();
+		}
+		
+		QueryWorkspace workspace = workspaces.get();
+		workspace.reset();
+		Direction forward = workspace.forward;
+		Direction backward = workspace.backward;
+		boolean isRoundTrip = startingTownId == endingTownId;
+		long shortestDistance = isRoundTrip ? roundTripDistances[startingTownId] : INFINITY;
+		int meetingTownId = NO_TOWN;
+		long townsExpanded = 0;
+		long routesRelaxed = 0;
+		
+		forward.reach(startingTownId, 0, NO_TOWN);
+		backward.reach(endingTownId, 0, NO_TOWN);
+		
+		while(true) {
+			boolean isForwardLeft = !forward.heap.isEmpty() && forward.heap.peekKey() < shortestDistance;
+			boolean isBackwardLeft = !backward.heap.isEmpty() && backward.heap.peekKey() < shortestDistance;
+			
+			if(!isForwardLeft && !isBackwardLeft) {
+				break;
+			}
+			
+			boolean isForward = isForwardLeft && (!isBackwardLeft || forward.heap.peekKey() <= backward.heap.peekKey());
+			Direction direction = isForward ? forward : backward;
+			Direction otherDirection = isForward ? backward : forward;
+			int distance = direction.heap.peekKey();
+			int townId = direction.heap.poll();
+			int otherDistance = otherDirection.getDistance(townId);
+			townsExpanded++;
+			
+			//A round trip does not meet where it starts
+			if(otherDistance != INFINITY && !(isRoundTrip && townId == startingTownId) && (long) distance + otherDistance < shortestDistance) {
+				shortestDistance = (long) distance + otherDistance;
+				meetingTownId = townId;
+			}
+			
+			int[] offsets = isForward ? upOffsets : downOffsets;
+			int[] townIds = isForward ? upTargets : downSources;
+			int[] distances = isForward ? upDistances : downDistances;
+			routesRelaxed += offsets[townId + 1] - offsets[townId];
+			
+			for(int edge = offsets[townId]; edge < offsets[townId + 1]; edge++) {
+				long nextDistance = (long) distance + distances[edge];
+				
+				if(nextDistance < direction.getDistance(townIds[edge])) {
+					direction.reach(townIds[edge], (int) nextDistance, edge);
+				}
+			}
+		}
+		
+		SearchCounters.current().add(townsExpanded, routesRelaxed);
+		
+		if(shortestDistance == INFINITY) {
+			return TownPath.noRoute();
+		}
+		
+		IntList townIds = new IntList();
+		townIds.add(startingTownId);
+		
+		if(meetingTownId == NO_TOWN) {
+			unpackRoundTrip(startingTownId, townIds);
+		} else {
+			unpackPath(forward, backward, meetingTownId, townIds);
+		}
+		
+		return new TownPath(townIds.toArray(), (int) shortestDistance);
+	}
+	
+	/**
+	 * Unpacks the routes up from the starting town to the meeting town, then the routes down to the ending town.
+	 */
+	private void unpackPath(Direction forward, Direction backward, int meetingTownId, IntList townIds) {
+		IntList upEdges = new IntList();
+		
+		for(int townId = meetingTownId; forward.getEdge(townId) != NO_TOWN; townId = getUpSource(forward.getEdge(townId))) {
+			upEdges.add(forward.getEdge(townId));
+		}
+		
+		for(int i = upEdges.size() - 1; i >= 0; i--) {
+			int edge = upEdges.get(i);
+			unpack(getUpSource(edge), upTargets[edge], upMiddles[edge], townIds);
+		}
+		
+		for(int townId = meetingTownId; backward.getEdge(townId) != NO_TOWN;) {
+			int edge = backward.getEdge(townId);
+			int nextTownId = getDownTarget(edge);
+			unpack(townId, nextTownId, downMiddles[edge], townIds);
+			townId = nextTownId;
+		}
+	}
+	
+	private void unpackRoundTrip(int townId, IntList townIds) {
+		int middleTownId = roundTripMiddles[townId];
+		
+		if(middleTownId == NO_TOWN) {
+			townIds.add(townId);
+		} else {
+			unpack(townId, middleTownId, findDownMiddle(middleTownId, townId), townIds);
+			unpack(middleTownId, townId, findUpMiddle(middleTownId, townId), townIds);
+		}
+	}
+	
+	/**
+	 * Adds the towns of a route or shortcut after its first town, the shortcuts unpacked on an explicit stack.
+	 */
+	private void unpack(int fromTownId, int toTownId, int middleTownId, IntList townIds) {
+		IntList stack = new IntList();
+		stack.add(fromTownId);
+		stack.add(toTownId);
+		stack.add(middleTownId);
+		
+		while(!stack.isEmpty()) {
+			int middle = stack.removeLast();
+			int to = stack.removeLast();
+			int from = stack.removeLast();
+			
+			if(middle == NO_TOWN) {
+				townIds.add(to);
+			} else {
+				//The middle town was contracted before both ends: the route to it is a route down, the route from it up
+				stack.add(middle);
+				stack.add(to);
+				stack.add(findUpMiddle(middle, to));
+				stack.add(from);
+				stack.add(middle);
+				stack.add(findDownMiddle(middle, from));
+			}
+		}
+	}
+	
+	private int findUpMiddle(int townId, int toTownId) {
+		for(int edge = upOffsets[townId]; edge < upOffsets[townId + 1]; edge++) {
+			if(upTargets[edge] == toTownId) {
+				return upMiddles[edge];
+			}
+		}
+		
+		throw new IllegalStateException("No route up from " + townId + " to " + toTownId);
+	}
+	
+	private int findDownMiddle(int townId, int fromTownId) {
+		for(int edge = downOffsets[townId]; edge < downOffsets[townId + 1]; edge++) {
+			if(downSources[edge] == fromTownId) {
+				return downMiddles[edge];
+			}
+		}
+		
+		throw new IllegalStateException("No route down from " + fromTownId + " to " + townId);
+	}
+	
+	/**
+	 * @return The town a route up leaves, found by its position in the compressed sparse rows.
+	 */
+	private int getUpSource(int edge) {
+		return findRow(upOffsets, edge);
+	}
+	
+	/**
+	 * @return The town a route down reaches.
+	 */
+	private int getDownTarget(int edge) {
+		return findRow(downOffsets, edge);
+	}
+	
+	private int findRow(int[] offsets, int edge) {
+		int index = Arrays.binarySearch(offsets, edge);
+		
+		if(index < 0) {
+			return -index - 2;
+		}
+		
+		//Towns without routes share the offset of the next town, the row is the last town starting at the edge
+		while(offsets[index + 1] == edge) {
+			index++;
+		}
+		
+		return index;
+	}
+	
+	/**
+	 * @param networkPath - the path of the network, e.g. its snapshot.
+	 * @return The path the contraction hierarchy of the network is kept at, next to it.
+	 */
+	public static Path getPath(Path networkPath) {
+		return networkPath.resolveSibling(networkPath.getFileName() + ".ch");
+	}
+	
+	/**
+	 * Writes the hierarchy next to the path and moves it over it once complete.
+	 *
+	 * @param path
+	 * @throws IOException
+	 */
+	public void write(Path path) throws IOException {
+		ByteBuffer buffer = NetworkFiles.allocate(network, MAGIC, VERSION, upTargets.length, downSources.length,
+				5L * numberOfTowns + 2 + 3L * upTargets.length + 3L * downSources.length + 1);
+		buffer.asIntBuffer().put(ranks).put(roundTripDistances).put(roundTripMiddles).put(upOffsets).put(upTargets).put(upDistances).put(upMiddles)
+				.put(downOffsets).put(downSources).put(downDistances).put(downMiddles).put(numberOfShortcuts);
+		NetworkFiles.write(buffer, path);
+	}
+	
+	/**
+	 * Reads the contraction hierarchy of a network.
+	 *
+	 * @param network - the network the hierarchy was built for.
+	 * @param path
+	 * @return The contraction hierarchy.
+	 * @throws IOException when the file cannot be read, is corrupt or was built for another network.
+	 */
+	public static ContractionHierarchy read(RouteNetwork network, Path path) throws IOException {
+		ByteBuffer buffer = NetworkFiles.read(network, path, MAGIC, VERSION, DESCRIPTION);
+		int numberOfTowns = network.getNumberOfTowns();
+		int numberOfUpEdges = Math.max(buffer.getInt(16), 0);
+		int numberOfDownEdges = Math.max(buffer.getInt(20), 0);
+		NetworkFiles.checkSize(buffer, 5L * numberOfTowns + 2 + 3L * numberOfUpEdges + 3L * numberOfDownEdges + 1, path, DESCRIPTION);
+		IntBuffer ints = buffer.asIntBuffer();
+		
+		return new ContractionHierarchy(network, get(ints, numberOfTowns), get(ints, numberOfTowns), get(ints, numberOfTowns), get(ints, numberOfTowns + 1),
+				get(ints, numberOfUpEdges), get(ints, numberOfUpEdges), get(ints, numberOfUpEdges), get(ints, numberOfTowns + 1), get(ints, numberOfDownEdges),
+				get(ints, numberOfDownEdges), get(ints, numberOfDownEdges), ints.get(), 0);
+	}
+	
+	private static int[] get(IntBuffer ints, int length) {
+		int[] array = new int[length];
+		ints.get(array);
+		
+		return array;
+	}
+	
+	/**
+	 * Builds the contraction hierarchy of a network.
+	 */
+	public static final class Builder {
+		private final RouteNetwork network;
+		private ForkJoinPool pool = ForkJoinPool.commonPool();
+		private int witnessSettleLimit = DEFAULT_WITNESS_SETTLE_LIMIT;
+		
+		public Builder(RouteNetwork network) {
+			this.network = network;
+		}
+		
+		/**
+		 * @param pool - the pool the contraction is spread across, the common pool by default.
+		 * @return This builder.
+		 */
+		public Builder pool(ForkJoinPool pool) {
+			this.pool = pool;
+			return this;
+		}
+		
+		/**
+		 * @param witnessSettleLimit - the number of towns a witness search settles before giving up and adding the
+		 * shortcut, a lower limit builds faster but adds more shortcuts.
+		 * @return This builder.
+		 */
+		public Builder witnessSettleLimit(int witnessSettleLimit) {
+			if(witnessSettleLimit < 1) {
+				throw new IllegalArgumentException("The witness settle limit must be positive: " + witnessSettleLimit);
+			}
+			
+			this.witnessSettleLimit = witnessSettleLimit;
+			return this;
+		}
+		
+		public ContractionHierarchy build() {
+			return new HierarchyContractor(network, pool, witnessSettleLimit).contract();
+		}
+	}
+	
+	/**
+	 * The distances and the route reaching every town of one of the searches of a query, stamped as in a
+	 * {@link SearchWorkspace}.
+	 */
+	private static final class Direction {
+		private final int[] distances;
+		private final int[] edges;
+		private final int[] stamps;
+		private final IntMinHeap heap;
+		private int stamp;
+		
+		Direction(int numberOfTowns) {
+			distances = new int[numberOfTowns];
+			edges = new int[numberOfTowns];
+			stamps = new int[numberOfTowns];
+			heap = new IntMinHeap(numberOfTowns);
+		}
+		
+		void reset() {
+			if(++stamp == Integer.MAX_VALUE) {
+				Arrays.fill(stamps, 0);
+				stamp = 1;
+			}
+			
+			heap.clear();
+		}
+		
+		void reach(int townId, int distance, int edge) {
+			distances[townId] = distance;
+			edges[townId] = edge;
+			stamps[townId] = stamp;
+			heap.insertOrDecrease(townId, distance);
+		}
+		
+		int getDistance(int townId) {
+			return stamps[townId] == stamp ? distances[townId] : INFINITY;
+		}
+		
+		/**
+		 * @return The route the search reached the town by, or {@link HierarchyContractor#NO_TOWN} for the town it
+		 * started from.
+		 */
+		int getEdge(int townId) {
+			return edges[townId];
+		}
+	}
+	
+	private static final class QueryWorkspace {
+		private final Direction forward;
+		private final Direction backward;
+		
+		QueryWorkspace(int numberOfTowns) {
+			forward = new Direction(numberOfTowns);
+			backward = new Direction(numberOfTowns);
+		}
+		
+		void reset() {
+			forward.reset();
+			backward.reset();
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package com.ccc.routes.search;
+
+import com.ccc.routes.network.RouteNetwork;
+
+/**
+ * Dijkstra's algorithm over a {@link RouteNetwork}. The frontier is an indexed binary heap of town ids
+ * with decrease-key, the tentative distances live in a per-thread {@link SearchWorkspace}, so a query allocates
+ * nothing but the returned path.
+ *
+ * When the starting town is also the ending town the starting town is not settled at distance zero, its
+ * outgoing routes seed the heap instead, so the search answers the shortest round trip (e.g. B to B).
+ *
+ * @author gibrancastillo
+ *
+ */
+public final class DijkstraSearch {
+	private static final ThreadLocal<SearchWorkspace> WORKSPACES = ThreadLocal.withInitial(SearchWorkspace::new);
+	
+	private final RouteNetwork network;
+	
+	public DijkstraSearch(RouteNetwork network) {
+		this.network = network;
+	}
+	
+	/**
+	 * Finds the shortest route (in terms of distance to travel) from the starting town to the ending town.
+	 *
+	 * @param startingTownId
+	 * @param endingTownId
+	 * @return The shortest route, or {@link TownPath#noRoute()} when the ending town cannot be reached.
+	 */
+	public TownPath findShortestPath(int startingTownId, int endingTownId) {
+		SearchWorkspace workspace = WORKSPACES.get();
+		workspace.reset(network.getNumberOfTowns());
+		IntMinHeap heap = workspace.getHeap();
+		TownPath path = TownPath.noRoute();
+		long townsExpanded = 1;
+		long routesRelaxed = network.getOutDegree(startingTownId);
+		
+		relax(startingTownId, 0, workspace, heap);
+		
+		while(!heap.isEmpty()) {
+			int distance = heap.peekKey();
+			int townId = heap.poll();
+			workspace.settle(townId);
+			
+			if(townId == endingTownId) {
+				path = new TownPath(workspace.buildPath(startingTownId, endingTownId), distance);
+				break;
+			}
+			
+			townsExpanded++;
+			routesRelaxed += network.getOutDegree(townId);
+			relax(townId, distance, workspace, heap);
+		}
+		
+		SearchCounters.current().add(townsExpanded, routesRelaxed);
+		
+		return path;
+	}
+	
+	private void relax(int townId, int distance, SearchWorkspace workspace, IntMinHeap heap) {
+		for(int route = network.getFirstRoute(townId), end = network.getRoutesEnd(townId); route < end; route++) {
+			int nextTownId = network.getRouteTarget(route);
+			//A distance past Integer.MAX_VALUE is never less than the INFINITY of an unreached town, so it is not kept
+			long nextDistance = (long) distance + network.getRouteDistance(route);
+			
+			if(!workspace.isSettled(nextTownId) && nextDistance < workspace.getDistance(nextTownId)) {
+				workspace.setDistance(nextTownId, (int) nextDistance, townId);
+				heap.insertOrDecrease(nextTownId, (int) nextDistance);
+			}
+		}
+	}
+}
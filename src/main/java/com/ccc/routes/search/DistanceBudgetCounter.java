@@ -0,0 +1,297 @@
+package com.ccc.routes.search;
+
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+import com.ccc.routes.network.RouteNetwork;
+import com.ccc.routes.network.TownSymbolTable;
+
+/**
+ * Counts the different routes (walks) from a starting town to every town with a total distance of less than a
+ * given maximum distance, without enumerating the routes.
+ *
+ * The dynamic programming runs over (distance, town): row d holds how many routes of exactly distance d end at
+ * every town. Rows are processed by increasing distance and every route leaving a town pushes its count forward
+ * to row d + route distance, so one pass costs O(routes * maxDistance). Only the rows within the longest route
+ * distance of the current one can still receive counts, so the rows live in a ring buffer of
+ * (longest route distance + 1) rows instead of maxDistance rows.
+ *
+ * A row is sparse, it only holds the towns reached at its distance and their counts, so the memory of a pass grows
+ * with the towns it reaches at once and not with the towns of the network, and the distances no route ends at are
+ * skipped. The counts of a town reached more than once at a distance are summed when its row is processed, in one
+ * array of towns shared by every row. A processed row is kept for the next row needed.
+ *
+ * Counts are kept in 64-bit longs and the pass is started over with {@link BigInteger} arithmetic as soon as a
+ * long would overflow.
+ *
+ * The pass checks the {@link SearchBudget} of the query every {@link SearchBudget#CHECK_INTERVAL} towns expanded, a
+ * count stopped by it carries the routes counted so far to the ending town, the routes shorter than the distance the
+ * pass had reached.
+ *
+ * @author gibrancastillo
+ *
+ */
+public final class DistanceBudgetCounter {
+	private final RouteNetwork network;
+	private final int numberOfTowns;
+	
+	public DistanceBudgetCounter(RouteNetwork network) {
+		this.network = network;
+		this.numberOfTowns = network.getNumberOfTowns();
+	}
+	
+	/**
+	 * Counts in a single pass the different routes from the starting town to every town with a distance of less
+	 * than the maximum distance.
+	 *
+	 * @param startingTownId
+	 * @param maxDistance
+	 * @return The number of different routes by ending town id.
+	 * @throws IllegalStateException when a route distance is not positive, there would be infinitely many routes.
+	 */
+	public RouteCounts countRoutes(int startingTownId, int maxDistance) {
+		return countRoutesToEveryTown(startingTownId, TownSymbolTable.NO_TOWN, maxDistance);
+	}
+	
+	/**
+	 * @param endingTownId - the town whose count a pass stopped by the search budget carries, or
+	 * {@link TownSymbolTable#NO_TOWN} for none.
+	 */
+	private RouteCounts countRoutesToEveryTown(int startingTownId, int endingTownId, int maxDistance) {
+		if(startingTownId < 0 || maxDistance <= 1) {
+			return new RouteCounts(new long[numberOfTowns]);
+		}
+		
+		checkRouteDistances();
+		SearchBudget budget = SearchBudget.current();
+		
+		try {
+			return new RouteCounts(countLongRoutes(startingTownId, endingTownId, maxDistance, budget));
+		} catch(ArithmeticException e) {
+			return new RouteCounts(countBigRoutes(startingTownId, endingTownId, maxDistance, budget));
+		}
+	}
+	
+	/**
+	 * Counts the different routes from the starting town to the ending town with a distance of less than the
+	 * maximum distance.
+	 *
+	 * @param startingTownId
+	 * @param endingTownId
+	 * @param maxDistance
+	 * @return The number of different routes.
+	 * @throws IllegalStateException when a route distance is not positive.
+	 */
+	public BigInteger countRoutes(int startingTownId, int endingTownId, int maxDistance) {
+		return endingTownId < 0 ? BigInteger.ZERO : countRoutesToEveryTown(startingTownId, endingTownId, maxDistance).get(endingTownId);
+	}
+	
+	private void checkRouteDistances() {
+		for(int route = 0; route < network.getNumberOfRoutes(); route++) {
+			if(network.getRouteDistance(route) <= 0) {
+				throw new IllegalStateException("Cannot count routes under a distance budget with a route distance of "
+						+ network.getRouteDistance(route) + " to town '" + network.getTownName(network.getRouteTarget(route)) + "'");
+			}
+		}
+	}
+	
+	/**
+	 * @param startingTownId
+	 * @param endingTownId
+	 * @param maxDistance
+	 * @param budget
+	 * @return The number of different routes by ending town id.
+	 * @throws ArithmeticException when a count overflows a long.
+	 */
+	private long[] countLongRoutes(int startingTownId, int endingTownId, int maxDistance, SearchBudget budget) {
+		int numberOfRows = Math.min(network.getMaxRouteDistance(), maxDistance) + 1;
+		DistanceRow[] rows = new DistanceRow[numberOfRows];
+		Deque<DistanceRow> spareRows = new ArrayDeque<>();
+		long[] townCounts = new long[numberOfTowns];
+		int[] townsReached = new int[numberOfTowns];
+		long[] routesCounters = new long[numberOfTowns];
+		long townsExpanded = 0;
+		long routesRelaxed = 0;
+		rows[0] = new DistanceRow();
+		rows[0].add(startingTownId, 1);
+		
+		for(int distance = 0; distance < maxDistance; distance++) {
+			DistanceRow row = rows[distance % numberOfRows];
+			
+			if(row == null) {
+				continue;
+			}
+			
+			int numberOfTownsReached = 0;
+			
+			for(int i = 0; i < row.size; i++) {
+				int town = row.townIds[i];
+				
+				if(townCounts[town] == 0) {
+					townsReached[numberOfTownsReached++] = town;
+				}
+				
+				townCounts[town] = Math.addExact(townCounts[town], row.counts[i]);
+			}
+			
+			//The row is reused for the next row needed
+			rows[distance % numberOfRows] = null;
+			row.size = 0;
+			spareRows.push(row);
+			
+			for(int i = 0; i < numberOfTownsReached; i++) {
+				int town = townsReached[i];
+				long routes = townCounts[town];
+				townCounts[town] = 0;
+				
+				//The empty route at distance zero is not a route
+				if(distance > 0) {
+					routesCounters[town] = Math.addExact(routesCounters[town], routes);
+				}
+				
+				townsExpanded++;
+				routesRelaxed += network.getOutDegree(town);
+				
+				if((townsExpanded & SearchBudget.CHECK_MASK) == 0 && budget.isExceeded(SearchBudget.CHECK_INTERVAL)) {
+					SearchCounters.current().add(townsExpanded, routesRelaxed);
+					throw budget.exceeded(endingTownId < 0 ? null : BigInteger.valueOf(routesCounters[endingTownId]));
+				}
+				
+				for(int route = network.getFirstRoute(town), end = network.getRoutesEnd(town); route < end; route++) {
+					long nextDistance = (long) distance + network.getRouteDistance(route);
+					
+					if(nextDistance < maxDistance) {
+						int nextRow = (int) (nextDistance % numberOfRows);
+						
+						if(rows[nextRow] == null) {
+							rows[nextRow] = spareRows.isEmpty() ? new DistanceRow() : spareRows.pop();
+						}
+						
+						rows[nextRow].add(network.getRouteTarget(route), routes);
+					}
+				}
+			}
+		}
+		
+		SearchCounters.current().add(townsExpanded, routesRelaxed);
+		
+		return routesCounters;
+	}
+	
+	private BigInteger[] countBigRoutes(int startingTownId, int endingTownId, int maxDistance, SearchBudget budget) {
+		int numberOfRows = Math.min(network.getMaxRouteDistance(), maxDistance) + 1;
+		BigDistanceRow[] rows = new BigDistanceRow[numberOfRows];
+		Deque<BigDistanceRow> spareRows = new ArrayDeque<>();
+		BigInteger[] townCounts = new BigInteger[numberOfTowns];
+		int[] townsReached = new int[numberOfTowns];
+		BigInteger[] routesCounters = new BigInteger[numberOfTowns];
+		long townsExpanded = 0;
+		long routesRelaxed = 0;
+		Arrays.fill(routesCounters, BigInteger.ZERO);
+		rows[0] = new BigDistanceRow();
+		rows[0].add(startingTownId, BigInteger.ONE);
+		
+		for(int distance = 0; distance < maxDistance; distance++) {
+			BigDistanceRow row = rows[distance % numberOfRows];
+			
+			if(row == null) {
+				continue;
+			}
+			
+			int numberOfTownsReached = 0;
+			
+			for(int i = 0; i < row.size; i++) {
+				int town = row.townIds[i];
+				
+				if(townCounts[town] == null) {
+					townsReached[numberOfTownsReached++] = town;
+					townCounts[town] = row.counts[i];
+				} else {
+					townCounts[town] = townCounts[town].add(row.counts[i]);
+				}
+			}
+			
+			rows[distance % numberOfRows] = null;
+			row.clear();
+			spareRows.push(row);
+			
+			for(int i = 0; i < numberOfTownsReached; i++) {
+				int town = townsReached[i];
+				BigInteger routes = townCounts[town];
+				townCounts[town] = null;
+				
+				if(distance > 0) {
+					routesCounters[town] = routesCounters[town].add(routes);
+				}
+				
+				townsExpanded++;
+				routesRelaxed += network.getOutDegree(town);
+				
+				if((townsExpanded & SearchBudget.CHECK_MASK) == 0 && budget.isExceeded(SearchBudget.CHECK_INTERVAL)) {
+					SearchCounters.current().add(townsExpanded, routesRelaxed);
+					throw budget.exceeded(endingTownId < 0 ? null : routesCounters[endingTownId]);
+				}
+				
+				for(int route = network.getFirstRoute(town), end = network.getRoutesEnd(town); route < end; route++) {
+					long nextDistance = (long) distance + network.getRouteDistance(route);
+					
+					if(nextDistance < maxDistance) {
+						int nextRow = (int) (nextDistance % numberOfRows);
+						
+						if(rows[nextRow] == null) {
+							rows[nextRow] = spareRows.isEmpty() ? new BigDistanceRow() : spareRows.pop();
+						}
+						
+						rows[nextRow].add(network.getRouteTarget(route), routes);
+					}
+				}
+			}
+		}
+		
+		SearchCounters.current().add(townsExpanded, routesRelaxed);
+		
+		return routesCounters;
+	}
+	
+	/**
+	 * The towns reached at one distance and their counts, a town once for every town it was reached from.
+	 */
+	private static final class DistanceRow {
+		int[] townIds = new int[8];
+		long[] counts = new long[8];
+		int size;
+		
+		void add(int townId, long count) {
+			if(size == townIds.length) {
+				townIds = Arrays.copyOf(townIds, size * 2);
+				counts = Arrays.copyOf(counts, size * 2);
+			}
+			
+			townIds[size] = townId;
+			counts[size++] = count;
+		}
+	}
+	
+	private static final class BigDistanceRow {
+		int[] townIds = new int[8];
+		BigInteger[] counts = new BigInteger[8];
+		int size;
+		
+		void add(int townId, BigInteger count) {
+			if(size == townIds.length) {
+				townIds = Arrays.copyOf(townIds, size * 2);
+				counts = Arrays.copyOf(counts, size * 2);
+			}
+			
+			townIds[size] = townId;
+			counts[size++] = count;
+		}
+		
+		void clear() {
+			Arrays.fill(counts, 0, size, null);
+			size = 0;
+		}
+	}
+}
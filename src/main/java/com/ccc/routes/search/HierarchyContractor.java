@@ -0,0 +1,413 @@
+package com.ccc.routes.search;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import com.ccc.routes.network.IntList;
+import com.ccc.routes.network.RouteNetwork;
+
+/**
+ * Contracts the towns of a {@link RouteNetwork} one after the other into a {@link ContractionHierarchy}. Contracting
+ * a town removes it from the network that is left and adds a shortcut between two of its neighbours whenever the route
+ * through it is the only shortest one between them. A witness search, a Dijkstra search from the town before that
+ * avoids the town and gives up after {@link ContractionHierarchy.Builder#witnessSettleLimit(int)} towns, looks for
+ * another route as short. A route through the town from a neighbour back to itself is kept as the round trip of the
+ * neighbour instead of a shortcut.
+ *
+ * The towns are contracted in rounds. The priority of a town is the number of shortcuts its contraction would add,
+ * less the routes it removes, plus the number of its neighbours already contracted, so the hierarchy stays flat and
+ * sparse. The contraction is simulated with witness searches giving up after {@link #SIMULATED_WITNESS_SETTLE_LIMIT}
+ * towns, and the shortcuts of a town with more than {@link #MAX_SIMULATED_SHORTCUTS} pairs of neighbours are not
+ * simulated at all, every pair is counted: such hubs end up at the top of the hierarchy anyway. Every round contracts
+ * at once the towns whose priority is lower than the priority of all their neighbours, no two of them are
+ * neighbours. The witness searches of the round avoid all of them, so the towns of a round are contracted in
+ * parallel, and the priorities of their neighbours are then updated in parallel.
+ *
+ * The routes and shortcuts of the network left are kept in growable lists of every town, going out and coming in.
+ * Once a town is contracted it is removed from the lists of its neighbours, and its own lists, which only hold towns
+ * contracted after it, are left as they are: they are its routes up and down the hierarchy.
+ *
+ * @author gibrancastillo
+ *
+ */
+final class HierarchyContractor {
+	static final int INFINITY = Integer.MAX_VALUE;
+	static final int NO_TOWN = -1;
+	static final int MAX_SIMULATED_SHORTCUTS = 10000;
+	static final int SIMULATED_WITNESS_SETTLE_LIMIT = 50;
+	
+	private final RouteNetwork network;
+	private final int numberOfTowns;
+	private final ForkJoinPool pool;
+	private final int witnessSettleLimit;
+	private final Edges[] outgoingEdges;
+	private final Edges[] incomingEdges;
+	private final boolean[] isContracted;
+	private final int[] ranks;
+	private final int[] priorities;
+	private final int[] contractedNeighbours;
+	private final int[] roundTripDistances;
+	private final int[] roundTripMiddles;
+	private final ThreadLocal<WitnessSearch> witnessSearches;
+	private int numberOfShortcuts;
+	
+	HierarchyContractor(RouteNetwork network, ForkJoinPool pool, int witnessSettleLimit) {
+		this.network = network;
+		this.numberOfTowns = network.getNumberOfTowns();
+		this.pool = pool;
+		this.witnessSettleLimit = witnessSettleLimit;
+		this.outgoingEdges = new Edges[numberOfTowns];
+		this.incomingEdges = new Edges[numberOfTowns];
+		this.isContracted = new boolean[numberOfTowns];
+		this.ranks = new int[numberOfTowns];
+		this.priorities = new int[numberOfTowns];
+		this.contractedNeighbours = new int[numberOfTowns];
+		this.roundTripDistances = new int[numberOfTowns];
+		this.roundTripMiddles = new int[numberOfTowns];
+		this.witnessSearches = ThreadLocal.withInitial(() -> new WitnessSearch(numberOfTowns));
+		Arrays.fill(roundTripDistances, INFINITY);
+		Arrays.fill(roundTripMiddles, NO_TOWN);
+		
+		for(int townId = 0; townId < numberOfTowns; townId++) {
+			outgoingEdges[townId] = new Edges(network.getOutDegree(townId));
+			incomingEdges[townId] = new Edges(2);
+		}
+		
+		for(int townId = 0; townId < numberOfTowns; townId++) {
+			for(int route = network.getFirstRoute(townId), end = network.getRoutesEnd(townId); route < end; route++) {
+				addEdge(townId, network.getRouteTarget(route), network.getRouteDistance(route), NO_TOWN);
+			}
+		}
+	}
+	
+	/**
+	 * @return The hierarchy of the network.
+	 */
+	ContractionHierarchy contract() {
+		int[] remainingTowns = IntStream.range(0, numberOfTowns).toArray();
+		int rank = 0;
+		int rounds = 0;
+		
+		updatePriorities(remainingTowns);
+		
+		while(remainingTowns.length > 0) {
+			int[] towns = remainingTowns;
+			int[] round = pool.submit(() -> IntStream.of(towns).parallel().filter(this::hasLowestPriority).toArray()).join();
+			
+			for(int townId : round) {
+				isContracted[townId] = true;
+				ranks[townId] = rank++;
+			}
+			
+			IntList[] shortcuts = pool.submit(() -> IntStream.of(round).parallel().mapToObj(townId -> {
+				IntList townShortcuts = new IntList();
+				findShortcuts(townId, townShortcuts);
+				
+				return townShortcuts;
+			}).toArray(IntList[]::new)).join();
+			
+			for(int i = 0; i < round.length; i++) {
+				addShortcuts(round[i], shortcuts[i]);
+			}
+			
+			IntList neighbours = new IntList();
+			
+			for(int townId : round) {
+				addNeighbours(townId, outgoingEdges[townId], neighbours);
+				addNeighbours(townId, incomingEdges[townId], neighbours);
+				removeFromNeighbours(townId);
+			}
+			
+			updatePriorities(neighbours.toArray());
+			remainingTowns = IntStream.of(remainingTowns).filter(townId -> !isContracted[townId]).toArray();
+			rounds++;
+		}
+		
+		return ContractionHierarchy.fromContraction(network, ranks, outgoingEdges, incomingEdges, roundTripDistances, roundTripMiddles,
+				numberOfShortcuts, rounds);
+	}
+	
+	private void addNeighbours(int townId, Edges edges, IntList neighbours) {
+		for(int i = 0; i < edges.size; i++) {
+			//A neighbour both ways counts twice
+			contractedNeighbours[edges.townIds[i]]++;
+			neighbours.add(edges.townIds[i]);
+		}
+	}
+	
+	private void removeFromNeighbours(int townId) {
+		Edges outgoing = outgoingEdges[townId];
+		Edges incoming = incomingEdges[townId];
+		
+		for(int i = 0; i < outgoing.size; i++) {
+			incomingEdges[outgoing.townIds[i]].remove(townId);
+		}
+		
+		for(int i = 0; i < incoming.size; i++) {
+			outgoingEdges[incoming.townIds[i]].remove(townId);
+		}
+	}
+	
+	private void updatePriorities(int[] townIds) {
+		int[] distinctTownIds = IntStream.of(townIds).distinct().toArray();
+		
+		pool.submit(() -> IntStream.of(distinctTownIds).parallel().forEach(townId -> {
+			int inDegree = incomingEdges[townId].size;
+			int outDegree = outgoingEdges[townId].size;
+			long pairs = (long) inDegree * outDegree;
+			int numberOfShortcuts = pairs > MAX_SIMULATED_SHORTCUTS ? (int) Math.min(pairs, Integer.MAX_VALUE / 2) : findShortcuts(townId, null);
+			priorities[townId] = numberOfShortcuts - inDegree - outDegree + contractedNeighbours[townId];
+		})).join();
+	}
+	
+	/**
+	 * @return true if the priority of the town is lower than the priority of every neighbour left, the lower town id
+	 * first on a tie.
+	 */
+	private boolean hasLowestPriority(int townId) {
+		return hasLowestPriority(townId, outgoingEdges[townId]) && hasLowestPriority(townId, incomingEdges[townId]);
+	}
+	
+	private boolean hasLowestPriority(int townId, Edges edges) {
+		for(int i = 0; i < edges.size; i++) {
+			int neighbour = edges.townIds[i];
+			
+			if(!isContracted[neighbour] && (priorities[neighbour] < priorities[townId] || (priorities[neighbour] == priorities[townId] && neighbour < townId))) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Finds the shortcuts the contraction of a town adds. The towns of the round being contracted, including the town
+	 * itself, are left out of the witness searches.
+	 *
+	 * @param townId
+	 * @param shortcuts - the shortcuts as (from town, to town, distance) triples, a round trip as a shortcut from a
+	 * town to itself, or null to only count them.
+	 * @return The number of shortcuts, round trips left out.
+	 */
+	private int findShortcuts(int townId, IntList shortcuts) {
+		Edges incoming = incomingEdges[townId];
+		Edges outgoing = outgoingEdges[townId];
+		WitnessSearch witnessSearch = witnessSearches.get();
+		int settleLimit = shortcuts == null ? Math.min(witnessSettleLimit, SIMULATED_WITNESS_SETTLE_LIMIT) : witnessSettleLimit;
+		int numberOfShortcuts = 0;
+		
+		for(int i = 0; i < incoming.size; i++) {
+			int fromTownId = incoming.townIds[i];
+			
+			if(isContracted[fromTownId]) {
+				continue;
+			}
+			
+			int fromDistance = incoming.distances[i];
+			long maxDistance = 0;
+			
+			for(int j = 0; j < outgoing.size; j++) {
+				int toTownId = outgoing.townIds[j];
+				
+				if(toTownId != fromTownId && !isContracted[toTownId]) {
+					maxDistance = Math.max(maxDistance, (long) fromDistance + outgoing.distances[j]);
+				}
+			}
+			
+			witnessSearch.search(fromTownId, townId, (int) Math.min(maxDistance, INFINITY - 1), settleLimit);
+			
+			for(int j = 0; j < outgoing.size; j++) {
+				int toTownId = outgoing.townIds[j];
+				
+				if(isContracted[toTownId]) {
+					continue;
+				}
+				
+				long distance = (long) fromDistance + outgoing.distances[j];
+				
+				if(distance >= INFINITY) {
+					continue;
+				} else if(toTownId == fromTownId) {
+					if(shortcuts != null) {
+						shortcuts.add(fromTownId);
+						shortcuts.add(toTownId);
+						shortcuts.add((int) distance);
+					}
+				} else if(witnessSearch.getDistance(toTownId) > distance) {
+					numberOfShortcuts++;
+					
+					if(shortcuts != null) {
+						shortcuts.add(fromTownId);
+						shortcuts.add(toTownId);
+						shortcuts.add((int) distance);
+					}
+				}
+			}
+		}
+		
+		return numberOfShortcuts;
+	}
+	
+	private void addShortcuts(int townId, IntList shortcuts) {
+		for(int i = 0; i < shortcuts.size(); i += 3) {
+			int fromTownId = shortcuts.get(i);
+			int toTownId = shortcuts.get(i + 1);
+			int distance = shortcuts.get(i + 2);
+			
+			if(fromTownId == toTownId) {
+				if(distance < roundTripDistances[fromTownId]) {
+					roundTripDistances[fromTownId] = distance;
+					roundTripMiddles[fromTownId] = townId;
+				}
+			} else if(addEdge(fromTownId, toTownId, distance, townId)) {
+				numberOfShortcuts++;
+			}
+		}
+	}
+	
+	/**
+	 * Adds a route or shortcut, or shortens the one between the same towns.
+	 *
+	 * @return true if the route or shortcut was added or shortened.
+	 */
+	private boolean addEdge(int fromTownId, int toTownId, int distance, int middleTownId) {
+		if(fromTownId == toTownId) {
+			if(distance < roundTripDistances[fromTownId]) {
+				roundTripDistances[fromTownId] = distance;
+				roundTripMiddles[fromTownId] = middleTownId;
+			}
+			
+			return false;
+		}
+		
+		return outgoingEdges[fromTownId].put(toTownId, distance, middleTownId) && incomingEdges[toTownId].put(fromTownId, distance, middleTownId);
+	}
+	
+	/**
+	 * The routes and shortcuts going out of or coming into a town, one per neighbour: the town at their other end, their
+	 * distance and the town a shortcut was added for, {@link #NO_TOWN} for a route.
+	 */
+	static final class Edges {
+		int[] townIds;
+		int[] distances;
+		int[] middleTownIds;
+		int size;
+		
+		Edges(int capacity) {
+			townIds = new int[Math.max(capacity, 1)];
+			distances = new int[townIds.length];
+			middleTownIds = new int[townIds.length];
+		}
+		
+		/**
+		 * @return true if the edge was added or shortened.
+		 */
+		boolean put(int townId, int distance, int middleTownId) {
+			for(int i = 0; i < size; i++) {
+				if(townIds[i] == townId) {
+					if(distance >= distances[i]) {
+						return false;
+					}
+					
+					distances[i] = distance;
+					middleTownIds[i] = middleTownId;
+					
+					return true;
+				}
+			}
+			
+			if(size == townIds.length) {
+				townIds = Arrays.copyOf(townIds, 2 * size);
+				distances = Arrays.copyOf(distances, 2 * size);
+				middleTownIds = Arrays.copyOf(middleTownIds, 2 * size);
+			}
+			
+			townIds[size] = townId;
+			distances[size] = distance;
+			middleTownIds[size++] = middleTownId;
+			
+			return true;
+		}
+		
+		/**
+		 * Removes the edge to or from the town, the last edge takes its place.
+		 */
+		void remove(int townId) {
+			for(int i = 0; i < size; i++) {
+				if(townIds[i] == townId) {
+					size--;
+					townIds[i] = townIds[size];
+					distances[i] = distances[size];
+					middleTownIds[i] = middleTownIds[size];
+					
+					return;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * A bounded Dijkstra search over the towns left, one per thread, its arrays stamped as in a {@link SearchWorkspace}.
+	 */
+	private final class WitnessSearch {
+		private final int[] distances;
+		private final int[] reachedStamps;
+		private final IntMinHeap heap;
+		private int stamp;
+		
+		WitnessSearch(int numberOfTowns) {
+			distances = new int[numberOfTowns];
+			reachedStamps = new int[numberOfTowns];
+			heap = new IntMinHeap(numberOfTowns);
+		}
+		
+		/**
+		 * @param startingTownId
+		 * @param avoidedTownId - the town being contracted.
+		 * @param maxDistance - the search stops at towns farther than it.
+		 * @param settleLimit - the search gives up after settling that many towns.
+		 */
+		void search(int startingTownId, int avoidedTownId, int maxDistance, int settleLimit) {
+			if(++stamp == Integer.MAX_VALUE) {
+				Arrays.fill(reachedStamps, 0);
+				stamp = 1;
+			}
+			
+			heap.clear();
+			distances[startingTownId] = 0;
+			reachedStamps[startingTownId] = stamp;
+			heap.insertOrDecrease(startingTownId, 0);
+			int settled = 0;
+			
+			while(!heap.isEmpty() && heap.peekKey() <= maxDistance && settled++ < settleLimit) {
+				int distance = heap.peekKey();
+				Edges edges = outgoingEdges[heap.poll()];
+				
+				for(int i = 0; i < edges.size; i++) {
+					int nextTownId = edges.townIds[i];
+					
+					if(nextTownId == avoidedTownId || isContracted[nextTownId]) {
+						continue;
+					}
+					
+					long nextDistance = (long) distance + edges.distances[i];
+					
+					if(nextDistance <= maxDistance && (reachedStamps[nextTownId] != stamp || nextDistance < distances[nextTownId])) {
+						distances[nextTownId] = (int) nextDistance;
+						reachedStamps[nextTownId] = stamp;
+						heap.insertOrDecrease(nextTownId, (int) nextDistance);
+					}
+				}
+			}
+		}
+		
+		/**
+		 * @return The distance of the town found by the last search, it may be longer than the shortest one, or
+		 * {@link #INFINITY}.
+		 */
+		int getDistance(int townId) {
+			return reachedStamps[townId] == stamp ? distances[townId] : INFINITY;
+		}
+	}
+}
@@ -0,0 +1,159 @@
+package com.ccc.routes.search;
+
+import java.util.Arrays;
+
+/**
+ * An indexed binary min-heap of town ids ordered by an int key (a tentative distance). Every town is at most
+ * once in the heap and its position is tracked, so a shorter distance is a decrease-key operation instead of a
+ * second heap entry, and no object is allocated per push.
+ * 
+ * @author gibrancastillo
+ *
+ */
+public final class IntMinHeap {
+	private int[] heap;
+	private int[] keys;
+	private int[] positions;
+	private int size;
+	
+	public IntMinHeap(int capacity) {
+		heap = new int[Math.max(capacity, 1)];
+		keys = new int[Math.max(capacity, 1)];
+		positions = new int[Math.max(capacity, 1)];
+		Arrays.fill(positions, -1);
+	}
+	
+	/**
+	 * Grows the heap so it can hold the town ids from zero to capacity - 1, the heap must be empty.
+	 * 
+	 * @param capacity
+	 */
+	public void ensureCapacity(int capacity) {
+		if(capacity > positions.length) {
+			heap = new int[capacity];
+			keys = new int[capacity];
+			positions = new int[capacity];
+			Arrays.fill(positions, -1);
+			size = 0;
+		}
+	}
+	
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	public boolean contains(int townId) {
+		return positions[townId] >= 0;
+	}
+	
+	/**
+	 * Inserts the town, or lowers its key when it is already in the heap with a greater key.
+	 * 
+	 * @param townId
+	 * @param key
+	 */
+	public void insertOrDecrease(int townId, int key) {
+		int position = positions[townId];
+		
+		if(position < 0) {
+			position = size++;
+			heap[position] = townId;
+		} else if(key >= keys[townId]) {
+			return;
+		}
+		
+		keys[townId] = key;
+		siftUp(position);
+	}
+	
+	/**
+	 * @return The town with the smallest key, without removing it.
+	 */
+	public int peek() {
+		return heap[0];
+	}
+	
+	public int peekKey() {
+		return keys[heap[0]];
+	}
+	
+	public int getKey(int townId) {
+		return keys[townId];
+	}
+	
+	/**
+	 * @return The town with the smallest key, after removing it.
+	 */
+	public int poll() {
+		int townId = heap[0];
+		positions[townId] = -1;
+		size--;
+		
+		if(size > 0) {
+			heap[0] = heap[size];
+			positions[heap[0]] = 0;
+			siftDown(0);
+		}
+		
+		return townId;
+	}
+	
+	public void clear() {
+		for(int i = 0; i < size; i++) {
+			positions[heap[i]] = -1;
+		}
+		
+		size = 0;
+	}
+	
+	private void siftUp(int position) {
+		int townId = heap[position];
+		int key = keys[townId];
+		
+		while(position > 0) {
+			int parent = (position - 1) >>> 1;
+			int parentTownId = heap[parent];
+			
+			if(keys[parentTownId] <= key) {
+				break;
+			}
+			
+			heap[position] = parentTownId;
+			positions[parentTownId] = position;
+			position = parent;
+		}
+		
+		heap[position] = townId;
+		positions[townId] = position;
+	}
+	
+	private void siftDown(int position) {
+		int townId = heap[position];
+		int key = keys[townId];
+		int half = size >>> 1;
+		
+		while(position < half) {
+			int child = 2 * position + 1;
+			int right = child + 1;
+			
+			if(right < size && keys[heap[right]] < keys[heap[child]]) {
+				child = right;
+			}
+			
+			if(key <= keys[heap[child]]) {
+				break;
+			}
+			
+			heap[position] = heap[child];
+			positions[heap[child]] = position;
+			position = child;
+		}
+		
+		heap[position] = townId;
+		positions[townId] = position;
+	}
+}
@@ -0,0 +1,67 @@
+package com.ccc.routes.search;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * A fixed size table of ints addressed by a long index, held in an int array on the heap or, when it is too large
+ * for the heap, in direct buffers of up to 2^28 ints each outside of it. Distinct entries can be written from
+ * different threads at once.
+ *
+ * @author gibrancastillo
+ *
+ */
+final class IntTable {
+	private static final int CHUNK_SHIFT = 28;
+	private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+	
+	private final int[] array;
+	private final IntBuffer[] chunks;
+	
+	/**
+	 * @param size
+	 * @param isOffHeap - whether to hold the table in direct buffers instead of an int array.
+	 */
+	IntTable(long size, boolean isOffHeap) {
+		if(!isOffHeap && size > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("A table of " + size + " ints does not fit in an array");
+		}
+		
+		if(isOffHeap) {
+			array = null;
+			chunks = new IntBuffer[(int) ((size + CHUNK_MASK) >>> CHUNK_SHIFT)];
+			
+			for(int chunk = 0; chunk < chunks.length; chunk++) {
+				int chunkSize = (int) Math.min(size - ((long) chunk << CHUNK_SHIFT), 1 << CHUNK_SHIFT);
+				chunks[chunk] = ByteBuffer.allocateDirect(4 * chunkSize).order(ByteOrder.nativeOrder()).asIntBuffer();
+			}
+		} else {
+			array = new int[(int) size];
+			chunks = null;
+		}
+	}
+	
+	boolean isOffHeap() {
+		return array == null;
+	}
+	
+	/**
+	 * @return The int array of an on-heap table, for the loops that index it directly.
+	 */
+	int[] getArray() {
+		return array;
+	}
+	
+	int get(long index) {
+		return array != null ? array[(int) index] : chunks[(int) (index >>> CHUNK_SHIFT)].get((int) (index & CHUNK_MASK));
+	}
+	
+	void set(long index, int value) {
+		if(array != null) {
+			array[(int) index] = value;
+		} else {
+			chunks[(int) (index >>> CHUNK_SHIFT)].put((int) (index & CHUNK_MASK), value);
+		}
+	}
+}
@@ -0,0 +1,492 @@
+package com.ccc.routes.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import com.ccc.routes.network.ReverseRouteIndex;
+import com.ccc.routes.network.RouteNetwork;
+
+/**
+ * The loopless routes from a starting town to an ending town in order of distance, shortest first, found lazily with
+ * Yen's algorithm: every call to {@link #next()} only finds the deviations of the last route returned. Routes are
+ * sequences of towns, when two towns have more than one route between them the shortest one is taken.
+ *
+ * The deviations are not searched from scratch. A single Dijkstra search backward from the ending town gives the
+ * shortest distance from every town to the ending town and the next town of that shortest route (a shortest route
+ * tree), computed once for all the deviations:
+ *
+ * <> The deviation leaves by the route that is shortest counting the tree distance from its next town. When the
+ *    tree route from that town avoids the towns removed for the deviation, it is read off the tree without any search.
+ * <> Otherwise an A* search is run, with the tree distances as its lower bounds. They are exact until the search
+ *    meets a removed town or route, so the search hardly leaves the shortest route around them.
+ * <> The A* search is put off: the deviation waits among the candidates keyed on the distance of that first route
+ *    plus its tree distance, and is only searched once no candidate is shorter. Most deviations of a long route are
+ *    never searched at all.
+ *
+ * Deviations are only searched from the town the last route deviated from on (Lawler's refinement), the towns
+ * before it were searched when its parent route was returned.
+ *
+ * When the starting town is also the ending town the routes are the round trips through it, no other town twice.
+ * An instance is not thread safe.
+ *
+ * @author gibrancastillo
+ *
+ */
+public final class KShortestPaths implements Iterator<TownPath> {
+	private static final int INFINITY = Integer.MAX_VALUE;
+	private static final int NO_TOWN = -1;
+	
+	private final RouteNetwork network;
+	private final int startingTownId;
+	private final int endingTownId;
+	private final int numberOfTowns;
+	//The shortest route tree to the ending town
+	private final int[] distancesToEnd;
+	private final int[] nextTownIds;
+	//The A* searches of the deviations, an entry only counts when it carries the stamp of the current search
+	private final int[] distances;
+	private final int[] previousTownIds;
+	private final int[] reachedStamps;
+	private final int[] settledStamps;
+	private final int[] removedStamps;
+	private int searchStamp;
+	private int removedStamp = 1;
+	private final IntMinHeap heap;
+	private final int[] removedNextTownIds;
+	private int numberOfRemovedNextTownIds;
+	
+	private final List<Deviation> routes = new ArrayList<>();
+	private final PriorityQueue<Deviation> candidates = new PriorityQueue<>(Comparator.comparingInt((Deviation deviation) -> deviation.distance)
+			.thenComparingInt(deviation -> deviation.numberOfTowns));
+	//Every route ever made a candidate, including the routes returned, so none is returned twice
+	private final Set<TownPath> candidatePaths = new HashSet<>();
+	private Deviation nextRoute;
+	private int numberOfDeviatedRoutes;
+	//The lower bound of the last deviation findTreeDeviation could not read off the tree
+	private int deviationLowerBound;
+	private long townsExpanded;
+	private long routesRelaxed;
+	
+	/**
+	 * Computes the shortest route tree to the ending town, the routes themselves are found as they are asked for.
+	 *
+	 * @param network
+	 * @param startingTownId
+	 * @param endingTownId
+	 */
+	public KShortestPaths(RouteNetwork network, int startingTownId, int endingTownId) {
+		this.network = network;
+		this.startingTownId = startingTownId;
+		this.endingTownId = endingTownId;
+		this.numberOfTowns = network.getNumberOfTowns();
+		this.distancesToEnd = new int[numberOfTowns];
+		this.nextTownIds = new int[numberOfTowns];
+		this.distances = new int[numberOfTowns];
+		this.previousTownIds = new int[numberOfTowns];
+		this.reachedStamps = new int[numberOfTowns];
+		this.settledStamps = new int[numberOfTowns];
+		this.removedStamps = new int[numberOfTowns];
+		this.heap = new IntMinHeap(numberOfTowns);
+		this.removedNextTownIds = new int[numberOfTowns];
+		
+		if(startingTownId >= 0 && endingTownId >= 0) {
+			computeShortestRouteTree();
+			TownPath shortestPath = findFirstPath();
+			
+			if(shortestPath.exists()) {
+				nextRoute = new Deviation(shortestPath, 0);
+				candidatePaths.add(shortestPath);
+			}
+		}
+		
+		flushCounters();
+	}
+	
+	/**
+	 * A Dijkstra search from the ending town over the routes taken backward, the routes leading into every town come
+	 * from the {@link ReverseRouteIndex} of the network.
+	 */
+	private void computeShortestRouteTree() {
+		ReverseRouteIndex reverseRouteIndex = network.getReverseRouteIndex();
+		Arrays.fill(distancesToEnd, INFINITY);
+		Arrays.fill(nextTownIds, NO_TOWN);
+		boolean[] isSettled = new boolean[numberOfTowns];
+		distancesToEnd[endingTownId] = 0;
+		heap.insertOrDecrease(endingTownId, 0);
+		
+		while(!heap.isEmpty()) {
+			int distance = heap.peekKey();
+			int townId = heap.poll();
+			isSettled[townId] = true;
+			townsExpanded++;
+			routesRelaxed += reverseRouteIndex.getInDegree(townId);
+			
+			for(int reverseRoute = reverseRouteIndex.getFirstRoute(townId), end = reverseRouteIndex.getRoutesEnd(townId); reverseRoute < end; reverseRoute++) {
+				int previousTownId = reverseRouteIndex.getRouteSource(reverseRoute);
+				long previousDistance = (long) distance + reverseRouteIndex.getRouteDistance(reverseRoute);
+				
+				if(!isSettled[previousTownId] && previousDistance < distancesToEnd[previousTownId]) {
+					distancesToEnd[previousTownId] = (int) previousDistance;
+					nextTownIds[previousTownId] = townId;
+					heap.insertOrDecrease(previousTownId, (int) previousDistance);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @return The shortest route, or the shortest round trip when the starting town is the ending town.
+	 */
+	private TownPath findFirstPath() {
+		return findDeviation(new int[] {startingTownId}, 0, 0);
+	}
+	
+	@Override
+	public boolean hasNext() {
+		if(nextRoute == null && numberOfDeviatedRoutes < routes.size()) {
+			findDeviations(routes.get(numberOfDeviatedRoutes++));
+			nextRoute = pollRoute();
+			flushCounters();
+		}
+		
+		return nextRoute != null;
+	}
+	
+	/**
+	 * @return The next shortest route, never shorter than the previous one.
+	 */
+	@Override
+	public TownPath next() {
+		if(!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		
+		Deviation route = nextRoute;
+		routes.add(route);
+		nextRoute = null;
+		
+		return route.path;
+	}
+	
+	/**
+	 * Searches the deviations put off until the shortest candidate is a route.
+	 * 
+	 * @return The shortest candidate route, or null when there is none left.
+	 */
+	private Deviation pollRoute() {
+		Deviation candidate;
+		
+		while((candidate = candidates.poll()) != null && candidate.path == null) {
+			TownPath path = searchDeviation(candidate);
+			
+			if(path.exists() && candidatePaths.add(path)) {
+				candidates.add(new Deviation(path, candidate.deviationIndex));
+			}
+		}
+		
+		return candidate;
+	}
+	
+	/**
+	 * Yen's step: for every town of the route from its deviation town on, the routes that share the towns up to it
+	 * have their next route removed, the towns before it are removed, and the shortest route from it to the ending
+	 * town that is left becomes a candidate.
+	 */
+	private void findDeviations(Deviation lastRoute) {
+		int[] townIds = lastRoute.path.getTownIds();
+		//The routes returned so far that share the towns of the last route up to the current deviation town
+		List<int[]> sharingRoutes = new ArrayList<>(routes.size());
+		
+		for(Deviation route : routes) {
+			sharingRoutes.add(route.path.getTownIds());
+		}
+		
+		removedStamp++;
+		int rootDistance = 0;
+		
+		for(int i = 0; i < townIds.length - 1; i++) {
+			int index = i;
+			int townId = townIds[index];
+			
+			if(index > 0) {
+				rootDistance += distanceBetween(townIds[index - 1], townId);
+				removeTown(townIds[index - 1]);
+				sharingRoutes.removeIf(route -> route.length <= index || route[index] != townId);
+			}
+			
+			if(index < lastRoute.deviationIndex) {
+				continue;
+			}
+			
+			numberOfRemovedNextTownIds = 0;
+			
+			for(int[] route : sharingRoutes) {
+				if(route.length > index + 1 && !isNextTownRemoved(route[index + 1])) {
+					removedNextTownIds[numberOfRemovedNextTownIds++] = route[index + 1];
+				}
+			}
+			
+			TownPath path = findTreeDeviation(townIds, index, rootDistance);
+			
+			if(path == null) {
+				candidates.add(new Deviation(townIds, index, rootDistance, Arrays.copyOf(removedNextTownIds, numberOfRemovedNextTownIds),
+						deviationLowerBound));
+			} else if(path.exists() && candidatePaths.add(path)) {
+				candidates.add(new Deviation(path, index));
+			}
+		}
+	}
+	
+	private void removeTown(int townId) {
+		//The ending town of a round trip is also its starting town, it stays
+		if(townId != endingTownId) {
+			removedStamps[townId] = removedStamp;
+		}
+	}
+	
+	private boolean isRemoved(int townId) {
+		return removedStamps[townId] == removedStamp;
+	}
+	
+	private boolean isNextTownRemoved(int nextTownId) {
+		for(int i = 0; i < numberOfRemovedNextTownIds; i++) {
+			if(removedNextTownIds[i] == nextTownId) {
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * @param rootTownIds - the towns of the route up to the deviation town.
+	 * @param deviationIndex - the index of the deviation town.
+	 * @param rootDistance - the distance of the route up to the deviation town.
+	 * @return The shortest route that follows the root up to the deviation town and then the remaining towns and
+	 * routes, or {@link TownPath#noRoute()} when there is none.
+	 */
+	private TownPath findDeviation(int[] rootTownIds, int deviationIndex, int rootDistance) {
+		TownPath treePath = findTreeDeviation(rootTownIds, deviationIndex, rootDistance);
+		
+		return treePath != null ? treePath : searchDeviation(rootTownIds, deviationIndex, rootDistance);
+	}
+	
+	/**
+	 * Removes the towns and routes again as they were when the deviation was put off and searches it.
+	 */
+	private TownPath searchDeviation(Deviation deviation) {
+		removedStamp++;
+		
+		for(int index = 0; index < deviation.deviationIndex; index++) {
+			removeTown(deviation.rootTownIds[index]);
+		}
+		
+		numberOfRemovedNextTownIds = deviation.removedNextTownIds.length;
+		System.arraycopy(deviation.removedNextTownIds, 0, removedNextTownIds, 0, numberOfRemovedNextTownIds);
+		
+		return searchDeviation(deviation.rootTownIds, deviation.deviationIndex, deviation.rootDistance);
+	}
+	
+	/**
+	 * The A* search of a deviation.
+	 */
+	private TownPath searchDeviation(int[] rootTownIds, int deviationIndex, int rootDistance) {
+		int deviationTownId = rootTownIds[deviationIndex];
+		
+		if(++searchStamp == Integer.MAX_VALUE) {
+			Arrays.fill(reachedStamps, 0);
+			Arrays.fill(settledStamps, 0);
+			searchStamp = 1;
+		}
+		
+		heap.clear();
+		//The deviation town is expanded up front and only settled when it is not the ending town of a round trip
+		relax(deviationTownId, 0, true);
+		
+		if(deviationTownId != endingTownId) {
+			settledStamps[deviationTownId] = searchStamp;
+		}
+		
+		while(!heap.isEmpty()) {
+			int townId = heap.poll();
+			int distance = distances[townId];
+			settledStamps[townId] = searchStamp;
+			
+			if(townId == endingTownId) {
+				return buildPath(rootTownIds, deviationIndex, rootDistance, distance);
+			}
+			
+			relax(townId, distance, false);
+		}
+		
+		return TownPath.noRoute();
+	}
+	
+	private void relax(int townId, int distance, boolean isDeviationTown) {
+		townsExpanded++;
+		routesRelaxed += network.getOutDegree(townId);
+		
+		for(int route = network.getFirstRoute(townId), end = network.getRoutesEnd(townId); route < end; route++) {
+			int nextTownId = network.getRouteTarget(route);
+			
+			if(distancesToEnd[nextTownId] == INFINITY || isRemoved(nextTownId) || settledStamps[nextTownId] == searchStamp
+					|| (isDeviationTown && isNextTownRemoved(nextTownId))) {
+				continue;
+			}
+			
+			long nextDistance = (long) distance + network.getRouteDistance(route);
+			//The tree distance to the ending town is a lower bound of the distance left
+			long lowerBound = nextDistance + distancesToEnd[nextTownId];
+			
+			//A route past Integer.MAX_VALUE has no distance to return, it is not one of the routes
+			if(lowerBound >= INFINITY) {
+				continue;
+			}
+			
+			if(reachedStamps[nextTownId] != searchStamp || nextDistance < distances[nextTownId]) {
+				reachedStamps[nextTownId] = searchStamp;
+				distances[nextTownId] = (int) nextDistance;
+				previousTownIds[nextTownId] = townId;
+				heap.insertOrDecrease(nextTownId, (int) lowerBound);
+			}
+		}
+	}
+	
+	/**
+	 * The first route of the shortest deviation is the one with the shortest distance to its next town plus tree
+	 * distance from there to the ending town, a lower bound of any deviation through it. When the tree route of that
+	 * next town avoids the removed towns and the deviation town, no deviation can be shorter.
+	 * 
+	 * @return The shortest deviation read off the tree, or null when it has to be searched, its lower bound is left in
+	 * {@link #deviationLowerBound}.
+	 */
+	private TownPath findTreeDeviation(int[] rootTownIds, int deviationIndex, int rootDistance) {
+		int deviationTownId = rootTownIds[deviationIndex];
+		int firstTownId = NO_TOWN;
+		long shortestDistance = INFINITY;
+		
+		for(int route = network.getFirstRoute(deviationTownId), end = network.getRoutesEnd(deviationTownId); route < end; route++) {
+			int nextTownId = network.getRouteTarget(route);
+			long distance = (long) network.getRouteDistance(route) + distancesToEnd[nextTownId];
+			
+			if(distance < shortestDistance && !isRemoved(nextTownId) && !isNextTownRemoved(nextTownId)) {
+				firstTownId = nextTownId;
+				shortestDistance = distance;
+			}
+		}
+		
+		long lowerBound = rootDistance + shortestDistance;
+		
+		if(firstTownId == NO_TOWN || lowerBound >= INFINITY) {
+			return TownPath.noRoute();
+		}
+		
+		int numberOfTowns = deviationIndex + 2;
+		
+		for(int townId = firstTownId; townId != endingTownId; townId = nextTownIds[townId], numberOfTowns++) {
+			if(townId == deviationTownId || isRemoved(townId)) {
+				deviationLowerBound = (int) lowerBound;
+				
+				return null;
+			}
+		}
+		
+		int[] townIds = Arrays.copyOf(rootTownIds, numberOfTowns);
+		townIds[deviationIndex + 1] = firstTownId;
+		
+		for(int index = deviationIndex + 2; index < numberOfTowns; index++) {
+			townIds[index] = nextTownIds[townIds[index - 1]];
+		}
+		
+		return new TownPath(townIds, (int) lowerBound);
+	}
+	
+	private TownPath buildPath(int[] rootTownIds, int deviationIndex, int rootDistance, int deviationDistance) {
+		long distance = (long) rootDistance + deviationDistance;
+		
+		//The shortest deviation is past Integer.MAX_VALUE, so is every other
+		if(distance >= INFINITY) {
+			return TownPath.noRoute();
+		}
+		
+		int deviationTownId = rootTownIds[deviationIndex];
+		int numberOfTowns = deviationIndex + 2;
+		
+		for(int townId = previousTownIds[endingTownId]; townId != deviationTownId; townId = previousTownIds[townId]) {
+			numberOfTowns++;
+		}
+		
+		int[] townIds = Arrays.copyOf(rootTownIds, numberOfTowns);
+		townIds[numberOfTowns - 1] = endingTownId;
+		
+		for(int index = numberOfTowns - 2; index > deviationIndex; index--) {
+			townIds[index] = previousTownIds[townIds[index + 1]];
+		}
+		
+		return new TownPath(townIds, (int) distance);
+	}
+	
+	/**
+	 * @return The distance of the shortest route from one town to the other.
+	 */
+	private int distanceBetween(int townId, int nextTownId) {
+		int distance = INFINITY;
+		
+		for(int route = network.getFirstRoute(townId), end = network.getRoutesEnd(townId); route < end; route++) {
+			if(network.getRouteTarget(route) == nextTownId) {
+				distance = Math.min(distance, network.getRouteDistance(route));
+			}
+		}
+		
+		return distance;
+	}
+	
+	private void flushCounters() {
+		SearchCounters.current().add(townsExpanded, routesRelaxed);
+		townsExpanded = 0;
+		routesRelaxed = 0;
+	}
+	
+	/**
+	 * A route found and the index of the town it deviated from its parent route on, or a deviation put off until it
+	 * is searched, keyed on its lower bound.
+	 */
+	private static final class Deviation {
+		private final TownPath path;
+		private final int deviationIndex;
+		private final int distance;
+		private final int numberOfTowns;
+		//The deviation put off: the parent route, its distance up to the deviation town and the next towns removed
+		private final int[] rootTownIds;
+		private final int rootDistance;
+		private final int[] removedNextTownIds;
+		
+		private Deviation(TownPath path, int deviationIndex) {
+			this.path = path;
+			this.deviationIndex = deviationIndex;
+			this.distance = path.getDistance();
+			this.numberOfTowns = path.getNumberOfTowns();
+			this.rootTownIds = null;
+			this.rootDistance = 0;
+			this.removedNextTownIds = null;
+		}
+		
+		private Deviation(int[] rootTownIds, int deviationIndex, int rootDistance, int[] removedNextTownIds, int lowerBound) {
+			this.path = null;
+			this.deviationIndex = deviationIndex;
+			this.distance = lowerBound;
+			//A deviation has at least one town after the deviation town
+			this.numberOfTowns = deviationIndex + 2;
+			this.rootTownIds = rootTownIds;
+			this.rootDistance = rootDistance;
+			this.removedNextTownIds = removedNextTownIds;
+		}
+	}
+}
@@ -0,0 +1,364 @@
+package com.ccc.routes.search;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import com.ccc.routes.network.ReverseRouteIndex;
+import com.ccc.routes.network.RouteNetwork;
+
+/**
+ * The shortest distances from a few landmark towns to every town and from every town to them, the preprocessing of
+ * the A* searches of a {@link LandmarkSearch} (ALT: A*, landmarks and the triangle inequality). For a landmark L,
+ * a town v and an ending town t, both d(L, t) - d(L, v) and d(v, L) - d(t, L) are lower bounds of d(v, t).
+ *
+ * The landmarks are chosen by farthest selection: every landmark is the town farthest, going there and back, from
+ * the landmarks chosen before it, so the landmarks end up on the edges of the network where their bounds are tight.
+ * The forward and backward searches of a landmark run at once and the farthest town is found across the pool.
+ *
+ * The distances are held in a single int array, the distances of a town to and from all the landmarks next to each
+ * other, so a lower bound reads one or two cache lines. They can be written next to the network and read back, see
+ * {@link #getPath(Path)}. The file is a {@link NetworkFiles} file, magic 'TRLM', with the number of landmarks in its
+ * header and the landmarks and the distances in its sections.
+ *
+ * @author gibrancastillo
+ *
+ */
+public final class LandmarkDistances {
+	public static final int MAGIC = 0x4D4C5254; //TRLM in little-endian
+	public static final int VERSION = 1;
+	public static final int DEFAULT_NUMBER_OF_LANDMARKS = 16;
+	static final int INFINITY = Integer.MAX_VALUE;
+	private static final long UNREACHED = Long.MAX_VALUE;
+	
+	private final RouteNetwork network;
+	private final int[] landmarks;
+	//The distance from landmark l to town v at 2 * (v * landmarks + l), the distance from v to l right after it
+	private final int[] distances;
+	
+	private LandmarkDistances(RouteNetwork network, int[] landmarks, int[] distances) {
+		this.network = network;
+		this.landmarks = landmarks;
+		this.distances = distances;
+	}
+	
+	/**
+	 * Chooses the landmarks of the network and computes their distances in the common pool.
+	 *
+	 * @param network
+	 * @param numberOfLandmarks - at most the number of towns are chosen.
+	 * @return The landmark distances of the network.
+	 */
+	public static LandmarkDistances compute(RouteNetwork network, int numberOfLandmarks) {
+		return compute(network, numberOfLandmarks, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * @param network
+	 * @param numberOfLandmarks - at most the number of towns are chosen.
+	 * @param pool - the pool the searches are spread across.
+	 * @return The landmark distances of the network.
+	 */
+	public static LandmarkDistances compute(RouteNetwork network, int numberOfLandmarks, ForkJoinPool pool) {
+		if(numberOfLandmarks < 1) {
+			throw new IllegalArgumentException("At least one landmark is needed: " + numberOfLandmarks);
+		}
+		
+		int numberOfTowns = network.getNumberOfTowns();
+		numberOfLandmarks = Math.min(numberOfLandmarks, numberOfTowns);
+		int[] landmarks = new int[numberOfLandmarks];
+		int[] distances = new int[2 * numberOfTowns * numberOfLandmarks];
+		//How far every town is from the closest landmark chosen so far, going there and back
+		long[] closestDistances = new long[numberOfTowns];
+		Arrays.fill(closestDistances, UNREACHED);
+		
+		if(numberOfTowns == 0) {
+			return new LandmarkDistances(network, landmarks, distances);
+		}
+		
+		//The first landmark is the town farthest from town 0, whose own distances are then dropped
+		int[][] townDistances = computeDistances(network, 0, pool);
+		updateClosestDistances(townDistances, closestDistances, pool);
+		
+		for(int landmark = 0; landmark < numberOfLandmarks; landmark++) {
+			int townId = findFarthestTown(closestDistances, landmarks, landmark, pool);
+			
+			if(landmark == 0) {
+				Arrays.fill(closestDistances, UNREACHED);
+			}
+			
+			landmarks[landmark] = townId;
+			townDistances = computeDistances(network, townId, pool);
+			updateClosestDistances(townDistances, closestDistances, pool);
+			
+			for(int v = 0; v < numberOfTowns; v++) {
+				int index = 2 * (v * numberOfLandmarks + landmark);
+				distances[index] = townDistances[0][v];
+				distances[index + 1] = townDistances[1][v];
+			}
+		}
+		
+		return new LandmarkDistances(network, landmarks, distances);
+	}
+	
+	/**
+	 * Runs the search from the town and the search to the town at once.
+	 *
+	 * @return The distances from the town to every town and from every town to it.
+	 */
+	private static int[][] computeDistances(RouteNetwork network, int townId, ForkJoinPool pool) {
+		int[][] townDistances = new int[2][];
+		
+		pool.submit(() -> IntStream.range(0, 2).parallel().forEach(direction -> townDistances[direction] = direction == 0
+				? computeForwardDistances(network, townId) : computeBackwardDistances(network, townId))).join();
+		
+		return townDistances;
+	}
+	
+	private static void updateClosestDistances(int[][] townDistances, long[] closestDistances, ForkJoinPool pool) {
+		pool.submit(() -> IntStream.range(0, closestDistances.length).parallel().forEach(townId -> {
+			int forwardDistance = townDistances[0][townId];
+			int backwardDistance = townDistances[1][townId];
+			
+			//A town reached in neither direction stays the farthest, so the next landmark covers its part of the network
+			if(forwardDistance != INFINITY || backwardDistance != INFINITY) {
+				long distance = (forwardDistance == INFINITY ? 0L : forwardDistance) + (backwardDistance == INFINITY ? 0L : backwardDistance);
+				closestDistances[townId] = Math.min(closestDistances[townId], distance);
+			}
+		})).join();
+	}
+	
+	/**
+	 * @return The town the farthest from the landmarks, the first one on a tie, that is not a landmark already.
+	 */
+	private static int findFarthestTown(long[] closestDistances, int[] landmarks, int numberOfLandmarks, ForkJoinPool pool) {
+		boolean[] isLandmark = new boolean[closestDistances.length];
+		
+		for(int landmark = 0; landmark < numberOfLandmarks; landmark++) {
+			isLandmark[landmarks[landmark]] = true;
+		}
+		
+		return pool.submit(() -> IntStream.range(0, closestDistances.length).parallel().filter(townId -> !isLandmark[townId])
+				.reduce((townId, otherTownId) -> closestDistances[otherTownId] > closestDistances[townId] ? otherTownId : townId)
+				.getAsInt()).join();
+	}
+	
+	private static int[] computeForwardDistances(RouteNetwork network, int startingTownId) {
+		int[] distances = new int[network.getNumberOfTowns()];
+		boolean[] isSettled = new boolean[distances.length];
+		IntMinHeap heap = new IntMinHeap(distances.length);
+		Arrays.fill(distances, INFINITY);
+		distances[startingTownId] = 0;
+		heap.insertOrDecrease(startingTownId, 0);
+		
+		while(!heap.isEmpty()) {
+			int distance = heap.peekKey();
+			int townId = heap.poll();
+			isSettled[townId] = true;
+			
+			for(int route = network.getFirstRoute(townId), end = network.getRoutesEnd(townId); route < end; route++) {
+				int nextTownId = network.getRouteTarget(route);
+				long nextDistance = (long) distance + network.getRouteDistance(route);
+				
+				if(!isSettled[nextTownId] && nextDistance < distances[nextTownId]) {
+					distances[nextTownId] = (int) nextDistance;
+					heap.insertOrDecrease(nextTownId, (int) nextDistance);
+				}
+			}
+		}
+		
+		return distances;
+	}
+	
+	/**
+	 * Searches the network backward from the ending town over its {@link ReverseRouteIndex}.
+	 */
+	private static int[] computeBackwardDistances(RouteNetwork network, int endingTownId) {
+		ReverseRouteIndex reverseRouteIndex = network.getReverseRouteIndex();
+		int[] distances = new int[network.getNumberOfTowns()];
+		boolean[] isSettled = new boolean[distances.length];
+		IntMinHeap heap = new IntMinHeap(distances.length);
+		Arrays.fill(distances, INFINITY);
+		distances[endingTownId] = 0;
+		heap.insertOrDecrease(endingTownId, 0);
+		
+		while(!heap.isEmpty()) {
+			int distance = heap.peekKey();
+			int townId = heap.poll();
+			isSettled[townId] = true;
+			
+			for(int reverseRoute = reverseRouteIndex.getFirstRoute(townId), end = reverseRouteIndex.getRoutesEnd(townId); reverseRoute < end; reverseRoute++) {
+				int previousTownId = reverseRouteIndex.getRouteSource(reverseRoute);
+				long previousDistance = (long) distance + reverseRouteIndex.getRouteDistance(reverseRoute);
+				
+				if(!isSettled[previousTownId] && previousDistance < distances[previousTownId]) {
+					distances[previousTownId] = (int) previousDistance;
+					heap.insertOrDecrease(previousTownId, (int) previousDistance);
+				}
+			}
+		}
+		
+		return distances;
+	}
+	
+	public RouteNetwork getNetwork() {
+		return network;
+	}
+	
+	public int getNumberOfLandmarks() {
+		return landmarks.length;
+	}
+	
+	/**
+	 * @param landmark - the index of the landmark.
+	 * @return The town id of the landmark.
+	 */
+	public int getLandmark(int landmark) {
+		return landmarks[landmark];
+	}
+	
+	/**
+	 * @param landmark - the index of the landmark.
+	 * @param townId
+	 * @return The shortest distance from the landmark to the town, or {@link TownPath#NO_ROUTE}.
+	 */
+	public int getDistanceFromLandmark(int landmark, int townId) {
+		int distance = distances[2 * (townId * landmarks.length + landmark)];
+		
+		return distance == INFINITY ? TownPath.NO_ROUTE : distance;
+	}
+	
+	/**
+	 * @param landmark - the index of the landmark.
+	 * @param townId
+	 * @return The shortest distance from the town to the landmark, or {@link TownPath#NO_ROUTE}.
+	 */
+	public int getDistanceToLandmark(int landmark, int townId) {
+		int distance = distances[2 * (townId * landmarks.length + landmark) + 1];
+		
+		return distance == INFINITY ? TownPath.NO_ROUTE : distance;
+	}
+	
+	/**
+	 * The best lower bound the landmarks give of the distance from a town to the ending town.
+	 *
+	 * @param activeLandmarks - the indices of the landmarks to use.
+	 * @param numberOfActiveLandmarks
+	 * @param townId
+	 * @param endingTownId
+	 * @return The lower bound, or {@link #INFINITY} when the ending town cannot be reached.
+	 */
+	int getLowerBound(int[] activeLandmarks, int numberOfActiveLandmarks, int townId, int endingTownId) {
+		int lowerBound = 0;
+		
+		for(int i = 0; i < numberOfActiveLandmarks && lowerBound != INFINITY; i++) {
+			lowerBound = Math.max(lowerBound, getLowerBound(activeLandmarks[i], townId, endingTownId));
+		}
+		
+		return lowerBound;
+	}
+	
+	/**
+	 * A landmark proves the ending town cannot be reached from the town when the landmark reaches the town but not
+	 * the ending town, or the ending town reaches the landmark but the town does not.
+	 *
+	 * @return The lower bound one landmark gives, or {@link #INFINITY} when the ending town cannot be reached.
+	 */
+	private int getLowerBound(int landmark, int townId, int endingTownId) {
+		int index = 2 * (townId * landmarks.length + landmark);
+		int endingIndex = 2 * (endingTownId * landmarks.length + landmark);
+		int fromLandmark = distances[index];
+		int toLandmark = distances[index + 1];
+		int endingFromLandmark = distances[endingIndex];
+		int endingToLandmark = distances[endingIndex + 1];
+		int lowerBound = 0;
+		
+		if((endingFromLandmark == INFINITY && fromLandmark != INFINITY) || (toLandmark == INFINITY && endingToLandmark != INFINITY)) {
+			return INFINITY;
+		}
+		
+		if(endingFromLandmark != INFINITY && fromLandmark != INFINITY) {
+			lowerBound = endingFromLandmark - fromLandmark;
+		}
+		
+		if(toLandmark != INFINITY && endingToLandmark != INFINITY) {
+			lowerBound = Math.max(lowerBound, toLandmark - endingToLandmark);
+		}
+		
+		return lowerBound;
+	}
+	
+	/**
+	 * Picks the landmarks with the best lower bounds from the starting town to the ending town, for the other towns
+	 * of the search the rest of the landmarks rarely do better.
+	 *
+	 * @param startingTownId
+	 * @param endingTownId
+	 * @param activeLandmarks - filled with the indices of the landmarks picked, best first.
+	 * @return The number of landmarks picked.
+	 */
+	int pickActiveLandmarks(int startingTownId, int endingTownId, int[] activeLandmarks) {
+		int numberOfActiveLandmarks = Math.min(activeLandmarks.length, landmarks.length);
+		int[] lowerBounds = new int[numberOfActiveLandmarks];
+		Arrays.fill(lowerBounds, -1);
+		
+		for(int landmark = 0; landmark < landmarks.length; landmark++) {
+			int lowerBound = getLowerBound(landmark, startingTownId, endingTownId);
+			
+			//Insertion into the best ones so far
+			for(int i = 0; i < numberOfActiveLandmarks; i++) {
+				if(lowerBound > lowerBounds[i]) {
+					System.arraycopy(lowerBounds, i, lowerBounds, i + 1, numberOfActiveLandmarks - i - 1);
+					System.arraycopy(activeLandmarks, i, activeLandmarks, i + 1, numberOfActiveLandmarks - i - 1);
+					lowerBounds[i] = lowerBound;
+					activeLandmarks[i] = landmark;
+					break;
+				}
+			}
+		}
+		
+		return numberOfActiveLandmarks;
+	}
+	
+	/**
+	 * @param networkPath - the path of the network, e.g. its snapshot.
+	 * @return The path the landmark distances of the network are kept at, next to it.
+	 */
+	public static Path getPath(Path networkPath) {
+		return networkPath.resolveSibling(networkPath.getFileName() + ".landmarks");
+	}
+	
+	/**
+	 * Writes the landmark distances next to the path and moves them over it once complete.
+	 *
+	 * @param path
+	 * @throws IOException
+	 */
+	public void write(Path path) throws IOException {
+		ByteBuffer buffer = NetworkFiles.allocate(network, MAGIC, VERSION, landmarks.length, 0, (long) landmarks.length + distances.length);
+		buffer.asIntBuffer().put(landmarks).put(distances);
+		NetworkFiles.write(buffer, path);
+	}
+	
+	/**
+	 * Reads the landmark distances of a network.
+	 *
+	 * @param network - the network the landmark distances were computed for.
+	 * @param path
+	 * @return The landmark distances.
+	 * @throws IOException when the file cannot be read, is corrupt or was computed for another network.
+	 */
+	public static LandmarkDistances read(RouteNetwork network, Path path) throws IOException {
+		ByteBuffer buffer = NetworkFiles.read(network, path, MAGIC, VERSION, "landmark distances");
+		int numberOfLandmarks = buffer.getInt(16);
+		int[] landmarks = new int[Math.max(numberOfLandmarks, 0)];
+		int[] distances = new int[2 * network.getNumberOfTowns() * landmarks.length];
+		NetworkFiles.checkSize(buffer, (long) landmarks.length + distances.length, path, "landmark distances");
+		buffer.asIntBuffer().get(landmarks).get(distances);
+		
+		return new LandmarkDistances(network, landmarks, distances);
+	}
+}
@@ -0,0 +1,91 @@
+package com.ccc.routes.search;
+
+import com.ccc.routes.network.RouteNetwork;
+
+/**
+ * An A* search over a {@link RouteNetwork} with the lower bounds of its {@link LandmarkDistances} (ALT). The bounds
+ * are consistent, so a town is settled once, as with the {@link DijkstraSearch}, but the search heads for the ending
+ * town and settles a fraction of the towns a Dijkstra search settles on a large network. The towns settled are counted
+ * as towns expanded in the {@link SearchCounters}.
+ *
+ * Only the {@link #ACTIVE_LANDMARKS} landmarks with the best bounds between the starting and ending towns are used,
+ * and the towns the landmarks prove cannot reach the ending town are never queued. When the starting town is also the
+ * ending town the search answers the shortest round trip, as the {@link DijkstraSearch} does.
+ *
+ * @author gibrancastillo
+ *
+ */
+public final class LandmarkSearch {
+	public static final int ACTIVE_LANDMARKS = 4;
+	private static final ThreadLocal<SearchWorkspace> WORKSPACES = ThreadLocal.withInitial(SearchWorkspace::new);
+	
+	private final LandmarkDistances landmarkDistances;
+	private final RouteNetwork network;
+	
+	public LandmarkSearch(LandmarkDistances landmarkDistances) {
+		this.landmarkDistances = landmarkDistances;
+		this.network = landmarkDistances.getNetwork();
+	}
+	
+	/**
+	 * Finds the shortest route (in terms of distance to travel) from the starting town to the ending town.
+	 *
+	 * @param startingTownId
+	 * @param endingTownId
+	 * @return The shortest route, or {@link TownPath#noRoute()} when the ending town cannot be reached.
+	 */
+	public TownPath findShortestPath(int startingTownId, int endingTownId) {
+		if(startingTownId < 0 || endingTownId < 0) {
+			return TownPath.noRoute();
+		}
+		
+		int[] activeLandmarks = new int[ACTIVE_LANDMARKS];
+		int numberOfActiveLandmarks = landmarkDistances.pickActiveLandmarks(startingTownId, endingTownId, activeLandmarks);
+		SearchWorkspace workspace = WORKSPACES.get();
+		workspace.reset(network.getNumberOfTowns());
+		IntMinHeap heap = workspace.getHeap();
+		TownPath path = TownPath.noRoute();
+		long townsExpanded = 1;
+		long routesRelaxed = network.getOutDegree(startingTownId);
+		
+		relax(startingTownId, 0, endingTownId, activeLandmarks, numberOfActiveLandmarks, workspace, heap);
+		
+		while(!heap.isEmpty()) {
+			int townId = heap.poll();
+			int distance = workspace.getDistance(townId);
+			workspace.settle(townId);
+			
+			if(townId == endingTownId) {
+				path = new TownPath(workspace.buildPath(startingTownId, endingTownId), distance);
+				break;
+			}
+			
+			townsExpanded++;
+			routesRelaxed += network.getOutDegree(townId);
+			relax(townId, distance, endingTownId, activeLandmarks, numberOfActiveLandmarks, workspace, heap);
+		}
+		
+		SearchCounters.current().add(townsExpanded, routesRelaxed);
+		
+		return path;
+	}
+	
+	private void relax(int townId, int distance, int endingTownId, int[] activeLandmarks, int numberOfActiveLandmarks, SearchWorkspace workspace,
+			IntMinHeap heap) {
+		for(int route = network.getFirstRoute(townId), end = network.getRoutesEnd(townId); route < end; route++) {
+			int nextTownId = network.getRouteTarget(route);
+			//A distance past Integer.MAX_VALUE is never less than the INFINITY of an unreached town, so it is not kept
+			long nextDistance = (long) distance + network.getRouteDistance(route);
+			
+			if(!workspace.isSettled(nextTownId) && nextDistance < workspace.getDistance(nextTownId)) {
+				int lowerBound = landmarkDistances.getLowerBound(activeLandmarks, numberOfActiveLandmarks, nextTownId, endingTownId);
+				
+				if(lowerBound != LandmarkDistances.INFINITY) {
+					workspace.setDistance(nextTownId, (int) nextDistance, townId);
+					//A key saturated at Integer.MAX_VALUE is polled after the ending town, whose key is its distance
+					heap.insertOrDecrease(nextTownId, (int) Math.min(nextDistance + lowerBound, Integer.MAX_VALUE));
+				}
+			}
+		}
+	}
+}
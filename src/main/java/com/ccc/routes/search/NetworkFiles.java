@@ -0,0 +1,138 @@
+package com.ccc.routes.search;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+import com.ccc.routes.network.RouteNetwork;
+
+/**
+ * The files of the data precomputed for a {@link RouteNetwork} and kept next to it, e.g. the
+ * {@link LandmarkDistances}. A file is little-endian, a 40 byte header followed by its sections: magic, format
+ * version, number of towns, number of routes, two ints of the file type, CRC32C of the routes of the network and
+ * CRC32C of the sections. A file is only read back for the network it was computed for.
+ *
+ * @author gibrancastillo
+ *
+ */
+final class NetworkFiles {
+	static final int HEADER_SIZE = 40;
+	private static final int NETWORK_CHECKSUM_OFFSET = 24;
+	private static final int CHECKSUM_OFFSET = 32;
+	
+	private NetworkFiles() {
+	}
+	
+	/**
+	 * @param network
+	 * @param magic
+	 * @param version
+	 * @param firstValue - the first int of the file type.
+	 * @param secondValue - the second int of the file type.
+	 * @param numberOfInts - the number of ints of the sections.
+	 * @return A buffer with the header written and positioned at the sections.
+	 * @throws IOException when the file would be larger than 2 GB.
+	 */
+	static ByteBuffer allocate(RouteNetwork network, int magic, int version, int firstValue, int secondValue, long numberOfInts) throws IOException {
+		long size = HEADER_SIZE + 4L * numberOfInts;
+		
+		if(size > Integer.MAX_VALUE) {
+			throw new IOException("The precomputed data of " + network.getNumberOfTowns() + " towns is too large to write");
+		}
+		
+		ByteBuffer buffer = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(magic).putInt(version).putInt(network.getNumberOfTowns()).putInt(network.getNumberOfRoutes()).putInt(firstValue)
+				.putInt(secondValue).putLong(getNetworkChecksum(network)).putLong(0);
+		
+		return buffer;
+	}
+	
+	/**
+	 * Writes the buffer next to the path with the checksum of its sections and moves it over the path once complete.
+	 *
+	 * @param buffer - the whole file.
+	 * @param path
+	 * @throws IOException
+	 */
+	static void write(ByteBuffer buffer, Path path) throws IOException {
+		buffer.putLong(CHECKSUM_OFFSET, getChecksum(buffer));
+		buffer.clear();
+		Path temporaryPath = path.resolveSibling(path.getFileName() + ".tmp");
+		
+		try(FileChannel channel = FileChannel.open(temporaryPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			while(buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			
+			channel.force(true);
+		}
+		
+		Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+	
+	/**
+	 * @param network - the network the file was computed for.
+	 * @param path
+	 * @param magic
+	 * @param version
+	 * @param description - what the file holds, for the error messages.
+	 * @return The whole file, positioned at the sections.
+	 * @throws IOException when the file cannot be read, is corrupt or was computed for another network.
+	 */
+	static ByteBuffer read(RouteNetwork network, Path path, int magic, int version, String description) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN);
+		
+		if(buffer.limit() < HEADER_SIZE || buffer.getInt(0) != magic) {
+			throw new IOException("Not a " + description + " file: " + path);
+		} else if(buffer.getInt(4) != version) {
+			throw new IOException("Unsupported " + description + " version " + buffer.getInt(4) + ": " + path);
+		} else if(buffer.getLong(CHECKSUM_OFFSET) != getChecksum(buffer)) {
+			throw new IOException("Corrupt " + description + ": " + path);
+		} else if(buffer.getInt(8) != network.getNumberOfTowns() || buffer.getInt(12) != network.getNumberOfRoutes()
+				|| buffer.getLong(NETWORK_CHECKSUM_OFFSET) != getNetworkChecksum(network)) {
+			throw new IOException("The " + description + " were computed for another network: " + path);
+		}
+		
+		return buffer.position(HEADER_SIZE);
+	}
+	
+	/**
+	 * @throws IOException when the sections left in the buffer are not the number of ints expected.
+	 */
+	static void checkSize(ByteBuffer buffer, long numberOfInts, Path path, String description) throws IOException {
+		if(buffer.remaining() != 4L * numberOfInts) {
+			throw new IOException("Truncated " + description + ": " + path);
+		}
+	}
+	
+	private static long getChecksum(ByteBuffer buffer) {
+		CRC32C crc = new CRC32C();
+		crc.update(buffer.duplicate().position(HEADER_SIZE));
+		
+		return crc.getValue();
+	}
+	
+	/**
+	 * @return The CRC32C of the routes of the network, the town names are left out.
+	 */
+	private static long getNetworkChecksum(RouteNetwork network) {
+		ByteBuffer buffer = ByteBuffer.allocate(3 * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		CRC32C crc = new CRC32C();
+		
+		for(int townId = 0; townId < network.getNumberOfTowns(); townId++) {
+			for(int route = network.getFirstRoute(townId), end = network.getRoutesEnd(townId); route < end; route++) {
+				buffer.clear();
+				buffer.putInt(townId).putInt(network.getRouteTarget(route)).putInt(network.getRouteDistance(route)).flip();
+				crc.update(buffer);
+			}
+		}
+		
+		return crc.getValue();
+	}
+}
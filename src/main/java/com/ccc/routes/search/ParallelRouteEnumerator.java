@@ -0,0 +1,237 @@
+package com.ccc.routes.search;
+
+import java.math.BigInteger;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import com.ccc.routes.network.RouteNetwork;
+
+/**
+ * The recursive enumeration of trips and routes split over a {@link ForkJoinPool}. Down to the split depth every
+ * route leaving a town becomes a subtask, below it a subtask enumerates its part of the search tree sequentially with
+ * the {@link RecursiveRouteSearch}. A subtask only holds the town it continues from and the stops or distance it
+ * took to get there, so no state is shared between subtasks and the counts are summed as the subtasks join.
+ *
+ * The split depth trades scheduling overhead for balance, every level multiplies the number of subtasks by the
+ * out degree of the towns, so a few levels are enough to keep every worker busy.
+ *
+ * The subtasks share the {@link SearchBudget} of the thread that invoked the enumeration, once one of them runs out of
+ * it they all stop at their next check. The counts of the subtasks are lost with them, so a stopped enumeration
+ * carries no partial count.
+ *
+ * @author gibrancastillo
+ *
+ */
+public final class ParallelRouteEnumerator {
+	public static final int DEFAULT_SPLIT_DEPTH = 3;
+	
+	private final RecursiveRouteSearch recursiveRouteSearch;
+	private final RouteNetwork network;
+	private final ForkJoinPool pool;
+	private final int splitDepth;
+	
+	/**
+	 * @param network
+	 * @param pool - the pool the subtasks run in, its parallelism is the parallelism of the enumeration.
+	 * @param splitDepth - the number of stops down to which the search tree is split into subtasks.
+	 */
+	public ParallelRouteEnumerator(RouteNetwork network, ForkJoinPool pool, int splitDepth) {
+		if(splitDepth < 0) {
+			throw new IllegalArgumentException("The split depth must not be negative: " + splitDepth);
+		}
+		
+		this.recursiveRouteSearch = new RecursiveRouteSearch(network);
+		this.network = network;
+		this.pool = pool;
+		this.splitDepth = splitDepth;
+	}
+	
+	public ParallelRouteEnumerator(RouteNetwork network) {
+		this(network, ForkJoinPool.commonPool(), DEFAULT_SPLIT_DEPTH);
+	}
+	
+	public int getParallelism() {
+		return pool.getParallelism();
+	}
+	
+	public int getSplitDepth() {
+		return splitDepth;
+	}
+	
+	/**
+	 * Calculates the number of trips from starting to ending town with the provided number of stops (maximum or exact).
+	 *
+	 * @param startingTownId
+	 * @param endingTownId
+	 * @param numberOfStops
+	 * @param isCalculatingMaxStops
+	 * @return The number of trips.
+	 */
+	public long countTrips(int startingTownId, int endingTownId, int numberOfStops, boolean isCalculatingMaxStops) {
+		if(startingTownId < 0 || endingTownId < 0) {
+			return 0;
+		}
+		
+		SearchBudget budget = SearchBudget.current();
+		TripsTask task = new TripsTask(startingTownId, endingTownId, numberOfStops, 0, isCalculatingMaxStops, budget);
+		
+		return invoke(task, budget);
+	}
+	
+	/**
+	 * Calculates the number of different routes from starting to ending town with a distance of less than the
+	 * maximum distance.
+	 *
+	 * @param startingTownId
+	 * @param endingTownId
+	 * @param maxDistance
+	 * @return The number of different routes.
+	 */
+	public long countRoutesWithMaxDistance(int startingTownId, int endingTownId, int maxDistance) {
+		if(startingTownId < 0 || endingTownId < 0) {
+			return 0;
+		}
+		
+		SearchBudget budget = SearchBudget.current();
+		RoutesTask task = new RoutesTask(startingTownId, endingTownId, maxDistance, 0, 0, budget);
+		
+		return invoke(task, budget);
+	}
+	
+	private long invoke(EnumerationTask task, SearchBudget budget) {
+		try {
+			return pool.invoke(task);
+		} catch(SearchBudgetExceededException e) {
+			throw budget.exceeded((BigInteger) null);
+		} finally {
+			SearchCounters.current().add(task.counters);
+		}
+	}
+	
+	/**
+	 * A subtask of the enumeration, it counts its work in counters of its own that are added to the counters of
+	 * its parent as it joins.
+	 */
+	private abstract static class EnumerationTask extends RecursiveTask<Long> {
+		private static final long serialVersionUID = 1L;
+		final SearchCounters counters = new SearchCounters();
+		final SearchBudget budget;
+		
+		EnumerationTask(SearchBudget budget) {
+			this.budget = budget;
+		}
+		
+		/**
+		 * Forks every task but the last one, computes the last one in the current worker and sums the counts.
+		 */
+		long forkAndJoin(EnumerationTask[] tasks, int numberOfTasks) {
+			long counter = 0;
+			
+			for(int i = 0; i < numberOfTasks - 1; i++) {
+				tasks[i].fork();
+			}
+			
+			if(numberOfTasks > 0) {
+				counter += tasks[numberOfTasks - 1].invoke();
+				counters.add(tasks[numberOfTasks - 1].counters);
+			}
+			
+			for(int i = numberOfTasks - 2; i >= 0; i--) {
+				counter += tasks[i].join();
+				counters.add(tasks[i].counters);
+			}
+			
+			return counter;
+		}
+	}
+	
+	private final class TripsTask extends EnumerationTask {
+		private static final long serialVersionUID = 1L;
+		private final int townId;
+		private final int endingTownId;
+		private final int numberOfStops;
+		private final int stops;
+		private final boolean isCalculatingMaxStops;
+		
+		TripsTask(int townId, int endingTownId, int numberOfStops, int stops, boolean isCalculatingMaxStops, SearchBudget budget) {
+			super(budget);
+			this.townId = townId;
+			this.endingTownId = endingTownId;
+			this.numberOfStops = numberOfStops;
+			this.stops = stops;
+			this.isCalculatingMaxStops = isCalculatingMaxStops;
+		}
+		
+		@Override
+		protected Long compute() {
+			if(stops >= splitDepth || stops >= numberOfStops) {
+				return recursiveRouteSearch.countTrips(townId, endingTownId, numberOfStops, stops, isCalculatingMaxStops, counters, budget);
+			}
+			
+			long tripsCounter = 0;
+			EnumerationTask[] tasks = new EnumerationTask[network.getOutDegree(townId)];
+			counters.add(1, tasks.length);
+			counters.updatePeakDepth(stops + 1);
+			int numberOfTasks = 0;
+			
+			for(int route = network.getFirstRoute(townId), end = network.getRoutesEnd(townId); route < end; route++) {
+				int nextTownId = network.getRouteTarget(route);
+				
+				if(nextTownId == endingTownId && (isCalculatingMaxStops || stops == numberOfStops - 1)) {
+					tripsCounter++;
+				}
+				
+				tasks[numberOfTasks++] = new TripsTask(nextTownId, endingTownId, numberOfStops, stops + 1, isCalculatingMaxStops, budget);
+			}
+			
+			return tripsCounter + forkAndJoin(tasks, numberOfTasks);
+		}
+	}
+	
+	private final class RoutesTask extends EnumerationTask {
+		private static final long serialVersionUID = 1L;
+		private final int townId;
+		private final int endingTownId;
+		private final int maxDistance;
+		private final int sumDistance;
+		private final int depth;
+		
+		RoutesTask(int townId, int endingTownId, int maxDistance, int sumDistance, int depth, SearchBudget budget) {
+			super(budget);
+			this.townId = townId;
+			this.endingTownId = endingTownId;
+			this.maxDistance = maxDistance;
+			this.sumDistance = sumDistance;
+			this.depth = depth;
+		}
+		
+		@Override
+		protected Long compute() {
+			if(depth >= splitDepth) {
+				return recursiveRouteSearch.countRoutesWithMaxDistance(townId, endingTownId, maxDistance, sumDistance, depth + 1, counters, budget);
+			}
+			
+			long routesCounter = 0;
+			EnumerationTask[] tasks = new EnumerationTask[network.getOutDegree(townId)];
+			counters.add(1, tasks.length);
+			counters.updatePeakDepth(depth + 1);
+			int numberOfTasks = 0;
+			
+			for(int route = network.getFirstRoute(townId), end = network.getRoutesEnd(townId); route < end; route++) {
+				long nextDistance = (long) sumDistance + network.getRouteDistance(route);
+				
+				if(nextDistance < maxDistance) {
+					int nextTownId = network.getRouteTarget(route);
+					
+					if(nextTownId == endingTownId) {
+						routesCounter++;
+					}
+					
+					tasks[numberOfTasks++] = new RoutesTask(nextTownId, endingTownId, maxDistance, (int) nextDistance, depth + 1, budget);
+				}
+			}
+			
+			return routesCounter + forkAndJoin(tasks, numberOfTasks);
+		}
+	}
+}
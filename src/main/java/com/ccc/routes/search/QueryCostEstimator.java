@@ -0,0 +1,270 @@
+package com.ccc.routes.search;
+
+import com.ccc.routes.network.NetworkStatistics;
+import com.ccc.routes.network.RouteNetwork;
+
+/**
+ * Estimates up front the work of a query, in routes relaxed, from the {@link NetworkStatistics} of the network, the
+ * number of stops or the distance budget of the query and the out degree of its starting town. The estimates are
+ * meant to tell the microsecond queries from the ones that can run for seconds or hours, not to predict a latency.
+ *
+ * <> The counting passes cost what their loops cost: stops * routes for the layers of the {@link TripCounter} or
+ * towns^3 * log2(stops) for its matrix power, whichever it picks, the matrix power only while its matrices fit under
+ * {@link TripCounter#MATRIX_POWER_MAX_ENTRIES}, and maxDistance * routes for the sparse rows of the
+ * {@link DistanceBudgetCounter}, which runs whatever the size of the network. A count from a starting town costs the enumeration instead when the
+ * {@link QueryPlanner} would enumerate, so a town with few routes out is costed as the few trips it starts.
+ * <> An enumeration expands one town per trip or route it goes through, the out degree of the starting town times
+ * the walk growth rate to the power of the stops, or of the distance budget over the mean route distance. It expands
+ * at most the walks from the starting town when that town cannot reach a cycle.
+ * <> A shortest route search costs a Dijkstra search over the whole network, (towns + routes) * log2(towns).
+ *
+ * A query under a {@link SearchBudget} with a maximum number of towns expanded costs at most that many towns, each
+ * relaxing the mean out degree of routes.
+ *
+ * @author gibrancastillo
+ *
+ */
+public final class QueryCostEstimator {
+	private final NetworkStatistics statistics;
+	private final RouteNetwork network;
+	private final double meanOutDegree;
+	
+	public QueryCostEstimator(NetworkStatistics statistics) {
+		this.statistics = statistics;
+		this.network = statistics.getNetwork();
+		this.meanOutDegree = Math.max(1, (double) network.getNumberOfRoutes() / Math.max(network.getNumberOfTowns(), 1));
+	}
+	
+	public NetworkStatistics getStatistics() {
+		return statistics;
+	}
+	
+	public RouteNetwork getNetwork() {
+		return network;
+	}
+	
+	/**
+	 * @param numberOfTowns - the towns of the itinerary.
+	 * @return The cost of the distance of an itinerary, one route lookup per hop.
+	 */
+	public double estimateRouteDistance(int numberOfTowns) {
+		return numberOfTowns;
+	}
+	
+	/**
+	 * @param startingTownId
+	 * @param numberOfStops
+	 * @param isCalculatingMaxStops
+	 * @param budget
+	 * @return The cost of counting trips with the strategy the {@link QueryPlanner} picks, the {@link TripCounter} or
+	 * the enumeration from the starting town.
+	 */
+	public double estimateTrips(int startingTownId, int numberOfStops, boolean isCalculatingMaxStops, SearchBudget budget) {
+		double cost = Math.min(estimateTripsByLayers(numberOfStops), estimateTripsByMatrixPower(numberOfStops, isCalculatingMaxStops));
+		
+		if(boundTripsByRecursion(startingTownId, numberOfStops) <= QueryPlanner.DEPTH_FIRST_MAX_COST) {
+			cost = Math.min(cost, estimateTripsByRecursion(startingTownId, numberOfStops));
+		}
+		
+		return cap(cost, budget);
+	}
+	
+	/**
+	 * @param numberOfStops
+	 * @return The cost of counting trips with the layers of the {@link TripCounter}.
+	 */
+	public double estimateTripsByLayers(int numberOfStops) {
+		return (double) Math.max(numberOfStops, 0) * Math.max(network.getNumberOfRoutes(), network.getNumberOfTowns());
+	}
+	
+	/**
+	 * @param numberOfStops
+	 * @param isCalculatingMaxStops
+	 * @return The cost of counting trips with the matrix power of the {@link TripCounter}, infinite when its matrices
+	 * would not fit under {@link TripCounter#MATRIX_POWER_MAX_ENTRIES}.
+	 */
+	public double estimateTripsByMatrixPower(int numberOfStops, boolean isCalculatingMaxStops) {
+		double towns = network.getNumberOfTowns();
+		
+		if(!TripCounter.isMatrixPowerAffordable(network.getNumberOfTowns(), isCalculatingMaxStops)) {
+			return Double.POSITIVE_INFINITY;
+		}
+		
+		return towns * towns * towns * (32 - Integer.numberOfLeadingZeros(Math.max(numberOfStops, 1)));
+	}
+	
+	/**
+	 * @param startingTownId
+	 * @param numberOfStops
+	 * @param budget
+	 * @return The cost of counting trips by enumerating them.
+	 */
+	public double estimateTripsByRecursion(int startingTownId, int numberOfStops, SearchBudget budget) {
+		return cap(estimateTripsByRecursion(startingTownId, numberOfStops), budget);
+	}
+	
+	/**
+	 * @param startingTownId
+	 * @param numberOfStops
+	 * @return The cost of counting trips by enumerating them, whatever the budget.
+	 */
+	public double estimateTripsByRecursion(int startingTownId, int numberOfStops) {
+		return estimateEnumeration(startingTownId, numberOfStops);
+	}
+	
+	/**
+	 * @param startingTownId
+	 * @param numberOfStops
+	 * @return The most the enumeration of the trips can cost, every town it expands having the maximum out degree.
+	 */
+	public double boundTripsByRecursion(int startingTownId, int numberOfStops) {
+		return boundEnumeration(startingTownId, numberOfStops);
+	}
+	
+	/**
+	 * @param startingTownId
+	 * @param maxDistance
+	 * @param budget
+	 * @return The cost of counting routes with the strategy the {@link QueryPlanner} picks, the
+	 * {@link DistanceBudgetCounter} or the enumeration from the starting town.
+	 */
+	public double estimateRoutesWithMaxDistance(int startingTownId, int maxDistance, SearchBudget budget) {
+		double cost = estimateRoutesWithMaxDistance(maxDistance);
+		
+		if(boundRoutesWithMaxDistanceByRecursion(startingTownId, maxDistance) <= QueryPlanner.DEPTH_FIRST_MAX_COST) {
+			cost = Math.min(cost, estimateRoutesWithMaxDistanceByRecursion(startingTownId, maxDistance));
+		}
+		
+		return cap(cost, budget);
+	}
+	
+	/**
+	 * @param maxDistance
+	 * @return The cost of counting routes with the {@link DistanceBudgetCounter}, whatever the budget. Its rows only
+	 * hold the towns they reach, so a row relaxes at most every route once and the towns not reached cost nothing.
+	 */
+	public double estimateRoutesWithMaxDistance(int maxDistance) {
+		return (double) Math.max(maxDistance, 0) * Math.max(network.getNumberOfRoutes(), 1);
+	}
+	
+	/**
+	 * @param startingTownId
+	 * @param maxDistance
+	 * @param budget
+	 * @return The cost of counting routes by enumerating them.
+	 */
+	public double estimateRoutesWithMaxDistanceByRecursion(int startingTownId, int maxDistance, SearchBudget budget) {
+		return cap(estimateRoutesWithMaxDistanceByRecursion(startingTownId, maxDistance), budget);
+	}
+	
+	/**
+	 * @param startingTownId
+	 * @param maxDistance
+	 * @return The cost of counting routes by enumerating them, whatever the budget.
+	 */
+	public double estimateRoutesWithMaxDistanceByRecursion(int startingTownId, int maxDistance) {
+		double depth = statistics.getMeanRouteDistance() == 0 ? 0 : maxDistance / statistics.getMeanRouteDistance();
+		
+		return estimateEnumeration(startingTownId, Math.min(Math.ceil(depth), Integer.MAX_VALUE));
+	}
+	
+	/**
+	 * @param startingTownId
+	 * @param maxDistance
+	 * @return The most the enumeration of the routes can cost, every route having the minimum distance and every
+	 * town it expands the maximum out degree, infinite when a cycle of routes of no distance can be reached.
+	 */
+	public double boundRoutesWithMaxDistanceByRecursion(int startingTownId, int maxDistance) {
+		if(maxDistance <= 0) {
+			return 0;
+		}
+		
+		return boundEnumeration(startingTownId,
+				statistics.getMinRouteDistance() == 0 ? Double.POSITIVE_INFINITY : Math.ceil((double) maxDistance / statistics.getMinRouteDistance()));
+	}
+	
+	/**
+	 * @return The cost of a shortest route search, the searches do not check the budget.
+	 */
+	public double estimateShortestRoute() {
+		double towns = network.getNumberOfTowns();
+		
+		return (towns + network.getNumberOfRoutes()) * Math.max(1, Math.log(towns) / Math.log(2));
+	}
+	
+	/**
+	 * The searches are weighed against the Dijkstra search D: the bidirectional search meets halfway and settles
+	 * about D / 2, A* guided by landmarks D / 4, the contraction hierarchy searches two upward search spaces of about
+	 * sqrt(towns) towns each, and the precomputed distances only walk the towns of the route, about
+	 * log(towns) / log(walk growth rate) hops. Every precomputed search is kept cheaper than the ones it replaces.
+	 *
+	 * @param strategy - a shortest route strategy.
+	 * @return The cost of a shortest route search with the strategy.
+	 */
+	public double estimateShortestRoute(QueryPlan.Strategy strategy) {
+		double dijkstraCost = estimateShortestRoute();
+		double towns = Math.max(network.getNumberOfTowns(), 1);
+		
+		switch(strategy) {
+			case PRECOMPUTED_DISTANCES:
+				double hops = Math.ceil(Math.log(towns) / Math.log(Math.max(statistics.getWalkGrowthRate(), 2)));
+				
+				return Math.min(hops + 1, dijkstraCost / 16);
+			case CONTRACTION_HIERARCHY:
+				return Math.min(2 * Math.sqrt(towns) * meanOutDegree, dijkstraCost / 8);
+			case LANDMARK_SEARCH:
+				return dijkstraCost / 4;
+			case BIDIRECTIONAL_DIJKSTRA:
+				return dijkstraCost / 2;
+			case DIJKSTRA:
+				return dijkstraCost;
+			default:
+				throw new IllegalArgumentException("Not a shortest route strategy " + strategy);
+		}
+	}
+	
+	/**
+	 * @return The routes relaxed by an enumeration of the given depth: the out degree of the starting town times
+	 * 1 + g + g^2 + ... + g^(depth - 1) towns expanded, g the walk growth rate, each relaxing the mean out degree.
+	 * An enumeration from a town that cannot reach a cycle expands at most the walks from it, whatever the depth.
+	 */
+	private double estimateEnumeration(int startingTownId, double depth) {
+		if(startingTownId < 0 || depth <= 0) {
+			return 0;
+		}
+		
+		double numberOfWalks = statistics.getNumberOfWalks(startingTownId);
+		
+		if(numberOfWalks != Double.POSITIVE_INFINITY) {
+			return numberOfWalks * meanOutDegree;
+		}
+		
+		double growthRate = statistics.getWalkGrowthRate();
+		double townsExpanded = Math.abs(growthRate - 1) < 1e-9 ? depth : (Math.pow(growthRate, depth) - 1) / (growthRate - 1);
+		
+		return network.getOutDegree(startingTownId) * townsExpanded * meanOutDegree;
+	}
+	
+	/**
+	 * @return The routes relaxed by an enumeration of the given depth when every town has the maximum out degree, or
+	 * by the walks from the starting town when there are fewer.
+	 */
+	private double boundEnumeration(int startingTownId, double depth) {
+		if(startingTownId < 0 || depth <= 0) {
+			return 0;
+		}
+		
+		double maxOutDegree = statistics.getMaxOutDegree();
+		double townsExpanded = maxOutDegree <= 1 ? depth : (Math.pow(maxOutDegree, depth) - 1) / (maxOutDegree - 1);
+		
+		return Math.min(townsExpanded, statistics.getNumberOfWalks(startingTownId)) * maxOutDegree;
+	}
+	
+	private double cap(double cost, SearchBudget budget) {
+		if(budget.getMaxTownsExpanded() == SearchBudget.NO_LIMIT) {
+			return cost;
+		}
+		
+		return Math.min(cost, (budget.getMaxTownsExpanded() + SearchBudget.CHECK_INTERVAL) * meanOutDegree);
+	}
+}
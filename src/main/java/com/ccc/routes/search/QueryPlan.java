@@ -0,0 +1,143 @@
+package com.ccc.routes.search;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+import com.ccc.routes.network.NetworkStatistics;
+
+/**
+ * The strategy a {@link QueryPlanner} picked to answer a query, with the estimated cost, in routes relaxed, of every
+ * strategy it weighed. {@link #explain()} tells why the strategy was picked:
+ *
+ * trips C-C with at most 3 stops: DEPTH_FIRST_SEARCH, estimated cost 17
+ *   considered DEPTH_FIRST_SEARCH=17 (at most 39), TRIP_LAYERS=27, MATRIX_POWER=250
+ *   over NetworkStatistics [towns=5, routes=9, ...]
+ *
+ * @author gibrancastillo
+ *
+ */
+public final class QueryPlan {
+	/**
+	 * The algorithms that can answer a query.
+	 */
+	public enum Strategy {
+		/**
+		 * Enumerates the trips or routes one by one with the {@link RecursiveRouteSearch}.
+		 */
+		DEPTH_FIRST_SEARCH,
+		/**
+		 * Counts the trips layer by layer of stops with the {@link TripCounter}.
+		 */
+		TRIP_LAYERS,
+		/**
+		 * Counts the trips with a power of the adjacency matrix with the {@link TripCounter}.
+		 */
+		MATRIX_POWER,
+		/**
+		 * Counts the routes row by row of distance with the {@link DistanceBudgetCounter}.
+		 */
+		DISTANCE_BUDGET,
+		/**
+		 * Looks the shortest route up in the {@link AllPairsShortestDistances}.
+		 */
+		PRECOMPUTED_DISTANCES,
+		/**
+		 * Searches the {@link ContractionHierarchy} upward from both ends.
+		 */
+		CONTRACTION_HIERARCHY,
+		/**
+		 * Searches with A* guided by the {@link LandmarkDistances}.
+		 */
+		LANDMARK_SEARCH,
+		/**
+		 * Searches from both ends with the {@link BidirectionalDijkstraSearch}.
+		 */
+		BIDIRECTIONAL_DIJKSTRA,
+		/**
+		 * Searches from the starting town with the {@link DijkstraSearch}.
+		 */
+		DIJKSTRA
+	}
+	
+	private final String query;
+	private final Strategy strategy;
+	private final Map<Strategy, Double> estimatedCosts;
+	private final double depthFirstBound;
+	private final NetworkStatistics statistics;
+	
+	/**
+	 * @param query - the query and its parameters, as shown by {@link #explain()}.
+	 * @param strategy
+	 * @param estimatedCosts - the estimated cost of every strategy weighed, the picked one included.
+	 * @param depthFirstBound - the most a depth first search can cost, or NaN when it was not weighed.
+	 * @param statistics
+	 */
+	QueryPlan(String query, Strategy strategy, Map<Strategy, Double> estimatedCosts, double depthFirstBound, NetworkStatistics statistics) {
+		this.query = query;
+		this.strategy = strategy;
+		this.estimatedCosts = Collections.unmodifiableMap(new EnumMap<>(estimatedCosts));
+		this.depthFirstBound = depthFirstBound;
+		this.statistics = statistics;
+	}
+	
+	public String getQuery() {
+		return query;
+	}
+	
+	public Strategy getStrategy() {
+		return strategy;
+	}
+	
+	/**
+	 * @return The estimated cost of the picked strategy, in routes relaxed.
+	 */
+	public double getEstimatedCost() {
+		return estimatedCosts.get(strategy);
+	}
+	
+	/**
+	 * @return The estimated cost of every strategy weighed, in routes relaxed, in the order of {@link Strategy}.
+	 */
+	public Map<Strategy, Double> getEstimatedCosts() {
+		return estimatedCosts;
+	}
+	
+	public NetworkStatistics getStatistics() {
+		return statistics;
+	}
+	
+	/**
+	 * @return The query, the picked strategy and its estimated cost, the strategies weighed and the statistics of the
+	 * network, one per line.
+	 */
+	public String explain() {
+		StringBuilder explanation = new StringBuilder(query).append(": ").append(strategy).append(", estimated cost ")
+				.append(format(getEstimatedCost())).append("\n  considered ");
+		String separator = "";
+		
+		for(Map.Entry<Strategy, Double> estimatedCost : estimatedCosts.entrySet()) {
+			explanation.append(separator).append(estimatedCost.getKey()).append('=').append(format(estimatedCost.getValue()));
+			separator = ", ";
+			
+			if(estimatedCost.getKey() == Strategy.DEPTH_FIRST_SEARCH) {
+				explanation.append(" (at most ").append(format(depthFirstBound)).append(')');
+			}
+		}
+		
+		return explanation.append("\n  over ").append(statistics).toString();
+	}
+	
+	private static String format(double cost) {
+		if(cost == Double.POSITIVE_INFINITY) {
+			return "unbounded";
+		}
+		
+		return cost < 1e15 ? String.valueOf(Math.round(cost)) : String.format("%.3e", cost);
+	}
+	
+	@Override
+	public String toString() {
+		return explain();
+	}
+}
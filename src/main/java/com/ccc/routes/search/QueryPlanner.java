@@ -0,0 +1,139 @@
+package com.ccc.routes.search;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.ccc.routes.network.NetworkStatistics;
+import com.ccc.routes.network.RouteNetwork;
+import com.ccc.routes.search.QueryPlan.Strategy;
+
+/**
+ * Picks per query the cheapest strategy that can answer it over a network, from the estimates of the
+ * {@link QueryCostEstimator}:
+ * <> Trips are counted by a depth first search when there are only a few, otherwise by the layers or the matrix power
+ * of the {@link TripCounter}, whichever relaxes fewer routes for the number of stops.
+ * <> Routes with a maximum distance are counted by a depth first search when there are only a few, otherwise by the
+ * rows of the {@link DistanceBudgetCounter}.
+ * <> Shortest routes are looked up in the precomputed distances, otherwise searched in the contraction hierarchy, with
+ * the landmarks, from both ends or from the starting town, whichever is available and the cheapest.
+ *
+ * A depth first search is only picked when its count is sure to be small: the search expands every town with the
+ * maximum out degree, or every walk from its starting town, and still relaxes at most {@link #DEPTH_FIRST_MAX_COST}
+ * routes. Its estimate is an average and could be far off from a starting town in the dense part of a network.
+ *
+ * A planner is immutable and can plan from many threads at once.
+ *
+ * @author gibrancastillo
+ *
+ */
+public final class QueryPlanner {
+	public static final double DEPTH_FIRST_MAX_COST = 4096;
+	
+	private final QueryCostEstimator costEstimator;
+	private final NetworkStatistics statistics;
+	private final RouteNetwork network;
+	
+	/**
+	 * @param statistics
+	 */
+	public QueryPlanner(NetworkStatistics statistics) {
+		this.costEstimator = new QueryCostEstimator(statistics);
+		this.statistics = statistics;
+		this.network = statistics.getNetwork();
+	}
+	
+	public QueryCostEstimator getCostEstimator() {
+		return costEstimator;
+	}
+	
+	public NetworkStatistics getStatistics() {
+		return statistics;
+	}
+	
+	public RouteNetwork getNetwork() {
+		return network;
+	}
+	
+	/**
+	 * @param startingTownId
+	 * @param endingTownId
+	 * @param numberOfStops
+	 * @param isCalculatingMaxStops
+	 * @return The plan of counting the trips, {@link Strategy#DEPTH_FIRST_SEARCH}, {@link Strategy#TRIP_LAYERS} or
+	 * {@link Strategy#MATRIX_POWER}.
+	 */
+	public QueryPlan planTrips(int startingTownId, int endingTownId, int numberOfStops, boolean isCalculatingMaxStops) {
+		Map<Strategy, Double> estimatedCosts = new EnumMap<>(Strategy.class);
+		estimatedCosts.put(Strategy.DEPTH_FIRST_SEARCH, costEstimator.estimateTripsByRecursion(startingTownId, numberOfStops));
+		estimatedCosts.put(Strategy.TRIP_LAYERS, costEstimator.estimateTripsByLayers(numberOfStops));
+		double matrixPowerCost = costEstimator.estimateTripsByMatrixPower(numberOfStops, isCalculatingMaxStops);
+		
+		//A matrix too large to hold is not weighed at all
+		if(matrixPowerCost != Double.POSITIVE_INFINITY) {
+			estimatedCosts.put(Strategy.MATRIX_POWER, matrixPowerCost);
+		}
+		
+		String query = "trips " + getTownName(startingTownId) + "-" + getTownName(endingTownId) + (isCalculatingMaxStops ? " with at most " : " with exactly ")
+				+ numberOfStops + " stops";
+		
+		return plan(query, estimatedCosts, costEstimator.boundTripsByRecursion(startingTownId, numberOfStops));
+	}
+	
+	/**
+	 * @param startingTownId
+	 * @param endingTownId
+	 * @param maxDistance
+	 * @return The plan of counting the routes with a distance of less than the maximum distance,
+	 * {@link Strategy#DEPTH_FIRST_SEARCH} or {@link Strategy#DISTANCE_BUDGET}.
+	 */
+	public QueryPlan planRoutesWithMaxDistance(int startingTownId, int endingTownId, int maxDistance) {
+		Map<Strategy, Double> estimatedCosts = new EnumMap<>(Strategy.class);
+		estimatedCosts.put(Strategy.DEPTH_FIRST_SEARCH, costEstimator.estimateRoutesWithMaxDistanceByRecursion(startingTownId, maxDistance));
+		estimatedCosts.put(Strategy.DISTANCE_BUDGET, costEstimator.estimateRoutesWithMaxDistance(maxDistance));
+		String query = "routes " + getTownName(startingTownId) + "-" + getTownName(endingTownId) + " shorter than " + maxDistance;
+		
+		return plan(query, estimatedCosts, costEstimator.boundRoutesWithMaxDistanceByRecursion(startingTownId, maxDistance));
+	}
+	
+	/**
+	 * @param startingTownId
+	 * @param endingTownId
+	 * @param availableStrategies - the shortest route strategies the graph can run now, {@link Strategy#DIJKSTRA}
+	 * always can.
+	 * @return The plan of finding the shortest route.
+	 */
+	public QueryPlan planShortestRoute(int startingTownId, int endingTownId, Set<Strategy> availableStrategies) {
+		Map<Strategy, Double> estimatedCosts = new EnumMap<>(Strategy.class);
+		estimatedCosts.put(Strategy.DIJKSTRA, costEstimator.estimateShortestRoute(Strategy.DIJKSTRA));
+		
+		for(Strategy strategy : availableStrategies) {
+			estimatedCosts.put(strategy, costEstimator.estimateShortestRoute(strategy));
+		}
+		
+		return plan("shortest route " + getTownName(startingTownId) + "-" + getTownName(endingTownId), estimatedCosts, Double.NaN);
+	}
+	
+	/**
+	 * @return The plan of the cheapest strategy, the first in the order of {@link Strategy} when two cost the same.
+	 */
+	private QueryPlan plan(String query, Map<Strategy, Double> estimatedCosts, double depthFirstBound) {
+		Strategy cheapestStrategy = null;
+		
+		for(Map.Entry<Strategy, Double> estimatedCost : estimatedCosts.entrySet()) {
+			if(estimatedCost.getKey() == Strategy.DEPTH_FIRST_SEARCH && !(depthFirstBound <= DEPTH_FIRST_MAX_COST)) {
+				continue;
+			}
+			
+			if(cheapestStrategy == null || estimatedCost.getValue() < estimatedCosts.get(cheapestStrategy)) {
+				cheapestStrategy = estimatedCost.getKey();
+			}
+		}
+		
+		return new QueryPlan(query, cheapestStrategy, estimatedCosts, depthFirstBound, statistics);
+	}
+	
+	private String getTownName(int townId) {
+		return townId < 0 ? "?" : network.getTownName(townId);
+	}
+}
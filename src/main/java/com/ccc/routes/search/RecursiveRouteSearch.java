@@ -0,0 +1,235 @@
+package com.ccc.routes.search;
+
+import java.math.BigInteger;
+
+import com.ccc.routes.network.RouteNetwork;
+
+/**
+ * The original recursive solutions, enumerating every trip or route one hop at a time over the int ids of a
+ * {@link RouteNetwork}. They are exponential in the size of the answer and are kept to cross-check the
+ * counting and shortest route algorithms. Every town the enumeration goes through counts as a town expanded in the
+ * {@link SearchCounters}, and its depth as the recursion depth.
+ *
+ * The recursion runs on a {@link RouteFrameStack} rather than on the thread stack, one frame per hop, so a large
+ * number of stops or distance budget over short routes takes time but never overflows the thread stack. The
+ * enumerations check the {@link SearchBudget} of the query every {@link SearchBudget#CHECK_INTERVAL} towns expanded,
+ * a count stopped by it carries the trips or routes counted so far.
+ *
+ * @author gibrancastillo
+ *
+ */
+public final class RecursiveRouteSearch {
+	private static final int INITIAL_FRAMES = 64;
+	
+	private final RouteNetwork network;
+	
+	public RecursiveRouteSearch(RouteNetwork network) {
+		this.network = network;
+	}
+	
+	/**
+	 * Calculates the number of trips from starting to ending town with the provided number of stops (maximum or exact).
+	 *
+	 * @param startingTownId
+	 * @param endingTownId
+	 * @param numberOfStops
+	 * @param isCalculatingMaxStops
+	 * @return The number of trips.
+	 */
+	public long countTrips(int startingTownId, int endingTownId, int numberOfStops, boolean isCalculatingMaxStops) {
+		if(startingTownId < 0 || endingTownId < 0) {
+			return 0;
+		}
+		
+		return countTrips(startingTownId, endingTownId, numberOfStops, 0, isCalculatingMaxStops, SearchCounters.current(), SearchBudget.current());
+	}
+	
+	/**
+	 * Counts the trips that continue from a town reached after a number of stops, the {@link ParallelRouteEnumerator}
+	 * continues its subtasks from here once they are too deep to split.
+	 */
+	long countTrips(int townId, int endingTownId, int numberOfStops, int stops, boolean isCalculatingMaxStops, SearchCounters counters,
+			SearchBudget budget) {
+		if(stops >= numberOfStops) {
+			return 0;
+		}
+		
+		RouteFrameStack frames = new RouteFrameStack(Math.min(numberOfStops - stops, INITIAL_FRAMES));
+		long tripsCounter = 0;
+		long townsExpanded = 1;
+		long routesRelaxed = network.getOutDegree(townId);
+		frames.push(townId, network.getFirstRoute(townId), network.getRoutesEnd(townId), 0);
+		//The frame at index i has made stops + i stops
+		counters.updatePeakDepth(stops + 1);
+		
+		while(!frames.isEmpty()) {
+			int top = frames.top();
+			int route = frames.routeCursors[top];
+			
+			if(route == frames.routeEnds[top]) {
+				frames.pop();
+				continue;
+			}
+			
+			frames.routeCursors[top] = route + 1;
+			int nextTownId = network.getRouteTarget(route);
+			int nextStops = stops + top + 1;
+			
+			if(nextTownId == endingTownId && (isCalculatingMaxStops || nextStops == numberOfStops)) {
+				tripsCounter++;
+			}
+			
+			if(nextStops < numberOfStops) {
+				frames.push(nextTownId, network.getFirstRoute(nextTownId), network.getRoutesEnd(nextTownId), 0);
+				townsExpanded++;
+				routesRelaxed += network.getOutDegree(nextTownId);
+				counters.updatePeakDepth(nextStops + 1);
+				
+				if((townsExpanded & SearchBudget.CHECK_MASK) == 0 && budget.isExceeded(SearchBudget.CHECK_INTERVAL)) {
+					counters.add(townsExpanded, routesRelaxed);
+					throw budget.exceeded(tripsCounter);
+				}
+			}
+		}
+		
+		counters.add(townsExpanded, routesRelaxed);
+		
+		return tripsCounter;
+	}
+	
+	/**
+	 * Calculates the length of the shortest route (in terms of distance to travel) from the starting town to the
+	 * ending town, enumerating every route that does not go through a town twice.
+	 *
+	 * @param startingTownId
+	 * @param endingTownId
+	 * @return The shortest distance, or {@link TownPath#NO_ROUTE} when the ending town cannot be reached.
+	 */
+	public int findShortestDistance(int startingTownId, int endingTownId) {
+		if(startingTownId < 0 || endingTownId < 0) {
+			return TownPath.NO_ROUTE;
+		}
+		
+		SearchCounters counters = SearchCounters.current();
+		SearchBudget budget = SearchBudget.current();
+		boolean[] isOnRoute = new boolean[network.getNumberOfTowns()];
+		RouteFrameStack frames = new RouteFrameStack(Math.min(network.getNumberOfTowns(), INITIAL_FRAMES));
+		int minDistance = Integer.MAX_VALUE;
+		long townsExpanded = 1;
+		long routesRelaxed = network.getOutDegree(startingTownId);
+		//The starting town is not on the route, a route can go through it again on its way to the ending town
+		frames.push(startingTownId, network.getFirstRoute(startingTownId), network.getRoutesEnd(startingTownId), 0);
+		counters.updatePeakDepth(1);
+		
+		while(!frames.isEmpty()) {
+			int top = frames.top();
+			int townId = frames.townIds[top];
+			int route = frames.routeCursors[top];
+			
+			if(route == frames.routeEnds[top]) {
+				if(top > 0) {
+					isOnRoute[townId] = false;
+				}
+				
+				frames.pop();
+				continue;
+			}
+			
+			frames.routeCursors[top] = route + 1;
+			int nextTownId = network.getRouteTarget(route);
+			long nextDistance = (long) frames.distances[top] + network.getRouteDistance(route);
+			
+			//A route past Integer.MAX_VALUE has no distance to return, nor has any route that continues it
+			if(nextDistance >= Integer.MAX_VALUE) {
+				continue;
+			}
+			
+			if(nextTownId == endingTownId) {
+				minDistance = Math.min(minDistance, (int) nextDistance);
+			} else if(!isOnRoute[nextTownId]) {
+				isOnRoute[nextTownId] = true;
+				frames.push(nextTownId, network.getFirstRoute(nextTownId), network.getRoutesEnd(nextTownId), (int) nextDistance);
+				townsExpanded++;
+				routesRelaxed += network.getOutDegree(nextTownId);
+				counters.updatePeakDepth(top + 2);
+				
+				//The shortest distance found so far is no lower bound, nothing is counted
+				if((townsExpanded & SearchBudget.CHECK_MASK) == 0 && budget.isExceeded(SearchBudget.CHECK_INTERVAL)) {
+					counters.add(townsExpanded, routesRelaxed);
+					throw budget.exceeded((BigInteger) null);
+				}
+			}
+		}
+		
+		counters.add(townsExpanded, routesRelaxed);
+		
+		return minDistance == Integer.MAX_VALUE ? TownPath.NO_ROUTE : minDistance;
+	}
+	
+	/**
+	 * Calculates the number of different routes from starting to ending town with a distance of less than the
+	 * maximum distance.
+	 *
+	 * @param startingTownId
+	 * @param endingTownId
+	 * @param maxDistance
+	 * @return The number of different routes.
+	 */
+	public long countRoutesWithMaxDistance(int startingTownId, int endingTownId, int maxDistance) {
+		if(startingTownId < 0 || endingTownId < 0) {
+			return 0;
+		}
+		
+		return countRoutesWithMaxDistance(startingTownId, endingTownId, maxDistance, 0, 1, SearchCounters.current(), SearchBudget.current());
+	}
+	
+	/**
+	 * Counts the routes that continue from a town reached after a distance, the {@link ParallelRouteEnumerator}
+	 * continues its subtasks from here once they are too deep to split.
+	 */
+	long countRoutesWithMaxDistance(int townId, int endingTownId, int maxDistance, int sumDistance, int depth, SearchCounters counters,
+			SearchBudget budget) {
+		RouteFrameStack frames = new RouteFrameStack(INITIAL_FRAMES);
+		long routesCounter = 0;
+		long townsExpanded = 1;
+		long routesRelaxed = network.getOutDegree(townId);
+		//The frame at index i is at depth + i
+		frames.push(townId, network.getFirstRoute(townId), network.getRoutesEnd(townId), sumDistance);
+		counters.updatePeakDepth(depth);
+		
+		while(!frames.isEmpty()) {
+			int top = frames.top();
+			int route = frames.routeCursors[top];
+			
+			if(route == frames.routeEnds[top]) {
+				frames.pop();
+				continue;
+			}
+			
+			frames.routeCursors[top] = route + 1;
+			long nextDistance = (long) frames.distances[top] + network.getRouteDistance(route);
+			
+			if(nextDistance < maxDistance) {
+				int nextTownId = network.getRouteTarget(route);
+				
+				if(nextTownId == endingTownId) {
+					routesCounter++;
+				}
+				
+				frames.push(nextTownId, network.getFirstRoute(nextTownId), network.getRoutesEnd(nextTownId), (int) nextDistance);
+				townsExpanded++;
+				routesRelaxed += network.getOutDegree(nextTownId);
+				counters.updatePeakDepth(depth + top + 1);
+				
+				if((townsExpanded & SearchBudget.CHECK_MASK) == 0 && budget.isExceeded(SearchBudget.CHECK_INTERVAL)) {
+					counters.add(townsExpanded, routesRelaxed);
+					throw budget.exceeded(routesCounter);
+				}
+			}
+		}
+		
+		counters.add(townsExpanded, routesRelaxed);
+		
+		return routesCounter;
+	}
+}
@@ -0,0 +1,41 @@
+package com.ccc.routes.search;
+
+import java.math.BigInteger;
+
+/**
+ * The number of routes from one starting town to every town of the network, indexed by ending town id.
+ * The counts stay in a long array unless one of them overflowed and had to be counted with {@link BigInteger}.
+ * 
+ * @author gibrancastillo
+ *
+ */
+public final class RouteCounts {
+	private final long[] counts;
+	private final BigInteger[] bigCounts;
+	
+	RouteCounts(long[] counts) {
+		this.counts = counts;
+		this.bigCounts = null;
+	}
+	
+	RouteCounts(BigInteger[] bigCounts) {
+		this.counts = null;
+		this.bigCounts = bigCounts;
+	}
+	
+	public int getNumberOfTowns() {
+		return counts != null ? counts.length : bigCounts.length;
+	}
+	
+	/**
+	 * @param townId
+	 * @return The number of routes ending at the town.
+	 */
+	public BigInteger get(int townId) {
+		return counts != null ? BigInteger.valueOf(counts[townId]) : bigCounts[townId];
+	}
+	
+	public boolean isZero(int townId) {
+		return counts != null ? counts[townId] == 0 : bigCounts[townId].signum() == 0;
+	}
+}
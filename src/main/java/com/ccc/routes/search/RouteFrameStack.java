@@ -0,0 +1,98 @@
+package com.ccc.routes.search;
+
+import java.util.Arrays;
+
+/**
+ * The frames of a depth first enumeration of routes, kept in parallel int arrays instead of on the thread stack: the
+ * town of the frame, the next route to follow from it, the route after the last one to follow and the distance
+ * traveled to reach it. The depth of a frame is its index. The arrays double when they are full, so the depth is
+ * only limited by the heap and a frame costs no allocation of its own.
+ * 
+ * @author gibrancastillo
+ *
+ */
+final class RouteFrameStack {
+	int[] townIds;
+	int[] routeCursors;
+	int[] routeEnds;
+	int[] distances;
+	private int size;
+	
+	/**
+	 * @param initialCapacity - the depth the search is expected to reach, it grows past it when needed.
+	 */
+	RouteFrameStack(int initialCapacity) {
+		int capacity = Math.max(initialCapacity, 1);
+		townIds = new int[capacity];
+		routeCursors = new int[capacity];
+		routeEnds = new int[capacity];
+		distances = new int[capacity];
+	}
+	
+	/**
+	 * @param townId
+	 * @param firstRoute - the first route to follow from the town.
+	 * @param routesEnd - the route after the last one to follow from the town.
+	 * @param distance - the distance traveled to reach the town.
+	 * @return The index of the new frame.
+	 */
+	int push(int townId, int firstRoute, int routesEnd, int distance) {
+		if(size == townIds.length) {
+			int capacity = (int) Math.min(2L * size, Integer.MAX_VALUE - 8);
+			
+			if(capacity == size) {
+				throw new IllegalStateException("Too many frames: " + size);
+			}
+			
+			townIds = Arrays.copyOf(townIds, capacity);
+			routeCursors = Arrays.copyOf(routeCursors, capacity);
+			routeEnds = Arrays.copyOf(routeEnds, capacity);
+			distances = Arrays.copyOf(distances, capacity);
+		}
+		
+		townIds[size] = townId;
+		routeCursors[size] = firstRoute;
+		routeEnds[size] = routesEnd;
+		distances[size] = distance;
+		
+		return size++;
+	}
+	
+	void pop() {
+		size--;
+	}
+	
+	/**
+	 * Pops the frames above the frame at the index.
+	 * 
+	 * @param top - the index of the new top frame.
+	 */
+	void popTo(int top) {
+		size = top + 1;
+	}
+	
+	/**
+	 * @return A stack with copies of the frames of this one.
+	 */
+	RouteFrameStack copy() {
+		RouteFrameStack frames = new RouteFrameStack(townIds.length);
+		System.arraycopy(townIds, 0, frames.townIds, 0, size);
+		System.arraycopy(routeCursors, 0, frames.routeCursors, 0, size);
+		System.arraycopy(routeEnds, 0, frames.routeEnds, 0, size);
+		System.arraycopy(distances, 0, frames.distances, 0, size);
+		frames.size = size;
+		
+		return frames;
+	}
+	
+	/**
+	 * @return The index of the top frame, -1 when the stack is empty.
+	 */
+	int top() {
+		return size - 1;
+	}
+	
+	boolean isEmpty() {
+		return size == 0;
+	}
+}
@@ -0,0 +1,215 @@
+package com.ccc.routes.search;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+import com.ccc.routes.network.RouteNetwork;
+
+/**
+ * The trips or routes from a starting town to an ending town, enumerated one at a time as they are asked for, every
+ * one of them as the ids of its towns in traveling order, the starting town first. Like the
+ * {@link RecursiveRouteSearch} the enumeration is depth first on a {@link RouteFrameStack}, but it stops at every
+ * route it finds and carries on from there on the next {@link #tryAdvance(Consumer)}, so the search never runs ahead
+ * of its consumer and a stream over it stops as soon as the consumer has enough, e.g. after limit() or findFirst().
+ *
+ * A split cuts in half the routes left to follow from the lowest frame that has at least two of them. The spliterator
+ * returned gets a copy of the frames with the first half, and this one carries on with the second half and the
+ * routes left below it, so the routes keep their order across splits and a parallel stream finds every route once.
+ * The size of the enumeration is not known, every split halves the estimate of both parts.
+ *
+ * The work is counted in the {@link SearchCounters} of the thread that asked for the routes.
+ *
+ * @author gibrancastillo
+ *
+ */
+public final class RouteSpliterator implements Spliterator<int[]> {
+	private static final int INITIAL_FRAMES = 64;
+	
+	private final RouteNetwork network;
+	private final int endingTownId;
+	private final int numberOfStops;
+	private final boolean isCalculatingMaxStops;
+	private final long maxDistance;
+	private final RouteFrameStack frames;
+	private long estimatedSize;
+	private long townsExpanded;
+	private long routesRelaxed;
+	private int peakDepth;
+	
+	private RouteSpliterator(RouteNetwork network, int endingTownId, int numberOfStops, boolean isCalculatingMaxStops, long maxDistance,
+			RouteFrameStack frames, long estimatedSize) {
+		this.network = network;
+		this.endingTownId = endingTownId;
+		this.numberOfStops = numberOfStops;
+		this.isCalculatingMaxStops = isCalculatingMaxStops;
+		this.maxDistance = maxDistance;
+		this.frames = frames;
+		this.estimatedSize = estimatedSize;
+	}
+	
+	/**
+	 * The trips from starting to ending town with the provided number of stops (maximum or exact), the trips
+	 * {@link RecursiveRouteSearch#countTrips(int, int, int, boolean)} counts.
+	 *
+	 * @param network
+	 * @param startingTownId
+	 * @param endingTownId
+	 * @param numberOfStops
+	 * @param isCalculatingMaxStops
+	 * @return The trips, none when a town is not part of the network.
+	 */
+	public static RouteSpliterator trips(RouteNetwork network, int startingTownId, int endingTownId, int numberOfStops, boolean isCalculatingMaxStops) {
+		return create(network, startingTownId, endingTownId, numberOfStops, isCalculatingMaxStops, Long.MAX_VALUE);
+	}
+	
+	/**
+	 * The different routes from starting to ending town with a distance of less than the maximum distance, the routes
+	 * {@link RecursiveRouteSearch#countRoutesWithMaxDistance(int, int, int)} counts.
+	 *
+	 * @param network
+	 * @param startingTownId
+	 * @param endingTownId
+	 * @param maxDistance
+	 * @return The routes, none when a town is not part of the network.
+	 */
+	public static RouteSpliterator routesWithMaxDistance(RouteNetwork network, int startingTownId, int endingTownId, int maxDistance) {
+		return create(network, startingTownId, endingTownId, Integer.MAX_VALUE, true, maxDistance);
+	}
+	
+	private static RouteSpliterator create(RouteNetwork network, int startingTownId, int endingTownId, int numberOfStops, boolean isCalculatingMaxStops,
+			long maxDistance) {
+		RouteFrameStack frames = new RouteFrameStack(Math.min(numberOfStops, INITIAL_FRAMES));
+		RouteSpliterator spliterator = new RouteSpliterator(network, endingTownId, numberOfStops, isCalculatingMaxStops, maxDistance, frames, Long.MAX_VALUE);
+		
+		if(startingTownId >= 0 && endingTownId >= 0 && numberOfStops > 0) {
+			frames.push(startingTownId, network.getFirstRoute(startingTownId), network.getRoutesEnd(startingTownId), 0);
+			spliterator.townsExpanded = 1;
+			spliterator.routesRelaxed = network.getOutDegree(startingTownId);
+			spliterator.peakDepth = 1;
+		} else {
+			spliterator.estimatedSize = 0;
+		}
+		
+		return spliterator;
+	}
+	
+	@Override
+	public boolean tryAdvance(Consumer<? super int[]> action) {
+		int[] townIds = findNextRoute();
+		flushCounters();
+		
+		if(townIds == null) {
+			return false;
+		}
+		
+		action.accept(townIds);
+		
+		return true;
+	}
+	
+	@Override
+	public void forEachRemaining(Consumer<? super int[]> action) {
+		try {
+			for(int[] townIds = findNextRoute(); townIds != null; townIds = findNextRoute()) {
+				action.accept(townIds);
+			}
+		} finally {
+			flushCounters();
+		}
+	}
+	
+	/**
+	 * Follows the routes of the top frames until the next route to the ending town.
+	 *
+	 * @return The towns of the route, or null once the enumeration is over.
+	 */
+	private int[] findNextRoute() {
+		while(!frames.isEmpty()) {
+			int top = frames.top();
+			int route = frames.routeCursors[top];
+			
+			if(route == frames.routeEnds[top]) {
+				frames.pop();
+				continue;
+			}
+			
+			frames.routeCursors[top] = route + 1;
+			long nextDistance = (long) frames.distances[top] + network.getRouteDistance(route);
+			
+			if(nextDistance >= maxDistance) {
+				continue;
+			}
+			
+			int nextTownId = network.getRouteTarget(route);
+			//The frame at index i has made i stops
+			int nextStops = top + 1;
+			int[] townIds = nextTownId == endingTownId && (isCalculatingMaxStops || nextStops == numberOfStops) ? buildRoute(top, nextTownId) : null;
+			
+			if(nextStops < numberOfStops) {
+				frames.push(nextTownId, network.getFirstRoute(nextTownId), network.getRoutesEnd(nextTownId), (int) Math.min(nextDistance, Integer.MAX_VALUE));
+				townsExpanded++;
+				routesRelaxed += network.getOutDegree(nextTownId);
+				peakDepth = Math.max(peakDepth, nextStops + 1);
+			}
+			
+			if(townIds != null) {
+				return townIds;
+			}
+		}
+		
+		return null;
+	}
+	
+	private int[] buildRoute(int top, int nextTownId) {
+		int[] townIds = new int[top + 2];
+		System.arraycopy(frames.townIds, 0, townIds, 0, top + 1);
+		townIds[top + 1] = nextTownId;
+		
+		return townIds;
+	}
+	
+	private void flushCounters() {
+		SearchCounters counters = SearchCounters.current();
+		counters.add(townsExpanded, routesRelaxed);
+		counters.updatePeakDepth(peakDepth);
+		townsExpanded = 0;
+		routesRelaxed = 0;
+		peakDepth = 0;
+	}
+	
+	@Override
+	public Spliterator<int[]> trySplit() {
+		for(int i = 0; i <= frames.top(); i++) {
+			int routesLeft = frames.routeEnds[i] - frames.routeCursors[i];
+			
+			if(routesLeft >= 2) {
+				int middleRoute = frames.routeCursors[i] + routesLeft / 2;
+				RouteFrameStack prefixFrames = frames.copy();
+				
+				//The routes left below the frame come after its second half, they stay here
+				for(int j = 0; j < i; j++) {
+					prefixFrames.routeEnds[j] = prefixFrames.routeCursors[j];
+				}
+				
+				prefixFrames.routeEnds[i] = middleRoute;
+				frames.popTo(i);
+				frames.routeCursors[i] = middleRoute;
+				estimatedSize /= 2;
+				
+				return new RouteSpliterator(network, endingTownId, numberOfStops, isCalculatingMaxStops, maxDistance, prefixFrames, estimatedSize);
+			}
+		}
+		
+		return null;
+	}
+	
+	@Override
+	public long estimateSize() {
+		return frames.isEmpty() ? 0 : estimatedSize;
+	}
+	
+	@Override
+	public int characteristics() {
+		return ORDERED | NONNULL | IMMUTABLE;
+	}
+}
@@ -0,0 +1,202 @@
+package com.ccc.routes.search;
+
+import java.math.BigInteger;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * How long a query may run and how many towns its searches may expand before they give up, and a flag to cancel
+ * it. The budget is cooperative: the search loops check it every {@link #CHECK_INTERVAL} towns expanded (the
+ * counting passes every row or matrix row) and stop with a {@link SearchBudgetExceededException} once it is
+ * exceeded, carrying what they had counted so far when that is a lower bound of the answer.
+ *
+ * A budget is installed for the queries of the current thread with {@link #call(Supplier)}, the searches take it
+ * from {@link #current()} once per query like the {@link SearchCounters}. Without a budget the searches run under an
+ * unlimited one, its check is a single volatile read every {@link #CHECK_INTERVAL} towns expanded.
+ *
+ * The towns expanded are the ones counted by the {@link SearchCounters}, spent every {@link #CHECK_INTERVAL} towns,
+ * so a search can go over the maximum by up to that many towns. A budget is shared by the subtasks of a
+ * {@link ParallelRouteEnumerator}, and once exceeded it stays exceeded.
+ *
+ * @author gibrancastillo
+ *
+ */
+public final class SearchBudget {
+	public static final long NO_LIMIT = Long.MAX_VALUE;
+	public static final int CHECK_INTERVAL = 1024;
+	static final int CHECK_MASK = CHECK_INTERVAL - 1;
+	private static final SearchBudget UNLIMITED = new SearchBudget(null, NO_LIMIT);
+	private static final ThreadLocal<SearchBudget> CURRENT = ThreadLocal.withInitial(() -> UNLIMITED);
+	
+	/**
+	 * The limit a search ran into.
+	 */
+	public enum Limit {
+		CANCELLED, DEADLINE, TOWNS_EXPANDED
+	}
+	
+	private final boolean hasDeadline;
+	private final long deadline;
+	private final long maxTownsExpanded;
+	private final AtomicLong townsExpanded = new AtomicLong();
+	private volatile Limit exceededLimit;
+	
+	/**
+	 * @param timeout - the time the query may take from now on, null for no deadline.
+	 * @param maxTownsExpanded - the number of towns the searches of the query may expand, or {@link #NO_LIMIT}.
+	 */
+	public SearchBudget(Duration timeout, long maxTownsExpanded) {
+		if(maxTownsExpanded < 0) {
+			throw new IllegalArgumentException("The maximum number of towns expanded must not be negative: " + maxTownsExpanded);
+		}
+		
+		this.hasDeadline = timeout != null;
+		this.deadline = hasDeadline ? System.nanoTime() + timeout.toNanos() : 0;
+		this.maxTownsExpanded = maxTownsExpanded;
+	}
+	
+	/**
+	 * @param timeout
+	 * @return A budget with a deadline and no limit on the towns expanded.
+	 */
+	public static SearchBudget withTimeout(Duration timeout) {
+		return new SearchBudget(timeout, NO_LIMIT);
+	}
+	
+	/**
+	 * @return The budget of the queries of the current thread, an unlimited one outside of {@link #call(Supplier)}.
+	 */
+	public static SearchBudget current() {
+		return CURRENT.get();
+	}
+	
+	/**
+	 * Runs queries on the current thread under this budget.
+	 *
+	 * @param queries
+	 * @return The result of the queries.
+	 * @throws SearchBudgetExceededException when a search ran out of the budget.
+	 */
+	public <T> T call(Supplier<T> queries) {
+		SearchBudget previousBudget = CURRENT.get();
+		CURRENT.set(this);
+		
+		try {
+			return queries.get();
+		} finally {
+			CURRENT.set(previousBudget);
+		}
+	}
+	
+	/**
+	 * @return false for the unlimited budget the searches run under outside of {@link #call(Supplier)}.
+	 */
+	public boolean isLimited() {
+		return this != UNLIMITED;
+	}
+	
+	/**
+	 * Cancels the query, its searches stop at their next check.
+	 */
+	public void cancel() {
+		exceed(Limit.CANCELLED);
+	}
+	
+	public boolean hasDeadline() {
+		return hasDeadline;
+	}
+	
+	/**
+	 * @return The nanoseconds left until the deadline, negative once it has passed.
+	 * @throws IllegalStateException when the budget has no deadline.
+	 */
+	public long getRemainingNanos() {
+		if(!hasDeadline) {
+			throw new IllegalStateException("The search budget has no deadline");
+		}
+		
+		return deadline - System.nanoTime();
+	}
+	
+	public long getMaxTownsExpanded() {
+		return maxTownsExpanded;
+	}
+	
+	/**
+	 * @return The towns expanded spent so far, in steps of the checks.
+	 */
+	public long getTownsExpanded() {
+		return townsExpanded.get();
+	}
+	
+	/**
+	 * @return The limit the searches ran into, or null while the budget is not exceeded.
+	 */
+	public Limit getExceededLimit() {
+		return exceededLimit;
+	}
+	
+	/**
+	 * Spends the towns expanded since the previous check of the search and checks the budget.
+	 *
+	 * @param townsExpanded
+	 * @return true if the search must stop.
+	 */
+	public boolean isExceeded(long townsExpanded) {
+		if(exceededLimit != null) {
+			return true;
+		} else if(maxTownsExpanded != NO_LIMIT && this.townsExpanded.addAndGet(townsExpanded) > maxTownsExpanded) {
+			exceed(Limit.TOWNS_EXPANDED);
+		} else if(hasDeadline && System.nanoTime() - deadline >= 0) {
+			exceed(Limit.DEADLINE);
+		}
+		
+		return exceededLimit != null;
+	}
+	
+	/**
+	 * Checks the budget without spending anything, e.g. before a query starts.
+	 *
+	 * @return true if the query must not run.
+	 */
+	public boolean isExceeded() {
+		return isExceeded(0);
+	}
+	
+	private void exceed(Limit limit) {
+		if(this == UNLIMITED) {
+			throw new UnsupportedOperationException("The unlimited search budget cannot be exceeded");
+		}
+		
+		//The first limit reached wins, a later one does not change why the searches stopped
+		synchronized(this) {
+			if(exceededLimit == null) {
+				exceededLimit = limit;
+			}
+		}
+	}
+	
+	/**
+	 * @param partialCount - what the search counted before it stopped, a lower bound of the answer, or null.
+	 * @return The exception a search stops with once the budget is exceeded.
+	 */
+	public SearchBudgetExceededException exceeded(BigInteger partialCount) {
+		return new SearchBudgetExceededException(exceededLimit, partialCount);
+	}
+	
+	/**
+	 * @param partialCount - what the search counted before it stopped, a lower bound of the answer.
+	 * @return The exception a search stops with once the budget is exceeded.
+	 */
+	public SearchBudgetExceededException exceeded(long partialCount) {
+		return exceeded(BigInteger.valueOf(partialCount));
+	}
+	
+	@Override
+	public String toString() {
+		return "SearchBudget [deadline=" + (hasDeadline ? getRemainingNanos() / 1_000_000 + "ms" : "none") + ", maxTownsExpanded="
+				+ (maxTownsExpanded == NO_LIMIT ? "none" : maxTownsExpanded) + ", townsExpanded=" + getTownsExpanded() + ", exceededLimit="
+				+ exceededLimit + "]";
+	}
+}
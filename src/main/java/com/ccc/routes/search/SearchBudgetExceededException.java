@@ -0,0 +1,38 @@
+package com.ccc.routes.search;
+
+import java.math.BigInteger;
+
+/**
+ * Thrown by a search that stopped because its {@link SearchBudget} was cancelled, its deadline passed or it expanded
+ * too many towns.
+ *
+ * @author gibrancastillo
+ *
+ */
+public class SearchBudgetExceededException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+	
+	private final SearchBudget.Limit limit;
+	private final BigInteger partialCount;
+	
+	/**
+	 * @param limit - the limit the search ran into.
+	 * @param partialCount - what the search counted before it stopped, a lower bound of the answer, or null.
+	 */
+	public SearchBudgetExceededException(SearchBudget.Limit limit, BigInteger partialCount) {
+		super("Search stopped, " + limit + " budget exceeded" + (partialCount != null ? " after counting " + partialCount : ""));
+		this.limit = limit;
+		this.partialCount = partialCount;
+	}
+	
+	public SearchBudget.Limit getLimit() {
+		return limit;
+	}
+	
+	/**
+	 * @return What the search counted before it stopped, a lower bound of the answer, or null when it has none.
+	 */
+	public BigInteger getPartialCount() {
+		return partialCount;
+	}
+}
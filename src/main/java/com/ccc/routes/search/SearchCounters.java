@@ -0,0 +1,79 @@
+package com.ccc.routes.search;
+
+/**
+ * The work done by the searches of the current thread: towns expanded (a town whose routes were followed), routes
+ * relaxed (a route followed) and the peak recursion depth. The searches count into local variables and add them
+ * here once per search, so counting costs a thread local lookup per query and no shared write at all.
+ *
+ * A caller measuring a query reads the counters of its thread before and after the query, the difference is the work
+ * of the query, and takes the peak depth of the query with {@link #resetPeakDepth()}. The
+ * {@link ParallelRouteEnumerator} adds the work of its subtasks to the counters of the thread that invoked it.
+ *
+ * @author gibrancastillo
+ *
+ */
+public final class SearchCounters {
+	private static final ThreadLocal<SearchCounters> CURRENT = ThreadLocal.withInitial(SearchCounters::new);
+	
+	private long townsExpanded;
+	private long routesRelaxed;
+	private int peakDepth;
+	
+	/**
+	 * @return The counters of the current thread.
+	 */
+	public static SearchCounters current() {
+		return CURRENT.get();
+	}
+	
+	public long getTownsExpanded() {
+		return townsExpanded;
+	}
+	
+	public long getRoutesRelaxed() {
+		return routesRelaxed;
+	}
+	
+	public int getPeakDepth() {
+		return peakDepth;
+	}
+	
+	void add(long townsExpanded, long routesRelaxed) {
+		this.townsExpanded += townsExpanded;
+		this.routesRelaxed += routesRelaxed;
+	}
+	
+	/**
+	 * Starts measuring the peak depth of a new query, the previous peak depth is restored with
+	 * {@link #updatePeakDepth(int)} once the query is over.
+	 * 
+	 * @return The previous peak depth.
+	 */
+	public int resetPeakDepth() {
+		int previousPeakDepth = peakDepth;
+		peakDepth = 0;
+		
+		return previousPeakDepth;
+	}
+	
+	public void updatePeakDepth(int depth) {
+		if(depth > peakDepth) {
+			peakDepth = depth;
+		}
+	}
+	
+	/**
+	 * Adds the work counted by other counters, e.g. the counters of a subtask.
+	 *
+	 * @param other
+	 */
+	void add(SearchCounters other) {
+		add(other.townsExpanded, other.routesRelaxed);
+		updatePeakDepth(other.peakDepth);
+	}
+	
+	@Override
+	public String toString() {
+		return "SearchCounters [townsExpanded=" + townsExpanded + ", routesRelaxed=" + routesRelaxed + ", peakDepth=" + peakDepth + "]";
+	}
+}
@@ -0,0 +1,101 @@
+package com.ccc.routes.search;
+
+import java.util.Arrays;
+
+/**
+ * Per-thread scratch arrays of a shortest route search, reused from one query to the next. Instead of clearing
+ * the arrays for every query, each query gets a new stamp and an entry only counts when it carries the stamp of
+ * the current query, so a query costs what it touches and not the size of the network.
+ * 
+ * @author gibrancastillo
+ *
+ */
+final class SearchWorkspace {
+	static final int INFINITY = Integer.MAX_VALUE;
+	
+	private int[] distances = new int[0];
+	private int[] previousTownIds = new int[0];
+	private int[] reachedStamps = new int[0];
+	private int[] settledStamps = new int[0];
+	private int stamp;
+	private final IntMinHeap heap = new IntMinHeap(1);
+	
+	/**
+	 * Starts a new query over a network with the given number of towns.
+	 * 
+	 * @param numberOfTowns
+	 */
+	void reset(int numberOfTowns) {
+		if(numberOfTowns > distances.length) {
+			distances = new int[numberOfTowns];
+			previousTownIds = new int[numberOfTowns];
+			reachedStamps = new int[numberOfTowns];
+			settledStamps = new int[numberOfTowns];
+			stamp = 0;
+		}
+		
+		if(++stamp == Integer.MAX_VALUE) {
+			Arrays.fill(reachedStamps, 0);
+			Arrays.fill(settledStamps, 0);
+			stamp = 1;
+		}
+		
+		heap.clear();
+		heap.ensureCapacity(numberOfTowns);
+	}
+	
+	IntMinHeap getHeap() {
+		return heap;
+	}
+	
+	int getDistance(int townId) {
+		return reachedStamps[townId] == stamp ? distances[townId] : INFINITY;
+	}
+	
+	int getPreviousTownId(int townId) {
+		return previousTownIds[townId];
+	}
+	
+	void setDistance(int townId, int distance, int previousTownId) {
+		distances[townId] = distance;
+		previousTownIds[townId] = previousTownId;
+		reachedStamps[townId] = stamp;
+	}
+	
+	boolean isSettled(int townId) {
+		return settledStamps[townId] == stamp;
+	}
+	
+	void settle(int townId) {
+		settledStamps[townId] = stamp;
+	}
+	
+	/**
+	 * Walks the previous towns back from the ending town to the starting town.
+	 * 
+	 * @param startingTownId
+	 * @param endingTownId
+	 * @return The town ids in traveling order.
+	 */
+	int[] buildPath(int startingTownId, int endingTownId) {
+		int numberOfTowns = 1;
+		int townId = endingTownId;
+		
+		do {
+			numberOfTowns++;
+			townId = previousTownIds[townId];
+		} while(townId != startingTownId);
+		
+		int[] townIds = new int[numberOfTowns];
+		townId = endingTownId;
+		
+		for(int i = numberOfTowns - 1; i > 0; i--) {
+			townIds[i] = townId;
+			townId = previousTownIds[townId];
+		}
+		
+		townIds[0] = startingTownId;
+		
+		return townIds;
+	}
+}
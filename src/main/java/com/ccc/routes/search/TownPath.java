@@ -0,0 +1,78 @@
+package com.ccc.routes.search;
+
+import java.util.Arrays;
+
+/**
+ * A class that represents a route found by a search as a compact sequence of town ids
+ * in traveling order, and the total distance of the route.
+ * 
+ * @author gibrancastillo
+ *
+ */
+public final class TownPath {
+	public static final int NO_ROUTE = -1;
+	private static final TownPath NO_PATH = new TownPath(new int[0], NO_ROUTE);
+	
+	private final int[] townIds;
+	private final int distance;
+	
+	/**
+	 * @param townIds - the town ids in traveling order, the array is kept and must not be modified afterwards.
+	 * @param distance
+	 */
+	public TownPath(int[] townIds, int distance) {
+		this.townIds = townIds;
+		this.distance = distance;
+	}
+	
+	/**
+	 * @return The path for when there is no route between two towns.
+	 */
+	public static TownPath noRoute() {
+		return NO_PATH;
+	}
+	
+	public boolean exists() {
+		return distance != NO_ROUTE;
+	}
+	
+	/**
+	 * @return The town ids in traveling order, the array must not be modified.
+	 */
+	public int[] getTownIds() {
+		return townIds;
+	}
+	
+	public int getNumberOfTowns() {
+		return townIds.length;
+	}
+	
+	public int getTownId(int index) {
+		return townIds[index];
+	}
+	
+	public int getDistance() {
+		return distance;
+	}
+	
+	@Override
+	public boolean equals(Object obj) {
+		if(!(obj instanceof TownPath)) {
+			return false;
+		}
+		
+		TownPath other = (TownPath) obj;
+		
+		return distance == other.distance && Arrays.equals(townIds, other.townIds);
+	}
+	
+	@Override
+	public int hashCode() {
+		return 31 * Arrays.hashCode(townIds) + distance;
+	}
+	
+	@Override
+	public String toString() {
+		return exists() ? "townIds: " + Arrays.toString(townIds) + " distance: " + distance : "NO SUCH ROUTE";
+	}
+}
@@ -0,0 +1,377 @@
+package com.ccc.routes.search;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import com.ccc.routes.network.RouteNetwork;
+
+/**
+ * Counts the trips (walks) from a starting town to an ending town with a maximum or an exact number of stops
+ * without enumerating them one by one.
+ *
+ * Small stop counts use dynamic programming layered by number of stops, each layer holds how many trips reach
+ * every town with that many stops, so a query costs O(stops * routes). Large stop counts use exponentiation by
+ * squaring of the adjacency matrix, which costs O(towns^3 * log(stops)). The counts are kept in 64-bit longs and
+ * the count is started over with {@link BigInteger} arithmetic as soon as a long would overflow. The matrix power
+ * holds two towns x towns matrices at once, (2 * towns)^2 entries each for a maximum number of stops, so it is only
+ * used up to {@link #MATRIX_POWER_MAX_ENTRIES} entries per matrix, the layers count the larger networks whatever the
+ * number of stops.
+ *
+ * The layers check the {@link SearchBudget} of the query every {@link SearchBudget#CHECK_INTERVAL} towns expanded, a
+ * count stopped by it carries the trips of the layers already counted. The matrix power checks it after every row of
+ * a product and carries no partial count, a partial power counts nothing.
+ *
+ * @author gibrancastillo
+ *
+ */
+public final class TripCounter {
+	public static final long MATRIX_POWER_MAX_ENTRIES = 1L << 22;
+	private final RouteNetwork network;
+	private final int numberOfTowns;
+	
+	public TripCounter(RouteNetwork network) {
+		this.network = network;
+		this.numberOfTowns = network.getNumberOfTowns();
+	}
+	
+	/**
+	 * Counts the trips from starting to ending town with the provided number of stops (maximum or exact).
+	 *
+	 * @param startingTownId
+	 * @param endingTownId
+	 * @param numberOfStops
+	 * @param isCalculatingMaxStops
+	 * @return The number of trips.
+	 */
+	public BigInteger countTrips(int startingTownId, int endingTownId, int numberOfStops, boolean isCalculatingMaxStops) {
+		return countTrips(startingTownId, endingTownId, numberOfStops, isCalculatingMaxStops, isMatrixPowerCheaper(numberOfStops, isCalculatingMaxStops));
+	}
+	
+	/**
+	 * Counts the trips from starting to ending town with the layers or the matrix power, as a {@link QueryPlanner}
+	 * picked. The layers count them instead when the matrix would hold more than {@link #MATRIX_POWER_MAX_ENTRIES}.
+	 *
+	 * @param startingTownId
+	 * @param endingTownId
+	 * @param numberOfStops
+	 * @param isCalculatingMaxStops
+	 * @param isUsingMatrixPower
+	 * @return The number of trips.
+	 */
+	public BigInteger countTrips(int startingTownId, int endingTownId, int numberOfStops, boolean isCalculatingMaxStops, boolean isUsingMatrixPower) {
+		if(startingTownId < 0 || endingTownId < 0 || numberOfStops < 1) {
+			return BigInteger.ZERO;
+		}
+		
+		SearchBudget budget = SearchBudget.current();
+		isUsingMatrixPower = isUsingMatrixPower && isMatrixPowerAffordable(numberOfTowns, isCalculatingMaxStops);
+		
+		try {
+			return BigInteger.valueOf(isUsingMatrixPower
+					? countTripsByMatrixPower(startingTownId, endingTownId, numberOfStops, isCalculatingMaxStops, budget)
+					: countTripsByLayers(startingTownId, endingTownId, numberOfStops, isCalculatingMaxStops, budget));
+		} catch(ArithmeticException e) {
+			return isUsingMatrixPower
+					? countBigTripsByMatrixPower(startingTownId, endingTownId, numberOfStops, isCalculatingMaxStops, budget)
+					: countBigTripsByLayers(startingTownId, endingTownId, numberOfStops, isCalculatingMaxStops, budget);
+		}
+	}
+	
+	/**
+	 * @param numberOfTowns
+	 * @param isCalculatingMaxStops - the matrix is twice as wide when counting a maximum number of stops.
+	 * @return true if the matrices of the power hold at most {@link #MATRIX_POWER_MAX_ENTRIES} entries each.
+	 */
+	public static boolean isMatrixPowerAffordable(int numberOfTowns, boolean isCalculatingMaxStops) {
+		long size = isCalculatingMaxStops ? 2L * numberOfTowns : numberOfTowns;
+		
+		return size * size <= MATRIX_POWER_MAX_ENTRIES;
+	}
+	
+	/**
+	 * Compares stops * routes against towns^3 * log2(stops), the matrix is twice as wide when counting
+	 * a maximum number of stops but the constant factor does not change the decision enough to matter.
+	 *
+	 * @param numberOfStops
+	 * @param isCalculatingMaxStops
+	 * @return true if the adjacency matrix exponentiation fits and is expected to be cheaper than the layered DP.
+	 */
+	private boolean isMatrixPowerCheaper(int numberOfStops, boolean isCalculatingMaxStops) {
+		if(!isMatrixPowerAffordable(numberOfTowns, isCalculatingMaxStops)) {
+			return false;
+		}
+		
+		double towns = numberOfTowns;
+		double matrixPowerCost = towns * towns * towns * (32 - Integer.numberOfLeadingZeros(numberOfStops));
+		
+		return matrixPowerCost < (double) numberOfStops * Math.max(network.getNumberOfRoutes(), numberOfTowns);
+	}
+	
+	/**
+	 * Layer i holds the number of trips with exactly i stops from the starting town to every town.
+	 *
+	 * @param startingTownId
+	 * @param endingTownId
+	 * @param numberOfStops
+	 * @param isCalculatingMaxStops
+	 * @param budget
+	 * @return The number of trips.
+	 * @throws ArithmeticException when the count overflows a long.
+	 */
+	private long countTripsByLayers(int startingTownId, int endingTownId, int numberOfStops, boolean isCalculatingMaxStops, SearchBudget budget) {
+		long[] layer = new long[numberOfTowns];
+		long[] nextLayer = new long[numberOfTowns];
+		long tripsCounter = 0;
+		long townsExpanded = 0;
+		long routesRelaxed = 0;
+		layer[startingTownId] = 1;
+		
+		for(int stops = 1; stops <= numberOfStops; stops++) {
+			Arrays.fill(nextLayer, 0);
+			
+			for(int town = 0; town < layer.length; town++) {
+				long trips = layer[town];
+				
+				if(trips != 0) {
+					townsExpanded++;
+					routesRelaxed += network.getOutDegree(town);
+					
+					if((townsExpanded & SearchBudget.CHECK_MASK) == 0 && budget.isExceeded(SearchBudget.CHECK_INTERVAL)) {
+						SearchCounters.current().add(townsExpanded, routesRelaxed);
+						throw budget.exceeded(tripsCounter);
+					}
+					
+					for(int route = network.getFirstRoute(town), end = network.getRoutesEnd(town); route < end; route++) {
+						int nextTown = network.getRouteTarget(route);
+						nextLayer[nextTown] = Math.addExact(nextLayer[nextTown], trips);
+					}
+				}
+			}
+			
+			if(isCalculatingMaxStops || stops == numberOfStops) {
+				tripsCounter = Math.addExact(tripsCounter, nextLayer[endingTownId]);
+			}
+			
+			long[] swap = layer;
+			layer = nextLayer;
+			nextLayer = swap;
+		}
+		
+		SearchCounters.current().add(townsExpanded, routesRelaxed);
+		
+		return tripsCounter;
+	}
+	
+	private BigInteger countBigTripsByLayers(int startingTownId, int endingTownId, int numberOfStops, boolean isCalculatingMaxStops,
+			SearchBudget budget) {
+		BigInteger[] layer = new BigInteger[numberOfTowns];
+		BigInteger[] nextLayer = new BigInteger[numberOfTowns];
+		BigInteger tripsCounter = BigInteger.ZERO;
+		long townsExpanded = 0;
+		long routesRelaxed = 0;
+		Arrays.fill(layer, BigInteger.ZERO);
+		layer[startingTownId] = BigInteger.ONE;
+		
+		for(int stops = 1; stops <= numberOfStops; stops++) {
+			Arrays.fill(nextLayer, BigInteger.ZERO);
+			
+			for(int town = 0; town < layer.length; town++) {
+				BigInteger trips = layer[town];
+				
+				if(trips.signum() != 0) {
+					townsExpanded++;
+					routesRelaxed += network.getOutDegree(town);
+					
+					if((townsExpanded & SearchBudget.CHECK_MASK) == 0 && budget.isExceeded(SearchBudget.CHECK_INTERVAL)) {
+						SearchCounters.current().add(townsExpanded, routesRelaxed);
+						throw budget.exceeded(tripsCounter);
+					}
+					
+					for(int route = network.getFirstRoute(town), end = network.getRoutesEnd(town); route < end; route++) {
+						int nextTown = network.getRouteTarget(route);
+						nextLayer[nextTown] = nextLayer[nextTown].add(trips);
+					}
+				}
+			}
+			
+			if(isCalculatingMaxStops || stops == numberOfStops) {
+				tripsCounter = tripsCounter.add(nextLayer[endingTownId]);
+			}
+			
+			BigInteger[] swap = layer;
+			layer = nextLayer;
+			nextLayer = swap;
+		}
+		
+		SearchCounters.current().add(townsExpanded, routesRelaxed);
+		
+		return tripsCounter;
+	}
+	
+	/**
+	 * Raises the adjacency matrix A to the number of stops. For a maximum number of stops the block matrix
+	 * [[A, A], [0, I]] is raised instead, its top right block becomes A + A^2 + ... + A^stops.
+	 *
+	 * @param startingTownId
+	 * @param endingTownId
+	 * @param numberOfStops
+	 * @param isCalculatingMaxStops
+	 * @param budget
+	 * @return The number of trips.
+	 * @throws ArithmeticException when the count overflows a long.
+	 */
+	private long countTripsByMatrixPower(int startingTownId, int endingTownId, int numberOfStops, boolean isCalculatingMaxStops,
+			SearchBudget budget) {
+		int size = isCalculatingMaxStops ? 2 * numberOfTowns : numberOfTowns;
+		long[][] power = new long[size][size];
+		
+		for(int town = 0; town < numberOfTowns; town++) {
+			for(int route = network.getFirstRoute(town), end = network.getRoutesEnd(town); route < end; route++) {
+				int nextTown = network.getRouteTarget(route);
+				power[town][nextTown]++;
+				
+				if(isCalculatingMaxStops) {
+					power[town][numberOfTowns + nextTown]++;
+				}
+			}
+			
+			if(isCalculatingMaxStops) {
+				power[numberOfTowns + town][numberOfTowns + town] = 1;
+			}
+		}
+		
+		//Only the starting town row of the result is needed, so it is kept as a row vector
+		long[] row = new long[size];
+		row[startingTownId] = 1;
+		
+		for(int exponent = numberOfStops; exponent > 0; exponent >>= 1) {
+			if((exponent & 1) == 1) {
+				row = multiply(row, power, budget);
+			}
+			
+			if(exponent > 1) {
+				power = multiply(power, power, budget);
+			}
+		}
+		
+		return row[isCalculatingMaxStops ? numberOfTowns + endingTownId : endingTownId];
+	}
+	
+	private BigInteger countBigTripsByMatrixPower(int startingTownId, int endingTownId, int numberOfStops, boolean isCalculatingMaxStops,
+			SearchBudget budget) {
+		int size = isCalculatingMaxStops ? 2 * numberOfTowns : numberOfTowns;
+		BigInteger[][] power = new BigInteger[size][size];
+		
+		for(BigInteger[] powerRow : power) {
+			Arrays.fill(powerRow, BigInteger.ZERO);
+		}
+		
+		for(int town = 0; town < numberOfTowns; town++) {
+			for(int route = network.getFirstRoute(town), end = network.getRoutesEnd(town); route < end; route++) {
+				int nextTown = network.getRouteTarget(route);
+				power[town][nextTown] = power[town][nextTown].add(BigInteger.ONE);
+				
+				if(isCalculatingMaxStops) {
+					power[town][numberOfTowns + nextTown] = power[town][numberOfTowns + nextTown].add(BigInteger.ONE);
+				}
+			}
+			
+			if(isCalculatingMaxStops) {
+				power[numberOfTowns + town][numberOfTowns + town] = BigInteger.ONE;
+			}
+		}
+		
+		BigInteger[] row = new BigInteger[size];
+		Arrays.fill(row, BigInteger.ZERO);
+		row[startingTownId] = BigInteger.ONE;
+		
+		for(int exponent = numberOfStops; exponent > 0; exponent >>= 1) {
+			if((exponent & 1) == 1) {
+				row = multiply(row, power, budget);
+			}
+			
+			if(exponent > 1) {
+				power = multiply(power, power, budget);
+			}
+		}
+		
+		return row[isCalculatingMaxStops ? numberOfTowns + endingTownId : endingTownId];
+	}
+	
+	/**
+	 * Multiplies a row vector by a matrix, every non-zero entry of the row counts as a town expanded and every
+	 * product as a route relaxed. The towns expanded are spent from the budget once the row is done.
+	 */
+	private static long[] multiply(long[] row, long[][] matrix, SearchBudget budget) {
+		long[] result = new long[row.length];
+		long townsExpanded = 0;
+		
+		for(int k = 0; k < row.length; k++) {
+			if(row[k] != 0) {
+				long[] matrixRow = matrix[k];
+				townsExpanded++;
+				
+				for(int j = 0; j < result.length; j++) {
+					if(matrixRow[j] != 0) {
+						result[j] = Math.addExact(result[j], Math.multiplyExact(row[k], matrixRow[j]));
+					}
+				}
+			}
+		}
+		
+		SearchCounters.current().add(townsExpanded, townsExpanded * result.length);
+		
+		if(budget.isExceeded(townsExpanded)) {
+			throw budget.exceeded((BigInteger) null);
+		}
+		
+		return result;
+	}
+	
+	private static long[][] multiply(long[][] left, long[][] right, SearchBudget budget) {
+		long[][] result = new long[left.length][];
+		
+		for(int i = 0; i < left.length; i++) {
+			result[i] = multiply(left[i], right, budget);
+		}
+		
+		return result;
+	}
+	
+	private static BigInteger[] multiply(BigInteger[] row, BigInteger[][] matrix, SearchBudget budget) {
+		BigInteger[] result = new BigInteger[row.length];
+		long townsExpanded = 0;
+		Arrays.fill(result, BigInteger.ZERO);
+		
+		for(int k = 0; k < row.length; k++) {
+			if(row[k].signum() != 0) {
+				BigInteger[] matrixRow = matrix[k];
+				townsExpanded++;
+				
+				for(int j = 0; j < result.length; j++) {
+					if(matrixRow[j].signum() != 0) {
+						result[j] = result[j].add(row[k].multiply(matrixRow[j]));
+					}
+				}
+			}
+		}
+		
+		SearchCounters.current().add(townsExpanded, townsExpanded * result.length);
+		
+		if(budget.isExceeded(townsExpanded)) {
+			throw budget.exceeded((BigInteger) null);
+		}
+		
+		return result;
+	}
+	
+	private static BigInteger[][] multiply(BigInteger[][] left, BigInteger[][] right, SearchBudget budget) {
+		BigInteger[][] result = new BigInteger[left.length][];
+		
+		for(int i = 0; i < left.length; i++) {
+			result[i] = multiply(left[i], right, budget);
+		}
+		
+		return result;
+	}
+}
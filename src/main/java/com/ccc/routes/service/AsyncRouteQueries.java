@@ -0,0 +1,188 @@
+package com.ccc.routes.service;
+
+import java.math.BigInteger;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.ccc.routes.recursion.ShortestRoute;
+import com.ccc.routes.recursion.Town;
+import com.ccc.routes.recursion.TrainsRoutesDirectedGraph;
+import com.ccc.routes.search.SearchBudget;
+import com.ccc.routes.search.SearchBudgetExceededException;
+
+/**
+ * Runs the queries of a {@link TrainsRoutesDirectedGraph} on an executor, each one under a {@link SearchBudget}, so a
+ * runaway enumeration gives its thread back at its deadline or once it expanded too many towns instead of pinning it
+ * for hours.
+ *
+ * Every query completes its future with a {@link QueryOutcome}: the answer, or the limit the query ran into along
+ * with the count it had reached. The budget is cooperative, the search loops check it every
+ * {@link SearchBudget#CHECK_INTERVAL} towns expanded:
+ * <> Cancelling the future cancels the budget, the query stops at its next check.
+ * <> A query still waiting for a thread at its deadline is not run, its future completes when the deadline passes.
+ * <> The shortest route searches are not enumerations and do not check the budget, the deadline only keeps them from
+ * starting late.
+ *
+ * The queries run under a budget share the query cache of the graph, they return the cached answers and cache the
+ * answers they complete, but a query that runs out of its budget caches nothing.
+ *
+ * @author gibrancastillo
+ *
+ */
+public final class AsyncRouteQueries {
+	private static final Logger logger = LogManager.getLogger(AsyncRouteQueries.class);
+	
+	private final TrainsRoutesDirectedGraph graph;
+	private final Executor executor;
+	
+	/**
+	 * @param graph
+	 * @param executor - runs the queries, e.g. {@link RequestExecutors#newPerRequestExecutor(String, int)}.
+	 */
+	public AsyncRouteQueries(TrainsRoutesDirectedGraph graph, Executor executor) {
+		this.graph = graph;
+		this.executor = executor;
+	}
+	
+	public TrainsRoutesDirectedGraph getGraph() {
+		return graph;
+	}
+	
+	/**
+	 * @param startingTown
+	 * @param endingTown
+	 * @param numberOfStops
+	 * @param isCalculatingMaxStops
+	 * @param budget
+	 * @return The number of trips from starting to ending town with maximum or an exactly number of stops.
+	 * @see TrainsRoutesDirectedGraph#countTrips(Town, Town, int, boolean)
+	 */
+	public CompletableFuture<QueryOutcome<BigInteger>> countTrips(Town<String> startingTown, Town<String> endingTown, int numberOfStops,
+			boolean isCalculatingMaxStops, SearchBudget budget) {
+		return submit(budget, () -> graph.countTrips(startingTown, endingTown, numberOfStops, isCalculatingMaxStops), Function.identity());
+	}
+	
+	/**
+	 * @param startingTown
+	 * @param endingTown
+	 * @param numberOfStops
+	 * @param isCalculatingMaxStops
+	 * @param budget
+	 * @return The number of trips from starting to ending town with maximum or an exactly number of stops, counted by
+	 * enumerating every one of them.
+	 * @see TrainsRoutesDirectedGraph#getNumberOfTripsWithNumberOfStopsByRecursion(Town, Town, int, boolean)
+	 */
+	public CompletableFuture<QueryOutcome<BigInteger>> countTripsByRecursion(Town<String> startingTown, Town<String> endingTown, int numberOfStops,
+			boolean isCalculatingMaxStops, SearchBudget budget) {
+		return submit(budget, () -> new BigInteger(graph.getNumberOfTripsWithNumberOfStopsByRecursion(startingTown, endingTown, numberOfStops,
+				isCalculatingMaxStops)), Function.identity());
+	}
+	
+	/**
+	 * @param startingTown
+	 * @param endingTown
+	 * @param maxDistance
+	 * @param budget
+	 * @return The number of different routes from starting to ending town with a distance of less than the maximum distance.
+	 * @see TrainsRoutesDirectedGraph#getNumberOfDifferentRoutesWithMaxDistance(Town, Town, int)
+	 */
+	public CompletableFuture<QueryOutcome<BigInteger>> countRoutesWithMaxDistance(Town<String> startingTown, Town<String> endingTown, int maxDistance,
+			SearchBudget budget) {
+		return submit(budget, () -> new BigInteger(graph.getNumberOfDifferentRoutesWithMaxDistance(startingTown, endingTown, maxDistance)),
+				Function.identity());
+	}
+	
+	/**
+	 * @param startingTown
+	 * @param endingTown
+	 * @param maxDistance
+	 * @param budget
+	 * @return The number of different routes from starting to ending town with a distance of less than the maximum
+	 * distance, counted by enumerating every one of them.
+	 * @see TrainsRoutesDirectedGraph#getNumberOfDifferentRoutesWithMaxDistanceByRecursion(Town, Town, int)
+	 */
+	public CompletableFuture<QueryOutcome<BigInteger>> countRoutesWithMaxDistanceByRecursion(Town<String> startingTown, Town<String> endingTown,
+			int maxDistance, SearchBudget budget) {
+		return submit(budget, () -> new BigInteger(graph.getNumberOfDifferentRoutesWithMaxDistanceByRecursion(startingTown, endingTown, maxDistance)),
+				Function.identity());
+	}
+	
+	/**
+	 * @param startingTown
+	 * @param endingTown
+	 * @param budget
+	 * @return The shortest route from start to end.
+	 * @see TrainsRoutesDirectedGraph#getShortestRoute(Town, Town)
+	 */
+	public CompletableFuture<QueryOutcome<ShortestRoute>> getShortestRoute(Town<String> startingTown, Town<String> endingTown, SearchBudget budget) {
+		return submit(budget, () -> graph.getShortestRoute(startingTown, endingTown));
+	}
+	
+	/**
+	 * Runs any queries of the graph under a budget, a query that runs out of it has no partial value.
+	 *
+	 * @param budget
+	 * @param queries
+	 * @return The outcome of the queries.
+	 */
+	public <T> CompletableFuture<QueryOutcome<T>> submit(SearchBudget budget, Supplier<T> queries) {
+		return submit(budget, queries, partialCount -> null);
+	}
+	
+	private <T> CompletableFuture<QueryOutcome<T>> submit(SearchBudget budget, Supplier<T> queries, Function<BigInteger, T> partialValue) {
+		CompletableFuture<QueryOutcome<T>> future = new CompletableFuture<>();
+		//Whichever of the query and the deadline comes first gets to complete a query that has not started yet
+		AtomicBoolean isStarted = new AtomicBoolean();
+		
+		future.whenComplete((outcome, e) -> {
+			if(future.isCancelled()) {
+				budget.cancel();
+			}
+		});
+		
+		if(budget.hasDeadline()) {
+			CompletableFuture.delayedExecutor(Math.max(0, budget.getRemainingNanos()), TimeUnit.NANOSECONDS).execute(() -> {
+				if(isStarted.compareAndSet(false, true)) {
+					logger.debug("Query still waiting for a thread at its deadline");
+					future.complete(QueryOutcome.exceeded(SearchBudget.Limit.DEADLINE, null));
+				}
+			});
+		}
+		
+		try {
+			executor.execute(() -> {
+				if(isStarted.compareAndSet(false, true) && !future.isDone()) {
+					run(budget, queries, partialValue, future);
+				}
+			});
+		} catch(RejectedExecutionException e) {
+			future.completeExceptionally(e);
+		}
+		
+		return future;
+	}
+	
+	private static <T> void run(SearchBudget budget, Supplier<T> queries, Function<BigInteger, T> partialValue, CompletableFuture<QueryOutcome<T>> future) {
+		if(budget.isExceeded()) {
+			future.complete(QueryOutcome.exceeded(budget.getExceededLimit(), null));
+			return;
+		}
+		
+		try {
+			future.complete(QueryOutcome.completed(budget.call(queries)));
+		} catch(SearchBudgetExceededException e) {
+			logger.debug(e.getMessage() + ", " + budget);
+			future.complete(QueryOutcome.exceeded(e.getLimit(), e.getPartialCount() != null ? partialValue.apply(e.getPartialCount()) : null));
+		} catch(RuntimeException | Error e) {
+			future.completeExceptionally(e);
+		}
+	}
+}
@@ -0,0 +1,139 @@
+package com.ccc.routes.service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.ccc.routes.metrics.LatencyHistogram;
+
+/**
+ * A lane of the {@link QueryScheduler}: a fixed number of threads, its concurrency limit, fed by a bounded first in
+ * first out queue. The queries start in the order they were queued, a query that finds the queue full is rejected
+ * with a {@link RejectedExecutionException} rather than queued without bound.
+ *
+ * The lane publishes its queue depth and the time every query waited in the queue, in a {@link LatencyHistogram}.
+ *
+ * @author gibrancastillo
+ *
+ */
+public final class QueryLane implements Executor, QueryLaneMXBean {
+	private final String name;
+	private final int queueCapacity;
+	private final ThreadPoolExecutor executor;
+	private final LatencyHistogram waits = new LatencyHistogram();
+	private final LongAdder startedCount = new LongAdder();
+	private final LongAdder rejectedCount = new LongAdder();
+	
+	/**
+	 * @param name
+	 * @param concurrency - the number of queries that run at once.
+	 * @param queueCapacity - the number of queries that can wait for a thread.
+	 */
+	public QueryLane(String name, int concurrency, int queueCapacity) {
+		if(concurrency < 1 || queueCapacity < 1) {
+			throw new IllegalArgumentException("Invalid concurrency " + concurrency + " or queue capacity " + queueCapacity + " of lane " + name);
+		}
+		
+		this.name = name;
+		this.queueCapacity = queueCapacity;
+		this.executor = new ThreadPoolExecutor(concurrency, concurrency, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity),
+				RequestExecutors.newDaemonThreadFactory(name));
+	}
+	
+	/**
+	 * @throws RejectedExecutionException when the queue is full or the lane is shut down.
+	 */
+	@Override
+	public void execute(Runnable query) {
+		long enqueued = System.nanoTime();
+		
+		try {
+			executor.execute(() -> {
+				waits.record(System.nanoTime() - enqueued);
+				startedCount.increment();
+				query.run();
+			});
+		} catch(RejectedExecutionException e) {
+			rejectedCount.increment();
+			throw e;
+		}
+	}
+	
+	/**
+	 * Stops taking queries, the queued ones still run.
+	 */
+	public void shutdown() {
+		executor.shutdown();
+	}
+	
+	@Override
+	public String getName() {
+		return name;
+	}
+	
+	@Override
+	public int getConcurrency() {
+		return executor.getMaximumPoolSize();
+	}
+	
+	@Override
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+	
+	@Override
+	public int getQueueDepth() {
+		return executor.getQueue().size();
+	}
+	
+	@Override
+	public int getActiveCount() {
+		return executor.getActiveCount();
+	}
+	
+	@Override
+	public long getStartedCount() {
+		return startedCount.sum();
+	}
+	
+	@Override
+	public long getRejectedCount() {
+		return rejectedCount.sum();
+	}
+	
+	/**
+	 * @return The times the queries waited in the queue so far.
+	 */
+	public LatencyHistogram.Snapshot getWaits() {
+		return waits.snapshot();
+	}
+	
+	@Override
+	public double getMeanWait() {
+		return waits.snapshot().getMean();
+	}
+	
+	@Override
+	public long getMedianWait() {
+		return waits.snapshot().getValueAtPercentile(50);
+	}
+	
+	@Override
+	public long get99thPercentileWait() {
+		return waits.snapshot().getValueAtPercentile(99);
+	}
+	
+	@Override
+	public long getMaxWait() {
+		return waits.snapshot().getMax();
+	}
+	
+	@Override
+	public String toString() {
+		return name + " [concurrency=" + getConcurrency() + ", queueDepth=" + getQueueDepth() + "/" + queueCapacity + ", active=" + getActiveCount()
+				+ ", started=" + getStartedCount() + ", rejected=" + getRejectedCount() + ", waitNanos={" + getWaits() + "}]";
+	}
+}
@@ -0,0 +1,31 @@
+package com.ccc.routes.service;
+
+/**
+ * A lane of the {@link QueryScheduler} as seen through JMX, the wait times are in nanoseconds.
+ *
+ * @author gibrancastillo
+ *
+ */
+public interface QueryLaneMXBean {
+	String getName();
+	
+	int getConcurrency();
+	
+	int getQueueCapacity();
+	
+	int getQueueDepth();
+	
+	int getActiveCount();
+	
+	long getStartedCount();
+	
+	long getRejectedCount();
+	
+	double getMeanWait();
+	
+	long getMedianWait();
+	
+	long get99thPercentileWait();
+	
+	long getMaxWait();
+}
@@ -0,0 +1,74 @@
+package com.ccc.routes.service;
+
+import com.ccc.routes.search.SearchBudget;
+
+/**
+ * The outcome of a query run under a {@link SearchBudget} by the {@link AsyncRouteQueries}: the result of the query
+ * when it completed, otherwise the limit it ran into and, for the counting queries, the count it had reached, a lower
+ * bound of the answer.
+ *
+ * @author gibrancastillo
+ *
+ */
+public final class QueryOutcome<T> {
+	private static final String BUDGET_EXCEEDED = "BUDGET EXCEEDED";
+	
+	private final T value;
+	private final SearchBudget.Limit exceededLimit;
+	
+	private QueryOutcome(T value, SearchBudget.Limit exceededLimit) {
+		this.value = value;
+		this.exceededLimit = exceededLimit;
+	}
+	
+	/**
+	 * @param value
+	 * @return The outcome of a query that completed.
+	 */
+	public static <T> QueryOutcome<T> completed(T value) {
+		return new QueryOutcome<>(value, null);
+	}
+	
+	/**
+	 * @param exceededLimit
+	 * @param partialValue - the count reached before the query stopped, or null.
+	 * @return The outcome of a query that ran out of its budget.
+	 */
+	public static <T> QueryOutcome<T> exceeded(SearchBudget.Limit exceededLimit, T partialValue) {
+		return new QueryOutcome<>(partialValue, exceededLimit);
+	}
+	
+	/**
+	 * @return true if the query completed, its value is the answer.
+	 */
+	public boolean isCompleted() {
+		return exceededLimit == null;
+	}
+	
+	/**
+	 * @return The answer of a completed query, the partial count of a query that ran out of its budget, or null when
+	 * it has none.
+	 */
+	public T getValue() {
+		return value;
+	}
+	
+	/**
+	 * @return The limit the query ran into, or null when it completed.
+	 */
+	public SearchBudget.Limit getExceededLimit() {
+		return exceededLimit;
+	}
+	
+	/**
+	 * @return 22, or BUDGET EXCEEDED (DEADLINE) at least 12
+	 */
+	@Override
+	public String toString() {
+		if(isCompleted()) {
+			return String.valueOf(value);
+		}
+		
+		return BUDGET_EXCEEDED + " (" + exceededLimit + ")" + (value != null ? " at least " + value : "");
+	}
+}
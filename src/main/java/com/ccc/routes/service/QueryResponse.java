@@ -0,0 +1,155 @@
+package com.ccc.routes.service;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.List;
+
+/**
+ * The answer to one query of the {@link RouteQueryServer}, written as compact JSON or binary.
+ *
+ * JSON:
+ * <> A number - {"result":22}
+ * <> No route - {"result":"NO SUCH ROUTE"}
+ * <> A route - {"towns":["A","B","C"],"distance":9}
+ * <> An error - {"error":"Unknown query /foo"}
+ *
+ * Binary, big-endian, a tag byte followed by the value:
+ * <> 0 - no route.
+ * <> 1 - a number, the unsigned short length and the two's-complement bytes of the number.
+ * <> 2 - a route, the int distance, the int number of towns and the modified UTF-8 town names (DataOutput#writeUTF).
+ * <> 3 - an error, the modified UTF-8 message.
+ *
+ * @author gibrancastillo
+ *
+ */
+final class QueryResponse {
+	static final byte NO_ROUTE = 0;
+	static final byte NUMBER = 1;
+	static final byte ROUTE = 2;
+	static final byte ERROR = 3;
+	private static final String NO_SUCH_ROUTE = "NO SUCH ROUTE";
+	private static final QueryResponse NO_ROUTE_RESPONSE = new QueryResponse(NO_ROUTE, null, null, 0, null);
+	
+	private final byte type;
+	private final BigInteger number;
+	private final List<String> towns;
+	private final int distance;
+	private final String message;
+	
+	private QueryResponse(byte type, BigInteger number, List<String> towns, int distance, String message) {
+		this.type = type;
+		this.number = number;
+		this.towns = towns;
+		this.distance = distance;
+		this.message = message;
+	}
+	
+	static QueryResponse noRoute() {
+		return NO_ROUTE_RESPONSE;
+	}
+	
+	static QueryResponse number(long number) {
+		return number(BigInteger.valueOf(number));
+	}
+	
+	static QueryResponse number(BigInteger number) {
+		return new QueryResponse(NUMBER, number, null, 0, null);
+	}
+	
+	/**
+	 * @param towns - the town names in traveling order.
+	 * @param distance
+	 * @return The response of a route.
+	 */
+	static QueryResponse route(List<String> towns, int distance) {
+		return new QueryResponse(ROUTE, null, towns, distance, null);
+	}
+	
+	static QueryResponse error(String message) {
+		return new QueryResponse(ERROR, null, null, 0, message);
+	}
+	
+	boolean isError() {
+		return type == ERROR;
+	}
+	
+	void writeJson(StringBuilder builder) {
+		switch(type) {
+			case NO_ROUTE:
+				builder.append("{\"result\":\"").append(NO_SUCH_ROUTE).append("\"}");
+				break;
+			case NUMBER:
+				builder.append("{\"result\":").append(number).append('}');
+				break;
+			case ROUTE:
+				builder.append("{\"towns\":[");
+				
+				for(int i = 0; i < towns.size(); i++) {
+					if(i > 0) {
+						builder.append(',');
+					}
+					
+					appendJsonString(builder, towns.get(i));
+				}
+				
+				builder.append("],\"distance\":").append(distance).append('}');
+				break;
+			default:
+				builder.append("{\"error\":");
+				appendJsonString(builder, message);
+				builder.append('}');
+		}
+	}
+	
+	void writeBinary(DataOutputStream output) throws IOException {
+		output.writeByte(type);
+		
+		switch(type) {
+			case NO_ROUTE:
+				break;
+			case NUMBER:
+				byte[] bytes = number.toByteArray();
+				output.writeShort(bytes.length);
+				output.write(bytes);
+				break;
+			case ROUTE:
+				output.writeInt(distance);
+				output.writeInt(towns.size());
+				
+				for(String town : towns) {
+					output.writeUTF(town);
+				}
+				
+				break;
+			default:
+				output.writeUTF(message);
+		}
+	}
+	
+	private static void appendJsonString(StringBuilder builder, String value) {
+		builder.append('"');
+		
+		for(int i = 0; i < value.length(); i++) {
+			char character = value.charAt(i);
+			
+			if(character == '"' || character == '\\') {
+				builder.append('\\').append(character);
+			} else if(character < 0x20) {
+				builder.append(String.format("\\u%04x", (int) character));
+			} else {
+				builder.append(character);
+			}
+		}
+		
+		builder.append('"');
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		writeJson(builder);
+		
+		return builder.toString();
+	}
+}
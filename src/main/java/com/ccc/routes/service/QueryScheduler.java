@@ -0,0 +1,276 @@
+package com.ccc.routes.service;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.ccc.routes.network.RouteNetwork;
+import com.ccc.routes.recursion.ShortestRoute;
+import com.ccc.routes.recursion.Town;
+import com.ccc.routes.recursion.TrainsRoutesDirectedGraph;
+import com.ccc.routes.search.QueryCostEstimator;
+import com.ccc.routes.search.SearchBudget;
+
+/**
+ * Schedules the queries of a {@link TrainsRoutesDirectedGraph} on two {@link QueryLane}s by their cost, so the
+ * microsecond lookups never queue behind the enumerations that take seconds:
+ * <> The cheap lane runs the queries estimated under the cost threshold on enough threads to keep every core busy.
+ * <> The expensive lane runs the rest, at most its concurrency limit at once, the others wait in its bounded first in
+ * first out queue and are rejected once it is full.
+ *
+ * The cost of a query is estimated before it is queued by a {@link QueryCostEstimator}, from the statistics of the
+ * current network, computed once per network by the query planner of the graph, the stops or distance budget of the
+ * query, the out degree of its starting town and the {@link SearchBudget} it runs under. The queries run through
+ * {@link AsyncRouteQueries}, so a query in either lane stops at its deadline or budget.
+ *
+ * Both lanes publish their queue depth and wait times, and can be registered as MBeans under
+ * com.ccc.routes:type=QueryLane,name=&lt;name&gt;,lane=&lt;lane&gt;.
+ *
+ * @author gibrancastillo
+ *
+ */
+public final class QueryScheduler {
+	public static final double DEFAULT_COST_THRESHOLD = 1_000_000;
+	private static final String DOMAIN = "com.ccc.routes";
+	
+	private final TrainsRoutesDirectedGraph graph;
+	private final double costThreshold;
+	private final QueryLane cheapLane;
+	private final QueryLane expensiveLane;
+	private final AsyncRouteQueries cheapQueries;
+	private final AsyncRouteQueries expensiveQueries;
+	private final List<ObjectName> registeredNames = new ArrayList<>();
+	
+	private QueryScheduler(Builder builder) {
+		this.graph = builder.graph;
+		this.costThreshold = builder.costThreshold;
+		this.cheapLane = new QueryLane("cheap-query", builder.cheapLaneConcurrency, builder.cheapLaneQueueCapacity);
+		this.expensiveLane = new QueryLane("expensive-query", builder.expensiveLaneConcurrency, builder.expensiveLaneQueueCapacity);
+		this.cheapQueries = new AsyncRouteQueries(graph, cheapLane);
+		this.expensiveQueries = new AsyncRouteQueries(graph, expensiveLane);
+	}
+	
+	public TrainsRoutesDirectedGraph getGraph() {
+		return graph;
+	}
+	
+	public double getCostThreshold() {
+		return costThreshold;
+	}
+	
+	public QueryLane getCheapLane() {
+		return cheapLane;
+	}
+	
+	public QueryLane getExpensiveLane() {
+		return expensiveLane;
+	}
+	
+	/**
+	 * @return The cost estimator of the current network of the graph, from the statistics its query planner computed.
+	 */
+	public QueryCostEstimator getCostEstimator() {
+		return graph.getQueryPlanner().getCostEstimator();
+	}
+	
+	/**
+	 * @param cost - the estimated cost of a query, in routes relaxed.
+	 * @return The lane of the queries of that cost.
+	 */
+	public QueryLane getLane(double cost) {
+		return cost <= costThreshold ? cheapLane : expensiveLane;
+	}
+	
+	/**
+	 * @param itinerary - A-B-C, or ABC for single-letter towns.
+	 * @param budget
+	 * @return The distance of the itinerary, or {@link RouteNetwork#NO_ROUTE} when there is no route for a hop.
+	 * @see TrainsRoutesDirectedGraph#getRouteDistance(CharSequence)
+	 */
+	public CompletableFuture<QueryOutcome<Integer>> getRouteDistance(CharSequence itinerary, SearchBudget budget) {
+		double cost = getCostEstimator().estimateRouteDistance(itinerary.length());
+		
+		return queries(cost).submit(budget, () -> graph.getRouteDistance(itinerary));
+	}
+	
+	/**
+	 * @see AsyncRouteQueries#countTrips(Town, Town, int, boolean, SearchBudget)
+	 */
+	public CompletableFuture<QueryOutcome<BigInteger>> countTrips(Town<String> startingTown, Town<String> endingTown, int numberOfStops,
+			boolean isCalculatingMaxStops, SearchBudget budget) {
+		QueryCostEstimator estimator = getCostEstimator();
+		double cost = estimator.estimateTrips(estimator.getNetwork().getTownId(startingTown.getTownName()), numberOfStops, isCalculatingMaxStops,
+				budget);
+		
+		return queries(cost).countTrips(startingTown, endingTown, numberOfStops, isCalculatingMaxStops, budget);
+	}
+	
+	/**
+	 * @see AsyncRouteQueries#countTripsByRecursion(Town, Town, int, boolean, SearchBudget)
+	 */
+	public CompletableFuture<QueryOutcome<BigInteger>> countTripsByRecursion(Town<String> startingTown, Town<String> endingTown, int numberOfStops,
+			boolean isCalculatingMaxStops, SearchBudget budget) {
+		QueryCostEstimator estimator = getCostEstimator();
+		double cost = estimator.estimateTripsByRecursion(estimator.getNetwork().getTownId(startingTown.getTownName()), numberOfStops, budget);
+		
+		return queries(cost).countTripsByRecursion(startingTown, endingTown, numberOfStops, isCalculatingMaxStops, budget);
+	}
+	
+	/**
+	 * @see AsyncRouteQueries#countRoutesWithMaxDistance(Town, Town, int, SearchBudget)
+	 */
+	public CompletableFuture<QueryOutcome<BigInteger>> countRoutesWithMaxDistance(Town<String> startingTown, Town<String> endingTown, int maxDistance,
+			SearchBudget budget) {
+		QueryCostEstimator estimator = getCostEstimator();
+		double cost = estimator.estimateRoutesWithMaxDistance(estimator.getNetwork().getTownId(startingTown.getTownName()), maxDistance, budget);
+		
+		return queries(cost).countRoutesWithMaxDistance(startingTown, endingTown, maxDistance, budget);
+	}
+	
+	/**
+	 * @see AsyncRouteQueries#countRoutesWithMaxDistanceByRecursion(Town, Town, int, SearchBudget)
+	 */
+	public CompletableFuture<QueryOutcome<BigInteger>> countRoutesWithMaxDistanceByRecursion(Town<String> startingTown, Town<String> endingTown,
+			int maxDistance, SearchBudget budget) {
+		QueryCostEstimator estimator = getCostEstimator();
+		double cost = estimator.estimateRoutesWithMaxDistanceByRecursion(estimator.getNetwork().getTownId(startingTown.getTownName()), maxDistance,
+				budget);
+		
+		return queries(cost).countRoutesWithMaxDistanceByRecursion(startingTown, endingTown, maxDistance, budget);
+	}
+	
+	/**
+	 * @see AsyncRouteQueries#getShortestRoute(Town, Town, SearchBudget)
+	 */
+	public CompletableFuture<QueryOutcome<ShortestRoute>> getShortestRoute(Town<String> startingTown, Town<String> endingTown, SearchBudget budget) {
+		double cost = getCostEstimator().estimateShortestRoute();
+		
+		return queries(cost).getShortestRoute(startingTown, endingTown, budget);
+	}
+	
+	/**
+	 * Runs any queries of the graph in the lane of their cost.
+	 *
+	 * @param cost - the estimated cost of the queries, in routes relaxed.
+	 * @param budget
+	 * @param queries
+	 * @return The outcome of the queries.
+	 */
+	public <T> CompletableFuture<QueryOutcome<T>> submit(double cost, SearchBudget budget, Supplier<T> queries) {
+		return queries(cost).submit(budget, queries);
+	}
+	
+	private AsyncRouteQueries queries(double cost) {
+		return cost <= costThreshold ? cheapQueries : expensiveQueries;
+	}
+	
+	/**
+	 * Stops taking queries, the queued ones still run.
+	 */
+	public void shutdown() {
+		cheapLane.shutdown();
+		expensiveLane.shutdown();
+		unregisterMBeans();
+	}
+	
+	/**
+	 * Registers both lanes with the platform MBean server.
+	 *
+	 * @param name - the name that tells apart the schedulers of one JVM.
+	 */
+	public synchronized void registerMBeans(String name) {
+		unregisterMBeans();
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		
+		for(QueryLane lane : new QueryLane[] { cheapLane, expensiveLane }) {
+			try {
+				ObjectName objectName = getObjectName(name, lane.getName());
+				server.registerMBean(lane, objectName);
+				registeredNames.add(objectName);
+			} catch(JMException e) {
+				throw new IllegalStateException("Cannot register the lane " + lane.getName(), e);
+			}
+		}
+	}
+	
+	/**
+	 * Unregisters the MBeans registered by {@link #registerMBeans(String)}.
+	 */
+	public synchronized void unregisterMBeans() {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		
+		for(ObjectName objectName : registeredNames) {
+			try {
+				server.unregisterMBean(objectName);
+			} catch(JMException e) {
+				//Already unregistered by someone else
+			}
+		}
+		
+		registeredNames.clear();
+	}
+	
+	public static ObjectName getObjectName(String name, String lane) throws JMException {
+		return new ObjectName(DOMAIN + ":type=QueryLane,name=" + ObjectName.quote(name) + ",lane=" + ObjectName.quote(lane));
+	}
+	
+	@Override
+	public String toString() {
+		return "QueryScheduler [costThreshold=" + Math.round(costThreshold) + ", " + cheapLane + ", " + expensiveLane + "]";
+	}
+	
+	public static final class Builder {
+		private final TrainsRoutesDirectedGraph graph;
+		private double costThreshold = DEFAULT_COST_THRESHOLD;
+		private int cheapLaneConcurrency = Runtime.getRuntime().availableProcessors();
+		private int cheapLaneQueueCapacity = 10_000;
+		private int expensiveLaneConcurrency = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+		private int expensiveLaneQueueCapacity = 1_000;
+		
+		public Builder(TrainsRoutesDirectedGraph graph) {
+			this.graph = graph;
+		}
+		
+		/**
+		 * @param costThreshold - the highest estimated cost, in routes relaxed, of the queries of the cheap lane.
+		 * @return This builder.
+		 */
+		public Builder costThreshold(double costThreshold) {
+			this.costThreshold = costThreshold;
+			return this;
+		}
+		
+		/**
+		 * @param concurrency - the threads of the cheap lane.
+		 * @param queueCapacity
+		 * @return This builder.
+		 */
+		public Builder cheapLane(int concurrency, int queueCapacity) {
+			this.cheapLaneConcurrency = concurrency;
+			this.cheapLaneQueueCapacity = queueCapacity;
+			return this;
+		}
+		
+		/**
+		 * @param concurrency - the number of expensive queries that run at once.
+		 * @param queueCapacity - the number of expensive queries that can wait, the next ones are rejected.
+		 * @return This builder.
+		 */
+		public Builder expensiveLane(int concurrency, int queueCapacity) {
+			this.expensiveLaneConcurrency = concurrency;
+			this.expensiveLaneQueueCapacity = queueCapacity;
+			return this;
+		}
+		
+		public QueryScheduler build() {
+			return new QueryScheduler(this);
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package com.ccc.routes.service;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The executors that run one request per task. The build targets Java 15, so a virtual thread per task executor is
+ * looked up by reflection: on a runtime that has one every request gets its own virtual thread, otherwise the
+ * requests share a fixed pool of daemon platform threads.
+ *
+ * @author gibrancastillo
+ *
+ */
+public final class RequestExecutors {
+	private static final Logger logger = LogManager.getLogger(RequestExecutors.class);
+	
+	private RequestExecutors() {
+	}
+	
+	/**
+	 * @param name - the prefix of the names of the platform threads.
+	 * @param numberOfThreads - the number of platform threads when there are no virtual threads.
+	 * @return An executor that runs every task on a new virtual thread, or a fixed pool of platform threads.
+	 */
+	public static ExecutorService newPerRequestExecutor(String name, int numberOfThreads) {
+		try {
+			ExecutorService executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+			logger.debug("Running every " + name + " request on its own virtual thread");
+			
+			return executor;
+		} catch(ReflectiveOperationException | RuntimeException e) {
+			//No virtual threads before Java 21, or they are a preview feature that is not enabled
+			logger.debug("Running the " + name + " requests on " + numberOfThreads + " platform threads, no virtual threads: " + e);
+			
+			return Executors.newFixedThreadPool(numberOfThreads, newDaemonThreadFactory(name));
+		}
+	}
+	
+	/**
+	 * @param name
+	 * @return A factory of daemon threads named name-1, name-2...
+	 */
+	public static ThreadFactory newDaemonThreadFactory(String name) {
+		AtomicInteger numberOfThreads = new AtomicInteger();
+		
+		return runnable -> {
+			Thread thread = new Thread(runnable, name + "-" + numberOfThreads.incrementAndGet());
+			thread.setDaemon(true);
+			
+			return thread;
+		};
+	}
+}
@@ -0,0 +1,489 @@
+package com.ccc.routes.service;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.ccc.routes.network.RouteNetwork;
+import com.ccc.routes.network.RouteNetworkSnapshot;
+import com.ccc.routes.network.RouteParser;
+import com.ccc.routes.recursion.ShortestRoute;
+import com.ccc.routes.recursion.Town;
+import com.ccc.routes.recursion.TrainsRoutesDirectedGraph;
+import com.ccc.routes.search.SearchBudget;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A standalone query service over one shared {@link TrainsRoutesDirectedGraph}, on the JDK {@link HttpServer}, so
+ * consumers query a running graph instead of embedding the library and loading the graph themselves. Every request
+ * is read and answered on its own virtual thread when the runtime has them, see {@link RequestExecutors}, but its
+ * queries run on the reused threads of a {@link QueryScheduler}, in the lane of their cost, each one under a
+ * {@link SearchBudget} of a deadline and a maximum number of towns expanded. A query that runs out of its budget,
+ * or finds its lane full, is answered with 503.
+ *
+ * Queries, all answered by GET (or POST) with URL-encoded parameters:
+ * <> /distance?route=A-B-C - the distance of the route, the towns separated by dashes or one letter per town.
+ * <> /trips?from=C&to=C&stops=3&exact=false - the number of trips with a maximum (or exact) number of stops.
+ * <> /shortest?from=A&to=C - the shortest route, its towns and distance.
+ * <> /routes?from=C&to=C&maxDistance=30 - the number of different routes with a distance of less than the maximum.
+ * <> /batch - POST, one query per line of the body (e.g. /distance?route=A-B-C), answered in order in one response,
+ *    so a client pipelines thousands of queries through a single request.
+ *
+ * The answers are compact JSON, or binary with format=binary or an Accept header of application/octet-stream, see
+ * {@link QueryResponse}. A batch is a JSON array, or in binary the int number of answers followed by the answers. A
+ * malformed query, or one with more than {@link #MAX_STOPS} stops or a maximum distance over {@link #MAX_DISTANCE},
+ * is answered with 400, an unknown one with 404, and within a batch both with an error answer.
+ *
+ * java com.ccc.routes.service.RouteQueryServer --routes routes.txt --port 8080
+ *
+ * Options:
+ * --routes PATH, the routes in the route format, or
+ * --snapshot PATH, a RouteNetworkSnapshot the queries run straight over
+ * --port NUMBER, 8080 by default, 0 for any free port
+ * --threads NUMBER, the platform threads of the requests when there are no virtual threads, four per processor by
+ *   default
+ * --timeout MILLISECONDS, the deadline of every query, 10 seconds by default
+ * --max-towns-expanded NUMBER, the towns the searches of a query may expand, 100 million by default
+ *
+ * The responses are a few bytes, so without TCP_NODELAY each one waits for the delayed ACK of the previous one on a
+ * kept alive connection. The JDK server only sets it when the JVM is started with -Dsun.net.httpserver.nodelay=true,
+ * a property of every HttpServer of the JVM that is left to the launcher.
+ *
+ * @author gibrancastillo
+ *
+ */
+public final class RouteQueryServer {
+	public static final int DEFAULT_PORT = 8080;
+	static final int MAX_BATCH_SIZE = 10_000;
+	public static final int MAX_STOPS = 100_000;
+	public static final int MAX_DISTANCE = 1_000_000;
+	public static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(10);
+	public static final long DEFAULT_MAX_TOWNS_EXPANDED = 100_000_000;
+	private static final int BACKLOG = 1024;
+	private static final String JSON = "application/json";
+	private static final String BINARY = "application/octet-stream";
+	private static final Set<String> QUERIES = Set.of("/distance", "/trips", "/shortest", "/routes");
+	private static final Logger logger = LogManager.getLogger(RouteQueryServer.class);
+	
+	private final TrainsRoutesDirectedGraph graph;
+	private final QueryScheduler scheduler;
+	private final Duration timeout;
+	private final long maxTownsExpanded;
+	private final HttpServer server;
+	private final ExecutorService executor;
+	
+	/**
+	 * @param graph - the graph every request queries, its network is compiled before the server starts.
+	 * @param address - the address to listen on, port 0 for any free port.
+	 * @throws IOException
+	 */
+	public RouteQueryServer(TrainsRoutesDirectedGraph graph, InetSocketAddress address) throws IOException {
+		this(graph, address, 4 * Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * @param graph - the graph every request queries, its network is compiled before the server starts.
+	 * @param address - the address to listen on, port 0 for any free port.
+	 * @param numberOfThreads - the platform threads of the requests when there are no virtual threads.
+	 * @throws IOException
+	 */
+	public RouteQueryServer(TrainsRoutesDirectedGraph graph, InetSocketAddress address, int numberOfThreads) throws IOException {
+		this(new QueryScheduler.Builder(graph).build(), address, numberOfThreads, DEFAULT_TIMEOUT, DEFAULT_MAX_TOWNS_EXPANDED);
+	}
+	
+	/**
+	 * @param scheduler - runs the queries of every request, shut down with the server.
+	 * @param address - the address to listen on, port 0 for any free port.
+	 * @param numberOfThreads - the platform threads of the requests when there are no virtual threads.
+	 * @param timeout - the deadline of every query.
+	 * @param maxTownsExpanded - the towns the searches of every query may expand.
+	 * @throws IOException
+	 */
+	public RouteQueryServer(QueryScheduler scheduler, InetSocketAddress address, int numberOfThreads, Duration timeout, long maxTownsExpanded)
+			throws IOException {
+		this.graph = scheduler.getGraph();
+		this.scheduler = scheduler;
+		this.timeout = timeout;
+		this.maxTownsExpanded = maxTownsExpanded;
+		graph.getQueryPlanner();
+		this.executor = RequestExecutors.newPerRequestExecutor("route-query", numberOfThreads);
+		this.server = HttpServer.create(address, BACKLOG);
+		server.createContext("/", this::handle);
+		server.setExecutor(executor);
+	}
+	
+	public void start() {
+		server.start();
+		logger.debug("Route query server listening on " + server.getAddress());
+	}
+	
+	/**
+	 * Stops accepting requests, waits for the requests running to finish and releases the threads and the scheduler.
+	 *
+	 * @param delaySeconds - the longest time to wait for the requests running.
+	 */
+	public void stop(int delaySeconds) {
+		server.stop(delaySeconds);
+		executor.shutdown();
+		scheduler.shutdown();
+	}
+	
+	/**
+	 * @return The address the server listens on, with the port it was given.
+	 */
+	public InetSocketAddress getAddress() {
+		return server.getAddress();
+	}
+	
+	public TrainsRoutesDirectedGraph getGraph() {
+		return graph;
+	}
+	
+	public QueryScheduler getScheduler() {
+		return scheduler;
+	}
+	
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			String path = exchange.getRequestURI().getPath();
+			Map<String, String> parameters = parseParameters(exchange.getRequestURI().getRawQuery());
+			boolean isBinary = "binary".equals(parameters.get("format")) || String.valueOf(exchange.getRequestHeaders().getFirst("Accept")).contains(BINARY);
+			
+			if(path.equals("/batch")) {
+				if(!exchange.getRequestMethod().equals("POST")) {
+					send(exchange, 405, QueryResponse.error("A batch is sent with POST"), isBinary);
+				} else {
+					sendBatch(exchange, answerBatch(new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8)), isBinary);
+				}
+			} else if(!QUERIES.contains(path)) {
+				send(exchange, 404, QueryResponse.error("Unknown query " + path), isBinary);
+			} else {
+				QueryResponse response = answerSafely(path, parameters);
+				send(exchange, response.isError() ? 400 : 200, response, isBinary);
+			}
+		} catch(IllegalArgumentException e) {
+			send(exchange, 400, QueryResponse.error(e.getMessage()), false);
+		} catch(QueryUnavailableException e) {
+			send(exchange, 503, QueryResponse.error(e.getMessage()), false);
+		} catch(RuntimeException e) {
+			logger.error("Failed to answer " + exchange.getRequestURI(), e);
+			send(exchange, 500, QueryResponse.error("Internal error"), false);
+		} finally {
+			exchange.close();
+		}
+	}
+	
+	/**
+	 * @param reader - one query per line, blank lines are skipped.
+	 * @return The answers in the order of the queries.
+	 * @throws IOException
+	 */
+	List<QueryResponse> answerBatch(Reader reader) throws IOException {
+		List<QueryResponse> responses = new ArrayList<>();
+		BufferedReader lines = new BufferedReader(reader);
+		
+		for(String line = lines.readLine(); line != null; line = lines.readLine()) {
+			line = line.trim();
+			
+			if(line.isEmpty()) {
+				continue;
+			} else if(responses.size() == MAX_BATCH_SIZE) {
+				responses.add(QueryResponse.error("More than " + MAX_BATCH_SIZE + " queries in the batch"));
+				break;
+			}
+			
+			int question = line.indexOf('?');
+			String path = question < 0 ? line : line.substring(0, question);
+			
+			if(!QUERIES.contains(path)) {
+				responses.add(QueryResponse.error("Unknown query " + path));
+				continue;
+			}
+			
+			try {
+				responses.add(answerSafely(path, parseParameters(question < 0 ? null : line.substring(question + 1))));
+			} catch(IllegalArgumentException | QueryUnavailableException e) {
+				responses.add(QueryResponse.error(e.getMessage()));
+			}
+		}
+		
+		return responses;
+	}
+	
+	/**
+	 * @return The answer, or an error answer when the query is malformed.
+	 * @throws QueryUnavailableException when the query ran out of its budget or its lane is full.
+	 */
+	QueryResponse answerSafely(String path, Map<String, String> parameters) {
+		try {
+			return answer(path, parameters);
+		} catch(IllegalArgumentException | ArithmeticException e) {
+			return QueryResponse.error(e.getMessage());
+		}
+	}
+	
+	private QueryResponse answer(String path, Map<String, String> parameters) {
+		SearchBudget budget = new SearchBudget(timeout, maxTownsExpanded);
+		
+		switch(path) {
+			case "/distance":
+				int distance = await(scheduler.getRouteDistance(getParameter(parameters, "route"), budget));
+				
+				return distance == RouteNetwork.NO_ROUTE ? QueryResponse.noRoute() : QueryResponse.number(distance);
+			case "/trips":
+				return QueryResponse.number(await(scheduler.countTrips(getTown(parameters, "from"), getTown(parameters, "to"),
+						getIntParameter(parameters, "stops", MAX_STOPS), !Boolean.parseBoolean(parameters.get("exact")), budget)));
+			case "/shortest":
+				ShortestRoute shortestRoute = await(scheduler.getShortestRoute(getTown(parameters, "from"), getTown(parameters, "to"), budget));
+				
+				if(!shortestRoute.exists()) {
+					return QueryResponse.noRoute();
+				}
+				
+				List<String> towns = new ArrayList<>(shortestRoute.getTowns().size());
+				
+				for(Town<String> town : shortestRoute.getTowns()) {
+					towns.add(town.getTownName());
+				}
+				
+				return QueryResponse.route(towns, shortestRoute.getDistance());
+			default:
+				return QueryResponse.number(await(scheduler.countRoutesWithMaxDistance(getTown(parameters, "from"), getTown(parameters, "to"),
+						getIntParameter(parameters, "maxDistance", MAX_DISTANCE), budget)));
+		}
+	}
+	
+	/**
+	 * Waits on the thread of the request for the query running on the scheduler.
+	 *
+	 * @return The answer of the query.
+	 * @throws QueryUnavailableException when the query ran out of its budget or its lane is full.
+	 */
+	private static <T> T await(CompletableFuture<QueryOutcome<T>> future) {
+		QueryOutcome<T> outcome;
+		
+		try {
+			outcome = future.join();
+		} catch(CompletionException e) {
+			if(e.getCause() instanceof RejectedExecutionException) {
+				throw new QueryUnavailableException("Too many queries waiting, try again later");
+			} else if(e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			
+			throw e;
+		} catch(CancellationException e) {
+			throw new QueryUnavailableException("Query cancelled");
+		}
+		
+		if(!outcome.isCompleted()) {
+			throw new QueryUnavailableException("Query stopped at its " + outcome.getExceededLimit() + " limit");
+		}
+		
+		return outcome.getValue();
+	}
+	
+	private static String getParameter(Map<String, String> parameters, String name) {
+		String value = parameters.get(name);
+		
+		if(value == null || value.isEmpty()) {
+			throw new IllegalArgumentException("Missing parameter " + name);
+		}
+		
+		return value;
+	}
+	
+	private static Town<String> getTown(Map<String, String> parameters, String name) {
+		return new Town<String>(getParameter(parameters, name));
+	}
+	
+	private static int getIntParameter(Map<String, String> parameters, String name, int maxValue) {
+		String value = getParameter(parameters, name);
+		int number;
+		
+		try {
+			number = Integer.parseInt(value);
+		} catch(NumberFormatException e) {
+			throw new IllegalArgumentException("Expected a number for parameter " + name + ": " + value);
+		}
+		
+		if(number < 0 || number > maxValue) {
+			throw new IllegalArgumentException("Expected a number from 0 to " + maxValue + " for parameter " + name + ": " + value);
+		}
+		
+		return number;
+	}
+	
+	/**
+	 * @param query - the raw query of a URI, name=value pairs separated by ampersands, or null.
+	 * @return The decoded parameters.
+	 */
+	static Map<String, String> parseParameters(String query) {
+		Map<String, String> parameters = new HashMap<>();
+		
+		if(query == null) {
+			return parameters;
+		}
+		
+		for(String pair : query.split("&")) {
+			int equals = pair.indexOf('=');
+			
+			if(equals > 0) {
+				parameters.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+						URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+			}
+		}
+		
+		return parameters;
+	}
+	
+	private static void send(HttpExchange exchange, int status, QueryResponse response, boolean isBinary) throws IOException {
+		if(isBinary) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			response.writeBinary(new DataOutputStream(bytes));
+			send(exchange, status, BINARY, bytes.toByteArray());
+		} else {
+			StringBuilder builder = new StringBuilder();
+			response.writeJson(builder);
+			send(exchange, status, JSON, builder.toString().getBytes(StandardCharsets.UTF_8));
+		}
+	}
+	
+	private static void sendBatch(HttpExchange exchange, List<QueryResponse> responses, boolean isBinary) throws IOException {
+		if(isBinary) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream output = new DataOutputStream(bytes);
+			output.writeInt(responses.size());
+			
+			for(QueryResponse response : responses) {
+				response.writeBinary(output);
+			}
+			
+			send(exchange, 200, BINARY, bytes.toByteArray());
+		} else {
+			StringBuilder builder = new StringBuilder(responses.size() * 16).append('[');
+			
+			for(int i = 0; i < responses.size(); i++) {
+				if(i > 0) {
+					builder.append(',');
+				}
+				
+				responses.get(i).writeJson(builder);
+			}
+			
+			send(exchange, 200, JSON, builder.append(']').toString().getBytes(StandardCharsets.UTF_8));
+		}
+	}
+	
+	private static void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+		exchange.getResponseHeaders().set("Content-Type", contentType);
+		exchange.sendResponseHeaders(status, body.length);
+		
+		try(OutputStream output = exchange.getResponseBody()) {
+			output.write(body);
+		}
+	}
+	
+	public static void main(String[] args) throws IOException {
+		try {
+			RouteQueryServer server = create(args);
+			server.start();
+			logger.info("Route query server listening on " + server.getAddress());
+		} catch(IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.exit(2);
+		}
+	}
+	
+	static RouteQueryServer create(String[] args) throws IOException {
+		Path routes = null;
+		Path snapshot = null;
+		int port = DEFAULT_PORT;
+		int numberOfThreads = 4 * Runtime.getRuntime().availableProcessors();
+		Duration timeout = DEFAULT_TIMEOUT;
+		long maxTownsExpanded = DEFAULT_MAX_TOWNS_EXPANDED;
+		
+		for(int i = 0; i < args.length; i++) {
+			if(i + 1 == args.length) {
+				throw new IllegalArgumentException("Missing value of option " + args[i]);
+			}
+			
+			String value = args[++i];
+			
+			switch(args[i - 1]) {
+				case "--routes":
+					routes = Paths.get(value);
+					break;
+				case "--snapshot":
+					snapshot = Paths.get(value);
+					break;
+				case "--port":
+					port = Integer.parseInt(value);
+					break;
+				case "--threads":
+					numberOfThreads = Integer.parseInt(value);
+					break;
+				case "--timeout":
+					timeout = Duration.ofMillis(Long.parseLong(value));
+					break;
+				case "--max-towns-expanded":
+					maxTownsExpanded = Long.parseLong(value);
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown option " + args[i - 1]);
+			}
+		}
+		
+		RouteNetwork network;
+		
+		if(snapshot != null) {
+			network = RouteNetworkSnapshot.open(snapshot);
+		} else if(routes != null) {
+			try(Reader reader = Files.newBufferedReader(routes, StandardCharsets.UTF_8)) {
+				network = RouteParser.parseNetwork(reader);
+			}
+		} else {
+			throw new IllegalArgumentException("Missing option --routes or --snapshot");
+		}
+		
+		return new RouteQueryServer(new QueryScheduler.Builder(new TrainsRoutesDirectedGraph(network)).build(), new InetSocketAddress(port), numberOfThreads,
+				timeout, maxTownsExpanded);
+	}
+	
+	/**
+	 * Thrown when a query cannot be answered now: it ran out of its budget or its lane is full.
+	 */
+	private static final class QueryUnavailableException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+		
+		QueryUnavailableException(String message) {
+			super(message);
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package com.ccc.routes.timetable;
+
+/**
+ * The earliest arrival at a town for every departure from another town worth taking, found by a
+ * {@link ConnectionScan}: pairs of departure and arrival time in order of departure, where a later departure always
+ * arrives later too. Leaving at any time, the earliest arrival is the one of the first pair departing at or after it.
+ *
+ * @author gibrancastillo
+ *
+ */
+public final class ArrivalProfile {
+	private final int[] departureTimes;
+	private final int[] arrivalTimes;
+	
+	ArrivalProfile(int[] departureTimes, int[] arrivalTimes) {
+		this.departureTimes = departureTimes;
+		this.arrivalTimes = arrivalTimes;
+	}
+	
+	public int size() {
+		return departureTimes.length;
+	}
+	
+	public int getDepartureTime(int index) {
+		return departureTimes[index];
+	}
+	
+	public int getArrivalTime(int index) {
+		return arrivalTimes[index];
+	}
+	
+	/**
+	 * @param departureTime
+	 * @return The earliest arrival leaving at or after the departure time, or {@link Timetable#NO_TIME}.
+	 */
+	public int getEarliestArrival(int departureTime) {
+		int low = 0;
+		int high = departureTimes.length;
+		
+		while(low < high) {
+			int middle = (low + high) >>> 1;
+			
+			if(departureTimes[middle] < departureTime) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		
+		return low == departureTimes.length ? Timetable.NO_TIME : arrivalTimes[low];
+	}
+	
+	/**
+	 * @return The pairs as: [08:00 - 08:30, 08:20 - 08:45].
+	 */
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder("[");
+		
+		for(int i = 0; i < departureTimes.length; i++) {
+			if(i > 0) {
+				builder.append(", ");
+			}
+			
+			builder.append(Timetable.formatTime(departureTimes[i])).append(" - ").append(Timetable.formatTime(arrivalTimes[i]));
+		}
+		
+		return builder.append(']').toString();
+	}
+}
@@ -0,0 +1,328 @@
+package com.ccc.routes.timetable;
+
+import java.util.Arrays;
+
+/**
+ * Earliest arrival and profile queries over a {@link Timetable} by the Connection Scan Algorithm. There is no priority
+ * queue and no graph to follow: the connections are already in order of departure, so a query is a single linear pass
+ * over the packed connection array that keeps the earliest arrival at every town and whether every trip has been
+ * boarded, and a connection is taken when its trip has been boarded already or its departure town is reached in time.
+ *
+ * <> Earliest arrival - scans forward from the first connection departing at the departure time, and stops at the
+ *    first connection departing after the arrival town has been reached, no later connection can arrive earlier.
+ * <> Profile - scans backward from the last connection, keeping for every town the departures worth taking to the
+ *    arrival town, and for every trip the earliest arrival when staying on it.
+ *
+ * Changing trains at a town takes no time, a connection can be taken from any connection arriving at its departure
+ * town no later than it departs. The scratch arrays are stamped with the query, one set per calling thread, so a query
+ * neither allocates them nor clears them.
+ *
+ * @author gibrancastillo
+ *
+ */
+public final class ConnectionScan {
+	private static final int NO_TIME = Timetable.NO_TIME;
+	private static final int NO_ENTRY = -1;
+	private static final long STAMP_MASK = 0xFFFFFFFF00000000L;
+	private static final int DEPARTURE_TIME = Timetable.DEPARTURE_TIME;
+	private static final int ARRIVAL_TIME = Timetable.ARRIVAL_TIME;
+	private static final int DEPARTURE_TOWN = Timetable.DEPARTURE_TOWN;
+	private static final int ARRIVAL_TOWN = Timetable.ARRIVAL_TOWN;
+	private static final int TRIP = Timetable.TRIP;
+	private static final int CONNECTION_SIZE = Timetable.CONNECTION_SIZE;
+	private static final ThreadLocal<Workspace> WORKSPACES = ThreadLocal.withInitial(Workspace::new);
+	
+	private final Timetable timetable;
+	
+	/**
+	 * @param timetable
+	 */
+	public ConnectionScan(Timetable timetable) {
+		this.timetable = timetable;
+	}
+	
+	/**
+	 * Finds the journey that arrives first at the arrival town, leaving the departure town at or after the departure
+	 * time.
+	 *
+	 * @param departureTownId
+	 * @param arrivalTownId
+	 * @param departureTime
+	 * @return The journey, or {@link Journey#noJourney()} when the arrival town cannot be reached.
+	 */
+	public Journey findEarliestArrival(int departureTownId, int arrivalTownId, int departureTime) {
+		if(!isTown(departureTownId) || !isTown(arrivalTownId)) {
+			return Journey.noJourney();
+		} else if(departureTownId == arrivalTownId) {
+			return new Journey(timetable, new int[0], departureTime);
+		}
+		
+		Workspace workspace = WORKSPACES.get();
+		workspace.reset(timetable);
+		scanForward(workspace, departureTownId, arrivalTownId, departureTime);
+		int arrivalTime = workspace.getArrivalTime(arrivalTownId);
+		
+		return arrivalTime == NO_TIME ? Journey.noJourney() : workspace.buildJourney(timetable, departureTownId, arrivalTownId, arrivalTime);
+	}
+	
+	/**
+	 * Scans every connection departing at or after the departure time.
+	 *
+	 * @param departureTownId
+	 * @param departureTime
+	 * @return The earliest arrival at every town by id, {@link Timetable#NO_TIME} for the towns that cannot be reached.
+	 */
+	public int[] findEarliestArrivalTimes(int departureTownId, int departureTime) {
+		int[] arrivalTimes = new int[timetable.getNetwork().getNumberOfTowns()];
+		
+		if(!isTown(departureTownId)) {
+			Arrays.fill(arrivalTimes, NO_TIME);
+			return arrivalTimes;
+		}
+		
+		Workspace workspace = WORKSPACES.get();
+		workspace.reset(timetable);
+		scanForward(workspace, departureTownId, NO_ENTRY, departureTime);
+		
+		for(int townId = 0; townId < arrivalTimes.length; townId++) {
+			arrivalTimes[townId] = workspace.getArrivalTime(townId);
+		}
+		
+		return arrivalTimes;
+	}
+	
+	/**
+	 * Finds every departure worth taking from the departure town to the arrival town, at or after the earliest
+	 * departure time: the ones no later departure arrives as early as.
+	 *
+	 * @param departureTownId
+	 * @param arrivalTownId
+	 * @param earliestDepartureTime
+	 * @return The departures with their earliest arrival, none when the arrival town cannot be reached or is the
+	 * departure town.
+	 */
+	public ArrivalProfile findProfile(int departureTownId, int arrivalTownId, int earliestDepartureTime) {
+		if(!isTown(departureTownId) || !isTown(arrivalTownId) || departureTownId == arrivalTownId) {
+			return new ArrivalProfile(new int[0], new int[0]);
+		}
+		
+		Workspace workspace = WORKSPACES.get();
+		workspace.reset(timetable);
+		int[] connections = timetable.connections;
+		long[] tripEntries = workspace.tripEntries;
+		long stamp = (long) workspace.stamp << 32;
+		int firstOffset = timetable.findFirstConnection(earliestDepartureTime) * CONNECTION_SIZE;
+		
+		for(int offset = connections.length - CONNECTION_SIZE; offset >= firstOffset; offset -= CONNECTION_SIZE) {
+			int trip = connections[offset + TRIP];
+			int connectionArrivalTownId = connections[offset + ARRIVAL_TOWN];
+			long tripEntry = tripEntries[trip];
+			//Staying on the trip, leaving it at the arrival town or changing to a later departure worth taking
+			int arrivalTime = (tripEntry & STAMP_MASK) == stamp ? (int) tripEntry : NO_TIME;
+			
+			if(connectionArrivalTownId == arrivalTownId) {
+				arrivalTime = Math.min(arrivalTime, connections[offset + ARRIVAL_TIME]);
+			} else {
+				arrivalTime = Math.min(arrivalTime, workspace.getProfileArrivalTime(connectionArrivalTownId, connections[offset + ARRIVAL_TIME]));
+			}
+			
+			if(arrivalTime != NO_TIME) {
+				tripEntries[trip] = stamp | arrivalTime;
+				workspace.addProfileEntry(connections[offset + DEPARTURE_TOWN], connections[offset + DEPARTURE_TIME], arrivalTime);
+			}
+		}
+		
+		return workspace.buildProfile(departureTownId);
+	}
+	
+	private boolean isTown(int townId) {
+		return townId >= 0 && townId < timetable.getNetwork().getNumberOfTowns();
+	}
+	
+	/**
+	 * Takes every connection reachable in time from the first one departing at the departure time, until one departs
+	 * after the arrival town has been reached.
+	 *
+	 * @param arrivalTownId - the town to stop at, or {@link #NO_ENTRY} to scan to the last connection.
+	 */
+	private void scanForward(Workspace workspace, int departureTownId, int arrivalTownId, int departureTime) {
+		int[] connections = timetable.connections;
+		long[] townEntries = workspace.townEntries;
+		long[] tripEntries = workspace.tripEntries;
+		int[] inConnections = workspace.inConnections;
+		long stamp = (long) workspace.stamp << 32;
+		int arrivalTownTime = NO_TIME;
+		townEntries[departureTownId] = stamp | departureTime;
+		int connection = timetable.findFirstConnection(departureTime);
+		
+		for(int offset = connection * CONNECTION_SIZE, end = connections.length; offset < end; offset += CONNECTION_SIZE, connection++) {
+			int connectionDepartureTime = connections[offset + DEPARTURE_TIME];
+			
+			if(connectionDepartureTime >= arrivalTownTime) {
+				break;
+			}
+			
+			int trip = connections[offset + TRIP];
+			
+			if((tripEntries[trip] & STAMP_MASK) != stamp) {
+				long departureEntry = townEntries[connections[offset + DEPARTURE_TOWN]];
+				
+				if((departureEntry & STAMP_MASK) != stamp || (int) departureEntry > connectionDepartureTime) {
+					continue;
+				}
+				
+				//The trip is boarded here, every later connection of it can be taken
+				tripEntries[trip] = stamp | connection;
+			}
+			
+			int connectionArrivalTownId = connections[offset + ARRIVAL_TOWN];
+			int connectionArrivalTime = connections[offset + ARRIVAL_TIME];
+			long arrivalEntry = townEntries[connectionArrivalTownId];
+			
+			if((arrivalEntry & STAMP_MASK) != stamp || (int) arrivalEntry > connectionArrivalTime) {
+				townEntries[connectionArrivalTownId] = stamp | connectionArrivalTime;
+				inConnections[connectionArrivalTownId] = connection;
+				
+				if(connectionArrivalTownId == arrivalTownId) {
+					arrivalTownTime = connectionArrivalTime;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * The scratch arrays of the queries, one per calling thread. An entry holds the stamp of the query in its high half:
+	 * forward, the earliest arrival at a town and the connection a trip was boarded at, backward, the first profile
+	 * entry of a town and the earliest arrival staying on a trip.
+	 */
+	private static final class Workspace {
+		private long[] townEntries = new long[0];
+		private long[] tripEntries = new long[0];
+		//The connection the earliest arrival at a town arrives by
+		private int[] inConnections = new int[0];
+		//The profile entries of all towns, every one linked to the entry of its town departing next
+		private int[] profileDepartureTimes = new int[16];
+		private int[] profileArrivalTimes = new int[16];
+		private int[] nextProfileEntries = new int[16];
+		private int numberOfProfileEntries;
+		private int stamp;
+		
+		void reset(Timetable timetable) {
+			int numberOfTowns = timetable.getNetwork().getNumberOfTowns();
+			int numberOfTrips = timetable.getNumberOfTrips();
+			
+			if(numberOfTowns > townEntries.length || numberOfTrips > tripEntries.length) {
+				townEntries = new long[Math.max(numberOfTowns, townEntries.length)];
+				inConnections = new int[townEntries.length];
+				tripEntries = new long[Math.max(numberOfTrips, tripEntries.length)];
+				stamp = 0;
+			}
+			
+			if(++stamp == Integer.MAX_VALUE) {
+				Arrays.fill(townEntries, 0);
+				Arrays.fill(tripEntries, 0);
+				stamp = 1;
+			}
+			
+			numberOfProfileEntries = 0;
+		}
+		
+		private boolean isStamped(long entry) {
+			return (int) (entry >>> 32) == stamp;
+		}
+		
+		int getArrivalTime(int townId) {
+			return isStamped(townEntries[townId]) ? (int) townEntries[townId] : NO_TIME;
+		}
+		
+		/**
+		 * Walks the connections back from the arrival town, every one to the connection its trip was boarded at and on
+		 * to the connection that arrived at the town of boarding first.
+		 */
+		Journey buildJourney(Timetable timetable, int departureTownId, int arrivalTownId, int arrivalTime) {
+			int numberOfLegs = 0;
+			
+			for(int townId = arrivalTownId; townId != departureTownId; numberOfLegs++) {
+				townId = timetable.getDepartureTownId(getBoardingConnection(timetable, inConnections[townId]));
+			}
+			
+			int[] legConnections = new int[2 * numberOfLegs];
+			int townId = arrivalTownId;
+			
+			for(int leg = numberOfLegs - 1; leg >= 0; leg--) {
+				int alightingConnection = inConnections[townId];
+				int boardingConnection = getBoardingConnection(timetable, alightingConnection);
+				legConnections[2 * leg] = boardingConnection;
+				legConnections[2 * leg + 1] = alightingConnection;
+				townId = timetable.getDepartureTownId(boardingConnection);
+			}
+			
+			return new Journey(timetable, legConnections, arrivalTime);
+		}
+		
+		private int getBoardingConnection(Timetable timetable, int connection) {
+			return (int) tripEntries[timetable.getTrip(connection)];
+		}
+		
+		/**
+		 * @return The arrival of the first entry of the town departing at or after the time, or {@link #NO_TIME}.
+		 */
+		int getProfileArrivalTime(int townId, int time) {
+			long townEntry = townEntries[townId];
+			int entry = isStamped(townEntry) ? (int) townEntry : NO_ENTRY;
+			
+			while(entry != NO_ENTRY && profileDepartureTimes[entry] < time) {
+				entry = nextProfileEntries[entry];
+			}
+			
+			return entry == NO_ENTRY ? NO_TIME : profileArrivalTimes[entry];
+		}
+		
+		/**
+		 * Adds the departure to the entries of the town unless the first one, departing no earlier, arrives no later.
+		 * The departures come in reverse order of departure, so the entries of a town stay in order of departure.
+		 */
+		void addProfileEntry(int townId, int departureTime, int arrivalTime) {
+			long townEntry = townEntries[townId];
+			int firstEntry = isStamped(townEntry) ? (int) townEntry : NO_ENTRY;
+			
+			if(firstEntry != NO_ENTRY && profileArrivalTimes[firstEntry] <= arrivalTime) {
+				return;
+			} else if(firstEntry != NO_ENTRY && profileDepartureTimes[firstEntry] == departureTime) {
+				profileArrivalTimes[firstEntry] = arrivalTime;
+				return;
+			}
+			
+			if(numberOfProfileEntries == profileDepartureTimes.length) {
+				profileDepartureTimes = Arrays.copyOf(profileDepartureTimes, numberOfProfileEntries * 2);
+				profileArrivalTimes = Arrays.copyOf(profileArrivalTimes, numberOfProfileEntries * 2);
+				nextProfileEntries = Arrays.copyOf(nextProfileEntries, numberOfProfileEntries * 2);
+			}
+			
+			int entry = numberOfProfileEntries++;
+			profileDepartureTimes[entry] = departureTime;
+			profileArrivalTimes[entry] = arrivalTime;
+			nextProfileEntries[entry] = firstEntry;
+			townEntries[townId] = ((long) stamp << 32) | entry;
+		}
+		
+		ArrivalProfile buildProfile(int townId) {
+			int firstEntry = isStamped(townEntries[townId]) ? (int) townEntries[townId] : NO_ENTRY;
+			int size = 0;
+			
+			for(int entry = firstEntry; entry != NO_ENTRY; entry = nextProfileEntries[entry]) {
+				size++;
+			}
+			
+			int[] departureTimes = new int[size];
+			int[] arrivalTimes = new int[size];
+			
+			for(int i = 0, entry = firstEntry; i < size; i++, entry = nextProfileEntries[entry]) {
+				departureTimes[i] = profileDepartureTimes[entry];
+				arrivalTimes[i] = profileArrivalTimes[entry];
+			}
+			
+			return new ArrivalProfile(departureTimes, arrivalTimes);
+		}
+	}
+}
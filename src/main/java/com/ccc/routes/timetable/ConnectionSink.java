@@ -0,0 +1,13 @@
+package com.ccc.routes.timetable;
+
+/**
+ * Receives the connections read by a {@link TimetableParser}, one call per connection, with the trips interned in the
+ * trip symbol table of the parser and the town ids of its network.
+ * 
+ * @author gibrancastillo
+ *
+ */
+@FunctionalInterface
+public interface ConnectionSink {
+	void addConnection(int trip, int departureTownId, int arrivalTownId, int departureTime, int arrivalTime);
+}
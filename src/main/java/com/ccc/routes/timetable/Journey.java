@@ -0,0 +1,95 @@
+package com.ccc.routes.timetable;
+
+/**
+ * A journey found by a {@link ConnectionScan}: the legs traveled from the departure town to the arrival town, every leg
+ * a ride on one trip from the connection it is boarded at to the connection it is left at. A journey from a town to
+ * itself has no legs and arrives when it departs.
+ *
+ * @author gibrancastillo
+ *
+ */
+public final class Journey {
+	private static final Journey NO_JOURNEY = new Journey(null, new int[0], Timetable.NO_TIME);
+	
+	private final Timetable timetable;
+	//The boarding and alighting connection of every leg, in traveling order
+	private final int[] legConnections;
+	private final int arrivalTime;
+	
+	Journey(Timetable timetable, int[] legConnections, int arrivalTime) {
+		this.timetable = timetable;
+		this.legConnections = legConnections;
+		this.arrivalTime = arrivalTime;
+	}
+	
+	/**
+	 * @return The journey for when the arrival town cannot be reached.
+	 */
+	public static Journey noJourney() {
+		return NO_JOURNEY;
+	}
+	
+	public boolean exists() {
+		return arrivalTime != Timetable.NO_TIME;
+	}
+	
+	/**
+	 * @return The time of arrival at the arrival town, or {@link Timetable#NO_TIME}.
+	 */
+	public int getArrivalTime() {
+		return arrivalTime;
+	}
+	
+	public int getNumberOfLegs() {
+		return legConnections.length / 2;
+	}
+	
+	public int getTrip(int leg) {
+		return timetable.getTrip(legConnections[2 * leg]);
+	}
+	
+	/**
+	 * @param leg
+	 * @return The connection the trip of the leg is boarded at.
+	 */
+	public int getBoardingConnection(int leg) {
+		return legConnections[2 * leg];
+	}
+	
+	/**
+	 * @param leg
+	 * @return The connection the trip of the leg is left at.
+	 */
+	public int getAlightingConnection(int leg) {
+		return legConnections[2 * leg + 1];
+	}
+	
+	/**
+	 * @return The legs as: A 08:00 - B 08:10 (IC1), B 08:15 - C 08:30 (RE2), or NO SUCH ROUTE.
+	 */
+	@Override
+	public String toString() {
+		if(!exists()) {
+			return "NO SUCH ROUTE";
+		}
+		
+		StringBuilder builder = new StringBuilder();
+		
+		for(int leg = 0; leg < getNumberOfLegs(); leg++) {
+			int boardingConnection = getBoardingConnection(leg);
+			int alightingConnection = getAlightingConnection(leg);
+			
+			if(leg > 0) {
+				builder.append(", ");
+			}
+			
+			builder.append(timetable.getNetwork().getTownName(timetable.getDepartureTownId(boardingConnection))).append(' ')
+					.append(Timetable.formatTime(timetable.getDepartureTime(boardingConnection))).append(" - ")
+					.append(timetable.getNetwork().getTownName(timetable.getArrivalTownId(alightingConnection))).append(' ')
+					.append(Timetable.formatTime(timetable.getArrivalTime(alightingConnection))).append(" (")
+					.append(timetable.getTripName(getTrip(leg))).append(')');
+		}
+		
+		return builder.toString();
+	}
+}
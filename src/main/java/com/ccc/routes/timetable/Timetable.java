@@ -0,0 +1,270 @@
+package com.ccc.routes.timetable;
+
+import java.util.Arrays;
+
+import com.ccc.routes.network.IntList;
+import com.ccc.routes.network.RouteNetwork;
+import com.ccc.routes.network.TownSymbolTable;
+
+/**
+ * The trips run over the routes of a {@link RouteNetwork}, as elementary connections: a train of a trip leaving a town
+ * at a departure time and arriving at the next town of its route at an arrival time. Times are seconds since the
+ * midnight the service day starts at, they may go past 24:00 for trips running after midnight.
+ *
+ * The connections are sorted by departure time and packed in a single int array, connection c taking the
+ * {@link #CONNECTION_SIZE} ints from c * CONNECTION_SIZE, so a {@link ConnectionScan} reads every field of a connection
+ * from the same cache line and walks the timetable from the first connection it needs to the last one straight
+ * through memory. The route of the network every connection runs on is kept apart, only journeys need it.
+ *
+ * Test Input Timetable: IC1 A B 08:00 08:05, IC1 B C 08:06 08:10, RE2 A D 08:02 08:07
+ * connections = [28800, 29100, A, B, IC1, 28920, 29220, A, D, RE2, 29160, 29400, B, C, IC1]
+ *
+ * A timetable is immutable once built and can be read from many threads at once.
+ *
+ * @author gibrancastillo
+ *
+ */
+public final class Timetable {
+	public static final int NO_TIME = Integer.MAX_VALUE;
+	static final int DEPARTURE_TIME = 0;
+	static final int ARRIVAL_TIME = 1;
+	static final int DEPARTURE_TOWN = 2;
+	static final int ARRIVAL_TOWN = 3;
+	static final int TRIP = 4;
+	static final int CONNECTION_SIZE = 5;
+	
+	private final RouteNetwork network;
+	private final String[] tripNames;
+	final int[] connections;
+	private final int[] routes;
+	
+	private Timetable(RouteNetwork network, String[] tripNames, int[] connections, int[] routes) {
+		this.network = network;
+		this.tripNames = tripNames;
+		this.connections = connections;
+		this.routes = routes;
+	}
+	
+	public RouteNetwork getNetwork() {
+		return network;
+	}
+	
+	public int getNumberOfTrips() {
+		return tripNames.length;
+	}
+	
+	public String getTripName(int trip) {
+		return tripNames[trip];
+	}
+	
+	public int getNumberOfConnections() {
+		return routes.length;
+	}
+	
+	public int getDepartureTime(int connection) {
+		return connections[connection * CONNECTION_SIZE + DEPARTURE_TIME];
+	}
+	
+	public int getArrivalTime(int connection) {
+		return connections[connection * CONNECTION_SIZE + ARRIVAL_TIME];
+	}
+	
+	public int getDepartureTownId(int connection) {
+		return connections[connection * CONNECTION_SIZE + DEPARTURE_TOWN];
+	}
+	
+	public int getArrivalTownId(int connection) {
+		return connections[connection * CONNECTION_SIZE + ARRIVAL_TOWN];
+	}
+	
+	public int getTrip(int connection) {
+		return connections[connection * CONNECTION_SIZE + TRIP];
+	}
+	
+	/**
+	 * @param connection
+	 * @return The index of the route of the network the connection runs on.
+	 */
+	public int getRoute(int connection) {
+		return routes[connection];
+	}
+	
+	/**
+	 * @param time
+	 * @return The index of the first connection departing at or after the time, or the number of connections when
+	 * none does.
+	 */
+	public int findFirstConnection(int time) {
+		int low = 0;
+		int high = routes.length;
+		
+		while(low < high) {
+			int middle = (low + high) >>> 1;
+			
+			if(connections[middle * CONNECTION_SIZE + DEPARTURE_TIME] < time) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		
+		return low;
+	}
+	
+	/**
+	 * @param time - seconds since midnight.
+	 * @return The time as HH:MM, or HH:MM:SS when it is not a whole minute.
+	 */
+	public static String formatTime(int time) {
+		int hours = time / 3600;
+		int minutes = time / 60 % 60;
+		int seconds = time % 60;
+		StringBuilder builder = new StringBuilder(8);
+		builder.append(hours < 10 ? "0" : "").append(hours).append(minutes < 10 ? ":0" : ":").append(minutes);
+		
+		if(seconds > 0) {
+			builder.append(seconds < 10 ? ":0" : ":").append(seconds);
+		}
+		
+		return builder.toString();
+	}
+	
+	/**
+	 * Collects the connections of the trips one at a time, in any order of trips, and sorts them by departure time once
+	 * they are all in. The connections of a trip are added in the order its train runs them: every connection leaves
+	 * from the town the one before arrived at, no earlier than it arrived.
+	 */
+	public static final class Builder {
+		private final RouteNetwork network;
+		private final TownSymbolTable tripSymbolTable;
+		private final IntList departureTimes = new IntList();
+		private final IntList arrivalTimes = new IntList();
+		private final IntList departureTownIds = new IntList();
+		private final IntList arrivalTownIds = new IntList();
+		private final IntList trips = new IntList();
+		private final IntList routes = new IntList();
+		//The town and time the last connection added of every trip arrived at
+		private final IntList tripArrivalTownIds = new IntList();
+		private final IntList tripArrivalTimes = new IntList();
+		
+		/**
+		 * @param network - the network the trips run over.
+		 */
+		public Builder(RouteNetwork network) {
+			this(network, new TownSymbolTable());
+		}
+		
+		/**
+		 * @param network - the network the trips run over.
+		 * @param tripSymbolTable - the symbol table trip names are interned into, the trips of the timetable are its ids.
+		 */
+		public Builder(RouteNetwork network, TownSymbolTable tripSymbolTable) {
+			this.network = network;
+			this.tripSymbolTable = tripSymbolTable;
+		}
+		
+		public RouteNetwork getNetwork() {
+			return network;
+		}
+		
+		public TownSymbolTable getTripSymbolTable() {
+			return tripSymbolTable;
+		}
+		
+		/**
+		 * @param tripName
+		 * @return The trip of the name, a new trip the first time the name is seen.
+		 */
+		public int addTrip(String tripName) {
+			return tripSymbolTable.intern(tripName);
+		}
+		
+		/**
+		 * @param trip - a trip of {@link #addTrip(String)} or of the trip symbol table of this builder.
+		 * @param departureTownId
+		 * @param arrivalTownId
+		 * @param departureTime
+		 * @param arrivalTime
+		 * @return This builder.
+		 * @throws IllegalArgumentException when the network has no route between the towns, the connection arrives no
+		 * later than it departs or does not carry on from the last connection of its trip.
+		 */
+		public Builder addConnection(int trip, int departureTownId, int arrivalTownId, int departureTime, int arrivalTime) {
+			if(trip < 0 || trip >= tripSymbolTable.size()) {
+				throw new IllegalArgumentException("No trip " + trip);
+			}
+			
+			int route = departureTownId < network.getNumberOfTowns() && arrivalTownId < network.getNumberOfTowns()
+					? network.findRoute(departureTownId, arrivalTownId) : RouteNetwork.NO_ROUTE;
+			
+			if(route == RouteNetwork.NO_ROUTE) {
+				throw new IllegalArgumentException("No route from " + getTownName(departureTownId) + " to " + getTownName(arrivalTownId) + " for trip "
+						+ tripSymbolTable.getTownName(trip));
+			} else if(departureTime < 0 || arrivalTime <= departureTime) {
+				throw new IllegalArgumentException("Connection of trip " + tripSymbolTable.getTownName(trip) + " must arrive after it departs, "
+						+ formatTime(departureTime) + " - " + formatTime(arrivalTime));
+			}
+			
+			while(tripArrivalTimes.size() <= trip) {
+				tripArrivalTownIds.add(TownSymbolTable.NO_TOWN);
+				tripArrivalTimes.add(0);
+			}
+			
+			if(tripArrivalTownIds.get(trip) != TownSymbolTable.NO_TOWN
+					&& (tripArrivalTownIds.get(trip) != departureTownId || tripArrivalTimes.get(trip) > departureTime)) {
+				throw new IllegalArgumentException("Connection of trip " + tripSymbolTable.getTownName(trip) + " does not carry on from "
+						+ network.getTownName(tripArrivalTownIds.get(trip)) + " at " + formatTime(tripArrivalTimes.get(trip)));
+			}
+			
+			tripArrivalTownIds.set(trip, arrivalTownId);
+			tripArrivalTimes.set(trip, arrivalTime);
+			departureTimes.add(departureTime);
+			arrivalTimes.add(arrivalTime);
+			departureTownIds.add(departureTownId);
+			arrivalTownIds.add(arrivalTownId);
+			trips.add(trip);
+			routes.add(route);
+			
+			return this;
+		}
+		
+		public int getNumberOfConnections() {
+			return trips.size();
+		}
+		
+		private String getTownName(int townId) {
+			return townId >= 0 && townId < network.getNumberOfTowns() ? network.getTownName(townId) : "town " + townId;
+		}
+		
+		/**
+		 * Sorts the connections by departure time, the ones departing at the same time in the order they were added.
+		 *
+		 * @return The timetable of the connections.
+		 */
+		public Timetable build() {
+			int numberOfConnections = trips.size();
+			long[] keys = new long[numberOfConnections];
+			
+			for(int i = 0; i < numberOfConnections; i++) {
+				keys[i] = ((long) departureTimes.get(i) << 32) | i;
+			}
+			
+			Arrays.sort(keys);
+			int[] connections = new int[numberOfConnections * CONNECTION_SIZE];
+			int[] connectionRoutes = new int[numberOfConnections];
+			
+			for(int connection = 0; connection < numberOfConnections; connection++) {
+				int i = (int) keys[connection];
+				int offset = connection * CONNECTION_SIZE;
+				connections[offset + DEPARTURE_TIME] = departureTimes.get(i);
+				connections[offset + ARRIVAL_TIME] = arrivalTimes.get(i);
+				connections[offset + DEPARTURE_TOWN] = departureTownIds.get(i);
+				connections[offset + ARRIVAL_TOWN] = arrivalTownIds.get(i);
+				connections[offset + TRIP] = trips.get(i);
+				connectionRoutes[connection] = routes.get(i);
+			}
+			
+			return new Timetable(network, tripSymbolTable.toArray(), connections, connectionRoutes);
+		}
+	}
+}
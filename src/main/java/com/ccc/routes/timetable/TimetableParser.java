@@ -0,0 +1,319 @@
+package com.ccc.routes.timetable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import com.ccc.routes.network.RouteFormatException;
+import com.ccc.routes.network.RouteNetwork;
+import com.ccc.routes.network.TownSymbolTable;
+
+/**
+ * A streaming parser of connections files, one connection per line: the trip, the departure town, the arrival town,
+ * the departure time and the arrival time, separated by whitespace. Times are HH:MM or HH:MM:SS, the hours may go past
+ * 24 for trips running after midnight. Blank lines are skipped and a '#' comments out the rest of its line.
+ *
+ * # trip departure arrival departs arrives
+ * IC1 A B 08:00 08:05
+ * IC1 B C 08:06 08:10
+ *
+ * Like the {@link com.ccc.routes.network.RouteParser} the input is read one character at a time into a reusable line
+ * buffer, trip names are interned and town names looked up straight from that buffer and times are accumulated digit
+ * by digit, so nothing is allocated per connection. A malformed connection, an unknown town or a connection the sink
+ * rejects is reported with a {@link RouteFormatException} that tells its line and column.
+ *
+ * A parser keeps the state of the input it is reading and must not be shared between threads.
+ *
+ * @author gibrancastillo
+ *
+ */
+public final class TimetableParser {
+	private static final int BUFFER_SIZE = 8192;
+	private static final int NUMBER_OF_FIELDS = 5;
+	//The hours of the latest time that stays below Timetable.NO_TIME
+	private static final int MAX_HOURS = (Timetable.NO_TIME - 3600) / 3600;
+	
+	private final TownSymbolTable townSymbolTable;
+	private final TownSymbolTable tripSymbolTable;
+	private char[] characters = new char[64];
+	private int length;
+	private final int[] fieldOffsets = new int[NUMBER_OF_FIELDS];
+	private final int[] fieldLengths = new int[NUMBER_OF_FIELDS];
+	private final int[] fieldColumns = new int[NUMBER_OF_FIELDS];
+	private int numberOfFields;
+	private boolean isInField;
+	private boolean isInComment;
+	private int line;
+	private int column;
+	private int numberOfConnections;
+	private ConnectionSink sink;
+	
+	/**
+	 * @param network - the network the trips run over, the town ids given to the sink are its ids.
+	 */
+	public TimetableParser(RouteNetwork network) {
+		this(network, new TownSymbolTable());
+	}
+	
+	/**
+	 * @param network - the network the trips run over, the town ids given to the sink are its ids.
+	 * @param tripSymbolTable - the symbol table the trip names are interned into, the trips given to the sink are its ids.
+	 */
+	public TimetableParser(RouteNetwork network, TownSymbolTable tripSymbolTable) {
+		this.townSymbolTable = new TownSymbolTable();
+		this.tripSymbolTable = tripSymbolTable;
+		
+		for(int townId = 0; townId < network.getNumberOfTowns(); townId++) {
+			townSymbolTable.intern(network.getTownName(townId));
+		}
+	}
+	
+	public TownSymbolTable getTripSymbolTable() {
+		return tripSymbolTable;
+	}
+	
+	/**
+	 * @param input - IC1 A B 08:00 08:05
+	 * @param sink
+	 * @return The number of connections read.
+	 */
+	public int parse(CharSequence input, ConnectionSink sink) {
+		start(sink);
+		
+		for(int i = 0, length = input.length(); i < length; i++) {
+			accept(input.charAt(i));
+		}
+		
+		return finish();
+	}
+	
+	/**
+	 * @param reader - the connections are read until the end of the reader, the reader is not closed.
+	 * @param sink
+	 * @return The number of connections read.
+	 * @throws IOException
+	 */
+	public int parse(Reader reader, ConnectionSink sink) throws IOException {
+		char[] buffer = new char[BUFFER_SIZE];
+		int read;
+		start(sink);
+		
+		while((read = reader.read(buffer)) != -1) {
+			for(int i = 0; i < read; i++) {
+				accept(buffer[i]);
+			}
+		}
+		
+		return finish();
+	}
+	
+	/**
+	 * @param inputStream - UTF-8 encoded connections, read until the end of the stream, the stream is not closed.
+	 * @param sink
+	 * @return The number of connections read.
+	 * @throws IOException
+	 */
+	public int parse(InputStream inputStream, ConnectionSink sink) throws IOException {
+		return parse(new InputStreamReader(inputStream, StandardCharsets.UTF_8), sink);
+	}
+	
+	/**
+	 * Parses the connections straight into a timetable of the network.
+	 *
+	 * @param network
+	 * @param input
+	 * @return The timetable of the connections.
+	 */
+	public static Timetable parseTimetable(RouteNetwork network, CharSequence input) {
+		Timetable.Builder builder = new Timetable.Builder(network);
+		new TimetableParser(network, builder.getTripSymbolTable()).parse(input, builder::addConnection);
+		
+		return builder.build();
+	}
+	
+	/**
+	 * Parses the connections straight into a timetable of the network.
+	 *
+	 * @param network
+	 * @param reader
+	 * @return The timetable of the connections.
+	 * @throws IOException
+	 */
+	public static Timetable parseTimetable(RouteNetwork network, Reader reader) throws IOException {
+		Timetable.Builder builder = new Timetable.Builder(network);
+		new TimetableParser(network, builder.getTripSymbolTable()).parse(reader, builder::addConnection);
+		
+		return builder.build();
+	}
+	
+	private void start(ConnectionSink sink) {
+		this.sink = sink;
+		line = 1;
+		column = 0;
+		numberOfConnections = 0;
+		clearLine();
+	}
+	
+	private int finish() {
+		endLine();
+		sink = null;
+		
+		return numberOfConnections;
+	}
+	
+	private void clearLine() {
+		length = 0;
+		numberOfFields = 0;
+		isInField = false;
+		isInComment = false;
+	}
+	
+	private void accept(char character) {
+		column++;
+		
+		if(character == '\n') {
+			endLine();
+			line++;
+			column = 0;
+		} else if(isInComment) {
+			return;
+		} else if(character == '#') {
+			isInField = false;
+			isInComment = true;
+		} else if(Character.isWhitespace(character)) {
+			isInField = false;
+		} else {
+			if(!isInField) {
+				if(numberOfFields == NUMBER_OF_FIELDS) {
+					throw new RouteFormatException("Unexpected field after the arrival time of connection", line, column);
+				}
+				
+				fieldOffsets[numberOfFields] = length;
+				fieldLengths[numberOfFields] = 0;
+				fieldColumns[numberOfFields] = column;
+				numberOfFields++;
+				isInField = true;
+			}
+			
+			if(length == characters.length) {
+				characters = Arrays.copyOf(characters, length * 2);
+			}
+			
+			characters[length++] = character;
+			fieldLengths[numberOfFields - 1]++;
+		}
+	}
+	
+	private void endLine() {
+		if(numberOfFields == 0) {
+			clearLine();
+			return;
+		} else if(numberOfFields < NUMBER_OF_FIELDS) {
+			throw error("Expected the trip, departure town, arrival town, departure time and arrival time of connection", numberOfFields - 1,
+					fieldLengths[numberOfFields - 1] - 1);
+		}
+		
+		int trip = tripSymbolTable.intern(characters, fieldOffsets[0], fieldLengths[0]);
+		int departureTownId = getTownId(1);
+		int arrivalTownId = getTownId(2);
+		int departureTime = parseTime(3);
+		int arrivalTime = parseTime(4);
+		
+		try {
+			sink.addConnection(trip, departureTownId, arrivalTownId, departureTime, arrivalTime);
+		} catch(IllegalArgumentException e) {
+			throw new RouteFormatException(e.getMessage(), line, fieldColumns[0]);
+		}
+		
+		numberOfConnections++;
+		clearLine();
+	}
+	
+	private int getTownId(int field) {
+		int townId = townSymbolTable.getTownId(characters, fieldOffsets[field], fieldLengths[field]);
+		
+		if(townId == TownSymbolTable.NO_TOWN) {
+			throw error("Unknown town in connection", field, 0);
+		}
+		
+		return townId;
+	}
+	
+	/**
+	 * @param field
+	 * @return The time of the field in seconds since midnight.
+	 */
+	private int parseTime(int field) {
+		int offset = fieldOffsets[field];
+		int end = offset + fieldLengths[field];
+		int i = offset;
+		int hours = 0;
+		
+		while(i < end && isDigit(characters[i])) {
+			hours = hours * 10 + (characters[i] - '0');
+			
+			if(hours > MAX_HOURS) {
+				throw error("Time too large in connection", field, 0);
+			}
+			
+			i++;
+		}
+		
+		if(i == offset || i == end || characters[i] != ':') {
+			throw error("Expected a time like 08:30 or 08:30:15 in connection", field, Math.min(i, end - 1) - offset);
+		}
+		
+		int minutes = parseMinutesOrSeconds(field, i + 1, end);
+		int seconds = 0;
+		i += 3;
+		
+		if(i < end) {
+			if(characters[i] != ':') {
+				throw error("Unexpected character '" + characters[i] + "' in time of connection", field, i - offset);
+			}
+			
+			seconds = parseMinutesOrSeconds(field, i + 1, end);
+			i += 3;
+		}
+		
+		if(i < end) {
+			throw error("Unexpected character '" + characters[i] + "' in time of connection", field, i - offset);
+		}
+		
+		return hours * 3600 + minutes * 60 + seconds;
+	}
+	
+	private int parseMinutesOrSeconds(int field, int index, int end) {
+		for(int i = index; i < index + 2; i++) {
+			if(i == end || !isDigit(characters[i])) {
+				throw error("Expected two digits of minutes or seconds in time of connection", field, Math.min(i, end - 1) - fieldOffsets[field]);
+			}
+		}
+		
+		int value = (characters[index] - '0') * 10 + (characters[index + 1] - '0');
+		
+		if(value > 59) {
+			throw error("Minutes or seconds over 59 in time of connection", field, index - fieldOffsets[field]);
+		}
+		
+		return value;
+	}
+	
+	private static boolean isDigit(char character) {
+		return character >= '0' && character <= '9';
+	}
+	
+	/**
+	 * @param message
+	 * @param field
+	 * @param index - the index within the field of the character in error.
+	 * @return An exception with the field and the line and column of the character in error.
+	 */
+	private RouteFormatException error(String message, int field, int index) {
+		return new RouteFormatException(message + " '" + new String(characters, fieldOffsets[field], fieldLengths[field]) + "'", line,
+				fieldColumns[field] + index);
+	}
+}
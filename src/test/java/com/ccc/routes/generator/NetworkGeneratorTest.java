@@ -0,0 +1,106 @@
+package com.ccc.routes.generator;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Test;
+
+import com.ccc.routes.network.CompactRouteNetwork;
+import com.ccc.routes.network.RouteNetwork;
+import com.ccc.routes.network.RouteNetworkSnapshot;
+import com.ccc.routes.recursion.Town;
+import com.ccc.routes.recursion.TrainsRoutesDirectedGraph;
+
+/**
+ *
+ * @author gibrancastillo
+ *
+ */
+public class NetworkGeneratorTest {
+	private static final Logger logger = LogManager.getLogger(NetworkGeneratorTest.class);
+	
+	@Test
+	public void testSameSeedGeneratesSameRoutes() throws IOException {
+		logger.info("Test a generator generates the same routes for the same seed and other routes for another seed");
+		
+		for(Topology topology : Topology.values()) {
+			StringBuilder routes = new StringBuilder();
+			StringBuilder sameRoutes = new StringBuilder();
+			StringBuilder otherRoutes = new StringBuilder();
+			new NetworkGenerator.Builder(topology, 1000).seed(7).build().write(routes);
+			new NetworkGenerator.Builder(topology, 1000).seed(7).build().write(sameRoutes);
+			new NetworkGenerator.Builder(topology, 1000).seed(8).build().write(otherRoutes);
+			assertEquals(sameRoutes.toString(), routes.toString());
+			assertNotEquals(otherRoutes.toString(), routes.toString());
+		}
+	}
+	
+	@Test
+	public void testRoutesAreReadByTheGraph() throws IOException {
+		logger.info("Test the generated routes are read by the graph, in the legacy format for up to 26 towns");
+		
+		for(Topology topology : Topology.values()) {
+			for(int numberOfTowns : new int[] {2, 26, 5000}) {
+				NetworkGenerator generator = new NetworkGenerator.Builder(topology, numberOfTowns).seed(numberOfTowns)
+						.weightDistribution(WeightDistribution.exponential(20)).routesPerTown(3).build();
+				StringBuilder routes = new StringBuilder();
+				long numberOfRoutes = generator.write(routes);
+				
+				TrainsRoutesDirectedGraph graph = new TrainsRoutesDirectedGraph("");
+				graph.createTrainsRoutes(new StringReader(routes.toString()));
+				RouteNetwork network = graph.getRouteNetwork();
+				CompactRouteNetwork generatedNetwork = generator.generateNetwork();
+				assertEquals(network.getNumberOfRoutes(), numberOfRoutes);
+				assertEquals(generatedNetwork.getNumberOfRoutes(), numberOfRoutes);
+				assertEquals(network.getNumberOfTowns(), numberOfTowns);
+				assertEquals(generatedNetwork.getNumberOfTowns(), numberOfTowns);
+				assertEquals(routes.indexOf("-") < 0, numberOfTowns <= 26);
+			}
+		}
+	}
+	
+	@Test
+	public void testCycleDensity() {
+		logger.info("Test a cycle density of zero generates an acyclic network and a cycle density of one a two way network");
+		
+		for(Topology topology : Topology.values()) {
+			NetworkGenerator acyclic = new NetworkGenerator.Builder(topology, 400).cycleDensity(0).build();
+			NetworkGenerator twoWay = new NetworkGenerator.Builder(topology, 400).cycleDensity(1).build();
+			assertEquals(twoWay.generate((startingTownId, endingTownId, distance) -> {}), 2 * acyclic.generate((startingTownId, endingTownId, distance) -> {}));
+			
+			TrainsRoutesDirectedGraph acyclicGraph = new TrainsRoutesDirectedGraph(acyclic.generateNetwork());
+			TrainsRoutesDirectedGraph twoWayGraph = new TrainsRoutesDirectedGraph(twoWay.generateNetwork());
+			
+			for(int townId = 0; townId < 400; townId += 37) {
+				Town<String> town = new Town<String>(acyclic.getTownName(townId));
+				assertEquals(acyclicGraph.getShortestRouteDistance(town, town), "NO SUCH ROUTE");
+				assertNotEquals(twoWayGraph.getShortestRouteDistance(town, town), "NO SUCH ROUTE");
+			}
+		}
+	}
+	
+	@Test
+	public void testCommandLine() throws IOException {
+		logger.info("Test the command line writes the routes and the snapshot of a network");
+		Path directory = Files.createTempDirectory("generator");
+		Path routes = directory.resolve("routes.txt");
+		Path snapshot = directory.resolve("routes.snapshot");
+		NetworkGeneratorCli.run(new String[] {"--topology", "corridor", "--towns", "300", "--seed", "3", "--weights", "normal:50:10", "--output", routes.toString()});
+		NetworkGeneratorCli.run(new String[] {"--topology", "corridor", "--towns", "300", "--seed", "3", "--weights", "normal:50:10", "--format", "snapshot",
+				"--output", snapshot.toString()});
+		
+		RouteNetwork network = RouteNetworkSnapshot.open(snapshot);
+		assertEquals(Files.readAllLines(routes).size(), network.getNumberOfRoutes());
+		assertEquals(network.getNumberOfTowns(), 300);
+		
+		Files.delete(routes);
+		Files.delete(snapshot);
+		Files.delete(directory);
+	}
+}
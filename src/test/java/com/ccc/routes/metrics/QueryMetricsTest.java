@@ -0,0 +1,130 @@
+package com.ccc.routes.metrics;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Test;
+
+import com.ccc.routes.recursion.Town;
+import com.ccc.routes.recursion.TrainsRoutesDirectedGraph;
+
+/**
+ *
+ * @author gibrancastillo
+ *
+ */
+public class QueryMetricsTest {
+	private static final Logger logger = LogManager.getLogger(QueryMetricsTest.class);
+	private static final String INPUT_ROUTES = "AB5, BC4, CD8, DC8, DE6, AD5, CE2, EB3, AE7";
+	
+	@Test
+	public void testHistogramPercentiles() {
+		logger.info("Test the latency histogram percentiles are within the precision of their buckets");
+		LatencyHistogram histogram = new LatencyHistogram();
+		
+		for(long value = 1; value <= 100_000; value++) {
+			histogram.record(value * 1_000);
+		}
+		
+		LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+		assertEquals(snapshot.getCount(), 100_000);
+		assertEquals(snapshot.getMax(), 100_000_000);
+		assertEquals(snapshot.getMean(), 50_000_500, 1);
+		assertEquals(snapshot.getValueAtPercentile(50), 50_000_000, 50_000_000 / 32);
+		assertEquals(snapshot.getValueAtPercentile(99), 99_000_000, 99_000_000 / 32);
+		assertEquals(snapshot.getValueAtPercentile(99.9), 99_900_000, 99_900_000 / 32);
+		assertEquals(snapshot.getValueAtPercentile(100), 100_000_000);
+		
+		for(int bucket = 0; bucket < LatencyHistogram.NUMBER_OF_BUCKETS; bucket++) {
+			assertEquals(LatencyHistogram.getBucket(LatencyHistogram.getLowestValue(bucket)), bucket);
+		}
+	}
+	
+	@Test
+	public void testShortLivedThreads() throws InterruptedException {
+		logger.info("Test the values recorded by many short lived threads are all counted into a bounded number of recorders");
+		LatencyHistogram histogram = new LatencyHistogram();
+		
+		for(int i = 0; i < 1_000; i++) {
+			Thread thread = new Thread(() -> histogram.record(1_000));
+			thread.start();
+			thread.join();
+		}
+		
+		assertEquals(histogram.snapshot().getCount(), 1_000);
+		assertEquals(histogram.snapshot().getMax(), 1_000);
+		assertTrue(histogram.getNumberOfRecorders() <= LatencyHistogram.NUMBER_OF_RECORDERS);
+	}
+	
+	@Test
+	public void testQueriesAreMeasured() throws InterruptedException {
+		logger.info("Test the calls and the work of the queries are counted by query type, from many threads");
+		TrainsRoutesDirectedGraph graph = new TrainsRoutesDirectedGraph(INPUT_ROUTES);
+		Town<String> townC = new Town<String>("C");
+		List<Thread> threads = new ArrayList<>();
+		
+		for(int i = 0; i < 4; i++) {
+			Thread thread = new Thread(() -> {
+				for(int j = 0; j < 25; j++) {
+					graph.getNumberOfTripsWithNumberOfStopsByRecursion(townC, townC, 3, true);
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		
+		for(Thread thread : threads) {
+			thread.join();
+		}
+		
+		QueryMetrics tripsByRecursion = graph.getMetrics().getMetrics("tripsByRecursion");
+		assertEquals(tripsByRecursion.getCalls(), 100);
+		assertEquals(tripsByRecursion.getErrors(), 0);
+		assertTrue(tripsByRecursion.getTownsExpanded() > 0);
+		assertTrue(tripsByRecursion.getRoutesRelaxed() >= tripsByRecursion.getTownsExpanded());
+		assertEquals(tripsByRecursion.getPeakDepth(), 3);
+		assertEquals(tripsByRecursion.getLatencies().getCount(), 100);
+		
+		assertEquals(graph.getShortestRouteDistance(new Town<String>("A"), townC), "9");
+		assertEquals(graph.getMetrics().getMetrics("shortestRouteDistance").getCalls(), 1);
+		assertEquals(graph.getMetrics().getMetrics("shortestRoute").getCalls(), 1);
+		assertTrue(graph.getMetrics().getMetrics("shortestRoute").getTownsExpanded() > 0);
+		
+		graph.getMetrics().setEnabled(false);
+		graph.getNumberOfTripsWithNumberOfStopsByRecursion(townC, townC, 3, true);
+		assertEquals(tripsByRecursion.getCalls(), 100);
+		
+		List<QueryMetrics> exported = new ArrayList<>();
+		graph.getMetrics().export(exported::addAll);
+		assertEquals(exported.size(), 3);
+		graph.getMetrics().export(new LoggingMetricsExporter());
+	}
+	
+	@Test
+	public void testMBeansAreRegistered() throws Exception {
+		logger.info("Test the metrics of the queries are registered as MBeans");
+		TrainsRoutesDirectedGraph graph = new TrainsRoutesDirectedGraph(INPUT_ROUTES);
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		graph.getRouteDistance("ABC");
+		graph.getMetrics().registerMBeans("test");
+		graph.getRouteDistance("ADC");
+		graph.getRouteDistance(new int[] {0, 1});
+		
+		ObjectName itinerary = QueryMetricsRegistry.getObjectName("test", "routeDistanceByItinerary");
+		ObjectName townIds = QueryMetricsRegistry.getObjectName("test", "routeDistanceByTownIds");
+		assertEquals(server.getAttribute(itinerary, "Calls"), 2L);
+		assertEquals(server.getAttribute(townIds, "Calls"), 1L);
+		
+		graph.getMetrics().unregisterMBeans();
+		assertFalse(server.isRegistered(itinerary));
+		assertFalse(server.isRegistered(townIds));
+	}
+}
@@ -0,0 +1,78 @@
+package com.ccc.routes.network;
+
+import static org.junit.Assert.*;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author gibrancastillo
+ *
+ */
+public class CompactRouteNetworkTest {
+	private CompactRouteNetwork network;
+	private static final Logger logger = LogManager.getLogger(CompactRouteNetworkTest.class);
+	
+	@Before
+	public void setUp() throws Exception {
+		network = new CompactRouteNetwork.Builder()
+				.addRoute("A", "B", 5).addRoute("B", "C", 4).addRoute("C", "D", 8)
+				.addRoute("D", "C", 8).addRoute("D", "E", 6).addRoute("A", "D", 5)
+				.addRoute("C", "E", 2).addRoute("E", "B", 3).addRoute("A", "E", 7)
+				.build();
+	}
+	
+	@Test
+	public void testCompressedSparseRows() {
+		logger.info("Test the routes are grouped by starting town in the order they were added");
+		assertEquals(network.getNumberOfTowns(), 5);
+		assertEquals(network.getNumberOfRoutes(), 9);
+		assertEquals(network.toString(), "{A=[B5, D5, E7], B=[C4], C=[D8, E2], D=[C8, E6], E=[B3]}");
+		assertEquals(network.getOutDegree(network.getTownId("A")), 3);
+		assertEquals(network.getMaxRouteDistance(), 8);
+	}
+	
+	@Test
+	public void testRouteDistances() {
+		logger.info("Test a route distance that is not greater than zero is rejected");
+		CompactRouteNetwork.Builder builder = new CompactRouteNetwork.Builder();
+		assertThrows(IllegalArgumentException.class, () -> builder.addRoute("A", "B", 0));
+		assertThrows(IllegalArgumentException.class, () -> builder.addRoute("B", "A", -1));
+		assertEquals(builder.addRoute("A", "B", 1).getNumberOfRoutes(), 1);
+	}
+	
+	@Test
+	public void testFindRoute() {
+		logger.info("Test finding the route between two towns");
+		int route = network.findRoute(network.getTownId("C"), network.getTownId("E"));
+		assertEquals(network.getRouteDistance(route), 2);
+		assertEquals(network.getTownName(network.getRouteTarget(route)), "E");
+		assertEquals(network.findRoute(network.getTownId("E"), network.getTownId("D")), CompactRouteNetwork.NO_ROUTE);
+		assertEquals(network.findRoute(network.getTownId("Z"), network.getTownId("D")), CompactRouteNetwork.NO_ROUTE);
+	}
+	
+	@Test
+	public void testReverseRouteIndex() {
+		logger.info("Test the routes are grouped by ending town in order of starting town for the backward searches");
+		ReverseRouteIndex reverseRouteIndex = network.getReverseRouteIndex();
+		StringBuilder builder = new StringBuilder();
+		
+		for(int townId = 0; townId < network.getNumberOfTowns(); townId++) {
+			builder.append(network.getTownName(townId)).append('=');
+			
+			for(int reverseRoute = reverseRouteIndex.getFirstRoute(townId); reverseRoute < reverseRouteIndex.getRoutesEnd(townId); reverseRoute++) {
+				int route = reverseRouteIndex.getRoute(reverseRoute);
+				assertEquals(network.getRouteTarget(route), townId);
+				assertEquals(network.getRouteDistance(route), reverseRouteIndex.getRouteDistance(reverseRoute));
+				builder.append(network.getTownName(reverseRouteIndex.getRouteSource(reverseRoute))).append(reverseRouteIndex.getRouteDistance(reverseRoute)).append(' ');
+			}
+		}
+		
+		assertEquals(builder.toString(), "A=B=A5 E3 C=B4 D8 D=A5 C8 E=A7 C2 D6 ");
+		assertEquals(reverseRouteIndex.getInDegree(network.getTownId("E")), 3);
+		assertSame(network.getReverseRouteIndex(), reverseRouteIndex);
+	}
+}
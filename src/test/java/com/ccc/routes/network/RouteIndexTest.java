@@ -0,0 +1,74 @@
+package com.ccc.routes.network;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Test;
+
+import com.ccc.routes.recursion.TrainsRoutesDirectedGraph;
+
+/**
+ *
+ * @author gibrancastillo
+ *
+ */
+public class RouteIndexTest {
+	private static final Logger logger = LogManager.getLogger(RouteIndexTest.class);
+	
+	@Test
+	public void testIndexMatchesScan() {
+		logger.info("Test the route index finds the same routes as a scan of the routes leaving a town");
+		Random random = new Random(7);
+		CompactRouteNetwork.Builder builder = new CompactRouteNetwork.Builder();
+		
+		for(int route = 0; route < 5000; route++) {
+			int startingTown = random.nextInt(300);
+			int endingTown = random.nextInt(300);
+			
+			if(startingTown != endingTown) {
+				builder.addRoute("T" + startingTown, "T" + endingTown, 1 + random.nextInt(100));
+			}
+		}
+		
+		CompactRouteNetwork network = builder.build();
+		RouteIndex routeIndex = new RouteIndex(network);
+		
+		for(int startingTownId = 0; startingTownId < network.getNumberOfTowns(); startingTownId++) {
+			for(int endingTownId = 0; endingTownId < network.getNumberOfTowns(); endingTownId++) {
+				int expected = RouteNetwork.NO_ROUTE;
+				
+				for(int route = network.getFirstRoute(startingTownId); route < network.getRoutesEnd(startingTownId); route++) {
+					if(network.getRouteTarget(route) == endingTownId) {
+						expected = route;
+						break;
+					}
+				}
+				
+				assertEquals(routeIndex.findRoute(startingTownId, endingTownId), expected);
+				assertEquals(network.findRoute(startingTownId, endingTownId), expected);
+			}
+		}
+		
+		assertEquals(routeIndex.findRoute(-1, 0), RouteNetwork.NO_ROUTE);
+		assertEquals(routeIndex.findRoute(0, network.getNumberOfTowns()), RouteNetwork.NO_ROUTE);
+	}
+	
+	@Test
+	public void testItineraryDistance() {
+		logger.info("Test the distance of itineraries given as town ids or as a compact string");
+		TrainsRoutesDirectedGraph trainsRoutesDirectedGraph = new TrainsRoutesDirectedGraph("AB5, BC4, CD8, DC8, DE6, AD5, CE2, EB3, AE7, KGX-YRK:188");
+		RouteNetwork network = trainsRoutesDirectedGraph.getRouteNetwork();
+		int[] townIds = {network.getTownId("A"), network.getTownId("E"), network.getTownId("B"), network.getTownId("C"), network.getTownId("D")};
+		assertEquals(trainsRoutesDirectedGraph.getRouteDistance(townIds), 22);
+		assertEquals(trainsRoutesDirectedGraph.getRouteDistance("AEBCD"), 22);
+		assertEquals(trainsRoutesDirectedGraph.getRouteDistance("A-E-B-C-D"), 22);
+		assertEquals(trainsRoutesDirectedGraph.getRouteDistance("CDCDC"), 32);
+		assertEquals(trainsRoutesDirectedGraph.getRouteDistance("KGX-YRK"), 188);
+		assertEquals(trainsRoutesDirectedGraph.getRouteDistance("AED"), RouteNetwork.NO_ROUTE);
+		assertEquals(trainsRoutesDirectedGraph.getRouteDistance("AZ"), RouteNetwork.NO_ROUTE);
+		assertEquals(trainsRoutesDirectedGraph.getRouteDistance("A"), 0);
+	}
+}
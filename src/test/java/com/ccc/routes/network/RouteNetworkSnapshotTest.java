@@ -0,0 +1,100 @@
+package com.ccc.routes.network;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.ccc.routes.recursion.Town;
+import com.ccc.routes.recursion.TrainsRoutesDirectedGraph;
+
+/**
+ *
+ * @author gibrancastillo
+ *
+ */
+public class RouteNetworkSnapshotTest {
+	private static final String VALID_TRAINS_ROUTES = "AB5, BC4, CD8, DC8, DE6, AD5, CE2, EB3, AE7, KGX-YRK:188";
+	private static final Logger logger = LogManager.getLogger(RouteNetworkSnapshotTest.class);
+	
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+	
+	@Test
+	public void testWriteAndOpenSnapshot() throws IOException {
+		logger.info("Test a network written to a snapshot is mapped back with the same towns and routes");
+		CompactRouteNetwork network = RouteParser.parseNetwork(VALID_TRAINS_ROUTES);
+		Path path = temporaryFolder.getRoot().toPath().resolve("routes.snapshot");
+		RouteNetworkSnapshot.write(network, path);
+		
+		MappedRouteNetwork mappedNetwork = RouteNetworkSnapshot.open(path, true);
+		assertEquals(mappedNetwork.toString(), network.toString());
+		assertEquals(mappedNetwork.getNumberOfTowns(), 7);
+		assertEquals(mappedNetwork.getNumberOfRoutes(), 10);
+		assertEquals(mappedNetwork.getMaxRouteDistance(), 188);
+		assertEquals(mappedNetwork.getTownId("YRK"), network.getTownId("YRK"));
+		assertEquals(mappedNetwork.getTownId("Z"), TownSymbolTable.NO_TOWN);
+		assertEquals(mappedNetwork.getTownId("KGX-YRK", 4, 7), network.getTownId("YRK"));
+		assertEquals(network.getTownId("KGX-YRK", 4, 7), network.getTownId("YRK"));
+		assertEquals(mappedNetwork.getTownId("KGX-YRK", 4, 6), TownSymbolTable.NO_TOWN);
+		assertEquals(network.getTownId("KGX-YRK", 4, 6), TownSymbolTable.NO_TOWN);
+		assertEquals(mappedNetwork.getRouteDistance(mappedNetwork.findRoute(mappedNetwork.getTownId("C"), mappedNetwork.getTownId("E"))), 2);
+	}
+	
+	@Test
+	public void testQuerySnapshot() throws IOException {
+		logger.info("Test the trains routes queries run over a mapped snapshot");
+		Path path = temporaryFolder.getRoot().toPath().resolve("routes.snapshot");
+		new TrainsRoutesDirectedGraph(VALID_TRAINS_ROUTES).saveSnapshot(path);
+		
+		TrainsRoutesDirectedGraph graph = new TrainsRoutesDirectedGraph(RouteNetworkSnapshot.open(path));
+		assertEquals(graph.getShortestRouteDistance(new Town<String>("A"), new Town<String>("C")), "9");
+		assertEquals(graph.getNumberOfTripsWithMaxStops(new Town<String>("C"), new Town<String>("C"), 3), "2");
+		assertEquals(graph.getNumberOfDifferentRoutesWithMaxDistance(new Town<String>("C"), new Town<String>("C"), 30), "7");
+		
+		//Changing the routes copies the mapped network into a new compact network
+		graph.createTrainsRoutes("YRK-A:1");
+		assertEquals(graph.getTrainsMap().size(), 7);
+		assertEquals(graph.getShortestRouteDistance(new Town<String>("KGX"), new Town<String>("B")), "194");
+	}
+	
+	@Test
+	public void testCorruptSnapshot() throws IOException {
+		logger.info("Test a corrupt snapshot is rejected");
+		Path path = temporaryFolder.getRoot().toPath().resolve("routes.snapshot");
+		RouteNetworkSnapshot.write(RouteParser.parseNetwork(VALID_TRAINS_ROUTES), path);
+		
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+			channel.write(ByteBuffer.wrap(new byte[] {42}), RouteNetworkSnapshot.HEADER_SIZE + 4);
+		}
+		
+		assertNotNull(RouteNetworkSnapshot.open(path));
+		
+		try {
+			RouteNetworkSnapshot.open(path, true);
+			fail("Expected a corrupt snapshot");
+		} catch(IOException e) {
+			logger.info(e.getMessage());
+		}
+		
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+			channel.truncate(RouteNetworkSnapshot.HEADER_SIZE + 8);
+		}
+		
+		try {
+			RouteNetworkSnapshot.open(path);
+			fail("Expected a truncated snapshot");
+		} catch(IOException e) {
+			logger.info(e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package com.ccc.routes.network;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Test;
+
+/**
+ *
+ * @author gibrancastillo
+ *
+ */
+public class RouteParserTest {
+	private static final String VALID_TRAINS_ROUTES = "AB5, BC4, CD8, DC8, DE6, AD5, CE2, EB3, AE7";
+	private static final Logger logger = LogManager.getLogger(RouteParserTest.class);
+	
+	@Test
+	public void testParseLegacyRoutes() throws IOException {
+		logger.info("Test parsing the legacy routes from a string, a reader and an input stream");
+		String expected = "{A=[B5, D5, E7], B=[C4], C=[D8, E2], D=[C8, E6], E=[B3]}";
+		assertEquals(RouteParser.parseNetwork(VALID_TRAINS_ROUTES).toString(), expected);
+		assertEquals(RouteParser.parseNetwork(new StringReader(VALID_TRAINS_ROUTES.replace(", ", "\n"))).toString(), expected);
+		
+		CompactRouteNetwork.Builder builder = new CompactRouteNetwork.Builder();
+		RouteParser routeParser = new RouteParser(builder.getTownSymbolTable());
+		int numberOfRoutes = routeParser.parse(new ByteArrayInputStream(VALID_TRAINS_ROUTES.getBytes(StandardCharsets.UTF_8)), builder::addRoute);
+		assertEquals(numberOfRoutes, 9);
+		assertEquals(builder.build().toString(), expected);
+	}
+	
+	@Test
+	public void testParseDelimitedRoutes() {
+		logger.info("Test parsing multi-character town names mixed with legacy routes");
+		CompactRouteNetwork network = RouteParser.parseNetwork("KGX-YRK:188,\n YRK-EDB:303 AB5 , EDB-KGX:632");
+		assertEquals(network.toString(), "{KGX=[YRK188], YRK=[EDB303], EDB=[KGX632], A=[B5], B=[]}");
+	}
+	
+	@Test
+	public void testInternTownNames() {
+		logger.info("Test town names are interned once into the shared symbol table");
+		TownSymbolTable townSymbolTable = new TownSymbolTable();
+		RouteParser routeParser = new RouteParser(townSymbolTable);
+		routeParser.parse("AB5, BC4", (startingTownId, endingTownId, distance) -> {});
+		routeParser.parse("CA1-A:3, A-CA1:4", (startingTownId, endingTownId, distance) -> {});
+		assertEquals(townSymbolTable.size(), 4);
+		assertEquals(townSymbolTable.getTownId("CA1"), 3);
+		assertEquals(townSymbolTable.getTownId("B"), 1);
+		assertEquals(townSymbolTable.getTownName(2), "C");
+		assertEquals(townSymbolTable.getTownId("Z"), TownSymbolTable.NO_TOWN);
+	}
+	
+	@Test
+	public void testMalformedRoutes() {
+		logger.info("Test malformed routes are reported with their line and column");
+		assertMalformed("AB5, B4", 1, 7);
+		assertMalformed("AB5,\nBCx", 2, 3);
+		assertMalformed("AB5,, BC4", 1, 5);
+		assertMalformed("AB5, KGX-YRK", 1, 12);
+		assertMalformed("AB5, KGX-:3", 1, 10);
+		assertMalformed("AB5, AA3", 1, 6);
+		assertMalformed("AB99999999999", 1, 3);
+		assertMalformed("AB0", 1, 3);
+	}
+	
+	private static void assertMalformed(String input, int line, int column) {
+		try {
+			RouteParser.parseNetwork(input);
+			fail("Expected a malformed route in " + input);
+		} catch(RouteFormatException e) {
+			logger.info(e.getMessage());
+			assertEquals(e.getLine(), line);
+			assertEquals(e.getColumn(), column);
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package com.ccc.routes.query;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Test;
+
+import com.ccc.routes.recursion.Town;
+import com.ccc.routes.recursion.TrainsRoutesDirectedGraph;
+
+/**
+ *
+ * @author gibrancastillo
+ *
+ */
+public class QueryCacheTest {
+	private static final Logger logger = LogManager.getLogger(QueryCacheTest.class);
+	
+	@Test
+	public void testLeastRecentlyUsedEviction() {
+		logger.info("Test the least recently used result is evicted once the cache is full");
+		QueryCache queryCache = new QueryCache(2);
+		assertEquals(queryCache.get(new QueryKey("query", 0, "A"), () -> "1"), "1");
+		assertEquals(queryCache.get(new QueryKey("query", 0, "B"), () -> "2"), "2");
+		assertEquals(queryCache.get(new QueryKey("query", 0, "A"), () -> "not cached"), "1");
+		assertEquals(queryCache.get(new QueryKey("query", 0, "C"), () -> "3"), "3");
+		assertEquals(queryCache.get(new QueryKey("query", 0, "B"), () -> "4"), "4");
+		assertEquals(queryCache.get(new QueryKey("query", 1, "C"), () -> "5"), "5");
+		assertEquals(queryCache.size(), 2);
+		assertEquals(queryCache.getHitCount(), 1);
+		assertEquals(queryCache.getMissCount(), 5);
+		assertEquals(queryCache.getEvictionCount(), 3);
+		
+		queryCache.setMaximumSize(0);
+		assertEquals(queryCache.size(), 0);
+		assertEquals(queryCache.get(new QueryKey("query", 1, "C"), () -> "6"), "6");
+	}
+	
+	@Test
+	public void testFailedQueryIsNotCached() {
+		logger.info("Test a query that fails is not cached");
+		QueryCache queryCache = new QueryCache();
+		
+		try {
+			queryCache.get(new QueryKey("query", 0), () -> {
+				throw new IllegalStateException("failed");
+			});
+			fail("Expected the query to fail");
+		} catch(IllegalStateException e) {
+			assertEquals(e.getMessage(), "failed");
+		}
+		
+		assertEquals(queryCache.get(new QueryKey("query", 0), () -> "1"), "1");
+	}
+	
+	@Test
+	public void testConcurrentRequestsShareOneComputation() throws Exception {
+		logger.info("Test concurrent requests for the same key wait for one computation");
+		QueryCache queryCache = new QueryCache();
+		AtomicInteger computations = new AtomicInteger();
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		
+		try {
+			List<Future<String>> results = new ArrayList<>();
+			
+			for(int i = 0; i < 8; i++) {
+				results.add(executor.submit(() -> queryCache.get(new QueryKey("query", 0, 42), () -> {
+					computations.incrementAndGet();
+					started.countDown();
+					
+					try {
+						release.await();
+					} catch(InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					
+					return "42";
+				})));
+			}
+			
+			started.await();
+			release.countDown();
+			
+			for(Future<String> result : results) {
+				assertEquals(result.get(), "42");
+			}
+		} finally {
+			executor.shutdown();
+		}
+		
+		assertEquals(computations.get(), 1);
+		assertEquals(queryCache.getMissCount(), 1);
+		assertEquals(queryCache.getHitCount(), 7);
+	}
+	
+	@Test
+	public void testGraphChangeInvalidatesResults() {
+		logger.info("Test the cached results are dropped when the trains routes change");
+		TrainsRoutesDirectedGraph trainsRoutesDirectedGraph = new TrainsRoutesDirectedGraph("AB5, BC4, CD8, DC8, DE6, AD5, CE2, EB3, AE7");
+		Town<String> townA = new Town<String>("A");
+		Town<String> townC = new Town<String>("C");
+		assertEquals(trainsRoutesDirectedGraph.getShortestRouteDistance(townA, townC), "9");
+		assertEquals(trainsRoutesDirectedGraph.getShortestRouteDistance(townA, townC), "9");
+		assertEquals(trainsRoutesDirectedGraph.getQueryCache().getHitCount(), 1);
+		
+		trainsRoutesDirectedGraph.createTrainsRoutes("AC1");
+		assertEquals(trainsRoutesDirectedGraph.getQueryCache().size(), 0);
+		assertEquals(trainsRoutesDirectedGraph.getShortestRouteDistance(townA, townC), "1");
+	}
+}
@@ -149,4 +149,27 @@ public class TrainsRoutesDirectedGraphTest {
 		Town<String> endingTown = new Town<String>("C");
 		assertEquals(trainsRoutesDirectedGraph.getNumberOfDifferentRoutesWithMaxDistance(startingTown, endingTown, 30), "7");
 	}
+	
+	/**
+	 * This JUnit test method, can test the towns of the shortest routes for questions 8-9.
+	 */
+	@Test
+	public void testGetShortestRoute() {
+		logger.info("Test the towns of the shortest route from A to C.");
+		ShortestRoute shortestRoute = trainsRoutesDirectedGraph.getShortestRoute(new Town<String>("A"), new Town<String>("C"));
+		assertEquals(shortestRoute.getTowns().toString(), "[A, B, C]");
+		assertEquals(shortestRoute.getDistance(), 9);
+		
+		logger.info("Test the towns of the shortest round trip from B to B.");
+		shortestRoute = trainsRoutesDirectedGraph.getShortestRoute(new Town<String>("B"), new Town<String>("B"));
+		assertEquals(shortestRoute.getTowns().toString(), "[B, C, E, B]");
+		assertEquals(shortestRoute.getDistance(), 9);
+		
+		logger.info("Test there is no route from C to A.");
+		shortestRoute = trainsRoutesDirectedGraph.getShortestRoute(new Town<String>("C"), new Town<String>("A"));
+		assertFalse(shortestRoute.exists());
+		assertEquals(trainsRoutesDirectedGraph.getShortestRouteDistance(new Town<String>("C"), new Town<String>("A")), NO_SUCH_ROUTE);
+		assertEquals(trainsRoutesDirectedGraph.getShortestRouteDistanceByRecursion(new Town<String>("C"), new Town<String>("A")), NO_SUCH_ROUTE);
+		assertEquals(trainsRoutesDirectedGraph.getShortestRouteDistanceByRecursion(new Town<String>("B"), new Town<String>("B")), "9");
+	}
 }
\ No newline at end of file
@@ -0,0 +1,182 @@
+package com.ccc.routes.recursion;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.ccc.routes.network.RouteFormatException;
+import com.ccc.routes.network.RouteNetworkSnapshot;
+import com.ccc.routes.network.RouteParser;
+
+/**
+ *
+ * @author gibrancastillo
+ *
+ */
+public class TrainsRoutesSnapshotTest {
+	private static final String VALID_TRAINS_ROUTES = "AB5, BC4, CD8, DC8, DE6, AD5, CE2, EB3, AE7";
+	private static final String LONGER_TRAINS_ROUTES = "AB10, BC10, CD8, DC8, DE6, AD5, CE2, EB3, AE7";
+	private static final Logger logger = LogManager.getLogger(TrainsRoutesSnapshotTest.class);
+	
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+	
+	@Test
+	public void testVersions() {
+		logger.info("Test every change of the trains routes publishes a new version and leaves the previous ones as they were");
+		TrainsRoutesDirectedGraph graph = new TrainsRoutesDirectedGraph(VALID_TRAINS_ROUTES);
+		TrainsRoutesSnapshot snapshot = graph.getSnapshot();
+		assertEquals(snapshot.getVersion(), 1);
+		assertSame(graph.getTrainsMap(), snapshot.getTrainsMap());
+		assertThrows(UnsupportedOperationException.class, () -> graph.getTrainsMap().clear());
+		assertThrows(UnsupportedOperationException.class, () -> graph.getTrainsMap().get(new Town<String>("A")).add(new Route(new Town<String>("F"), 1)));
+		assertThrows(UnsupportedOperationException.class, () -> graph.getTrainsMap().get(new Town<String>("A")).get(0).setDistance(1));
+		assertThrows(UnsupportedOperationException.class, () -> graph.getTrainsMap().get(new Town<String>("A")).get(0).getTown().setTownName("F"));
+		assertNotNull(snapshot.getQueryPlanner());
+		
+		graph.createTrainsRoutes("FA1, CF1");
+		TrainsRoutesSnapshot nextSnapshot = graph.getSnapshot();
+		assertEquals(nextSnapshot.getVersion(), 2);
+		assertEquals(snapshot.getTrainsMap().size(), 5);
+		assertEquals(snapshot.getTrainsMap().get(new Town<String>("C")).size(), 2);
+		assertEquals(snapshot.getRouteNetwork().getNumberOfTowns(), 5);
+		assertEquals(nextSnapshot.getTrainsMap().size(), 6);
+		assertEquals(nextSnapshot.getTrainsMap().get(new Town<String>("C")).size(), 3);
+		assertEquals(graph.getRouteDistance("C-F-A-B"), 7);
+		
+		//The routes are parsed into a copy of the network, the towns already there keep their ids
+		for(String townName : List.of("A", "B", "C", "D", "E")) {
+			assertEquals(nextSnapshot.getRouteNetwork().getTownId(townName), snapshot.getRouteNetwork().getTownId(townName));
+		}
+		
+		//The routes of a version share the Town instances of their towns
+		Town<String> f = nextSnapshot.getTrainsMap().get(new Town<String>("C")).get(2).getTown();
+		assertSame(nextSnapshot.getTrainsMap().keySet().stream().filter(f::equals).findFirst().get(), f);
+		
+		try {
+			graph.createTrainsRoutes("GA1, AG");
+			fail("Expected a malformed route");
+		} catch(RouteFormatException e) {
+			assertSame(graph.getSnapshot(), nextSnapshot);
+			assertNull(graph.getTrainsMap().get(new Town<String>("G")));
+		}
+		
+		graph.setTrainsMap(snapshot.getTrainsMap());
+		assertEquals(graph.getSnapshot().getVersion(), 3);
+		assertEquals(graph.getRouteDistance("C-F-A-B"), -1);
+		assertEquals(graph.getShortestRouteDistance(new Town<String>("A"), new Town<String>("C")), "9");
+		
+		//The routes of a map set are copied, changing them afterwards does not change the trains routes
+		Map<Town<String>, List<Route>> trainsMap = new LinkedHashMap<>();
+		Route route = new Route(new Town<String>("B"), 2);
+		trainsMap.put(new Town<String>("A"), new ArrayList<>(List.of(route)));
+		graph.setTrainsMap(trainsMap);
+		route.setDistance(20);
+		route.getTown().setTownName("C");
+		assertEquals(graph.getRouteDistance("A-B"), 2);
+		assertEquals(graph.getTrainsMap().get(new Town<String>("A")).get(0).toString(), "town: B distance: 2");
+	}
+	
+	@Test
+	public void testReload() throws Exception {
+		logger.info("Test the trains routes are reloaded from a text file or a binary snapshot");
+		Path routes = temporaryFolder.newFile("routes.txt").toPath();
+		Files.write(routes, LONGER_TRAINS_ROUTES.getBytes(StandardCharsets.UTF_8));
+		Path snapshot = temporaryFolder.getRoot().toPath().resolve("routes.trsn");
+		RouteNetworkSnapshot.write(RouteParser.parseNetwork(VALID_TRAINS_ROUTES), snapshot);
+		assertFalse(RouteNetworkSnapshot.isSnapshot(routes));
+		assertTrue(RouteNetworkSnapshot.isSnapshot(snapshot));
+		
+		TrainsRoutesDirectedGraph graph = new TrainsRoutesDirectedGraph(VALID_TRAINS_ROUTES);
+		graph.precomputeShortestDistances();
+		assertEquals(graph.getShortestRouteDistance(new Town<String>("A"), new Town<String>("C")), "9");
+		
+		graph.reloadTrainsRoutes(routes);
+		assertEquals(graph.getSnapshot().getVersion(), 2);
+		assertEquals(graph.getShortestRouteDistance(new Town<String>("A"), new Town<String>("C")), "13");
+		assertEquals(graph.getRouteDistance("A-B-C"), 20);
+		assertEquals(graph.getTrainsMap().get(new Town<String>("A")).get(0).getDistance(), 10);
+		
+		graph.reloadTrainsRoutes(snapshot);
+		assertEquals(graph.getRouteDistance("A-B-C"), 9);
+		graph.createTrainsRoutes("FA1");
+		assertEquals(graph.getRouteDistance("F-A-B-C"), 10);
+		assertEquals(graph.getSnapshot().getVersion(), 4);
+	}
+	
+	@Test
+	public void testReadsDuringReloads() throws Exception {
+		logger.info("Test the queries running while the trains routes are reloaded see one whole version or the other");
+		Path routes = temporaryFolder.newFile("routes.txt").toPath();
+		Path longerRoutes = temporaryFolder.newFile("longer-routes.txt").toPath();
+		Files.write(routes, VALID_TRAINS_ROUTES.getBytes(StandardCharsets.UTF_8));
+		Files.write(longerRoutes, LONGER_TRAINS_ROUTES.getBytes(StandardCharsets.UTF_8));
+		TrainsRoutesDirectedGraph graph = new TrainsRoutesDirectedGraph(VALID_TRAINS_ROUTES);
+		AtomicBoolean isReloading = new AtomicBoolean(true);
+		AtomicLong numberOfReads = new AtomicLong();
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		CountDownLatch readersDone = new CountDownLatch(2);
+		
+		for(int i = 0; i < 2; i++) {
+			Thread reader = new Thread(() -> {
+				try {
+					while(isReloading.get()) {
+						TrainsRoutesSnapshot snapshot = graph.getSnapshot();
+						int distance = graph.getRouteDistance("A-B-C");
+						assertTrue("Distance " + distance, distance == 9 || distance == 20);
+						String shortestDistance = graph.getShortestRouteDistance(new Town<String>("A"), new Town<String>("C"));
+						assertTrue("Shortest distance " + shortestDistance, shortestDistance.equals("9") || shortestDistance.equals("13"));
+						int routesDistance = 0;
+						
+						for(Map.Entry<Town<String>, List<Route>> entry : snapshot.getTrainsMap().entrySet()) {
+							for(Route route : entry.getValue()) {
+								routesDistance += route.getDistance();
+							}
+						}
+						
+						//With or without the route FA1
+						assertTrue("Routes distance " + routesDistance, routesDistance == 48 || routesDistance == 49 || routesDistance == 59 || routesDistance == 60);
+						numberOfReads.incrementAndGet();
+					}
+				} catch(Throwable e) {
+					failure.compareAndSet(null, e);
+				} finally {
+					readersDone.countDown();
+				}
+			});
+			reader.setDaemon(true);
+			reader.start();
+		}
+		
+		for(int i = 0; i < 50; i++) {
+			graph.reloadTrainsRoutes(i % 2 == 0 ? longerRoutes : routes);
+			graph.createTrainsRoutes("FA1");
+			
+			while(numberOfReads.get() < i) {
+				Thread.sleep(1);
+			}
+		}
+		
+		isReloading.set(false);
+		readersDone.await();
+		assertNull(failure.get());
+		assertEquals(graph.getSnapshot().getVersion(), 101);
+		assertTrue(numberOfReads.get() >= 50);
+	}
+}
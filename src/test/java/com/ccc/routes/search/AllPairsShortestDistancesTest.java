@@ -0,0 +1,121 @@
+package com.ccc.routes.search;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Test;
+
+import com.ccc.routes.network.CompactRouteNetwork;
+import com.ccc.routes.network.RouteNetwork;
+import com.ccc.routes.network.RouteParser;
+import com.ccc.routes.recursion.Town;
+import com.ccc.routes.recursion.TrainsRoutesDirectedGraph;
+
+/**
+ *
+ * @author gibrancastillo
+ *
+ */
+public class AllPairsShortestDistancesTest {
+	private static final String VALID_TRAINS_ROUTES = "AB5, BC4, CD8, DC8, DE6, AD5, CE2, EB3, AE7";
+	private static final Logger logger = LogManager.getLogger(AllPairsShortestDistancesTest.class);
+	
+	@Test
+	public void testShortestDistances() {
+		logger.info("Test the shortest distances and routes of the trains routes");
+		AllPairsShortestDistances shortestDistances = AllPairsShortestDistances.compute(RouteParser.parseNetwork(VALID_TRAINS_ROUTES));
+		RouteNetwork network = shortestDistances.getNetwork();
+		assertEquals(shortestDistances.getDistance(network.getTownId("A"), network.getTownId("C")), 9);
+		assertEquals(shortestDistances.getDistance(network.getTownId("B"), network.getTownId("B")), 9);
+		assertEquals(shortestDistances.getDistance(network.getTownId("B"), network.getTownId("A")), TownPath.NO_ROUTE);
+		assertEquals(shortestDistances.getPath(network.getTownId("B"), network.getTownId("B")).toString(),
+				new DijkstraSearch(network).findShortestPath(network.getTownId("B"), network.getTownId("B")).toString());
+	}
+	
+	@Test
+	public void testAlgorithmsMatchDijkstraSearch() {
+		logger.info("Test Floyd-Warshall and the Dijkstra searches, on and off heap, against a Dijkstra search per pair");
+		Random random = new Random(42);
+		CompactRouteNetwork.Builder builder = new CompactRouteNetwork.Builder();
+		boolean[][] isRoute = new boolean[150][150];
+		
+		for(int route = 0; route < 2000; route++) {
+			int startingTown = random.nextInt(150);
+			int endingTown = random.nextInt(150);
+			
+			if(startingTown != endingTown && !isRoute[startingTown][endingTown]) {
+				isRoute[startingTown][endingTown] = true;
+				builder.addRoute("T" + startingTown, "T" + endingTown, 1 + random.nextInt(20));
+			}
+		}
+		
+		CompactRouteNetwork network = builder.build();
+		DijkstraSearch dijkstraSearch = new DijkstraSearch(network);
+		AllPairsShortestDistances[] tables = {
+				AllPairsShortestDistances.compute(network, ForkJoinPool.commonPool(), AllPairsShortestDistances.Algorithm.FLOYD_WARSHALL, false),
+				AllPairsShortestDistances.compute(network, ForkJoinPool.commonPool(), AllPairsShortestDistances.Algorithm.DIJKSTRA, false),
+				AllPairsShortestDistances.compute(network, ForkJoinPool.commonPool(), AllPairsShortestDistances.Algorithm.DIJKSTRA, true)};
+		
+		for(int startingTownId = 0; startingTownId < network.getNumberOfTowns(); startingTownId++) {
+			for(int endingTownId = 0; endingTownId < network.getNumberOfTowns(); endingTownId++) {
+				TownPath expected = dijkstraSearch.findShortestPath(startingTownId, endingTownId);
+				
+				for(AllPairsShortestDistances table : tables) {
+					TownPath path = table.getPath(startingTownId, endingTownId);
+					assertEquals(table.getDistance(startingTownId, endingTownId), expected.getDistance());
+					assertEquals(path.getDistance(), expected.getDistance());
+					assertEquals(getDistance(network, path), expected.getDistance());
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void testPrecomputedShortestRoutes() {
+		logger.info("Test the shortest route queries over the precomputed shortest distances");
+		TrainsRoutesDirectedGraph trainsRoutesDirectedGraph = new TrainsRoutesDirectedGraph(VALID_TRAINS_ROUTES);
+		trainsRoutesDirectedGraph.precomputeShortestDistances();
+		assertEquals(trainsRoutesDirectedGraph.getShortestRouteDistance(new Town<String>("A"), new Town<String>("C")), "9");
+		assertEquals(trainsRoutesDirectedGraph.getShortestRoute(new Town<String>("B"), new Town<String>("B")).getTowns().toString(), "[B, C, E, B]");
+		assertEquals(trainsRoutesDirectedGraph.getShortestRouteDistance(new Town<String>("A"), new Town<String>("Z")), "NO SUCH ROUTE");
+		
+		//The precomputed distances are dropped once the trains routes change
+		trainsRoutesDirectedGraph.createTrainsRoutes("AC1");
+		assertEquals(trainsRoutesDirectedGraph.getShortestRouteDistance(new Town<String>("A"), new Town<String>("C")), "1");
+	}
+	
+	@Test
+	public void testTooManyTowns() {
+		logger.info("Test the shortest distances of more towns than the maximum are rejected and not planned");
+		RouteNetwork network = RouteParser.parseNetwork(VALID_TRAINS_ROUTES);
+		assertThrows(IllegalArgumentException.class, () -> AllPairsShortestDistances.compute(network, 4));
+		assertEquals(AllPairsShortestDistances.compute(network, 5).getDistance(network.getTownId("A"), network.getTownId("C")), 9);
+		
+		TrainsRoutesDirectedGraph trainsRoutesDirectedGraph = new TrainsRoutesDirectedGraph(VALID_TRAINS_ROUTES);
+		assertThrows(IllegalArgumentException.class, () -> trainsRoutesDirectedGraph.precomputeShortestDistances(4));
+		assertEquals(trainsRoutesDirectedGraph.explainShortestRoute(new Town<String>("A"), new Town<String>("C")).getStrategy(),
+				QueryPlan.Strategy.DIJKSTRA);
+		assertEquals(trainsRoutesDirectedGraph.getShortestRouteDistance(new Town<String>("A"), new Town<String>("C")), "9");
+	}
+	
+	/**
+	 * @return The distance of the path summed route by route, or NO_ROUTE for a path that does not exist.
+	 */
+	private static int getDistance(RouteNetwork network, TownPath path) {
+		if(!path.exists()) {
+			return TownPath.NO_ROUTE;
+		}
+		
+		int distance = 0;
+		
+		for(int i = 1; i < path.getNumberOfTowns(); i++) {
+			distance += network.getRouteDistance(network.findRoute(path.getTownId(i - 1), path.getTownId(i)));
+		}
+		
+		return distance;
+	}
+}
@@ -0,0 +1,166 @@
+package com.ccc.routes.search;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Test;
+
+import com.ccc.routes.generator.NetworkGenerator;
+import com.ccc.routes.generator.Topology;
+import com.ccc.routes.network.RouteNetwork;
+import com.ccc.routes.recursion.Town;
+import com.ccc.routes.recursion.TrainsRoutesDirectedGraph;
+
+/**
+ *
+ * @author gibrancastillo
+ *
+ */
+public class BidirectionalDijkstraSearchTest {
+	private static final String VALID_TRAINS_ROUTES = "AB5, BC4, CD8, DC8, DE6, AD5, CE2, EB3, AE7";
+	private static final Logger logger = LogManager.getLogger(BidirectionalDijkstraSearchTest.class);
+	
+	@Test
+	public void testShortestRouteDistance() {
+		logger.info("Test the shortest route distances of the trains routes searched from both ends, on one and on two threads");
+		for(boolean isRunningOnTwoThreads : new boolean[] {false, true}) {
+			TrainsRoutesDirectedGraph graph = new TrainsRoutesDirectedGraph(VALID_TRAINS_ROUTES);
+			graph.setBidirectionalSearch(true, isRunningOnTwoThreads);
+			assertEquals(graph.getShortestRouteDistance(new Town<String>("A"), new Town<String>("C")), "9");
+			assertEquals(graph.getShortestRouteDistance(new Town<String>("B"), new Town<String>("B")), "9");
+			assertEquals(graph.getShortestRouteDistance(new Town<String>("C"), new Town<String>("A")), "NO SUCH ROUTE");
+			assertEquals(graph.getShortestRoute(new Town<String>("A"), new Town<String>("C")).toString(), "towns: [A, B, C] distance: 9");
+			assertEquals(graph.getShortestRoute(new Town<String>("E"), new Town<String>("D")).toString(), "towns: [E, B, C, D] distance: 15");
+			graph.setBidirectionalSearch(false, false);
+		}
+	}
+	
+	@Test
+	public void testShortestPathsMatchDijkstra() {
+		logger.info("Test the bidirectional searches find the routes of Dijkstra's algorithm on every topology");
+		ForkJoinPool pool = new ForkJoinPool(1);
+		
+		try {
+			for(Topology topology : Topology.values()) {
+				RouteNetwork network = new NetworkGenerator.Builder(topology, 2000).seed(13).build().generateNetwork();
+				DijkstraSearch dijkstraSearch = new DijkstraSearch(network);
+				Random random = new Random(topology.ordinal());
+				
+				for(BidirectionalDijkstraSearch bidirectionalSearch : new BidirectionalDijkstraSearch[] {new BidirectionalDijkstraSearch(network),
+						new BidirectionalDijkstraSearch(network, pool)}) {
+					for(int i = 0; i < 300; i++) {
+						int startingTownId = random.nextInt(network.getNumberOfTowns());
+						int endingTownId = i % 50 == 0 ? startingTownId : random.nextInt(network.getNumberOfTowns());
+						TownPath path = bidirectionalSearch.findShortestPath(startingTownId, endingTownId);
+						
+						assertEquals(path.getDistance(), dijkstraSearch.findShortestPath(startingTownId, endingTownId).getDistance());
+						
+						if(path.exists()) {
+							assertEquals(path.getTownId(0), startingTownId);
+							assertEquals(path.getTownId(path.getNumberOfTowns() - 1), endingTownId);
+							assertEquals(getDistance(network, path), path.getDistance());
+						}
+					}
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	@Test
+	public void testPoolSwappedUnderQueries() throws Exception {
+		logger.info("Test the queries running while the pool of the backward searches is replaced or shut down are answered correctly");
+		RouteNetwork network = new NetworkGenerator.Builder(Topology.GRID, 400).seed(5).build().generateNetwork();
+		ForkJoinPool shutDownPool = new ForkJoinPool(1);
+		shutDownPool.shutdown();
+		assertEquals(new BidirectionalDijkstraSearch(network, shutDownPool).findShortestPath(0, 399).getDistance(),
+				new DijkstraSearch(network).findShortestPath(0, 399).getDistance());
+		
+		TrainsRoutesDirectedGraph graph = new TrainsRoutesDirectedGraph(VALID_TRAINS_ROUTES);
+		graph.setBidirectionalSearch(true, true);
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		List<Thread> threads = new ArrayList<>();
+		
+		for(int i = 0; i < 4; i++) {
+			Thread thread = new Thread(() -> {
+				try {
+					for(int j = 0; j < 500; j++) {
+						graph.getQueryCache().invalidate();
+						assertEquals(graph.getShortestRoute(new Town<String>("E"), new Town<String>("D")).getDistance(), 15);
+					}
+				} catch(Throwable e) {
+					failure.compareAndSet(null, e);
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		
+		for(int i = 0; i < 50; i++) {
+			graph.setBidirectionalSearch(true, true);
+		}
+		
+		for(Thread thread : threads) {
+			thread.join();
+		}
+		
+		graph.setBidirectionalSearch(false, false);
+		assertNull(failure.get());
+	}
+	
+	@Test
+	public void testLongHaulSettlesFewerTowns() {
+		logger.info("Test the bidirectional search settles far fewer towns than Dijkstra's algorithm across the grid");
+		RouteNetwork network = new NetworkGenerator.Builder(Topology.GRID, 2500).seed(3).build().generateNetwork();
+		DijkstraSearch dijkstraSearch = new DijkstraSearch(network);
+		BidirectionalDijkstraSearch bidirectionalSearch = new BidirectionalDijkstraSearch(network);
+		SearchCounters counters = SearchCounters.current();
+		long dijkstraTownsExpanded = 0;
+		long bidirectionalTownsExpanded = 0;
+		
+		//From the left of every middle row of the grid to its right
+		for(int row = 12; row < 38; row++) {
+			long townsExpanded = counters.getTownsExpanded();
+			TownPath expectedPath = dijkstraSearch.findShortestPath(row * 50, row * 50 + 49);
+			dijkstraTownsExpanded += counters.getTownsExpanded() - townsExpanded;
+			townsExpanded = counters.getTownsExpanded();
+			TownPath path = bidirectionalSearch.findShortestPath(row * 50, row * 50 + 49);
+			bidirectionalTownsExpanded += counters.getTownsExpanded() - townsExpanded;
+			
+			assertEquals(path.getDistance(), expectedPath.getDistance());
+		}
+		
+		logger.info(bidirectionalTownsExpanded + " towns settled from both ends, " + dijkstraTownsExpanded + " by Dijkstra");
+		assertTrue(bidirectionalTownsExpanded < 0.7 * dijkstraTownsExpanded);
+	}
+	
+	/**
+	 * @return The distance of the route, the shortest of the routes between two towns taken.
+	 */
+	private static int getDistance(RouteNetwork network, TownPath path) {
+		int distance = 0;
+		
+		for(int i = 1; i < path.getNumberOfTowns(); i++) {
+			int routeDistance = Integer.MAX_VALUE;
+			
+			for(int route = network.getFirstRoute(path.getTownId(i - 1)), end = network.getRoutesEnd(path.getTownId(i - 1)); route < end; route++) {
+				if(network.getRouteTarget(route) == path.getTownId(i)) {
+					routeDistance = Math.min(routeDistance, network.getRouteDistance(route));
+				}
+			}
+			
+			assertNotEquals(routeDistance, Integer.MAX_VALUE);
+			distance += routeDistance;
+		}
+		
+		return distance;
+	}
+}
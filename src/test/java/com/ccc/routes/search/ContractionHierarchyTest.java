@@ -0,0 +1,134 @@
+package com.ccc.routes.search;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.ccc.routes.generator.NetworkGenerator;
+import com.ccc.routes.generator.Topology;
+import com.ccc.routes.network.RouteNetwork;
+import com.ccc.routes.network.RouteNetworkSnapshot;
+import com.ccc.routes.recursion.Town;
+import com.ccc.routes.recursion.TrainsRoutesDirectedGraph;
+
+/**
+ *
+ * @author gibrancastillo
+ *
+ */
+public class ContractionHierarchyTest {
+	private static final String VALID_TRAINS_ROUTES = "AB5, BC4, CD8, DC8, DE6, AD5, CE2, EB3, AE7";
+	private static final Logger logger = LogManager.getLogger(ContractionHierarchyTest.class);
+	
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+	
+	@Test
+	public void testShortestRoutes() {
+		logger.info("Test the shortest routes of the trains routes in the contraction hierarchy, validated");
+		TrainsRoutesDirectedGraph graph = new TrainsRoutesDirectedGraph(VALID_TRAINS_ROUTES);
+		graph.precomputeContractionHierarchy();
+		graph.setValidatingContractionHierarchy(true);
+		assertEquals(graph.getShortestRouteDistance(new Town<String>("A"), new Town<String>("C")), "9");
+		assertEquals(graph.getShortestRouteDistance(new Town<String>("B"), new Town<String>("B")), "9");
+		assertEquals(graph.getShortestRouteDistance(new Town<String>("C"), new Town<String>("A")), "NO SUCH ROUTE");
+		assertEquals(graph.getShortestRoute(new Town<String>("A"), new Town<String>("C")).toString(), "towns: [A, B, C] distance: 9");
+		assertEquals(graph.getShortestRoute(new Town<String>("D"), new Town<String>("D")).toString(), "towns: [D, C, D] distance: 16");
+		assertEquals(graph.getShortestRoute(new Town<String>("A"), new Town<String>("A")).toString(), "NO SUCH ROUTE");
+	}
+	
+	@Test
+	public void testShortestPathsMatchDijkstra() {
+		logger.info("Test the contraction hierarchy finds the routes of Dijkstra's algorithm on every topology");
+		ForkJoinPool pool = new ForkJoinPool(4);
+		
+		try {
+			for(Topology topology : Topology.values()) {
+				for(double cycleDensity : new double[] {0.1, 0.9}) {
+					RouteNetwork network = new NetworkGenerator.Builder(topology, 1500).seed(11).cycleDensity(cycleDensity).build().generateNetwork();
+					ContractionHierarchy contractionHierarchy = new ContractionHierarchy.Builder(network).pool(pool).witnessSettleLimit(50).build();
+					DijkstraSearch dijkstraSearch = new DijkstraSearch(network);
+					Random random = new Random(topology.ordinal());
+					
+					for(int i = 0; i < 300; i++) {
+						int startingTownId = random.nextInt(network.getNumberOfTowns());
+						int endingTownId = i % 10 == 0 ? startingTownId : random.nextInt(network.getNumberOfTowns());
+						TownPath path = contractionHierarchy.findShortestPath(startingTownId, endingTownId);
+						
+						assertEquals(path.getDistance(), dijkstraSearch.findShortestPath(startingTownId, endingTownId).getDistance());
+						
+						if(path.exists()) {
+							assertEquals(path.getTownId(0), startingTownId);
+							assertEquals(path.getTownId(path.getNumberOfTowns() - 1), endingTownId);
+							assertEquals(getDistance(network, path), path.getDistance());
+						}
+					}
+					
+					logger.info(topology + " " + cycleDensity + ": " + contractionHierarchy.getNumberOfShortcuts() + " shortcuts in "
+							+ contractionHierarchy.getNumberOfRounds() + " rounds");
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	@Test
+	public void testSaveAndLoadContractionHierarchy() throws IOException {
+		logger.info("Test a contraction hierarchy saved next to a snapshot is loaded back for the same network only");
+		Path snapshotPath = temporaryFolder.getRoot().toPath().resolve("routes.snapshot");
+		TrainsRoutesDirectedGraph graph = new TrainsRoutesDirectedGraph(new NetworkGenerator.Builder(Topology.SCALE_FREE, 600).seed(5).build().generateNetwork());
+		graph.saveSnapshot(snapshotPath);
+		graph.precomputeContractionHierarchy();
+		graph.saveContractionHierarchy(ContractionHierarchy.getPath(snapshotPath));
+		
+		TrainsRoutesDirectedGraph mappedGraph = new TrainsRoutesDirectedGraph(RouteNetworkSnapshot.open(snapshotPath));
+		mappedGraph.loadContractionHierarchy(ContractionHierarchy.getPath(snapshotPath));
+		mappedGraph.setValidatingContractionHierarchy(true);
+		
+		for(int townId = 0; townId < 600; townId += 7) {
+			Town<String> startingTown = new Town<String>("T" + townId);
+			Town<String> endingTown = new Town<String>("T" + (599 - townId));
+			assertEquals(mappedGraph.getShortestRoute(startingTown, endingTown).toString(), graph.getShortestRoute(startingTown, endingTown).toString());
+		}
+		
+		try {
+			ContractionHierarchy.read(new NetworkGenerator.Builder(Topology.SCALE_FREE, 600).seed(6).build().generateNetwork(),
+					ContractionHierarchy.getPath(snapshotPath));
+			fail("Expected a contraction hierarchy of another network");
+		} catch(IOException e) {
+			logger.info(e.getMessage());
+		}
+	}
+	
+	/**
+	 * @return The distance of the route, the shortest of the routes between two towns taken.
+	 */
+	private static int getDistance(RouteNetwork network, TownPath path) {
+		int distance = 0;
+		
+		for(int i = 1; i < path.getNumberOfTowns(); i++) {
+			int routeDistance = Integer.MAX_VALUE;
+			
+			for(int route = network.getFirstRoute(path.getTownId(i - 1)), end = network.getRoutesEnd(path.getTownId(i - 1)); route < end; route++) {
+				if(network.getRouteTarget(route) == path.getTownId(i)) {
+					routeDistance = Math.min(routeDistance, network.getRouteDistance(route));
+				}
+			}
+			
+			assertNotEquals(routeDistance, Integer.MAX_VALUE);
+			distance += routeDistance;
+		}
+		
+		return distance;
+	}
+}
@@ -0,0 +1,37 @@
+package com.ccc.routes.search;
+
+import static org.junit.Assert.*;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Test;
+
+import com.ccc.routes.network.CompactRouteNetwork;
+import com.ccc.routes.network.RouteNetwork;
+
+/**
+ *
+ * @author gibrancastillo
+ *
+ */
+public class DijkstraSearchTest {
+	private static final Logger logger = LogManager.getLogger(DijkstraSearchTest.class);
+
+	@Test
+	public void testLongDistancesDoNotOverflow() {
+		logger.info("Test routes summing past Integer.MAX_VALUE are not taken for short ones");
+		RouteNetwork network = new CompactRouteNetwork.Builder()
+				.addRoute("A", "B", Integer.MAX_VALUE - 1)
+				.addRoute("B", "C", 5)
+				.addRoute("A", "D", 1)
+				.addRoute("D", "C", 10)
+				.addRoute("B", "E", 5)
+				.build();
+		DijkstraSearch search = new DijkstraSearch(network);
+		TownPath path = search.findShortestPath(network.getTownId("A"), network.getTownId("C"));
+		assertEquals(path.getDistance(), 11);
+		assertArrayEquals(path.getTownIds(), new int[] {network.getTownId("A"), network.getTownId("D"), network.getTownId("C")});
+		assertEquals(search.findShortestPath(network.getTownId("A"), network.getTownId("B")).getDistance(), Integer.MAX_VALUE - 1);
+		assertEquals(search.findShortestPath(network.getTownId("A"), network.getTownId("E")).exists(), false);
+	}
+}
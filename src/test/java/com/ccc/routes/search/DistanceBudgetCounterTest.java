@@ -0,0 +1,106 @@
+package com.ccc.routes.search;
+
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ccc.routes.network.CompactRouteNetwork;
+import com.ccc.routes.network.RouteNetwork;
+import com.ccc.routes.recursion.Town;
+import com.ccc.routes.recursion.TrainsRoutesDirectedGraph;
+
+/**
+ *
+ * @author gibrancastillo
+ *
+ */
+public class DistanceBudgetCounterTest {
+	private TrainsRoutesDirectedGraph trainsRoutesDirectedGraph;
+	private static final Logger logger = LogManager.getLogger(DistanceBudgetCounterTest.class);
+	
+	@Before
+	public void setUp() throws Exception {
+		final String VALID_TRAINS_ROUTES = "AB5, BC4, CD8, DC8, DE6, AD5, CE2, EB3, AE7";
+		trainsRoutesDirectedGraph = new TrainsRoutesDirectedGraph(VALID_TRAINS_ROUTES);
+	}
+	
+	@Test
+	public void testCountRoutesMatchesRecursion() {
+		logger.info("Test the distance budget counter against the recursive enumeration of the routes");
+		String[] townNames = {"A", "B", "C", "D", "E"};
+		
+		for(String startingTownName : townNames) {
+			for(String endingTownName : townNames) {
+				for(int maxDistance = 0; maxDistance <= 40; maxDistance += 5) {
+					Town<String> startingTown = new Town<String>(startingTownName);
+					Town<String> endingTown = new Town<String>(endingTownName);
+					
+					assertEquals(trainsRoutesDirectedGraph.getNumberOfDifferentRoutesWithMaxDistance(startingTown, endingTown, maxDistance),
+							trainsRoutesDirectedGraph.getNumberOfDifferentRoutesWithMaxDistanceByRecursion(startingTown, endingTown, maxDistance));
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void testCountRoutesToEveryTown() {
+		logger.info("Test the number of different routes from C to every town with a distance of less than 30");
+		Map<Town<String>, BigInteger> routesCounters = trainsRoutesDirectedGraph.countRoutesWithMaxDistance(new Town<String>("C"), 30);
+		assertEquals(routesCounters.get(new Town<String>("C")), BigInteger.valueOf(7));
+		assertFalse(routesCounters.containsKey(new Town<String>("A")));
+		
+		logger.info("Test the number of different routes with a large distance budget does not overflow");
+		routesCounters = trainsRoutesDirectedGraph.countRoutesWithMaxDistance(new Town<String>("C"), 3000);
+		assertTrue(routesCounters.get(new Town<String>("C")).compareTo(BigInteger.valueOf(Long.MAX_VALUE)) > 0);
+	}
+	
+	@Test
+	public void testManyTownsAndDistances() {
+		logger.info("Test the rows hold only the towns they reach, whatever the towns of the network and the distances of its routes");
+		CompactRouteNetwork.Builder builder = new CompactRouteNetwork.Builder();
+		builder.addRoute("A", "B", 1_000_000);
+		builder.addRoute("B", "A", 1_000_000);
+		RouteNetwork network = builder.build();
+		assertEquals(new DistanceBudgetCounter(network).countRoutes(network.getTownId("A"), network.getTownId("A"), 10_000_000), BigInteger.valueOf(4));
+		
+		RouteNetwork network100 = buildStarNetwork(0);
+		RouteNetwork network200k = buildStarNetwork(200_000);
+		int s100 = network100.getTownId("S");
+		int s200k = network200k.getTownId("S");
+		assertEquals(network200k.getNumberOfTowns(), 200_101);
+		
+		//A long count of the routes under 10, checked against the enumeration
+		assertEquals(new DistanceBudgetCounter(network200k).countRoutes(s200k, s200k, 10),
+				BigInteger.valueOf(new RecursiveRouteSearch(network100).countRoutesWithMaxDistance(s100, s100, 10)));
+		
+		//Up to 100 distinct distances in flight, and counts far beyond a long, the same with or without the towns not reached
+		BigInteger routes = new DistanceBudgetCounter(network200k).countRoutes(s200k, s200k, 3000);
+		assertTrue(routes.compareTo(BigInteger.valueOf(Long.MAX_VALUE)) > 0);
+		assertEquals(routes, new DistanceBudgetCounter(network100).countRoutes(s100, s100, 3000));
+	}
+	
+	/**
+	 * @return S with a route to every one of 100 towns, of distance 1 to 100, and a route of distance 1 back from
+	 * each, followed by the towns not reached.
+	 */
+	private static RouteNetwork buildStarNetwork(int numberOfTownsNotReached) {
+		CompactRouteNetwork.Builder builder = new CompactRouteNetwork.Builder();
+		
+		for(int distance = 1; distance <= 100; distance++) {
+			builder.addRoute("S", "T" + distance, distance);
+			builder.addRoute("T" + distance, "S", 1);
+		}
+		
+		for(int townId = 0; townId < numberOfTownsNotReached; townId++) {
+			builder.addTown("U" + townId);
+		}
+		
+		return builder.build();
+	}
+}
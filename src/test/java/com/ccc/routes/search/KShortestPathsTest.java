@@ -0,0 +1,146 @@
+package com.ccc.routes.search;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Test;
+
+import com.ccc.routes.generator.NetworkGenerator;
+import com.ccc.routes.generator.Topology;
+import com.ccc.routes.generator.WeightDistribution;
+import com.ccc.routes.network.CompactRouteNetwork;
+import com.ccc.routes.network.RouteNetwork;
+import com.ccc.routes.recursion.ShortestRoute;
+import com.ccc.routes.recursion.Town;
+import com.ccc.routes.recursion.TrainsRoutesDirectedGraph;
+
+/**
+ *
+ * @author gibrancastillo
+ *
+ */
+public class KShortestPathsTest {
+	private static final String VALID_TRAINS_ROUTES = "AB5, BC4, CD8, DC8, DE6, AD5, CE2, EB3, AE7";
+	private static final Logger logger = LogManager.getLogger(KShortestPathsTest.class);
+	
+	@Test
+	public void testShortestRoutes() {
+		logger.info("Test the shortest routes of the trains routes, and of the round trips");
+		TrainsRoutesDirectedGraph graph = new TrainsRoutesDirectedGraph(VALID_TRAINS_ROUTES);
+		List<ShortestRoute> shortestRoutes = graph.getShortestRoutes(new Town<String>("A"), new Town<String>("C"), 10);
+		assertEquals(shortestRoutes.size(), 4);
+		assertEquals(shortestRoutes.get(0).toString(), "towns: [A, B, C] distance: 9");
+		assertEquals(shortestRoutes.get(1).toString(), "towns: [A, D, C] distance: 13");
+		assertEquals(shortestRoutes.get(2).toString(), "towns: [A, E, B, C] distance: 14");
+		assertEquals(shortestRoutes.get(3).toString(), "towns: [A, D, E, B, C] distance: 18");
+		
+		Iterator<ShortestRoute> roundTrips = graph.getShortestRoutes(new Town<String>("C"), new Town<String>("C"));
+		assertEquals(roundTrips.next().toString(), "towns: [C, E, B, C] distance: 9");
+		assertEquals(roundTrips.next().toString(), "towns: [C, D, C] distance: 16");
+		assertEquals(roundTrips.next().toString(), "towns: [C, D, E, B, C] distance: 21");
+		assertFalse(roundTrips.hasNext());
+		assertFalse(graph.getShortestRoutes(new Town<String>("B"), new Town<String>("A")).hasNext());
+	}
+	
+	@Test
+	public void testRoutesMatchEnumeration() {
+		logger.info("Test the shortest routes against every route that does not go through a town twice");
+		
+		for(long seed = 0; seed < 20; seed++) {
+			RouteNetwork network = new NetworkGenerator.Builder(Topology.values()[(int) (seed % 4)], 12).seed(seed).cycleDensity(0.6)
+					.weightDistribution(WeightDistribution.uniform(1, 4)).build().generateNetwork();
+			
+			for(int startingTownId = 0; startingTownId < 12; startingTownId += 5) {
+				for(int endingTownId = 0; endingTownId < 12; endingTownId += 3) {
+					List<Integer> expectedDistances = new ArrayList<>();
+					enumerate(network, startingTownId, endingTownId, startingTownId, 0, new boolean[12], expectedDistances);
+					expectedDistances.sort(null);
+					
+					List<Integer> distances = new ArrayList<>();
+					List<TownPath> paths = new ArrayList<>();
+					
+					for(KShortestPaths shortestPaths = new KShortestPaths(network, startingTownId, endingTownId); shortestPaths.hasNext();) {
+						TownPath path = shortestPaths.next();
+						assertFalse(paths.contains(path));
+						paths.add(path);
+						distances.add(path.getDistance());
+					}
+					
+					assertEquals(distances, expectedDistances);
+				}
+			}
+		}
+	}
+	
+	private static void enumerate(RouteNetwork network, int townId, int endingTownId, int startingTownId, int distance, boolean[] isVisited,
+			List<Integer> distances) {
+		isVisited[townId] = true;
+		
+		for(int nextTownId = 0; nextTownId < network.getNumberOfTowns(); nextTownId++) {
+			int shortestRoute = Integer.MAX_VALUE;
+			
+			for(int route = network.getFirstRoute(townId); route < network.getRoutesEnd(townId); route++) {
+				if(network.getRouteTarget(route) == nextTownId) {
+					shortestRoute = Math.min(shortestRoute, network.getRouteDistance(route));
+				}
+			}
+			
+			if(shortestRoute == Integer.MAX_VALUE) {
+				continue;
+			}
+			
+			if(nextTownId == endingTownId) {
+				distances.add(distance + shortestRoute);
+			} else if(!isVisited[nextTownId]) {
+				enumerate(network, nextTownId, endingTownId, startingTownId, distance + shortestRoute, isVisited, distances);
+			}
+		}
+		
+		isVisited[townId] = false;
+	}
+	
+	@Test
+	public void testLongDistancesDoNotOverflow() {
+		logger.info("Test routes summing past Integer.MAX_VALUE are not returned, nor taken for short ones");
+		RouteNetwork network = new CompactRouteNetwork.Builder()
+				.addRoute("A", "B", Integer.MAX_VALUE - 10)
+				.addRoute("B", "C", 5)
+				.addRoute("A", "D", 1)
+				.addRoute("D", "C", 10)
+				.addRoute("A", "E", Integer.MAX_VALUE - 100)
+				.addRoute("E", "C", 50)
+				.addRoute("B", "J", 20)
+				.addRoute("J", "C", 1)
+				.addRoute("D", "K", 5)
+				.addRoute("K", "A", 1)
+				.addRoute("K", "C", Integer.MAX_VALUE - 1)
+				.build();
+		KShortestPaths shortestPaths = new KShortestPaths(network, network.getTownId("A"), network.getTownId("C"));
+		assertEquals(shortestPaths.next().getDistance(), 11);
+		assertEquals(shortestPaths.next().getDistance(), Integer.MAX_VALUE - 50);
+		assertEquals(shortestPaths.next().getDistance(), Integer.MAX_VALUE - 5);
+		assertFalse(shortestPaths.hasNext());
+	}
+	
+	@Test
+	public void testHundredsOfRoutesOnLargeNetwork() {
+		logger.info("Test hundreds of shortest routes across a network of 100k towns");
+		RouteNetwork network = new NetworkGenerator.Builder(Topology.GRID, 100_000).seed(5).cycleDensity(1).build().generateNetwork();
+		KShortestPaths shortestPaths = new KShortestPaths(network, 0, network.getNumberOfTowns() - 1);
+		int previousDistance = 0;
+		long start = System.nanoTime();
+		
+		for(int k = 0; k < 300; k++) {
+			TownPath path = shortestPaths.next();
+			assertTrue(path.getDistance() >= previousDistance);
+			previousDistance = path.getDistance();
+		}
+		
+		logger.info("300 shortest routes found in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+	}
+}
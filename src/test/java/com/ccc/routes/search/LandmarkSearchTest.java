@@ -0,0 +1,134 @@
+package com.ccc.routes.search;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.ccc.routes.generator.NetworkGenerator;
+import com.ccc.routes.generator.Topology;
+import com.ccc.routes.network.CompactRouteNetwork;
+import com.ccc.routes.network.RouteNetwork;
+import com.ccc.routes.network.RouteNetworkSnapshot;
+import com.ccc.routes.recursion.Town;
+import com.ccc.routes.recursion.TrainsRoutesDirectedGraph;
+
+/**
+ *
+ * @author gibrancastillo
+ *
+ */
+public class LandmarkSearchTest {
+	private static final String VALID_TRAINS_ROUTES = "AB5, BC4, CD8, DC8, DE6, AD5, CE2, EB3, AE7";
+	private static final Logger logger = LogManager.getLogger(LandmarkSearchTest.class);
+	
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+	
+	@Test
+	public void testShortestRouteDistance() {
+		logger.info("Test the shortest route distances of the trains routes with landmarks");
+		TrainsRoutesDirectedGraph graph = new TrainsRoutesDirectedGraph(VALID_TRAINS_ROUTES);
+		graph.precomputeLandmarks(2);
+		assertEquals(graph.getShortestRouteDistance(new Town<String>("A"), new Town<String>("C")), "9");
+		assertEquals(graph.getShortestRouteDistance(new Town<String>("B"), new Town<String>("B")), "9");
+		assertEquals(graph.getShortestRouteDistance(new Town<String>("C"), new Town<String>("A")), "NO SUCH ROUTE");
+		assertEquals(graph.getShortestRoute(new Town<String>("A"), new Town<String>("E")).toString(), "towns: [A, E] distance: 7");
+	}
+	
+	@Test
+	public void testShortestPathsMatchDijkstra() {
+		logger.info("Test the A* searches find the distances of Dijkstra's algorithm and settle fewer towns");
+		
+		for(Topology topology : Topology.values()) {
+			RouteNetwork network = new NetworkGenerator.Builder(topology, 2500).seed(7).build().generateNetwork();
+			LandmarkDistances landmarkDistances = LandmarkDistances.compute(network, 8);
+			LandmarkSearch landmarkSearch = new LandmarkSearch(landmarkDistances);
+			DijkstraSearch dijkstraSearch = new DijkstraSearch(network);
+			SearchCounters counters = SearchCounters.current();
+			long landmarkTownsExpanded = 0;
+			long dijkstraTownsExpanded = 0;
+			Random random = new Random(topology.ordinal());
+			
+			for(int i = 0; i < 200; i++) {
+				int startingTownId = random.nextInt(network.getNumberOfTowns());
+				int endingTownId = i % 50 == 0 ? startingTownId : random.nextInt(network.getNumberOfTowns());
+				long townsExpanded = counters.getTownsExpanded();
+				TownPath path = landmarkSearch.findShortestPath(startingTownId, endingTownId);
+				landmarkTownsExpanded += counters.getTownsExpanded() - townsExpanded;
+				townsExpanded = counters.getTownsExpanded();
+				TownPath expectedPath = dijkstraSearch.findShortestPath(startingTownId, endingTownId);
+				dijkstraTownsExpanded += counters.getTownsExpanded() - townsExpanded;
+				
+				assertEquals(path.getDistance(), expectedPath.getDistance());
+				assertEquals(path.exists(), expectedPath.exists());
+			}
+			
+			logger.info(topology + ": " + landmarkTownsExpanded + " towns settled by A*, " + dijkstraTownsExpanded + " by Dijkstra");
+			assertTrue(landmarkTownsExpanded < dijkstraTownsExpanded);
+		}
+	}
+	
+	@Test
+	public void testLongDistancesDoNotOverflow() {
+		logger.info("Test routes summing past Integer.MAX_VALUE are not taken for short ones by the A* search");
+		RouteNetwork network = new CompactRouteNetwork.Builder()
+				.addRoute("A", "B", Integer.MAX_VALUE - 1)
+				.addRoute("B", "C", 5)
+				.addRoute("A", "D", 1)
+				.addRoute("D", "C", 10)
+				.addRoute("C", "A", Integer.MAX_VALUE - 20)
+				.addRoute("B", "E", 5)
+				.build();
+		LandmarkSearch landmarkSearch = new LandmarkSearch(LandmarkDistances.compute(network, 2));
+		TownPath path = landmarkSearch.findShortestPath(network.getTownId("A"), network.getTownId("C"));
+		assertEquals(path.getDistance(), 11);
+		assertArrayEquals(path.getTownIds(), new int[] {network.getTownId("A"), network.getTownId("D"), network.getTownId("C")});
+		assertEquals(landmarkSearch.findShortestPath(network.getTownId("D"), network.getTownId("A")).getDistance(), Integer.MAX_VALUE - 10);
+		assertEquals(landmarkSearch.findShortestPath(network.getTownId("D"), network.getTownId("B")).exists(), false);
+		assertEquals(landmarkSearch.findShortestPath(network.getTownId("A"), network.getTownId("E")).exists(), false);
+	}
+	
+	@Test
+	public void testSaveAndLoadLandmarks() throws IOException {
+		logger.info("Test the landmark distances saved next to a snapshot are loaded back for the same network only");
+		Path snapshotPath = temporaryFolder.getRoot().toPath().resolve("routes.snapshot");
+		TrainsRoutesDirectedGraph graph = new TrainsRoutesDirectedGraph(new NetworkGenerator.Builder(Topology.GRID, 400).seed(3).build().generateNetwork());
+		graph.saveSnapshot(snapshotPath);
+		graph.precomputeLandmarks(LandmarkDistances.DEFAULT_NUMBER_OF_LANDMARKS);
+		graph.saveLandmarks(LandmarkDistances.getPath(snapshotPath));
+		
+		RouteNetwork network = RouteNetworkSnapshot.open(snapshotPath);
+		LandmarkDistances expectedDistances = LandmarkDistances.compute(network, LandmarkDistances.DEFAULT_NUMBER_OF_LANDMARKS);
+		LandmarkDistances landmarkDistances = LandmarkDistances.read(network, LandmarkDistances.getPath(snapshotPath));
+		assertEquals(landmarkDistances.getNumberOfLandmarks(), LandmarkDistances.DEFAULT_NUMBER_OF_LANDMARKS);
+		
+		for(int landmark = 0; landmark < landmarkDistances.getNumberOfLandmarks(); landmark++) {
+			assertEquals(landmarkDistances.getLandmark(landmark), expectedDistances.getLandmark(landmark));
+			
+			for(int townId = 0; townId < network.getNumberOfTowns(); townId++) {
+				assertEquals(landmarkDistances.getDistanceFromLandmark(landmark, townId), expectedDistances.getDistanceFromLandmark(landmark, townId));
+				assertEquals(landmarkDistances.getDistanceToLandmark(landmark, townId), expectedDistances.getDistanceToLandmark(landmark, townId));
+			}
+		}
+		
+		TrainsRoutesDirectedGraph mappedGraph = new TrainsRoutesDirectedGraph(network);
+		mappedGraph.loadLandmarks(LandmarkDistances.getPath(snapshotPath));
+		assertEquals(mappedGraph.getShortestRouteDistance(new Town<String>("T0"), new Town<String>("T399")),
+				graph.getShortestRouteDistance(new Town<String>("T0"), new Town<String>("T399")));
+		
+		try {
+			LandmarkDistances.read(new NetworkGenerator.Builder(Topology.GRID, 400).seed(4).build().generateNetwork(), LandmarkDistances.getPath(snapshotPath));
+			fail("Expected landmark distances of another network");
+		} catch(IOException e) {
+			logger.info(e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,88 @@
+package com.ccc.routes.search;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ccc.routes.network.CompactRouteNetwork;
+import com.ccc.routes.network.RouteNetwork;
+import com.ccc.routes.recursion.Town;
+import com.ccc.routes.recursion.TrainsRoutesDirectedGraph;
+
+/**
+ *
+ * @author gibrancastillo
+ *
+ */
+public class ParallelRouteEnumeratorTest {
+	private TrainsRoutesDirectedGraph trainsRoutesDirectedGraph;
+	private static final Logger logger = LogManager.getLogger(ParallelRouteEnumeratorTest.class);
+	
+	@Before
+	public void setUp() throws Exception {
+		final String VALID_TRAINS_ROUTES = "AB5, BC4, CD8, DC8, DE6, AD5, CE2, EB3, AE7";
+		trainsRoutesDirectedGraph = new TrainsRoutesDirectedGraph(VALID_TRAINS_ROUTES);
+	}
+	
+	@After
+	public void tearDown() throws Exception {
+		trainsRoutesDirectedGraph.setParallelEnumeration(1, 0);
+	}
+	
+	@Test
+	public void testParallelEnumerationMatchesCounters() {
+		logger.info("Test the parallel enumeration against the trips and routes counters for every split depth");
+		String[] townNames = {"A", "B", "C", "D", "E"};
+		
+		for(int splitDepth = 0; splitDepth <= 4; splitDepth++) {
+			trainsRoutesDirectedGraph.setParallelEnumeration(4, splitDepth);
+			
+			for(String startingTownName : townNames) {
+				for(String endingTownName : townNames) {
+					Town<String> startingTown = new Town<String>(startingTownName);
+					Town<String> endingTown = new Town<String>(endingTownName);
+					
+					assertEquals(trainsRoutesDirectedGraph.getNumberOfTripsWithNumberOfStopsByRecursion(startingTown, endingTown, 6, true),
+							trainsRoutesDirectedGraph.getNumberOfTripsWithNumberOfStops(startingTown, endingTown, 6, true));
+					assertEquals(trainsRoutesDirectedGraph.getNumberOfTripsWithNumberOfStopsByRecursion(startingTown, endingTown, 6, false),
+							trainsRoutesDirectedGraph.getNumberOfTripsWithNumberOfStops(startingTown, endingTown, 6, false));
+					assertEquals(trainsRoutesDirectedGraph.getNumberOfDifferentRoutesWithMaxDistanceByRecursion(startingTown, endingTown, 40),
+							trainsRoutesDirectedGraph.getNumberOfDifferentRoutesWithMaxDistance(startingTown, endingTown, 40));
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void testLongDistancesDoNotOverflow() {
+		logger.info("Test routes summing past Integer.MAX_VALUE are not counted under the maximum distance by the parallel enumeration");
+		RouteNetwork network = new CompactRouteNetwork.Builder()
+				.addRoute("A", "B", Integer.MAX_VALUE - 10)
+				.addRoute("B", "C", 20)
+				.addRoute("A", "C", Integer.MAX_VALUE - 1)
+				.build();
+		ForkJoinPool pool = new ForkJoinPool(2);
+		
+		try {
+			for(int splitDepth = 0; splitDepth <= 2; splitDepth++) {
+				ParallelRouteEnumerator enumerator = new ParallelRouteEnumerator(network, pool, splitDepth);
+				assertEquals(enumerator.countRoutesWithMaxDistance(network.getTownId("A"), network.getTownId("C"), Integer.MAX_VALUE), 1);
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	@Test
+	public void testParallelEnumerationOfUnknownTown() {
+		logger.info("Test the parallel enumeration of a town that is not in the graph");
+		trainsRoutesDirectedGraph.setParallelEnumeration(2, 2);
+		assertEquals(trainsRoutesDirectedGraph.getNumberOfTripsWithNumberOfStopsByRecursion(new Town<String>("Z"), new Town<String>("C"), 3, true), "0");
+	}
+}
@@ -0,0 +1,119 @@
+package com.ccc.routes.search;
+
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Test;
+
+import com.ccc.routes.network.CompactRouteNetwork;
+import com.ccc.routes.network.NetworkStatistics;
+import com.ccc.routes.network.RouteNetwork;
+import com.ccc.routes.recursion.Town;
+import com.ccc.routes.recursion.TrainsRoutesDirectedGraph;
+
+/**
+ *
+ * @author gibrancastillo
+ *
+ */
+public class QueryPlannerTest {
+	private static final String VALID_TRAINS_ROUTES = "AB5, BC4, CD8, DC8, DE6, AD5, CE2, EB3, AE7";
+	private static final String ACYCLIC_TRAINS_ROUTES = "AB1, AC1, BD1, CD1, DE1";
+	private static final Town<String> A = new Town<String>("A");
+	private static final Town<String> C = new Town<String>("C");
+	private static final Town<String> E = new Town<String>("E");
+	private static final Logger logger = LogManager.getLogger(QueryPlannerTest.class);
+	
+	@Test
+	public void testCountingPlans() {
+		logger.info("Test the trips and routes are counted depth first when there are only a few, otherwise by dynamic programming");
+		TrainsRoutesDirectedGraph graph = new TrainsRoutesDirectedGraph(VALID_TRAINS_ROUTES);
+		QueryPlan plan = graph.explainTrips(C, C, 3, true);
+		logger.info(plan.explain());
+		assertEquals(plan.getStrategy(), QueryPlan.Strategy.DEPTH_FIRST_SEARCH);
+		assertTrue(plan.explain().startsWith("trips C-C with at most 3 stops: DEPTH_FIRST_SEARCH, estimated cost "));
+		assertTrue(plan.explain().contains("hasCycles=true"));
+		assertEquals(plan.getEstimatedCosts().keySet().size(), 3);
+		assertEquals(graph.getNumberOfTripsWithMaxStops(C, C, 3), "2");
+		
+		assertEquals(graph.explainTrips(A, C, 30, false).getStrategy(), QueryPlan.Strategy.TRIP_LAYERS);
+		assertEquals(graph.explainTrips(A, C, 1_000_000, false).getStrategy(), QueryPlan.Strategy.MATRIX_POWER);
+		assertEquals(graph.getNumberOfTripsWithExactStops(A, C, 4), "3");
+		assertEquals(graph.countTrips(A, C, 30, false), new TripCounter(graph.getRouteNetwork()).countTrips(
+				graph.getRouteNetwork().getTownId("A"), graph.getRouteNetwork().getTownId("C"), 30, false, true));
+		
+		assertEquals(graph.explainRoutesWithMaxDistance(C, C, 5).getStrategy(), QueryPlan.Strategy.DEPTH_FIRST_SEARCH);
+		assertEquals(graph.explainRoutesWithMaxDistance(C, C, 30).getStrategy(), QueryPlan.Strategy.DISTANCE_BUDGET);
+		assertEquals(graph.getNumberOfDifferentRoutesWithMaxDistance(C, C, 10), "1");
+		assertEquals(graph.getNumberOfDifferentRoutesWithMaxDistance(C, C, 30), "7");
+		assertSame(graph.getQueryPlanner(), graph.getQueryPlanner());
+	}
+	
+	@Test
+	public void testAcyclicNetwork() {
+		logger.info("Test the walks of an acyclic network bound its enumerations whatever the stops or distance");
+		TrainsRoutesDirectedGraph graph = new TrainsRoutesDirectedGraph(ACYCLIC_TRAINS_ROUTES);
+		NetworkStatistics statistics = graph.getQueryPlanner().getStatistics();
+		assertFalse(statistics.hasCycles());
+		assertEquals(statistics.getWalkGrowthRate(), 0, 0);
+		assertEquals(statistics.getNumberOfWalks(graph.getRouteNetwork().getTownId("A")), 7, 0);
+		assertEquals(statistics.getNumberOfWalks(graph.getRouteNetwork().getTownId("E")), 1, 0);
+		assertTrue(new NetworkStatistics(new TrainsRoutesDirectedGraph("AB1, BC1, CB1").getRouteNetwork()).hasCycles());
+		
+		assertEquals(graph.explainTrips(A, E, 1_000_000, true).getStrategy(), QueryPlan.Strategy.DEPTH_FIRST_SEARCH);
+		assertEquals(graph.countTrips(A, E, 1_000_000, true), BigInteger.valueOf(2));
+		assertEquals(graph.explainRoutesWithMaxDistance(A, E, 1_000_000).getStrategy(), QueryPlan.Strategy.DEPTH_FIRST_SEARCH);
+		assertEquals(graph.getNumberOfDifferentRoutesWithMaxDistance(A, E, 1_000_000), "2");
+	}
+	
+	@Test
+	public void testDistanceBudgetOverManyTowns() {
+		logger.info("Test the distance budget planned over a large network with many distinct route distances answers the query");
+		CompactRouteNetwork.Builder builder = new CompactRouteNetwork.Builder();
+		
+		for(int distance = 1; distance <= 100; distance++) {
+			builder.addRoute("S", "T" + distance, distance);
+			builder.addRoute("T" + distance, "S", 1);
+		}
+		
+		RouteNetwork starNetwork = builder.build();
+		
+		for(int townId = 0; townId < 50_000; townId++) {
+			builder.addTown("U" + townId);
+		}
+		
+		TrainsRoutesDirectedGraph graph = new TrainsRoutesDirectedGraph(builder.build());
+		Town<String> s = new Town<String>("S");
+		assertEquals(graph.explainRoutesWithMaxDistance(s, s, 3000).getStrategy(), QueryPlan.Strategy.DISTANCE_BUDGET);
+		assertEquals(graph.getNumberOfDifferentRoutesWithMaxDistance(s, s, 3000),
+				new DistanceBudgetCounter(starNetwork).countRoutes(starNetwork.getTownId("S"), starNetwork.getTownId("S"), 3000).toString());
+	}
+	
+	@Test
+	public void testShortestRoutePlans() {
+		logger.info("Test the shortest routes are searched with the cheapest search available");
+		TrainsRoutesDirectedGraph graph = new TrainsRoutesDirectedGraph(VALID_TRAINS_ROUTES);
+		assertEquals(graph.explainShortestRoute(A, C).getStrategy(), QueryPlan.Strategy.DIJKSTRA);
+		
+		graph.setBidirectionalSearch(true, false);
+		assertEquals(graph.explainShortestRoute(A, C).getStrategy(), QueryPlan.Strategy.BIDIRECTIONAL_DIJKSTRA);
+		graph.precomputeLandmarks(2);
+		assertEquals(graph.explainShortestRoute(A, C).getStrategy(), QueryPlan.Strategy.LANDMARK_SEARCH);
+		graph.precomputeContractionHierarchy();
+		assertEquals(graph.explainShortestRoute(A, C).getStrategy(), QueryPlan.Strategy.CONTRACTION_HIERARCHY);
+		graph.precomputeShortestDistances();
+		QueryPlan plan = graph.explainShortestRoute(A, C);
+		logger.info(plan.explain());
+		assertEquals(plan.getStrategy(), QueryPlan.Strategy.PRECOMPUTED_DISTANCES);
+		assertEquals(plan.getEstimatedCosts().size(), 5);
+		assertEquals(graph.getShortestRoute(A, C).toString(), "towns: [A, B, C] distance: 9");
+		
+		graph.createTrainsRoutes("CA1");
+		assertEquals(graph.explainShortestRoute(A, C).getStrategy(), QueryPlan.Strategy.BIDIRECTIONAL_DIJKSTRA);
+		assertEquals(graph.getShortestRouteDistance(C, A), "1");
+		graph.setBidirectionalSearch(false, false);
+	}
+}
@@ -0,0 +1,91 @@
+package com.ccc.routes.search;
+
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Test;
+
+import com.ccc.routes.generator.NetworkGenerator;
+import com.ccc.routes.generator.Topology;
+import com.ccc.routes.network.CompactRouteNetwork;
+import com.ccc.routes.network.RouteNetwork;
+
+/**
+ *
+ * @author gibrancastillo
+ *
+ */
+public class RecursiveRouteSearchTest {
+	private static final Logger logger = LogManager.getLogger(RecursiveRouteSearchTest.class);
+	
+	@Test
+	public void testDeepSearchesDoNotOverflow() {
+		logger.info("Test searches hundreds of thousands of hops deep do not overflow the thread stack");
+		int numberOfTowns = 300_000;
+		CompactRouteNetwork.Builder builder = new CompactRouteNetwork.Builder();
+		
+		for(int townId = 0; townId + 1 < numberOfTowns; townId++) {
+			builder.addRoute("T" + townId, "T" + (townId + 1), 1);
+		}
+		
+		RouteNetwork network = builder.build();
+		RecursiveRouteSearch search = new RecursiveRouteSearch(network);
+		int lastTownId = network.getTownId("T" + (numberOfTowns - 1));
+		assertEquals(search.countTrips(0, lastTownId, numberOfTowns, true), 1);
+		assertEquals(search.countTrips(0, lastTownId, numberOfTowns - 1, false), 1);
+		assertEquals(search.findShortestDistance(0, lastTownId), numberOfTowns - 1);
+		assertEquals(search.countRoutesWithMaxDistance(0, lastTownId, numberOfTowns), 1);
+		assertEquals(search.countRoutesWithMaxDistance(0, lastTownId, numberOfTowns - 1), 0);
+		assertEquals(SearchCounters.current().getPeakDepth() >= numberOfTowns - 1, true);
+	}
+	
+	@Test
+	public void testLongDistancesDoNotOverflow() {
+		logger.info("Test routes summing past Integer.MAX_VALUE are neither the shortest nor counted under the maximum distance");
+		RouteNetwork network = new CompactRouteNetwork.Builder()
+				.addRoute("A", "B", Integer.MAX_VALUE - 10)
+				.addRoute("B", "C", 20)
+				.addRoute("A", "C", Integer.MAX_VALUE - 1)
+				.build();
+		RecursiveRouteSearch search = new RecursiveRouteSearch(network);
+		assertEquals(search.findShortestDistance(network.getTownId("A"), network.getTownId("C")), Integer.MAX_VALUE - 1);
+		assertEquals(search.countRoutesWithMaxDistance(network.getTownId("A"), network.getTownId("C"), Integer.MAX_VALUE), 1);
+	}
+	
+	@Test
+	public void testSearchesMatchCounters() {
+		logger.info("Test the enumerations against the trip and distance budget counters and the Dijkstra search");
+		RouteNetwork network = new NetworkGenerator.Builder(Topology.SCALE_FREE, 60).seed(11).cycleDensity(0.7).build().generateNetwork();
+		RecursiveRouteSearch search = new RecursiveRouteSearch(network);
+		TripCounter tripCounter = new TripCounter(network);
+		DistanceBudgetCounter distanceBudgetCounter = new DistanceBudgetCounter(network);
+		
+		for(int startingTownId = 0; startingTownId < 60; startingTownId += 7) {
+			for(int endingTownId = 0; endingTownId < 60; endingTownId += 5) {
+				assertEquals(BigInteger.valueOf(search.countTrips(startingTownId, endingTownId, 6, true)),
+						tripCounter.countTrips(startingTownId, endingTownId, 6, true));
+				assertEquals(BigInteger.valueOf(search.countTrips(startingTownId, endingTownId, 6, false)),
+						tripCounter.countTrips(startingTownId, endingTownId, 6, false));
+				assertEquals(BigInteger.valueOf(search.countRoutesWithMaxDistance(startingTownId, endingTownId, 25)),
+						distanceBudgetCounter.countRoutes(startingTownId, endingTownId, 25));
+			}
+		}
+		
+		//Every route that does not go through a town twice is enumerated, so the network stays small
+		RouteNetwork smallNetwork = new NetworkGenerator.Builder(Topology.GRID, 16).seed(11).cycleDensity(0.7).build().generateNetwork();
+		RecursiveRouteSearch smallSearch = new RecursiveRouteSearch(smallNetwork);
+		DijkstraSearch dijkstraSearch = new DijkstraSearch(smallNetwork);
+		
+		for(int startingTownId = 0; startingTownId < 16; startingTownId++) {
+			for(int endingTownId = 0; endingTownId < 16; endingTownId++) {
+				if(startingTownId != endingTownId) {
+					assertEquals(smallSearch.findShortestDistance(startingTownId, endingTownId),
+							dijkstraSearch.findShortestPath(startingTownId, endingTownId).getDistance());
+				}
+			}
+		}
+	}
+}
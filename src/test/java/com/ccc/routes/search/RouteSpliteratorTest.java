@@ -0,0 +1,128 @@
+package com.ccc.routes.search;
+
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Test;
+
+import com.ccc.routes.generator.NetworkGenerator;
+import com.ccc.routes.generator.Topology;
+import com.ccc.routes.network.RouteNetwork;
+import com.ccc.routes.recursion.Town;
+import com.ccc.routes.recursion.TrainsRoutesDirectedGraph;
+
+/**
+ *
+ * @author gibrancastillo
+ *
+ */
+public class RouteSpliteratorTest {
+	private static final String VALID_TRAINS_ROUTES = "AB5, BC4, CD8, DC8, DE6, AD5, CE2, EB3, AE7";
+	private static final Logger logger = LogManager.getLogger(RouteSpliteratorTest.class);
+	
+	@Test
+	public void testStreamTripsAndRoutes() {
+		logger.info("Test the trips and routes of the trains routes are streamed in depth first order");
+		TrainsRoutesDirectedGraph graph = new TrainsRoutesDirectedGraph(VALID_TRAINS_ROUTES);
+		RouteNetwork network = graph.getRouteNetwork();
+		
+		assertEquals(graph.streamTrips(new Town<String>("C"), new Town<String>("C"), 3, true).map(townIds -> toString(network, townIds))
+				.collect(Collectors.toList()).toString(), "[CDC, CEBC]");
+		assertEquals(graph.streamTrips(new Town<String>("A"), new Town<String>("C"), 4, false).map(townIds -> toString(network, townIds))
+				.collect(Collectors.toList()).toString(), "[ABCDC, ADCDC, ADEBC]");
+		assertEquals(graph.streamRoutesWithMaxDistance(new Town<String>("C"), new Town<String>("C"), 30).count(), 7);
+		assertEquals(graph.streamRoutesWithMaxDistance(new Town<String>("C"), new Town<String>("C"), 30).map(townIds -> toString(network, townIds))
+				.findFirst().get(), "CDC");
+		assertEquals(graph.streamTrips(new Town<String>("C"), new Town<String>("A"), 10, true).count(), 0);
+		assertEquals(graph.streamTrips(new Town<String>("C"), new Town<String>("Z"), 10, true).count(), 0);
+	}
+	
+	@Test
+	public void testStreamsMatchCounters() {
+		logger.info("Test the streams find as many trips and routes as the counters, sequential and parallel");
+		RouteNetwork network = new NetworkGenerator.Builder(Topology.SCALE_FREE, 60).seed(11).cycleDensity(0.7).build().generateNetwork();
+		TripCounter tripCounter = new TripCounter(network);
+		DistanceBudgetCounter distanceBudgetCounter = new DistanceBudgetCounter(network);
+		
+		for(int startingTownId = 0; startingTownId < 60; startingTownId += 13) {
+			for(int endingTownId = 0; endingTownId < 60; endingTownId += 11) {
+				assertEquals(BigInteger.valueOf(StreamSupport.stream(RouteSpliterator.trips(network, startingTownId, endingTownId, 6, true), false).count()),
+						tripCounter.countTrips(startingTownId, endingTownId, 6, true));
+				assertEquals(BigInteger.valueOf(StreamSupport.stream(RouteSpliterator.trips(network, startingTownId, endingTownId, 6, false), true).count()),
+						tripCounter.countTrips(startingTownId, endingTownId, 6, false));
+				assertEquals(BigInteger.valueOf(StreamSupport.stream(RouteSpliterator.routesWithMaxDistance(network, startingTownId, endingTownId, 25), true)
+						.count()), distanceBudgetCounter.countRoutes(startingTownId, endingTownId, 25));
+			}
+		}
+	}
+	
+	@Test
+	public void testSplitsKeepTheOrder() {
+		logger.info("Test the splits of an enumeration hold every route once and in order");
+		RouteNetwork network = new NetworkGenerator.Builder(Topology.SCALE_FREE, 200).seed(5).cycleDensity(0.8).build().generateNetwork();
+		List<String> expectedRoutes = StreamSupport.stream(RouteSpliterator.routesWithMaxDistance(network, 0, 7, 13), false).map(Arrays::toString)
+				.collect(Collectors.toList());
+		assertEquals(expectedRoutes.size(), 17890);
+		
+		List<String> parallelRoutes = StreamSupport.stream(RouteSpliterator.routesWithMaxDistance(network, 0, 7, 13), true).map(Arrays::toString)
+				.collect(Collectors.toList());
+		assertEquals(parallelRoutes, expectedRoutes);
+		
+		//Take a few routes, split what is left and split again, the parts in order are what was left
+		RouteSpliterator spliterator = RouteSpliterator.routesWithMaxDistance(network, 0, 7, 13);
+		List<String> routes = new ArrayList<>();
+		
+		for(int i = 0; i < 100; i++) {
+			assertTrue(spliterator.tryAdvance(townIds -> routes.add(Arrays.toString(townIds))));
+		}
+		
+		Spliterator<int[]> prefix = spliterator.trySplit();
+		Spliterator<int[]> prefixOfRest = spliterator.trySplit();
+		assertNotNull(prefix);
+		assertNotNull(prefixOfRest);
+		prefix.forEachRemaining(townIds -> routes.add(Arrays.toString(townIds)));
+		prefixOfRest.forEachRemaining(townIds -> routes.add(Arrays.toString(townIds)));
+		spliterator.forEachRemaining(townIds -> routes.add(Arrays.toString(townIds)));
+		assertEquals(routes, expectedRoutes);
+	}
+	
+	@Test
+	public void testLimitStopsTheSearch() {
+		logger.info("Test a limited stream only searches as far as the routes it takes");
+		RouteNetwork network = new NetworkGenerator.Builder(Topology.GRID, 10_000).seed(3).cycleDensity(1.0).build().generateNetwork();
+		SearchCounters counters = SearchCounters.current();
+		long townsExpanded = counters.getTownsExpanded();
+		
+		//Billions of round trips around town 0 within a distance of 1000, only the first ten are enumerated
+		List<int[]> routes = StreamSupport.stream(RouteSpliterator.routesWithMaxDistance(network, 0, 0, 1000), false).limit(10)
+				.collect(Collectors.toList());
+		assertEquals(routes.size(), 10);
+		
+		for(int[] townIds : routes) {
+			assertEquals(townIds[0], 0);
+			assertEquals(townIds[townIds.length - 1], 0);
+		}
+		
+		logger.info((counters.getTownsExpanded() - townsExpanded) + " towns expanded for the first ten round trips");
+		assertTrue(counters.getTownsExpanded() - townsExpanded < 100_000);
+	}
+	
+	private static String toString(RouteNetwork network, int[] townIds) {
+		StringBuilder builder = new StringBuilder();
+		
+		for(int townId : townIds) {
+			builder.append(network.getTownName(townId));
+		}
+		
+		return builder.toString();
+	}
+}
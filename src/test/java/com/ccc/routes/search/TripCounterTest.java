@@ -0,0 +1,100 @@
+package com.ccc.routes.search;
+
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ccc.routes.network.CompactRouteNetwork;
+import com.ccc.routes.network.RouteNetwork;
+import com.ccc.routes.recursion.Town;
+import com.ccc.routes.recursion.TrainsRoutesDirectedGraph;
+
+/**
+ *
+ * @author gibrancastillo
+ *
+ */
+public class TripCounterTest {
+	private TrainsRoutesDirectedGraph trainsRoutesDirectedGraph;
+	private static final Logger logger = LogManager.getLogger(TripCounterTest.class);
+	
+	@Before
+	public void setUp() throws Exception {
+		final String VALID_TRAINS_ROUTES = "AB5, BC4, CD8, DC8, DE6, AD5, CE2, EB3, AE7";
+		trainsRoutesDirectedGraph = new TrainsRoutesDirectedGraph(VALID_TRAINS_ROUTES);
+	}
+	
+	@Test
+	public void testCountTripsMatchesRecursion() {
+		logger.info("Test the trips counter against the recursive enumeration of the trips");
+		String[] townNames = {"A", "B", "C", "D", "E"};
+		
+		for(String startingTownName : townNames) {
+			for(String endingTownName : townNames) {
+				for(int numberOfStops = 1; numberOfStops <= 8; numberOfStops++) {
+					Town<String> startingTown = new Town<String>(startingTownName);
+					Town<String> endingTown = new Town<String>(endingTownName);
+					
+					assertEquals(trainsRoutesDirectedGraph.getNumberOfTripsWithNumberOfStops(startingTown, endingTown, numberOfStops, true),
+							trainsRoutesDirectedGraph.getNumberOfTripsWithNumberOfStopsByRecursion(startingTown, endingTown, numberOfStops, true));
+					assertEquals(trainsRoutesDirectedGraph.getNumberOfTripsWithNumberOfStops(startingTown, endingTown, numberOfStops, false),
+							trainsRoutesDirectedGraph.getNumberOfTripsWithNumberOfStopsByRecursion(startingTown, endingTown, numberOfStops, false));
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void testCountTripsWithManyStops() {
+		logger.info("Test the matrix power against the layered counts for a large number of stops");
+		Town<String> town = new Town<String>("C");
+		BigInteger exactStopsSum = BigInteger.ZERO;
+		
+		for(int numberOfStops = 1; numberOfStops <= 100; numberOfStops++) {
+			exactStopsSum = exactStopsSum.add(trainsRoutesDirectedGraph.countTrips(town, town, numberOfStops, false));
+		}
+		
+		assertEquals(trainsRoutesDirectedGraph.countTrips(town, town, 100, true), exactStopsSum);
+		
+		logger.info("Test the trips counter does not overflow");
+		BigInteger trips = trainsRoutesDirectedGraph.countTrips(town, town, 400, false);
+		assertTrue(trips.compareTo(BigInteger.valueOf(Long.MAX_VALUE)) > 0);
+		assertEquals(trainsRoutesDirectedGraph.countTrips(town, town, 400, true),
+				trainsRoutesDirectedGraph.countTrips(town, town, 399, true).add(trips));
+	}
+	
+	@Test
+	public void testMatrixPowerMemoryCap() {
+		logger.info("Test the trips of a network too large for the matrix power are counted by the layers");
+		int numberOfTowns = 1100;
+		CompactRouteNetwork.Builder builder = new CompactRouteNetwork.Builder();
+		
+		for(int townId = 0; townId + 1 < numberOfTowns; townId++) {
+			builder.addRoute("T" + townId, "T" + (townId + 1), 1);
+		}
+		
+		RouteNetwork network = builder.build();
+		assertTrue(TripCounter.isMatrixPowerAffordable(numberOfTowns, false));
+		assertFalse(TripCounter.isMatrixPowerAffordable(numberOfTowns, true));
+		assertEquals(new TripCounter(network).countTrips(0, numberOfTowns - 1, 2000, true, true), BigInteger.ONE);
+		assertEquals(new TripCounter(network).countTrips(0, numberOfTowns - 1, numberOfTowns - 1, false, true), BigInteger.ONE);
+		
+		TrainsRoutesDirectedGraph graph = new TrainsRoutesDirectedGraph(network);
+		Town<String> startingTown = new Town<String>("T0");
+		Town<String> endingTown = new Town<String>("T" + (numberOfTowns - 1));
+		assertFalse(graph.explainTrips(startingTown, endingTown, 1_000_000, true).getEstimatedCosts().containsKey(QueryPlan.Strategy.MATRIX_POWER));
+		assertTrue(graph.explainTrips(startingTown, endingTown, 1_000_000, false).getEstimatedCosts().containsKey(QueryPlan.Strategy.MATRIX_POWER));
+	}
+	
+	@Test
+	public void testCountTripsWithUnknownTown() {
+		logger.info("Test there are no trips from or to a town outside of the graph");
+		assertEquals(trainsRoutesDirectedGraph.getNumberOfTripsWithMaxStops(new Town<String>("Z"), new Town<String>("C"), 3), "0");
+		assertEquals(trainsRoutesDirectedGraph.getNumberOfTripsWithExactStops(new Town<String>("C"), new Town<String>("Z"), 3), "0");
+	}
+}
@@ -0,0 +1,133 @@
+package com.ccc.routes.service;
+
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ccc.routes.recursion.ShortestRoute;
+import com.ccc.routes.recursion.Town;
+import com.ccc.routes.recursion.TrainsRoutesDirectedGraph;
+import com.ccc.routes.search.SearchBudget;
+
+/**
+ *
+ * @author gibrancastillo
+ *
+ */
+public class AsyncRouteQueriesTest {
+	private static final String VALID_TRAINS_ROUTES = "AB5, BC4, CD8, DC8, DE6, AD5, CE2, EB3, AE7";
+	private static final Town<String> A = new Town<String>("A");
+	private static final Town<String> C = new Town<String>("C");
+	private static final Logger logger = LogManager.getLogger(AsyncRouteQueriesTest.class);
+	
+	private TrainsRoutesDirectedGraph graph;
+	private ExecutorService executor;
+	private AsyncRouteQueries queries;
+	
+	@Before
+	public void setUp() {
+		graph = new TrainsRoutesDirectedGraph(VALID_TRAINS_ROUTES);
+		executor = Executors.newSingleThreadExecutor();
+		queries = new AsyncRouteQueries(graph, executor);
+	}
+	
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+	
+	@Test
+	public void testCompletedQueries() throws Exception {
+		logger.info("Test the queries within their budget complete with the same answers as the graph");
+		SearchBudget budget = SearchBudget.withTimeout(Duration.ofMinutes(1));
+		assertEquals(queries.countTrips(C, C, 3, true, budget).get().toString(), "2");
+		assertEquals(queries.countTripsByRecursion(A, C, 4, false, budget).get().getValue(), BigInteger.valueOf(3));
+		assertEquals(queries.countRoutesWithMaxDistance(C, C, 30, budget).get().getValue(), BigInteger.valueOf(7));
+		assertEquals(queries.countRoutesWithMaxDistanceByRecursion(C, C, 30, budget).get().getValue(), BigInteger.valueOf(7));
+		
+		QueryOutcome<ShortestRoute> outcome = queries.getShortestRoute(A, C, budget).get();
+		assertTrue(outcome.isCompleted());
+		assertEquals(outcome.getExceededLimit(), null);
+		assertEquals(outcome.getValue().getDistance(), 9);
+		assertEquals(budget.getExceededLimit(), null);
+	}
+	
+	@Test
+	public void testTownsExpandedBudget() throws Exception {
+		logger.info("Test the enumerations stop once they expanded too many towns, with what they counted so far");
+		SearchBudget budget = new SearchBudget(null, 100_000);
+		QueryOutcome<BigInteger> outcome = queries.countRoutesWithMaxDistanceByRecursion(C, C, 200, budget).get(10, TimeUnit.SECONDS);
+		BigInteger routes = new BigInteger(graph.getNumberOfDifferentRoutesWithMaxDistance(C, C, 200));
+		assertFalse(outcome.isCompleted());
+		assertEquals(outcome.getExceededLimit(), SearchBudget.Limit.TOWNS_EXPANDED);
+		assertTrue(outcome.getValue().signum() > 0 && outcome.getValue().compareTo(routes) < 0);
+		assertTrue(budget.getTownsExpanded() <= 100_000 + SearchBudget.CHECK_INTERVAL);
+		assertTrue(outcome.toString().startsWith("BUDGET EXCEEDED (TOWNS_EXPANDED) at least "));
+		
+		//The dynamic programming over a large distance budget stops the same way, and what it counted is not cached
+		int cachedResults = graph.getQueryCache().size();
+		outcome = queries.countRoutesWithMaxDistance(C, C, 100_000_000, new SearchBudget(null, 10_000)).get(10, TimeUnit.SECONDS);
+		assertEquals(outcome.getExceededLimit(), SearchBudget.Limit.TOWNS_EXPANDED);
+		assertTrue(outcome.getValue().signum() > 0);
+		assertEquals(graph.getQueryCache().size(), cachedResults);
+		
+		//A small count completes before its first check, and is cached
+		assertEquals(queries.countRoutesWithMaxDistance(C, C, 30, new SearchBudget(null, 1)).get().getValue(), BigInteger.valueOf(7));
+		assertEquals(graph.getQueryCache().size(), cachedResults + 1);
+		
+		//The subtasks of a parallel enumeration share the budget, their counts are lost
+		graph.setParallelEnumeration(2, 2);
+		outcome = queries.countTripsByRecursion(C, C, 40, true, new SearchBudget(null, 100_000)).get(10, TimeUnit.SECONDS);
+		assertEquals(outcome.getExceededLimit(), SearchBudget.Limit.TOWNS_EXPANDED);
+		assertEquals(outcome.getValue(), null);
+		graph.setParallelEnumeration(1, 0);
+	}
+	
+	@Test
+	public void testDeadline() throws Exception {
+		logger.info("Test a query stops at its deadline and a query still waiting for a thread at its deadline is not run");
+		long start = System.nanoTime();
+		QueryOutcome<BigInteger> outcome = queries.countTripsByRecursion(C, C, 60, true, SearchBudget.withTimeout(Duration.ofMillis(50)))
+				.get(10, TimeUnit.SECONDS);
+		assertEquals(outcome.getExceededLimit(), SearchBudget.Limit.DEADLINE);
+		assertTrue(outcome.getValue().compareTo(graph.countTrips(C, C, 60, true)) < 0);
+		assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+		
+		SearchBudget runawayBudget = new SearchBudget(null, SearchBudget.NO_LIMIT);
+		CompletableFuture<QueryOutcome<BigInteger>> runaway = queries.countTripsByRecursion(C, C, 60, true, runawayBudget);
+		QueryOutcome<BigInteger> queued = queries.countTrips(C, C, 3, true, SearchBudget.withTimeout(Duration.ofMillis(20))).get(10, TimeUnit.SECONDS);
+		assertEquals(queued.getExceededLimit(), SearchBudget.Limit.DEADLINE);
+		assertEquals(queued.getValue(), null);
+		assertFalse(runaway.isDone());
+		runaway.cancel(false);
+	}
+	
+	@Test
+	public void testCancellation() throws Exception {
+		logger.info("Test cancelling a query stops its search and gives its thread back");
+		SearchBudget budget = new SearchBudget(null, SearchBudget.NO_LIMIT);
+		CompletableFuture<QueryOutcome<BigInteger>> runaway = queries.countRoutesWithMaxDistanceByRecursion(C, C, 1000, budget);
+		Thread.sleep(50);
+		assertTrue(runaway.cancel(false));
+		assertEquals(budget.getExceededLimit(), SearchBudget.Limit.CANCELLED);
+		
+		//The single thread of the executor is free again
+		assertEquals(queries.countTrips(C, C, 3, true, SearchBudget.withTimeout(Duration.ofSeconds(10))).get(10, TimeUnit.SECONDS).getValue(),
+				BigInteger.valueOf(2));
+		
+		SearchBudget cancelledBudget = new SearchBudget(null, SearchBudget.NO_LIMIT);
+		cancelledBudget.cancel();
+		assertEquals(queries.countTrips(C, C, 3, true, cancelledBudget).get().getExceededLimit(), SearchBudget.Limit.CANCELLED);
+	}
+}
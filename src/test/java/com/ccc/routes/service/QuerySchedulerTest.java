@@ -0,0 +1,147 @@
+package com.ccc.routes.service;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ccc.routes.network.NetworkStatistics;
+import com.ccc.routes.recursion.Town;
+import com.ccc.routes.recursion.TrainsRoutesDirectedGraph;
+import com.ccc.routes.search.QueryCostEstimator;
+import com.ccc.routes.search.SearchBudget;
+
+/**
+ *
+ * @author gibrancastillo
+ *
+ */
+public class QuerySchedulerTest {
+	private static final String VALID_TRAINS_ROUTES = "AB5, BC4, CD8, DC8, DE6, AD5, CE2, EB3, AE7";
+	private static final Town<String> C = new Town<String>("C");
+	private static final Logger logger = LogManager.getLogger(QuerySchedulerTest.class);
+	
+	private QueryScheduler scheduler;
+	
+	@Before
+	public void setUp() {
+		scheduler = new QueryScheduler.Builder(new TrainsRoutesDirectedGraph(VALID_TRAINS_ROUTES)).cheapLane(2, 100).expensiveLane(1, 1).build();
+	}
+	
+	@After
+	public void tearDown() {
+		scheduler.shutdown();
+	}
+	
+	@Test
+	public void testCostEstimates() {
+		logger.info("Test the queries are told cheap or expensive from the network statistics, their stops or distance and their budget");
+		assertEquals(new NetworkStatistics(new TrainsRoutesDirectedGraph("AB1, BC1").getRouteNetwork()).getWalkGrowthRate(), 0, 0);
+		assertEquals(new NetworkStatistics(new TrainsRoutesDirectedGraph("AB1, BA1").getRouteNetwork()).getWalkGrowthRate(), 1, 1e-9);
+		
+		QueryCostEstimator estimator = scheduler.getCostEstimator();
+		int c = estimator.getNetwork().getTownId("C");
+		SearchBudget noBudget = new SearchBudget(null, SearchBudget.NO_LIMIT);
+		assertTrue(estimator.getStatistics().getWalkGrowthRate() > 1 && estimator.getStatistics().getWalkGrowthRate() < 3);
+		assertSame(estimator, scheduler.getCostEstimator());
+		
+		assertSame(scheduler.getLane(estimator.estimateRouteDistance(5)), scheduler.getCheapLane());
+		assertSame(scheduler.getLane(estimator.estimateTrips(c, 3, true, noBudget)), scheduler.getCheapLane());
+		//A million stops is a few squarings of a 5 x 5 matrix
+		assertSame(scheduler.getLane(estimator.estimateTrips(c, 1_000_000, true, noBudget)), scheduler.getCheapLane());
+		assertSame(scheduler.getLane(estimator.estimateTripsByRecursion(c, 10, noBudget)), scheduler.getCheapLane());
+		assertSame(scheduler.getLane(estimator.estimateTripsByRecursion(c, 60, noBudget)), scheduler.getExpensiveLane());
+		assertSame(scheduler.getLane(estimator.estimateTripsByRecursion(c, 60, new SearchBudget(null, 1000))), scheduler.getCheapLane());
+		assertSame(scheduler.getLane(estimator.estimateRoutesWithMaxDistance(c, 30, noBudget)), scheduler.getCheapLane());
+		assertSame(scheduler.getLane(estimator.estimateRoutesWithMaxDistance(c, 100_000_000, noBudget)), scheduler.getExpensiveLane());
+		assertSame(scheduler.getLane(estimator.estimateRoutesWithMaxDistanceByRecursion(c, 30, noBudget)), scheduler.getCheapLane());
+		assertSame(scheduler.getLane(estimator.estimateRoutesWithMaxDistanceByRecursion(c, 1000, noBudget)), scheduler.getExpensiveLane());
+		assertSame(scheduler.getLane(estimator.estimateShortestRoute()), scheduler.getCheapLane());
+		
+		//A count from a town with no routes out costs its enumeration, whatever the stops or distance
+		QueryCostEstimator sinkEstimator = new TrainsRoutesDirectedGraph("AB1, BA1, CD1").getQueryPlanner().getCostEstimator();
+		int d = sinkEstimator.getNetwork().getTownId("D");
+		assertEquals(sinkEstimator.estimateTrips(d, 100_000_000, false, noBudget), sinkEstimator.estimateTripsByRecursion(d, 100_000_000), 0);
+		assertEquals(sinkEstimator.estimateRoutesWithMaxDistance(d, 100_000_000, noBudget),
+				sinkEstimator.estimateRoutesWithMaxDistanceByRecursion(d, 100_000_000), 0);
+		assertTrue(sinkEstimator.estimateTrips(d, 100_000_000, false, noBudget) < sinkEstimator.estimateTripsByLayers(100_000_000));
+		assertTrue(sinkEstimator.estimateTrips(sinkEstimator.getNetwork().getTownId("A"), 100_000_000, false, noBudget)
+				> sinkEstimator.estimateTrips(d, 100_000_000, false, noBudget));
+		
+		scheduler.getGraph().createTrainsRoutes("FA1");
+		assertNotSame(estimator, scheduler.getCostEstimator());
+	}
+	
+	@Test
+	public void testCheapQueriesDoNotWaitForExpensiveOnes() throws Exception {
+		logger.info("Test the cheap queries are answered while the expensive lane is busy and its queue is full");
+		SearchBudget runawayBudget = new SearchBudget(null, SearchBudget.NO_LIMIT);
+		CompletableFuture<QueryOutcome<BigInteger>> runaway = scheduler.countTripsByRecursion(C, C, 60, true, runawayBudget);
+		
+		while(scheduler.getExpensiveLane().getActiveCount() == 0) {
+			Thread.sleep(1);
+		}
+		
+		CompletableFuture<QueryOutcome<Integer>> queued = scheduler.submit(Double.POSITIVE_INFINITY, new SearchBudget(null, SearchBudget.NO_LIMIT),
+				() -> scheduler.getGraph().getRouteDistance("A-B-C"));
+		assertEquals(scheduler.getExpensiveLane().getQueueDepth(), 1);
+		
+		try {
+			scheduler.countTripsByRecursion(C, C, 50, true, new SearchBudget(null, SearchBudget.NO_LIMIT)).get();
+			fail("Expected the query to be rejected by the full expensive lane");
+		} catch(ExecutionException e) {
+			assertTrue(e.getCause() instanceof RejectedExecutionException);
+		}
+		
+		assertEquals(scheduler.getExpensiveLane().getRejectedCount(), 1);
+		List<CompletableFuture<QueryOutcome<Integer>>> distances = new ArrayList<>();
+		
+		for(int i = 0; i < 100; i++) {
+			distances.add(scheduler.getRouteDistance("A-E-B-C-D", new SearchBudget(null, SearchBudget.NO_LIMIT)));
+		}
+		
+		for(CompletableFuture<QueryOutcome<Integer>> distance : distances) {
+			assertEquals(distance.get(10, TimeUnit.SECONDS).getValue(), Integer.valueOf(22));
+		}
+		
+		assertEquals(scheduler.countTrips(C, C, 1_000_000, false, new SearchBudget(null, SearchBudget.NO_LIMIT)).get(10, TimeUnit.SECONDS)
+				.isCompleted(), true);
+		assertFalse(runaway.isDone());
+		assertEquals(scheduler.getCheapLane().getStartedCount(), 101);
+		assertEquals(scheduler.getCheapLane().getWaits().getCount(), 101);
+		
+		runaway.cancel(false);
+		assertEquals(queued.get(10, TimeUnit.SECONDS).getValue(), Integer.valueOf(9));
+		assertEquals(scheduler.getExpensiveLane().getStartedCount(), 2);
+		assertEquals(scheduler.getExpensiveLane().getQueueDepth(), 0);
+		assertTrue(scheduler.getExpensiveLane().getMaxWait() > 0);
+	}
+	
+	@Test
+	public void testMBeans() throws Exception {
+		logger.info("Test the queue depth and wait times of both lanes are published as MBeans");
+		scheduler.registerMBeans("test");
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		assertEquals(scheduler.getRouteDistance("A-B-C", new SearchBudget(null, SearchBudget.NO_LIMIT)).get().getValue(), Integer.valueOf(9));
+		assertEquals(server.getAttribute(QueryScheduler.getObjectName("test", "cheap-query"), "QueueDepth"), 0);
+		assertEquals(server.getAttribute(QueryScheduler.getObjectName("test", "cheap-query"), "StartedCount"), 1L);
+		assertEquals(server.getAttribute(QueryScheduler.getObjectName("test", "expensive-query"), "Concurrency"), 1);
+		
+		scheduler.unregisterMBeans();
+		assertFalse(server.isRegistered(QueryScheduler.getObjectName("test", "cheap-query")));
+	}
+}
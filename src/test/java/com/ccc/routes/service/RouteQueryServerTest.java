@@ -0,0 +1,173 @@
+package com.ccc.routes.service;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ccc.routes.recursion.Town;
+import com.ccc.routes.recursion.TrainsRoutesDirectedGraph;
+
+/**
+ *
+ * @author gibrancastillo
+ *
+ */
+public class RouteQueryServerTest {
+	private static final String VALID_TRAINS_ROUTES = "AB5, BC4, CD8, DC8, DE6, AD5, CE2, EB3, AE7";
+	private static final Logger logger = LogManager.getLogger(RouteQueryServerTest.class);
+	
+	private RouteQueryServer server;
+	private HttpClient client;
+	
+	@Before
+	public void setUp() throws IOException {
+		server = new RouteQueryServer(new TrainsRoutesDirectedGraph(VALID_TRAINS_ROUTES), new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 4);
+		server.start();
+		client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+	}
+	
+	@After
+	public void tearDown() {
+		server.stop(0);
+	}
+	
+	@Test
+	public void testQueries() throws Exception {
+		logger.info("Test the answers of the queries of the trains routes on localhost, in JSON");
+		assertEquals(get("/distance?route=A-B-C").body(), "{\"result\":9}");
+		assertEquals(get("/distance?route=AED").body(), "{\"result\":\"NO SUCH ROUTE\"}");
+		assertEquals(get("/trips?from=C&to=C&stops=3").body(), "{\"result\":2}");
+		assertEquals(get("/trips?from=A&to=C&stops=4&exact=true").body(), "{\"result\":3}");
+		assertEquals(get("/shortest?from=A&to=C").body(), "{\"towns\":[\"A\",\"B\",\"C\"],\"distance\":9}");
+		assertEquals(get("/shortest?from=C&to=A").body(), "{\"result\":\"NO SUCH ROUTE\"}");
+		assertEquals(get("/routes?from=C&to=C&maxDistance=30").body(), "{\"result\":7}");
+		
+		HttpResponse<String> response = get("/trips?from=C&to=C");
+		assertEquals(response.statusCode(), 400);
+		assertEquals(response.body(), "{\"error\":\"Missing parameter stops\"}");
+		assertEquals(get("/trips?from=C&to=C&stops=x").statusCode(), 400);
+		assertEquals(get("/routes?from=C&to=C&maxDistance=99999999999").statusCode(), 400);
+		assertEquals(get("/routes?from=C&to=C&maxDistance=" + (RouteQueryServer.MAX_DISTANCE + 1)).statusCode(), 400);
+		assertEquals(get("/trips?from=C&to=C&stops=-1").body(), "{\"error\":\"Expected a number from 0 to " + RouteQueryServer.MAX_STOPS
+				+ " for parameter stops: -1\"}");
+		assertEquals(get("/towns").statusCode(), 404);
+		assertEquals(get("/batch").statusCode(), 405);
+	}
+	
+	@Test
+	public void testBudget() throws Exception {
+		logger.info("Test the queries run on the scheduler under a budget and are answered with 503 once they run out of it");
+		assertEquals(server.getScheduler().getCheapLane().getStartedCount(), 0);
+		assertEquals(get("/routes?from=C&to=C&maxDistance=30").body(), "{\"result\":7}");
+		assertEquals(server.getScheduler().getCheapLane().getStartedCount(), 1);
+		
+		RouteQueryServer expiredServer = new RouteQueryServer(new QueryScheduler.Builder(server.getGraph()).build(),
+				new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 4, Duration.ZERO, RouteQueryServer.DEFAULT_MAX_TOWNS_EXPANDED);
+		expiredServer.start();
+		
+		try {
+			URI target = URI.create("http://" + expiredServer.getAddress().getHostString() + ":" + expiredServer.getAddress().getPort() + "/trips?from=C&to=C&stops=3");
+			HttpResponse<String> response = client.send(HttpRequest.newBuilder(target).build(), HttpResponse.BodyHandlers.ofString());
+			assertEquals(response.statusCode(), 503);
+			assertEquals(response.body(), "{\"error\":\"Query stopped at its DEADLINE limit\"}");
+		} finally {
+			expiredServer.stop(0);
+		}
+	}
+	
+	@Test
+	public void testBatch() throws Exception {
+		logger.info("Test a batch of queries is answered in order in one response, in JSON and in binary");
+		String batch = "/distance?route=A-B-C\n\n/trips?from=C&to=C&stops=3\n/shortest?from=E&to=D\n/nothing\n/routes?from=C&to=C";
+		HttpResponse<String> response = client.send(HttpRequest.newBuilder(uri("/batch")).POST(HttpRequest.BodyPublishers.ofString(batch)).build(),
+				HttpResponse.BodyHandlers.ofString());
+		assertEquals(response.statusCode(), 200);
+		assertEquals(response.headers().firstValue("Content-Type").get(), "application/json");
+		assertEquals(response.body(), "[{\"result\":9},{\"result\":2},{\"towns\":[\"E\",\"B\",\"C\",\"D\"],\"distance\":15},{\"error\":\"Unknown query /nothing\"},"
+				+ "{\"error\":\"Missing parameter maxDistance\"}]");
+		
+		assertTrue(client.send(HttpRequest.newBuilder(uri("/batch")).POST(HttpRequest.BodyPublishers.ofString("/routes?from=C&to=C&maxDistance=%zz\n/distance?route=AB"))
+				.build(), HttpResponse.BodyHandlers.ofString()).body().matches("\\[\\{\"error\":\"URLDecoder.*\"\\},\\{\"result\":5\\}\\]"));
+		
+		HttpResponse<byte[]> binaryResponse = client.send(HttpRequest.newBuilder(uri("/batch")).header("Accept", "application/octet-stream")
+				.POST(HttpRequest.BodyPublishers.ofString(batch + "\n/distance?route=AED")).build(), HttpResponse.BodyHandlers.ofByteArray());
+		DataInputStream input = new DataInputStream(new ByteArrayInputStream(binaryResponse.body()));
+		assertEquals(input.readInt(), 6);
+		assertEquals(readNumber(input), BigInteger.valueOf(9));
+		assertEquals(readNumber(input), BigInteger.valueOf(2));
+		assertEquals(input.readByte(), QueryResponse.ROUTE);
+		assertEquals(input.readInt(), 15);
+		assertEquals(input.readInt(), 4);
+		assertEquals(input.readUTF() + input.readUTF() + input.readUTF() + input.readUTF(), "EBCD");
+		assertEquals(input.readByte(), QueryResponse.ERROR);
+		assertEquals(input.readUTF(), "Unknown query /nothing");
+		assertEquals(input.readByte(), QueryResponse.ERROR);
+		assertEquals(input.readUTF(), "Missing parameter maxDistance");
+		assertEquals(input.readByte(), QueryResponse.NO_ROUTE);
+		assertEquals(input.available(), 0);
+		
+		HttpResponse<byte[]> numberResponse = client.send(HttpRequest.newBuilder(uri("/trips?from=A&to=A&stops=200&format=binary")).build(),
+				HttpResponse.BodyHandlers.ofByteArray());
+		assertEquals(readNumber(new DataInputStream(new ByteArrayInputStream(numberResponse.body()))).toString(),
+				server.getGraph().getNumberOfTripsWithMaxStops(new Town<String>("A"), new Town<String>("A"), 200));
+	}
+	
+	@Test
+	public void testConcurrentRequests() throws Exception {
+		logger.info("Test concurrent requests on the shared graph are all answered correctly");
+		ExecutorService clients = Executors.newFixedThreadPool(8);
+		
+		try {
+			List<Future<Boolean>> results = new ArrayList<>();
+			
+			for(int i = 0; i < 400; i++) {
+				int stops = i % 10;
+				results.add(clients.submit(() -> get("/distance?route=A-E-B-C-D").body().equals("{\"result\":22}")
+						&& get("/trips?from=C&to=C&stops=" + stops).statusCode() == 200));
+			}
+			
+			for(Future<Boolean> result : results) {
+				assertTrue(result.get());
+			}
+		} finally {
+			clients.shutdown();
+		}
+	}
+	
+	private static BigInteger readNumber(DataInputStream input) throws IOException {
+		assertEquals(input.readByte(), QueryResponse.NUMBER);
+		byte[] bytes = new byte[input.readUnsignedShort()];
+		input.readFully(bytes);
+		
+		return new BigInteger(bytes);
+	}
+	
+	private URI uri(String target) {
+		return URI.create("http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + target);
+	}
+	
+	private HttpResponse<String> get(String target) throws IOException, InterruptedException {
+		return client.send(HttpRequest.newBuilder(uri(target)).build(), HttpResponse.BodyHandlers.ofString());
+	}
+}
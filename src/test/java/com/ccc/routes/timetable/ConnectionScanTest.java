@@ -0,0 +1,264 @@
+package com.ccc.routes.timetable;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Test;
+
+import com.ccc.routes.generator.NetworkGenerator;
+import com.ccc.routes.generator.Topology;
+import com.ccc.routes.network.RouteFormatException;
+import com.ccc.routes.network.RouteNetwork;
+import com.ccc.routes.network.RouteParser;
+
+/**
+ *
+ * @author gibrancastillo
+ *
+ */
+public class ConnectionScanTest {
+	private static final String VALID_TRAINS_ROUTES = "AB5, BC4, CD8, DC8, DE6, AD5, CE2, EB3, AE7";
+	private static final String VALID_CONNECTIONS = "# trip departure arrival departs arrives\n"
+			+ "IC1 A B 08:00 08:05\n"
+			+ "IC1 B C 08:06 08:10\n"
+			+ "IC1 C D 08:11 08:19\n"
+			+ "RE2 A E 08:02 08:15   # leaves after IC1, arrives after changing to RE3\n"
+			+ "RE2 E B 08:16 08:19\n"
+			+ "\n"
+			+ "RE3 C E 08:12 08:14\n"
+			+ "IC4 A D 09:00 09:05\n"
+			+ "IC4 D E 09:06 09:12:30\n"
+			+ "IC5 A B 10:00 10:05\n"
+			+ "IC5 B C 10:05 10:09\n"
+			+ "IC5 C E 10:09 10:11";
+	private static final Logger logger = LogManager.getLogger(ConnectionScanTest.class);
+	
+	@Test
+	public void testEarliestArrival() {
+		logger.info("Test the earliest arrivals of the timetable of the trains routes, changing trains where it is faster");
+		RouteNetwork network = RouteParser.parseNetwork(VALID_TRAINS_ROUTES);
+		Timetable timetable = TimetableParser.parseTimetable(network, VALID_CONNECTIONS);
+		ConnectionScan connectionScan = new ConnectionScan(timetable);
+		assertEquals(timetable.getNumberOfConnections(), 11);
+		assertEquals(timetable.getNumberOfTrips(), 5);
+		
+		assertEquals(connectionScan.findEarliestArrival(0, 3, 8 * 3600).toString(), "A 08:00 - D 08:19 (IC1)");
+		assertEquals(connectionScan.findEarliestArrival(0, 4, 8 * 3600).toString(), "A 08:00 - C 08:10 (IC1), C 08:12 - E 08:14 (RE3)");
+		assertEquals(connectionScan.findEarliestArrival(0, 4, 8 * 3600 + 60).toString(), "A 08:02 - E 08:15 (RE2)");
+		assertEquals(connectionScan.findEarliestArrival(0, 4, 8 * 3600 + 180).toString(), "A 09:00 - E 09:12:30 (IC4)");
+		assertEquals(connectionScan.findEarliestArrival(0, 4, 9 * 3600 + 60).getArrivalTime(), 10 * 3600 + 11 * 60);
+		assertEquals(connectionScan.findEarliestArrival(0, 4, 11 * 3600).toString(), "NO SUCH ROUTE");
+		assertEquals(connectionScan.findEarliestArrival(2, 0, 0).toString(), "NO SUCH ROUTE");
+		assertEquals(connectionScan.findEarliestArrival(2, 2, 0).getNumberOfLegs(), 0);
+		assertEquals(connectionScan.findEarliestArrival(2, 2, 0).getArrivalTime(), 0);
+		
+		Journey journey = connectionScan.findEarliestArrival(0, 4, 8 * 3600);
+		assertEquals(journey.getNumberOfLegs(), 2);
+		assertEquals(timetable.getTripName(journey.getTrip(0)), "IC1");
+		assertEquals(timetable.getRoute(journey.getAlightingConnection(0)), network.findRoute(1, 2));
+		assertEquals(Arrays.toString(connectionScan.findEarliestArrivalTimes(0, 9 * 3600)),
+				"[32400, 36300, 36540, 32700, " + (9 * 3600 + 12 * 60 + 30) + "]");
+	}
+	
+	@Test
+	public void testProfile() {
+		logger.info("Test the profiles hold every departure worth taking and no other");
+		RouteNetwork network = RouteParser.parseNetwork(VALID_TRAINS_ROUTES);
+		ConnectionScan connectionScan = new ConnectionScan(TimetableParser.parseTimetable(network, VALID_CONNECTIONS));
+		
+		assertEquals(connectionScan.findProfile(0, 4, 0).toString(), "[08:00 - 08:14, 08:02 - 08:15, 09:00 - 09:12:30, 10:00 - 10:11]");
+		assertEquals(connectionScan.findProfile(0, 4, 8 * 3600 + 60).toString(), "[08:02 - 08:15, 09:00 - 09:12:30, 10:00 - 10:11]");
+		assertEquals(connectionScan.findProfile(1, 4, 0).toString(), "[08:06 - 08:14, 10:05 - 10:11]");
+		assertEquals(connectionScan.findProfile(2, 0, 0).size(), 0);
+		
+		ArrivalProfile profile = connectionScan.findProfile(0, 4, 0);
+		assertEquals(profile.getEarliestArrival(8 * 3600 + 1), 8 * 3600 + 15 * 60);
+		assertEquals(profile.getEarliestArrival(10 * 3600 + 1), Timetable.NO_TIME);
+	}
+	
+	@Test
+	public void testMatchesTimeDependentDijkstra() {
+		logger.info("Test the earliest arrivals and profiles match a time-dependent Dijkstra on random timetables");
+		
+		for(Topology topology : Topology.values()) {
+			RouteNetwork network = new NetworkGenerator.Builder(topology, 300).seed(17).build().generateNetwork();
+			Random random = new Random(topology.ordinal());
+			Timetable timetable = createTimetable(network, 400, random);
+			ConnectionScan connectionScan = new ConnectionScan(timetable);
+			int[][] departures = groupByDepartureTown(timetable);
+			
+			for(int i = 0; i < 100; i++) {
+				int departureTownId = random.nextInt(network.getNumberOfTowns());
+				int arrivalTownId = random.nextInt(network.getNumberOfTowns());
+				int departureTime = 5 * 3600 + random.nextInt(18 * 3600);
+				int expectedArrivalTime = findEarliestArrivalTime(timetable, departures, departureTownId, arrivalTownId, departureTime);
+				Journey journey = connectionScan.findEarliestArrival(departureTownId, arrivalTownId, departureTime);
+				
+				assertEquals(journey.getArrivalTime(), expectedArrivalTime);
+				assertJourney(timetable, journey, departureTownId, arrivalTownId, departureTime);
+				assertEquals(connectionScan.findEarliestArrivalTimes(departureTownId, departureTime)[arrivalTownId], expectedArrivalTime);
+				
+				if(departureTownId != arrivalTownId) {
+					ArrivalProfile profile = connectionScan.findProfile(departureTownId, arrivalTownId, 5 * 3600);
+					assertEquals(profile.getEarliestArrival(departureTime), expectedArrivalTime);
+					
+					for(int j = 0; j < profile.size(); j++) {
+						assertEquals(findEarliestArrivalTime(timetable, departures, departureTownId, arrivalTownId, profile.getDepartureTime(j)), profile.getArrivalTime(j));
+						assertTrue(j == 0 || profile.getArrivalTime(j) > profile.getArrivalTime(j - 1));
+						//A departure is only worth taking when a second later arrives later
+						assertTrue(findEarliestArrivalTime(timetable, departures, departureTownId, arrivalTownId, profile.getDepartureTime(j) + 1) > profile.getArrivalTime(j));
+					}
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void testParseTimetable() throws IOException {
+		logger.info("Test parsing the connections from a reader and reporting malformed connections with their line and column");
+		RouteNetwork network = RouteParser.parseNetwork(VALID_TRAINS_ROUTES);
+		Timetable timetable = TimetableParser.parseTimetable(network, new StringReader(VALID_CONNECTIONS.replace(" ", "\t")));
+		assertEquals(timetable.getNumberOfConnections(), 11);
+		assertEquals(timetable.getDepartureTime(0), 8 * 3600);
+		assertEquals(timetable.getTripName(timetable.getTrip(1)), "RE2");
+		assertEquals(network.getTownName(timetable.getArrivalTownId(1)), "E");
+		assertEquals(timetable.findFirstConnection(9 * 3600), 6);
+		assertEquals(Timetable.formatTime(25 * 3600 + 5 * 60 + 7), "25:05:07");
+		assertEquals(TimetableParser.parseTimetable(network, "N1 A B 24:59 25:03").getArrivalTime(0), 25 * 3600 + 3 * 60);
+		
+		assertMalformed(network, "IC1 A B 08:00", 1, 13);
+		assertMalformed(network, "IC1 A B 08:00 08:05\nIC1 B Z 08:06 08:10", 2, 7);
+		assertMalformed(network, "IC1 A B 08:00 08:05 09:00", 1, 21);
+		assertMalformed(network, "IC1 A B 0800 08:05", 1, 12);
+		assertMalformed(network, "IC1 A B 08:00 08:5", 1, 18);
+		assertMalformed(network, "IC1 A B 08:00 08:65", 1, 18);
+		assertMalformed(network, "IC1 A B 08:00 08:05x", 1, 20);
+		assertMalformed(network, "IC1 A B 08:00 08:00", 1, 1);
+		assertMalformed(network, "IC1 A C 08:00 08:05", 1, 1);
+		assertMalformed(network, "IC1 A B 08:00 08:05\n  IC1 C D 08:06 08:10", 2, 3);
+	}
+	
+	private static void assertMalformed(RouteNetwork network, String input, int line, int column) {
+		try {
+			TimetableParser.parseTimetable(network, input);
+			fail("Expected a malformed connection in " + input);
+		} catch(RouteFormatException e) {
+			logger.info(e.getMessage());
+			assertEquals(e.getLine(), line);
+			assertEquals(e.getColumn(), column);
+		}
+	}
+	
+	/**
+	 * Asserts the legs of the journey carry on from one another, from the departure town at the departure time to the
+	 * arrival town, each on one trip.
+	 */
+	private static void assertJourney(Timetable timetable, Journey journey, int departureTownId, int arrivalTownId, int departureTime) {
+		if(!journey.exists()) {
+			return;
+		}
+		
+		int townId = departureTownId;
+		int time = departureTime;
+		
+		for(int leg = 0; leg < journey.getNumberOfLegs(); leg++) {
+			int boardingConnection = journey.getBoardingConnection(leg);
+			int alightingConnection = journey.getAlightingConnection(leg);
+			assertEquals(timetable.getDepartureTownId(boardingConnection), townId);
+			assertTrue(timetable.getDepartureTime(boardingConnection) >= time);
+			assertEquals(timetable.getTrip(alightingConnection), journey.getTrip(leg));
+			assertTrue(alightingConnection >= boardingConnection);
+			townId = timetable.getArrivalTownId(alightingConnection);
+			time = timetable.getArrivalTime(alightingConnection);
+		}
+		
+		assertEquals(townId, arrivalTownId);
+		assertEquals(time, journey.getArrivalTime());
+	}
+	
+	/**
+	 * Random trips along the routes of the network between 05:00 and midnight, a minute per unit of distance and up to
+	 * two minutes at every stop.
+	 */
+	private static Timetable createTimetable(RouteNetwork network, int numberOfTrips, Random random) {
+		Timetable.Builder builder = new Timetable.Builder(network);
+		
+		for(int i = 0; i < numberOfTrips; i++) {
+			int trip = builder.addTrip("T" + i);
+			int townId = random.nextInt(network.getNumberOfTowns());
+			int time = 5 * 3600 + random.nextInt(17 * 3600);
+			
+			for(int stop = 0, stops = 1 + random.nextInt(15); stop < stops && network.getOutDegree(townId) > 0; stop++) {
+				int route = network.getFirstRoute(townId) + random.nextInt(network.getOutDegree(townId));
+				int arrivalTime = time + 60 * network.getRouteDistance(route);
+				builder.addConnection(trip, townId, network.getRouteTarget(route), time, arrivalTime);
+				townId = network.getRouteTarget(route);
+				time = arrivalTime + random.nextInt(121);
+			}
+		}
+		
+		return builder.build();
+	}
+	
+	/**
+	 * @return The connections departing from every town by id.
+	 */
+	private static int[][] groupByDepartureTown(Timetable timetable) {
+		List<List<Integer>> departures = new ArrayList<>();
+		
+		for(int townId = 0; townId < timetable.getNetwork().getNumberOfTowns(); townId++) {
+			departures.add(new ArrayList<>());
+		}
+		
+		for(int connection = 0; connection < timetable.getNumberOfConnections(); connection++) {
+			departures.get(timetable.getDepartureTownId(connection)).add(connection);
+		}
+		
+		return departures.stream().map(connections -> connections.stream().mapToInt(Integer::intValue).toArray()).toArray(int[][]::new);
+	}
+	
+	/**
+	 * Dijkstra's algorithm over the towns, following from every town settled the connections departing from it no
+	 * earlier than it was reached.
+	 *
+	 * @return The earliest arrival, or {@link Timetable#NO_TIME}.
+	 */
+	private static int findEarliestArrivalTime(Timetable timetable, int[][] departures, int departureTownId, int arrivalTownId, int departureTime) {
+		int numberOfTowns = timetable.getNetwork().getNumberOfTowns();
+		int[] arrivalTimes = new int[numberOfTowns];
+		Arrays.fill(arrivalTimes, Timetable.NO_TIME);
+		arrivalTimes[departureTownId] = departureTime;
+		PriorityQueue<int[]> queue = new PriorityQueue<>((a, b) -> Integer.compare(a[1], b[1]));
+		queue.add(new int[] {departureTownId, departureTime});
+		
+		while(!queue.isEmpty()) {
+			int[] entry = queue.poll();
+			
+			if(entry[1] > arrivalTimes[entry[0]]) {
+				continue;
+			} else if(entry[0] == arrivalTownId) {
+				break;
+			}
+			
+			for(int connection : departures[entry[0]]) {
+				int nextTownId = timetable.getArrivalTownId(connection);
+				
+				if(timetable.getDepartureTime(connection) >= entry[1] && timetable.getArrivalTime(connection) < arrivalTimes[nextTownId]) {
+					arrivalTimes[nextTownId] = timetable.getArrivalTime(connection);
+					queue.add(new int[] {nextTownId, arrivalTimes[nextTownId]});
+				}
+			}
+		}
+		
+		return arrivalTimes[arrivalTownId];
+	}
+}